@@ -0,0 +1,76 @@
+package org.rmatil.sync.persistence.core;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the hashes used to identify and verify stored content.
+ * All hashes are represented as lowercase hexadecimal strings, so that
+ * checksums computed at once and ones computed incrementally using
+ * a digest of {@link Checksums#createDigest(String)} are comparable.
+ */
+public final class Checksums {
+
+    public static final String MD5 = "MD5";
+
+    public static final String SHA_256 = "SHA-256";
+
+    private Checksums() {
+    }
+
+    /**
+     * Creates a digest of the given algorithm
+     *
+     * @param algorithm The algorithm, one of {@link Checksums#MD5} and {@link Checksums#SHA_256}
+     *
+     * @return The digest
+     */
+    public static MessageDigest createDigest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            // every Java platform is required to support MD5 and SHA-256
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the MD5 checksum of the given content, as stored in
+     * meta records and used as version of cached values
+     *
+     * @param bytes The content
+     *
+     * @return The hexadecimal MD5 checksum
+     */
+    public static String md5(byte[] bytes) {
+        return toHex(createDigest(MD5).digest(bytes));
+    }
+
+    /**
+     * Returns the SHA-256 hash of the given content
+     *
+     * @param bytes The content
+     *
+     * @return The hexadecimal SHA-256 hash
+     */
+    public static String sha256(byte[] bytes) {
+        return toHex(createDigest(SHA_256).digest(bytes));
+    }
+
+    /**
+     * Converts the given digest to its lowercase hexadecimal representation
+     *
+     * @param digest The digest to convert
+     *
+     * @return The hexadecimal string
+     */
+    public static String toHex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+            sb.append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return sb.toString();
+    }
+}
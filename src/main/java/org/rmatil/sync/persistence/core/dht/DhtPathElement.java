@@ -65,4 +65,21 @@ public abstract class DhtPathElement implements IPathElement {
         return rawContentKey;
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (null == o || this.getClass() != o.getClass()) {
+            return false;
+        }
+
+        return this.getPath().equals(((DhtPathElement) o).getPath());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.getPath().hashCode();
+    }
 }
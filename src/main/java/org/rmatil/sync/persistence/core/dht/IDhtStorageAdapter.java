@@ -1,11 +1,134 @@
 package org.rmatil.sync.persistence.core.dht;
 
+import org.rmatil.sync.persistence.api.IFileMetaInfo;
 import org.rmatil.sync.persistence.api.IStorageAdapter;
+import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCacheStats;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * An interface for DHT storage adapters
- * which may or may not provide domain protection
+ * which may or may not provide domain protection.
+ * <p>
+ * Besides the blocking methods of {@link IStorageAdapter}, asynchronous
+ * variants are provided which return immediately. Their futures
+ * complete exceptionally with an {@link InputOutputException} on failure.
  */
 public interface IDhtStorageAdapter extends IStorageAdapter<DhtPathElement> {
 
+    /**
+     * Persists all given contents as files using one request
+     * per location and domain key instead of one per path
+     *
+     * @param contents The bytes to store by their path
+     *
+     * @return Whether storing succeeded by path
+     *
+     * @throws InputOutputException If an error occurred during persisting
+     */
+    Map<DhtPathElement, Boolean> persistAll(Map<? extends DhtPathElement, byte[]> contents)
+            throws InputOutputException;
+
+    /**
+     * Reads the contents of all given paths using one request
+     * per location and domain key instead of one per path
+     *
+     * @param paths The paths from which to read
+     *
+     * @return The contents by path. Paths for which no content is stored are mapped to null
+     *
+     * @throws InputOutputException If an error occurred during reading
+     */
+    Map<DhtPathElement, byte[]> readAll(Collection<? extends DhtPathElement> paths)
+            throws InputOutputException;
+
+    /**
+     * Starts an upload to the given path, which assembles the value from
+     * multiple chunks locally and stores it once on commit
+     *
+     * @param path The path to which the value is uploaded
+     *
+     * @return The upload session
+     */
+    IDhtUploadSession beginUpload(DhtPathElement path);
+
+    /**
+     * Persists the given bytes at the given path without waiting for the DHT
+     *
+     * @param type  The type of path which should be created
+     * @param path  The path used to identify the data
+     * @param bytes The bytes to store
+     *
+     * @return A future which completes once the bytes are stored
+     */
+    CompletableFuture<Void> persistAsync(StorageType type, DhtPathElement path, byte[] bytes);
+
+    /**
+     * Deletes the content stored at path without waiting for the DHT
+     *
+     * @param path The path to remove
+     *
+     * @return A future which completes once the content is removed
+     */
+    CompletableFuture<Void> deleteAsync(DhtPathElement path);
+
+    /**
+     * Reads the contents stored at path without waiting for the DHT
+     *
+     * @param path The path from which to read
+     *
+     * @return A future completing with the content as byte array
+     */
+    CompletableFuture<byte[]> readAsync(DhtPathElement path);
+
+    /**
+     * Returns some meta information about the given path without waiting for the DHT
+     *
+     * @param path The path element of which to get the meta information
+     *
+     * @return A future completing with the meta information
+     */
+    CompletableFuture<IFileMetaInfo> getMetaInformationAsync(DhtPathElement path);
+
+    /**
+     * Checks whether the given path already exists without waiting for the DHT
+     *
+     * @param storageType The storage type to check for
+     * @param path        The path to check
+     *
+     * @return A future completing with true, if existing, false otherwise
+     */
+    CompletableFuture<Boolean> existsAsync(StorageType storageType, DhtPathElement path);
+
+    /**
+     * Stops all background tasks of this adapter. The adapter
+     * must not be used afterwards.
+     */
+    void shutdown();
+
+    /**
+     * Returns a snapshot of the statistics of the cache of this adapter
+     *
+     * @return The cache statistics
+     */
+    DhtCacheStats getCacheStats();
+
+    /**
+     * Exposes the statistics of the cache of this adapter through JMX
+     * until the adapter is shut down
+     *
+     * @param name The name distinguishing this adapter from others
+     *
+     * @return The object name of the MBean
+     *
+     * @throws JMException If the name is invalid or already in use
+     */
+    ObjectName registerCacheMBean(String name)
+            throws JMException;
 }
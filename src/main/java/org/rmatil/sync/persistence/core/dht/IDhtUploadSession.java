@@ -0,0 +1,65 @@
+package org.rmatil.sync.persistence.core.dht;
+
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+/**
+ * An upload of a value to the DHT which is assembled locally
+ * from multiple chunks and transferred only once on commit.
+ * The previous value at the path stays untouched until then.
+ * <p>
+ * Closing a session which has not been committed aborts it.
+ */
+public interface IDhtUploadSession extends AutoCloseable {
+
+    /**
+     * Returns the path to which the value is uploaded
+     *
+     * @return The path of the upload
+     */
+    DhtPathElement getPath();
+
+    /**
+     * Writes the given bytes at the given offset of the value.
+     * Note, that data is overwritten and not appended, if the offset is smaller
+     * than the total size of the value written so far!
+     *
+     * @param offset The offset where to start writing
+     * @param bytes  The bytes to write
+     *
+     * @throws InputOutputException If the session is no longer open or buffering the bytes failed
+     */
+    void writeChunk(long offset, byte[] bytes)
+            throws InputOutputException;
+
+    /**
+     * Returns the number of bytes written so far
+     *
+     * @return The size of the value
+     */
+    long getSize();
+
+    /**
+     * Stores the assembled value at the path, replacing any previous value
+     *
+     * @throws InputOutputException If the session is no longer open or storing failed
+     */
+    void commit()
+            throws InputOutputException;
+
+    /**
+     * Discards all written bytes without modifying the DHT
+     *
+     * @throws InputOutputException If releasing the buffered bytes failed
+     */
+    void abort()
+            throws InputOutputException;
+
+    /**
+     * Aborts the upload, if it has neither been committed nor aborted
+     *
+     * @throws InputOutputException If releasing the buffered bytes failed
+     */
+    @Override
+    void close()
+            throws InputOutputException;
+}
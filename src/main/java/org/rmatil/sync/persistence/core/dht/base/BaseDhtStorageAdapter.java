@@ -1,29 +1,152 @@
 package org.rmatil.sync.persistence.core.dht.base;
 
 import net.tomp2p.dht.*;
+import net.tomp2p.futures.BaseFuture;
 import net.tomp2p.p2p.JobScheduler;
+import net.tomp2p.peers.Number160;
+import net.tomp2p.peers.Number640;
 import net.tomp2p.storage.Data;
-import org.rmatil.sync.commons.hashing.Hash;
-import org.rmatil.sync.commons.hashing.HashingAlgorithm;
+import org.rmatil.sync.commons.collection.Pair;
 import org.rmatil.sync.persistence.api.IFileMetaInfo;
 import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.Checksums;
 import org.rmatil.sync.persistence.core.FileMetaInfo;
 import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+import org.rmatil.sync.persistence.core.dht.IDhtUploadSession;
 import org.rmatil.sync.persistence.core.dht.cache.DhtCache;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCacheMonitor;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCacheStats;
+import org.rmatil.sync.persistence.core.dht.cache.IDhtCache;
+import org.rmatil.sync.persistence.core.dht.cache.OffHeapDhtCache;
+import org.rmatil.sync.persistence.core.dht.cache.VersionedValue;
+import org.rmatil.sync.persistence.core.dht.chunk.ChunkManifest;
+import org.rmatil.sync.persistence.core.dht.coalesce.RequestCoalescer;
+import org.rmatil.sync.persistence.core.dht.compress.PayloadCodec;
+import org.rmatil.sync.persistence.core.dht.dedup.DhtObjectPointer;
+import org.rmatil.sync.persistence.core.dht.listener.DhtCompletionListener;
 import org.rmatil.sync.persistence.core.dht.listener.DhtDeleteListener;
+import org.rmatil.sync.persistence.core.dht.listener.DhtDigestListener;
 import org.rmatil.sync.persistence.core.dht.listener.DhtGetListener;
 import org.rmatil.sync.persistence.core.dht.listener.DhtPutListener;
+import org.rmatil.sync.persistence.core.dht.lock.StripedPathLock;
+import org.rmatil.sync.persistence.core.dht.meta.DhtMetaRecord;
+import org.rmatil.sync.persistence.core.dht.refresh.RefreshAhead;
 import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtPathElement;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Function;
 
 public abstract class BaseDhtStorageAdapter {
 
+    private static final Logger logger = LoggerFactory.getLogger(BaseDhtStorageAdapter.class);
+
+    /**
+     * The default size in bytes above which values are stored in chunks
+     */
+    public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * The default number of bytes an upload session buffers in memory before spilling to disk
+     */
+    public static final long DEFAULT_UPLOAD_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The number of chunks stored by a single put request when committing an upload
+     */
+    protected static final int UPLOAD_CHUNKS_PER_PUT = 8;
+
+    /**
+     * The maximum number of put requests in flight when committing an upload
+     */
+    protected static final int MAX_UPLOAD_PUTS_IN_FLIGHT = 4;
+
+    /**
+     * The maximum number of paths of which the number of chunks is remembered
+     */
+    protected static final int MAX_CHUNK_COUNTS = 64 * 1024;
+
     protected final PeerDHT dht;
 
-    protected final DhtCache cache;
+    protected final IDhtCache cache;
 
     protected final JobScheduler jobScheduler;
 
+    /**
+     * Serializes blocking operations on the same path while
+     * operations on different paths run in parallel
+     */
+    protected final StripedPathLock locks;
+
+    /**
+     * Merge concurrent requests for the same path, so that
+     * hot paths are fetched only once from the DHT
+     */
+    protected final RequestCoalescer<DhtPathElement, byte[]> readRequests;
+
+    protected final RequestCoalescer<DhtPathElement, Boolean> existsRequests;
+
+    protected final RequestCoalescer<DhtPathElement, IFileMetaInfo> metaInformationRequests;
+
+    protected final RequestCoalescer<DhtPathElement, Boolean> revalidationRequests;
+
+    /**
+     * The paths currently revalidated in the background
+     */
+    protected final Set<DhtPathElement> pendingRevalidations;
+
+    /**
+     * Whether expired values are returned while being revalidated in the background
+     */
+    protected volatile boolean staleWhileRevalidate;
+
+    /**
+     * Refreshes frequently read values before they expire, null if disabled
+     */
+    protected volatile RefreshAhead<DhtPathElement> refreshAhead;
+
+    /**
+     * Compresses values stored as a whole, null if compression is disabled
+     */
+    protected volatile PayloadCodec payloadCodec;
+
+    /**
+     * Whether compressed values are kept compressed in the cache
+     */
+    protected volatile boolean cacheCompressed;
+
+    /**
+     * Whether values are stored as shared objects referenced by pointers
+     */
+    protected volatile boolean deduplicate;
+
+    /**
+     * The number of chunks of the values last stored or fetched by this adapter, by path,
+     * in order of their last access. Chunks of a previous value only have to be removed
+     * if it had more chunks than the new one
+     */
+    protected final Map<DhtPathElement, Long> chunkCounts;
+
+    /**
+     * The size in bytes above which values are split into chunks of this size
+     */
+    protected final int chunkSize;
+
+    /**
+     * The name under which the statistics of the cache are exposed through JMX, null if not registered
+     */
+    protected ObjectName cacheMBeanName;
+
     /**
      * Represents an abstract storage adapter for the DHT. To protect
      * values, domain protection can be enabled while invoking modifiers.
@@ -80,102 +203,269 @@ public abstract class BaseDhtStorageAdapter {
      * @param dht A PeerDHT bootstrapped with domain protection
      */
     protected BaseDhtStorageAdapter(PeerDHT dht, long timeToLive) {
+        this(dht, timeToLive, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * Creates a storage adapter for the DHT which stores values larger than
+     * the given chunk size in multiple chunks. Reading or writing a part of such a value
+     * only transfers the affected chunks.
+     *
+     * @param dht        A PeerDHT bootstrapped with domain protection
+     * @param timeToLive The time to live of cached values in milliseconds
+     * @param chunkSize  The size in bytes above which values are stored in chunks
+     */
+    protected BaseDhtStorageAdapter(PeerDHT dht, long timeToLive, int chunkSize) {
+        this(dht, createCache(timeToLive), chunkSize);
+    }
+
+    /**
+     * Creates a storage adapter for the DHT using the given cache, e.g.
+     * an {@link OffHeapDhtCache} to keep large cached values off the heap.
+     * The cache is shut down together with the adapter.
+     *
+     * @param dht       A PeerDHT bootstrapped with domain protection
+     * @param cache     The cache to use
+     * @param chunkSize The size in bytes above which values are stored in chunks
+     */
+    protected BaseDhtStorageAdapter(PeerDHT dht, IDhtCache cache, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
         this.dht = dht;
-        this.cache = new DhtCache(timeToLive);
+        this.cache = cache;
         this.jobScheduler = new JobScheduler(this.dht.peer());
+        this.locks = new StripedPathLock();
+        this.readRequests = new RequestCoalescer<>();
+        this.existsRequests = new RequestCoalescer<>();
+        this.metaInformationRequests = new RequestCoalescer<>();
+        this.revalidationRequests = new RequestCoalescer<>();
+        this.pendingRevalidations = ConcurrentHashMap.newKeySet();
+        this.staleWhileRevalidate = false;
+        this.chunkSize = chunkSize;
+        this.chunkCounts = Collections.synchronizedMap(new LinkedHashMap<DhtPathElement, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<DhtPathElement, Long> eldest) {
+                return this.size() > MAX_CHUNK_COUNTS;
+            }
+        });
     }
 
-    public synchronized void persist(StorageType type, DhtPathElement path, byte[] bytes)
-            throws InputOutputException {
+    /**
+     * Creates the default cache which removes expired values in the background
+     *
+     * @param timeToLive The time to live of cached values in milliseconds
+     *
+     * @return The cache
+     */
+    protected static IDhtCache createCache(long timeToLive) {
+        DhtCache cache = new DhtCache(timeToLive);
+        cache.startSweeper();
 
-        if (StorageType.FILE != type) {
-            throw new InputOutputException("Only files are allowed to be stored in the DHT");
-        }
+        return cache;
+    }
+
+    /**
+     * Stops the background tasks of this adapter,
+     * i.e. removing expired values from its cache.
+     * The adapter must not be used afterwards.
+     */
+    public void shutdown() {
+        this.disableRefreshAhead();
+        this.unregisterCacheMBean();
+        this.cache.shutdown();
+        this.cache.clear();
+    }
+
+    /**
+     * Returns a snapshot of the statistics of the cache of this adapter,
+     * e.g. to tune the time to live of cached values
+     *
+     * @return The cache statistics
+     */
+    public DhtCacheStats getCacheStats() {
+        return this.cache.getStats();
+    }
 
-        this.cache.put(path, bytes);
+    /**
+     * Exposes the statistics of the cache of this adapter as MBean of the
+     * platform MBean server, until the adapter is shut down
+     *
+     * @param name The name distinguishing this adapter from others
+     *
+     * @return The object name of the MBean
+     *
+     * @throws JMException If the name is invalid or already in use
+     */
+    public synchronized ObjectName registerCacheMBean(String name)
+            throws JMException {
+        this.unregisterCacheMBean();
+        this.cacheMBeanName = DhtCacheMonitor.register(this.cache, name);
 
-        Data data = new Data(bytes);
+        return this.cacheMBeanName;
+    }
 
-        PutBuilder putBuilder = this.dht
-                .put(path.getLocationKey())
-                .data(path.getContentKey(), data);
+    protected synchronized void unregisterCacheMBean() {
+        if (null == this.cacheMBeanName) {
+            return;
+        }
 
-        // enable domain protection only if required
-        if (path instanceof SecuredDhtPathElement) {
-            putBuilder
-                    .protectDomain()
-                    .domainKey(((SecuredDhtPathElement) path).getDomainKey());
+        try {
+            DhtCacheMonitor.unregister(this.cacheMBeanName);
+        } catch (JMException e) {
+            logger.warn("Failed to unregister the cache MBean " + this.cacheMBeanName + ". Message: " + e.getMessage());
         }
 
-        FuturePut futurePut = putBuilder.start();
+        this.cacheMBeanName = null;
+    }
 
-        futurePut.addListener(
-                new DhtPutListener(this.dht)
-        );
+    /**
+     * Returns the cache of this adapter, e.g. to inspect
+     * how many lookups have been saved by negative entries
+     *
+     * @return The cache
+     */
+    public IDhtCache getCache() {
+        return this.cache;
+    }
 
-        try {
-            futurePut.await();
-        } catch (InterruptedException e) {
-            // rethrow using our exception
-            throw new InputOutputException(e);
+    /**
+     * Sets whether expired values retained by the cache are returned immediately while
+     * they are revalidated in the background, instead of blocking the read until
+     * revalidation finished. Has no effect unless the cache retains expired values.
+     *
+     * @param staleWhileRevalidate True to return expired values while revalidating
+     */
+    public void setStaleWhileRevalidate(boolean staleWhileRevalidate) {
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * Refreshes cached values in the background which are read at least the given number
+     * of times once their remaining time to live dropped below the given share of it.
+     * Values which did not change are revalidated using their meta record only.
+     *
+     * @param refreshRatio          The share of the time to live remaining from which on reads are counted, e.g. 0.2
+     * @param minAccesses           The number of reads required to refresh a value
+     * @param maxRefreshesPerSecond The maximum number of values refreshed per second
+     */
+    public synchronized void enableRefreshAhead(double refreshRatio, int minAccesses, int maxRefreshesPerSecond) {
+        this.disableRefreshAhead();
+        this.refreshAhead = new RefreshAhead<>(this::refresh, refreshRatio, minAccesses, maxRefreshesPerSecond);
+    }
+
+    /**
+     * Stops refreshing cached values ahead of their expiry
+     */
+    public synchronized void disableRefreshAhead() {
+        if (null != this.refreshAhead) {
+            this.refreshAhead.shutdown();
+            this.refreshAhead = null;
         }
     }
 
-    public synchronized void persist(StorageType type, DhtPathElement path, long offset, byte[] bytes)
+    /**
+     * Enables compressing values before they are stored. Values are decompressed
+     * transparently on reads, also if they have been stored compressed by another peer.
+     * Only values not exceeding the chunk size are compressed, so that ranges of
+     * chunked values can still be read without fetching the whole value.
+     *
+     * @param payloadCodec    The codec compressing values, or null to disable compression
+     * @param cacheCompressed True to keep values compressed in the cache, decompressing them on each read
+     */
+    public void setCompression(PayloadCodec payloadCodec, boolean cacheCompressed) {
+        this.payloadCodec = payloadCodec;
+        this.cacheCompressed = null != payloadCodec && cacheCompressed;
+    }
+
+    /**
+     * Sets whether values are stored deduplicated: Each value is stored once as an
+     * object identified by the hash of its content, and paths only hold a small pointer
+     * to it. Storing content which is already stored by any path, also of other users,
+     * does not upload it again. Since objects are not protected against overwrites,
+     * the hashes of a stored object are requested and compared against the ones of the local
+     * content first, and it is uploaded again if it is missing or corrupt. Reads verify the content
+     * against the hash of the pointer. Objects are not removed when the paths referencing
+     * them are deleted, since other paths may still reference them.
+     * <p>
+     * Secured paths are never stored deduplicated, so that their content stays protected
+     * by their domain. Values stored deduplicated are read by any adapter, regardless of this setting.
+     *
+     * @param deduplicate True to store values deduplicated
+     */
+    public void setDeduplication(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    public void persist(StorageType type, DhtPathElement path, byte[] bytes)
             throws InputOutputException {
+        Lock lock = this.locks.writeLock(path);
+        lock.lock();
 
-        if (StorageType.FILE != type) {
-            throw new InputOutputException("Only files are allowed to be stored in the DHT");
-        }
+        try {
+            if (StorageType.FILE != type) {
+                throw new InputOutputException("Only files are allowed to be stored in the DHT");
+            }
 
-        byte[] existingBytes = this.read(path);
+            this.cacheValue(path, bytes);
 
-        if (offset > Integer.MAX_VALUE) {
-            throw new InputOutputException("Offset in DHT does not support long values");
+            this.store(path, bytes);
+        } finally {
+            lock.unlock();
         }
+    }
 
-        int intOffset = (int) offset;
+    /**
+     * <i>Note</i>: For values stored in chunks, only the chunks
+     * affected by the write are transferred.
+     * <p>
+     * {@inheritDoc}
+     */
+    public void persist(StorageType type, DhtPathElement path, long offset, byte[] bytes)
+            throws InputOutputException {
+        Lock lock = this.locks.writeLock(path);
+        lock.lock();
 
-        int newTotalSize;
-        if (intOffset < existingBytes.length) {
-            newTotalSize = existingBytes.length - Math.abs(intOffset - existingBytes.length) + bytes.length;
-        } else {
-            newTotalSize = Math.min(intOffset, existingBytes.length) + bytes.length;
-            intOffset = newTotalSize - bytes.length;
-        }
+        try {
+            if (StorageType.FILE != type) {
+                throw new InputOutputException("Only files are allowed to be stored in the DHT");
+            }
 
-        if (newTotalSize < existingBytes.length) {
-            newTotalSize = existingBytes.length;
-        }
+            byte[] existingBytes = this.getCached(path);
 
-        byte[] targetBytes = new byte[newTotalSize];
+            if (null == existingBytes || existingBytes.length > this.chunkSize) {
+                // large values are likely to be chunked
+                existingBytes = this.fetchRecord(path);
 
-        int maxAllowedWriteSize;
-        if (existingBytes.length > newTotalSize) {
-            maxAllowedWriteSize = newTotalSize;
-        } else {
-            maxAllowedWriteSize = existingBytes.length;
-        }
+                if (DhtObjectPointer.isPointer(existingBytes)) {
+                    // the object may be shared, so the value is replaced as a whole
+                    existingBytes = this.fetchContent(path, existingBytes);
+                } else if (ChunkManifest.isManifest(existingBytes)) {
+                    this.cache.clear(path);
+                    this.persistChunks(path, ChunkManifest.decode(existingBytes), offset, bytes);
 
-        System.arraycopy(existingBytes, 0, targetBytes, 0, maxAllowedWriteSize);
-        System.arraycopy(bytes, 0, targetBytes, intOffset, bytes.length);
+                    return;
+                }
 
-        this.cache.put(path, targetBytes);
+                if (null == existingBytes) {
+                    existingBytes = new byte[0];
+                }
+            }
 
-        Data data = new Data(targetBytes);
+            // writing beyond the end of the existing content appends the bytes
+            int start = (int) Math.min(offset, existingBytes.length);
 
-        PutBuilder putBuilder = this.dht
-                .put(path.getLocationKey())
-                .data(path.getContentKey(), data);
+            if ((long) start + bytes.length > Integer.MAX_VALUE) {
+                throw new InputOutputException("Can not store more than " + Integer.MAX_VALUE + " bytes at once");
+            }
 
-        // enable protection only on request
-        if (path instanceof SecuredDhtPathElement) {
-            putBuilder
-                    .protectDomain()
-                    .domainKey(((SecuredDhtPathElement) path).getDomainKey());
-        }
+            byte[] targetBytes = new byte[Math.max(existingBytes.length, start + bytes.length)];
+
+            System.arraycopy(existingBytes, 0, targetBytes, 0, existingBytes.length);
+            System.arraycopy(bytes, 0, targetBytes, start, bytes.length);
 
-        FuturePut futurePut = putBuilder.start();
+            this.cacheValue(path, targetBytes);
 
 //        Shutdown shutdown = this.jobScheduler.start(
 //                putBuilder,
@@ -193,230 +483,2146 @@ public abstract class BaseDhtStorageAdapter {
 //        // -> stop & restart this when updating the value
 //        shutdown.shutdown();
 
-
-        try {
-            futurePut.await();
-        } catch (InterruptedException e) {
-            // rethrow using our exception
-            throw new InputOutputException(e);
+            this.store(path, targetBytes);
+        } finally {
+            lock.unlock();
         }
     }
 
 
-    public synchronized void delete(DhtPathElement path)
+    public void delete(DhtPathElement path)
             throws InputOutputException {
+        Lock lock = this.locks.writeLock(path);
+        lock.lock();
 
-        this.cache.clear(path);
+        try {
+            this.cache.putMissing(path);
 
-        RemoveBuilder removeBuilder = this.dht
-                .remove(path.getLocationKey())
-                .contentKey(path.getContentKey());
+            long previousChunkCount = this.getPreviousChunkCount(path);
 
-        // enable protection only on request
-        if (path instanceof SecuredDhtPathElement) {
-            removeBuilder
-                    .protectDomain()
-                    .domainKey(((SecuredDhtPathElement) path).getDomainKey());
-        }
+            FutureRemove futureRemove = this.createRemoveBuilder(path).start();
+
+            futureRemove.addListener(
+                    new DhtDeleteListener(this.dht)
+            );
 
-        FutureRemove futureRemove = removeBuilder.start();
+            this.await(futureRemove);
 
-        futureRemove.addListener(
-                new DhtDeleteListener(this.dht)
-        );
+            // a manifest which could not be removed still refers to the chunks
+            if (futureRemove.isFailed()) {
+                this.chunkCounts.remove(path);
+            } else {
+                this.chunkCounts.put(path, 0L);
 
-        try {
-            futureRemove.await();
-        } catch (InterruptedException e) {
-            // rethrow using our exception
-            throw new InputOutputException(e);
+                if (previousChunkCount > 0) {
+                    this.await(this.startRemoveChunks(path, 0));
+                }
+            }
+        } finally {
+            lock.unlock();
         }
-
     }
 
-    public synchronized byte[] read(DhtPathElement path)
+    public byte[] read(DhtPathElement path)
             throws InputOutputException {
+        Lock lock = this.locks.readLock(path);
+        lock.lock();
 
-        byte[] data = this.cache.get(path);
+        try {
+            byte[] data = this.getCached(path);
 
-        if (null != data) {
-            // we got a cached version of the data
-            return data;
-        }
+            if (null != data) {
+                RefreshAhead<DhtPathElement> refreshAhead = this.refreshAhead;
 
-        GetBuilder getBuilder = this.dht
-                .get(path.getLocationKey())
-                .contentKey(path.getContentKey());
+                if (null != refreshAhead && this.cache.shouldRefresh(path, refreshAhead.getRefreshRatio(), refreshAhead.getMinAccesses())) {
+                    refreshAhead.request(path);
+                }
 
-        if (path instanceof SecuredDhtPathElement) {
-            getBuilder
-                    .domainKey(((SecuredDhtPathElement) path).getDomainKey());
-        }
+                // we got a cached version of the data
+                return data;
+            }
 
-        FutureGet futureGet = getBuilder.start();
+            if (this.cache.isMissing(path)) {
+                return new byte[0];
+            }
 
-        futureGet.addListener(
-                new DhtGetListener(this.dht)
-        );
+            VersionedValue staleValue = this.cache.getStale(path);
 
-        try {
-            futureGet.await();
-        } catch (InterruptedException e) {
-            // rethrow using our exception
-            throw new InputOutputException(e);
-        }
+            if (null != staleValue && null != staleValue.getVersion()) {
+                if (this.staleWhileRevalidate) {
+                    this.revalidateAsync(path, staleValue.getVersion());
+                    return decodePayload(path, staleValue.getBytes());
+                }
 
-        if (null == futureGet.data()) {
-            return new byte[0];
-        }
+                if (this.revalidate(path, staleValue.getVersion())) {
+                    return decodePayload(path, staleValue.getBytes());
+                }
+            }
 
-        return futureGet.data().toBytes();
+            return this.fetchAndCache(path);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    public synchronized byte[] read(DhtPathElement path, long offset, int length)
+    /**
+     * <i>Note</i>: For values stored in chunks, only the chunks
+     * covering the requested range are fetched.
+     * <p>
+     * {@inheritDoc}
+     */
+    public byte[] read(DhtPathElement path, long offset, int length)
             throws InputOutputException {
+        Lock lock = this.locks.readLock(path);
+        lock.lock();
 
-        byte[] cachedData = this.cache.get(path);
+        try {
+            byte[] contents = this.getCached(path);
 
-        byte[] contents;
-        if (null != cachedData) {
-            contents = cachedData;
-        } else {
-            GetBuilder getBuilder = this.dht
-                    .get(path.getLocationKey())
-                    .contentKey(path.getContentKey());
+            if (null == contents) {
+                if (this.cache.isMissing(path)) {
+                    return new byte[0];
+                }
 
-            if (path instanceof SecuredDhtPathElement) {
-                getBuilder
-                        .domainKey(((SecuredDhtPathElement) path).getDomainKey());
-            }
+                contents = this.fetchRecord(path);
 
-            FutureGet futureGet = getBuilder.start();
+                if (null == contents) {
+                    this.cache.putMissing(path);
+                    return new byte[0];
+                }
 
-            futureGet.addListener(
-                    new DhtGetListener(this.dht)
-            );
+                if (DhtObjectPointer.isPointer(contents)) {
+                    DhtObjectPointer pointer = DhtObjectPointer.decode(contents);
+                    contents = this.fetchObjectRecord(path, pointer);
 
-            try {
-                futureGet.await();
-            } catch (InterruptedException e) {
-                // rethrow using our exception
-                throw new InputOutputException(e);
-            }
+                    if (ChunkManifest.isManifest(contents)) {
+                        return this.fetchRange(pointer.getObjectPath(), ChunkManifest.decode(contents), offset, length);
+                    }
 
-            if (null == futureGet.data()) {
-                return new byte[0];
+                    this.verify(path, pointer, contents);
+                } else if (ChunkManifest.isManifest(contents)) {
+                    return this.fetchRange(path, ChunkManifest.decode(contents), offset, length);
+                }
             }
 
-            contents = futureGet.data().toBytes();
-        }
+            // check offset to be smaller than the fetched content
+            int srcPos = (int) Math.min(contents.length, offset);
 
-        if (offset > Integer.MAX_VALUE) {
-            throw new InputOutputException("Offset in DHT does not support long values");
-        }
+            // check length to be smaller than the fetched content
+            int maxLength;
+            if (length > contents.length) {
+                maxLength = contents.length;
+            } else {
+                maxLength = length;
+            }
 
-        // check offset to be smaller than the fetched content
-        int srcPos = Math.min(contents.length, (int) offset);
+            // check that when reading from the offset, the length is at max. the length of the content
+            if (maxLength + srcPos > contents.length) {
+                maxLength = contents.length - srcPos;
+            }
 
-        // check length to be smaller than the fetched content
-        int maxLength;
-        if (length > contents.length) {
-            maxLength = contents.length;
-        } else {
-            maxLength = length;
-        }
+            byte[] chunk = new byte[maxLength];
+            System.arraycopy(contents, srcPos, chunk, 0, maxLength);
 
-        // check that when reading from the offset, the length is at max. the length of the content
-        if (maxLength + srcPos > contents.length) {
-            maxLength = contents.length - srcPos;
+            return chunk;
+        } finally {
+            lock.unlock();
         }
-
-        byte[] chunk = new byte[maxLength];
-        System.arraycopy(contents, srcPos, chunk, 0, maxLength);
-
-        return chunk;
     }
 
     /**
-     * <i>Note</i>: This implementation of moving uses the combination of
-     * persist and remove to emulate a move. Therefore, the data stored in
+     * <i>Note</i>: Values stored as pointer to an object (see {@link BaseDhtStorageAdapter#setDeduplication(boolean)})
+     * are moved by copying the pointer and its meta record to the new path, so that
+     * the content itself is not transferred. If deduplication is enabled, other values are
+     * converted to an object once while moving, making any further move of them cheap.
+     * Otherwise, moving uses the combination of persist and remove and the data stored in
      * the DHT is completely retransmitted through the network.
-     * Due to consistency reasons, contents are first rewritten to the
+     * Due to consistency reasons, contents are first written to the
      * new path and then removed from the old one.
      * <p>
      * {@inheritDoc}
      */
-    public synchronized void move(StorageType storageType, DhtPathElement oldPath, DhtPathElement newPath)
+    public void move(StorageType storageType, DhtPathElement oldPath, DhtPathElement newPath)
             throws InputOutputException {
+        List<Lock> locks = this.locks.writeLocks(oldPath, newPath);
+        lockAll(locks);
 
-        byte[] contents = this.read(oldPath);
+        try {
+            if (this.exists(storageType, newPath)) {
+                throw new InputOutputException("Target path " + newPath.getPath() + " already exists");
+            }
 
-        if (this.exists(storageType, newPath)) {
-            throw new InputOutputException("Target path " + newPath.getPath() + " already exists");
-        }
+            byte[] record = this.fetchRecord(oldPath);
 
-        // first try to write to new path
-        this.cache.put(newPath, contents);
-        this.persist(StorageType.FILE, newPath, contents);
-        this.cache.clear(oldPath);
-        this.delete(oldPath);
-    }
+            // pointers must not be moved into the protected domain of a secured path
+            if (DhtObjectPointer.isPointer(record) && ! (newPath instanceof SecuredDhtPathElement)) {
+                this.movePointer(oldPath, newPath, DhtObjectPointer.decode(record));
+            } else {
+                // the record is fetched already, only its chunks or object remain to be fetched
+                byte[] contents = (null != record) ? this.fetchContent(oldPath, record) : this.read(oldPath);
 
-    public synchronized IFileMetaInfo getMetaInformation(DhtPathElement path)
-            throws InputOutputException {
+                // first try to write to new path
+                this.cacheValue(newPath, contents);
+                this.persist(StorageType.FILE, newPath, contents);
+            }
 
-        if (! this.exists(StorageType.FILE, path)) {
-            throw new InputOutputException("Could not get meta information for " + path.getPath() + ". No such file or directory");
+            this.cache.clear(oldPath);
+            this.delete(oldPath);
+        } finally {
+            unlockAll(locks);
         }
+    }
 
-        byte[] cachedContent = this.cache.get(path);
+    /**
+     * Stores the given pointer of the old path together with the meta record
+     * of the old path at the new one and moves the cached value, if any.
+     * The caller must hold the write locks of both paths.
+     *
+     * @param oldPath The path the pointer is stored at
+     * @param newPath The path to store the pointer at
+     * @param pointer The pointer
+     *
+     * @throws InputOutputException If storing the pointer failed
+     */
+    protected void movePointer(DhtPathElement oldPath, DhtPathElement newPath, DhtObjectPointer pointer)
+            throws InputOutputException {
+        DhtMetaRecord metaRecord = this.fetchMetaRecord(oldPath);
+        String checksum = (null == metaRecord) ? null : metaRecord.getChecksum();
+        byte[] cached = this.getCached(oldPath);
+
+        if (null == checksum) {
+            // only pointers written without meta record require the content
+            if (null == cached) {
+                cached = this.fetchContent(oldPath, pointer.encode());
+            }
 
-        if (null != cachedContent) {
-            return new FileMetaInfo(cachedContent.length, true, "");
+            checksum = Checksums.md5(cached);
         }
 
-        GetBuilder getBuilder = this.dht
-                .get(path.getLocationKey())
-                .contentKey(path.getContentKey());
+        // the old path is removed afterwards, so the pointer must be stored.
+        // The new path does not exist, so it has no chunks to remove
+        this.awaitStored(newPath, this.startStorePointer(newPath, pointer, checksum), 0, 0);
 
-        // use protection only on request
-        if (path instanceof SecuredDhtPathElement) {
-            getBuilder.domainKey(((SecuredDhtPathElement) path).getDomainKey());
+        if (null != cached) {
+            this.cacheValue(newPath, cached);
         }
+    }
 
-        FutureGet futureGet = getBuilder.start();
-
-        futureGet.addListener(
+    /**
+     * <i>Note</i>: The size is read from the meta record stored beside
+     * the value, so that the value itself is not transferred.
+     * <p>
+     * {@inheritDoc}
+     */
+    public IFileMetaInfo getMetaInformation(DhtPathElement path)
+            throws InputOutputException {
+        Lock lock = this.locks.readLock(path);
+        lock.lock();
+
+        try {
+            byte[] cachedContent = this.cache.get(path);
+
+            if (null != cachedContent) {
+                return new FileMetaInfo(getSize(cachedContent), true, "");
+            }
+
+            if (this.cache.isMissing(path)) {
+                throw new InputOutputException("Could not get meta information for " + path.getPath() + ". No such file or directory");
+            }
+
+            return this.metaInformationRequests.execute(path, () -> {
+                DhtMetaRecord metaRecord = this.fetchMetaRecord(path);
+
+                if (null != metaRecord) {
+                    return new FileMetaInfo(metaRecord.getSize(), true, "");
+                }
+
+                // values stored without a meta record
+                byte[] record = this.fetchRecord(path);
+
+                if (null == record) {
+                    this.cache.putMissing(path);
+                    throw new InputOutputException("Could not get meta information for " + path.getPath() + ". No such file or directory");
+                }
+
+                return new FileMetaInfo(getSize(record), true, "");
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <i>Note</i>: Existence is checked using a digest request,
+     * which does not transfer the value.
+     * <p>
+     * {@inheritDoc}
+     */
+    public boolean exists(StorageType storageType, DhtPathElement path)
+            throws InputOutputException {
+        Lock lock = this.locks.readLock(path);
+        lock.lock();
+
+        try {
+            if (StorageType.FILE != storageType) {
+                throw new InputOutputException("Only files are allowed to be read from the DHT");
+            }
+
+            byte[] cachedContent = this.cache.get(path);
+
+            if (null != cachedContent) {
+                return true;
+            }
+
+            if (this.cache.isMissing(path)) {
+                return false;
+            }
+
+            return this.existsRequests.execute(path, () -> {
+                FutureDigest futureDigest = this.createDigestBuilder(path).start();
+
+                futureDigest.addListener(
+                        new DhtDigestListener(this.dht)
+                );
+
+                this.await(futureDigest);
+
+                boolean exists = hasDigest(futureDigest);
+
+                if (! exists) {
+                    this.cache.putMissing(path);
+                }
+
+                return exists;
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * <i>Note</i>: The checksum is read from the meta record stored beside
+     * the value. Only if it is not known, e.g. after writing a part of a chunked value,
+     * the value is fetched to compute it.
+     * <p>
+     * {@inheritDoc}
+     */
+    public String getChecksum(DhtPathElement path)
+            throws InputOutputException {
+        Lock lock = this.locks.readLock(path);
+        lock.lock();
+
+        try {
+            byte[] cachedContent = this.cache.get(path);
+
+            if (null == cachedContent) {
+                DhtMetaRecord metaRecord = this.fetchMetaRecord(path);
+
+                if (null != metaRecord && null != metaRecord.getChecksum()) {
+                    return metaRecord.getChecksum();
+                }
+            }
+
+            byte[] content = this.read(path);
+
+            return Checksums.md5(content);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Reads the contents of all given paths. Paths are grouped by their
+     * location and domain key, and each group is fetched using a single
+     * get request for all of its content keys. Groups are fetched in parallel.
+     * Cached contents are returned without contacting the DHT, fetched
+     * contents are added to the cache.
+     *
+     * @param paths The paths to read
+     *
+     * @return The contents by path in the order of the given paths. Paths for which no content is stored are mapped to null
+     *
+     * @throws InputOutputException If an error occurred during reading
+     */
+    public Map<DhtPathElement, byte[]> readAll(Collection<? extends DhtPathElement> paths)
+            throws InputOutputException {
+        List<Lock> locks = this.locks.readLocks(paths);
+        lockAll(locks);
+
+        try {
+            Map<DhtPathElement, byte[]> contents = new LinkedHashMap<>();
+
+            // location key -> domain key -> content key -> paths
+            Map<Number160, Map<Number160, Map<Number160, List<DhtPathElement>>>> groups = new HashMap<>();
+            for (DhtPathElement path : paths) {
+                byte[] cachedData = this.getCached(path);
+                contents.put(path, cachedData);
+
+                if (null != cachedData || this.cache.isMissing(path)) {
+                    continue;
+                }
+
+                Number160 domainKey = (path instanceof SecuredDhtPathElement) ? ((SecuredDhtPathElement) path).getDomainKey() : null;
+
+                groups.computeIfAbsent(path.getLocationKey(), key -> new HashMap<>())
+                        .computeIfAbsent(domainKey, key -> new HashMap<>())
+                        .computeIfAbsent(path.getContentKey(), key -> new ArrayList<>())
+                        .add(path);
+            }
+
+            List<Pair<FutureGet, Map<Number160, List<DhtPathElement>>>> futureGets = new ArrayList<>();
+            for (Map.Entry<Number160, Map<Number160, Map<Number160, List<DhtPathElement>>>> locationGroup : groups.entrySet()) {
+                for (Map.Entry<Number160, Map<Number160, List<DhtPathElement>>> domainGroup : locationGroup.getValue().entrySet()) {
+                    GetBuilder getBuilder = this.dht
+                            .get(locationGroup.getKey())
+                            .contentKeys(domainGroup.getValue().keySet());
+
+                    // use protection only on request
+                    if (null != domainGroup.getKey()) {
+                        getBuilder.domainKey(domainGroup.getKey());
+                    }
+
+                    FutureGet futureGet = getBuilder.start();
+
+                    futureGet.addListener(
+                            new DhtGetListener(this.dht)
+                    );
+
+                    futureGets.add(new Pair<>(futureGet, domainGroup.getValue()));
+                }
+            }
+
+            for (Pair<FutureGet, Map<Number160, List<DhtPathElement>>> pair : futureGets) {
+                FutureGet futureGet = pair.getFirst();
+
+                this.await(futureGet);
+
+                if (null == futureGet.dataMap()) {
+                    continue;
+                }
+
+                for (Map.Entry<Number640, Data> entry : futureGet.dataMap().entrySet()) {
+                    List<DhtPathElement> groupPaths = pair.getSecond().get(entry.getKey().contentKey());
+
+                    if (null == groupPaths) {
+                        continue;
+                    }
+
+                    byte[] data = this.fetchContent(groupPaths.get(0), decodePayload(groupPaths.get(0), entry.getValue().toBytes()));
+
+                    for (DhtPathElement path : groupPaths) {
+                        this.cacheValue(path, data);
+                        contents.put(path, data);
+                    }
+                }
+            }
+
+            for (Map<Number160, Map<Number160, List<DhtPathElement>>> locationGroup : groups.values()) {
+                for (Map<Number160, List<DhtPathElement>> domainGroup : locationGroup.values()) {
+                    for (List<DhtPathElement> groupPaths : domainGroup.values()) {
+                        for (DhtPathElement path : groupPaths) {
+                            if (null == contents.get(path)) {
+                                this.cache.putMissing(path);
+                            }
+                        }
+                    }
+                }
+            }
+
+            return contents;
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    /**
+     * Persists all given contents as files. Entries are grouped by their
+     * location and domain key, and each group is stored using a single put
+     * request containing all of its content keys. Groups are stored in parallel.
+     * <p>
+     * An entry is considered stored, if at least one peer accepted it.
+     * Only stored entries are added to the cache.
+     *
+     * @param contents The bytes to store by their path
+     *
+     * @return Whether storing succeeded by path
+     *
+     * @throws InputOutputException If an error occurred during persisting
+     */
+    public Map<DhtPathElement, Boolean> persistAll(Map<? extends DhtPathElement, byte[]> contents)
+            throws InputOutputException {
+        List<Lock> locks = this.locks.writeLocks(contents.keySet().toArray(new DhtPathElement[contents.size()]));
+        lockAll(locks);
+
+        try {
+            Map<DhtPathElement, Boolean> results = new LinkedHashMap<>();
+
+            Map<DhtPathElement, byte[]> objectContents = new HashMap<>();
+            for (Map.Entry<? extends DhtPathElement, byte[]> entry : contents.entrySet()) {
+                if (this.isDeduplicated(entry.getKey())) {
+                    objectContents.put(entry.getKey(), entry.getValue());
+                }
+            }
+
+            // pointers only to objects which could be stored
+            Map<DhtPathElement, DhtObjectPointer> pointers = this.storeObjects(objectContents);
+
+            Map<DhtPathElement, Long> previousChunkCounts = this.getPreviousChunkCounts(contents.keySet());
+
+            // large values are stored chunked, each using its own put
+            Map<DhtPathElement, FuturePut> chunkedPuts = new HashMap<>();
+
+            // location key -> domain key -> content key -> path
+            Map<Number160, Map<Number160, Map<Number160, DhtPathElement>>> groups = new HashMap<>();
+            for (DhtPathElement path : contents.keySet()) {
+                results.put(path, false);
+
+                if (objectContents.containsKey(path)) {
+                    if (! pointers.containsKey(path)) {
+                        continue;
+                    }
+                } else if (this.requiresChunking(contents.get(path))) {
+                    chunkedPuts.put(path, this.startStore(path, contents.get(path)));
+
+                    continue;
+                }
+
+                Number160 domainKey = (path instanceof SecuredDhtPathElement) ? ((SecuredDhtPathElement) path).getDomainKey() : null;
+
+                groups.computeIfAbsent(path.getLocationKey(), key -> new HashMap<>())
+                        .computeIfAbsent(domainKey, key -> new HashMap<>())
+                        .put(path.getContentKey(), path);
+            }
+
+            List<Pair<FuturePut, Map<Number160, DhtPathElement>>> futurePuts = new ArrayList<>();
+            for (Map.Entry<Number160, Map<Number160, Map<Number160, DhtPathElement>>> locationGroup : groups.entrySet()) {
+                for (Map.Entry<Number160, Map<Number160, DhtPathElement>> domainGroup : locationGroup.getValue().entrySet()) {
+                    Map<Number160, Data> dataMap = new HashMap<>();
+                    for (Map.Entry<Number160, DhtPathElement> entry : domainGroup.getValue().entrySet()) {
+                        byte[] bytes = contents.get(entry.getValue());
+
+                        byte[] record = pointers.containsKey(entry.getValue()) ? pointers.get(entry.getValue()).encode() : this.encodePayload(bytes, true);
+
+                        dataMap.put(entry.getKey(), new Data(record));
+                        dataMap.put(
+                                DhtMetaRecord.getMetaKey(entry.getValue()),
+                                new Data(new DhtMetaRecord(bytes.length, Checksums.md5(bytes)).encode())
+                        );
+                    }
+
+                    PutBuilder putBuilder = this.dht
+                            .put(locationGroup.getKey())
+                            .dataMapContent(dataMap);
+
+                    // enable domain protection only if required
+                    if (null != domainGroup.getKey()) {
+                        putBuilder
+                                .protectDomain()
+                                .domainKey(domainGroup.getKey());
+                    }
+
+                    FuturePut futurePut = putBuilder.start();
+
+                    futurePut.addListener(
+                            new DhtPutListener(this.dht)
+                    );
+
+                    futurePuts.add(new Pair<>(futurePut, domainGroup.getValue()));
+                }
+            }
+
+            for (Pair<FuturePut, Map<Number160, DhtPathElement>> pair : futurePuts) {
+                FuturePut futurePut = pair.getFirst();
+
+                this.await(futurePut);
+
+                if (futurePut.isFailed() || null == futurePut.rawResult()) {
+                    continue;
+                }
+
+                for (Map<Number640, Byte> peerResult : futurePut.rawResult().values()) {
+                    if (null == peerResult) {
+                        continue;
+                    }
+
+                    for (Map.Entry<Number640, Byte> entry : peerResult.entrySet()) {
+                        DhtPathElement path = pair.getSecond().get(entry.getKey().contentKey());
+
+                        if (null != path && entry.getValue() == StorageLayer.PutStatus.OK.ordinal()) {
+                            results.put(path, true);
+                        }
+                    }
+                }
+            }
+
+            for (Map.Entry<DhtPathElement, FuturePut> chunkedPut : chunkedPuts.entrySet()) {
+                this.await(chunkedPut.getValue());
+                results.put(chunkedPut.getKey(), chunkedPut.getValue().isSuccess());
+            }
+
+            // remove the chunks of previous values only once the new value is stored
+            List<FutureRemove> futureRemoves = new ArrayList<>();
+            for (Map.Entry<DhtPathElement, Boolean> result : results.entrySet()) {
+                DhtPathElement path = result.getKey();
+
+                if (! result.getValue()) {
+                    this.chunkCounts.remove(path);
+                    continue;
+                }
+
+                long chunkCount = pointers.containsKey(path) ? 0 : this.getChunkCount(contents.get(path));
+                this.chunkCounts.put(path, chunkCount);
+
+                if (previousChunkCounts.get(path) > chunkCount) {
+                    futureRemoves.add(this.startRemoveChunks(path, chunkCount));
+                }
+            }
+
+            for (FutureRemove futureRemove : futureRemoves) {
+                this.await(futureRemove);
+            }
+
+            for (Map.Entry<DhtPathElement, Boolean> result : results.entrySet()) {
+                if (result.getValue()) {
+                    this.cacheValue(result.getKey(), contents.get(result.getKey()));
+                } else {
+                    // the previous value may or may not have been overwritten
+                    this.cache.clear(result.getKey());
+                }
+            }
+
+            return results;
+        } finally {
+            unlockAll(locks);
+        }
+    }
+
+    /**
+     * Stores the given values as objects in parallel. Objects which are already stored intact,
+     * or shared by multiple of the given paths, are not uploaded again.
+     *
+     * @param contents The values to store by their path
+     *
+     * @return The pointers to the stored objects by path. Paths whose object could not be stored are not contained
+     *
+     * @throws InputOutputException If storing has been interrupted
+     */
+    protected Map<DhtPathElement, DhtObjectPointer> storeObjects(Map<? extends DhtPathElement, byte[]> contents)
+            throws InputOutputException {
+        Map<DhtPathElement, DhtObjectPointer> pointers = new HashMap<>();
+        Map<DhtObjectPointer, CompletableFuture<Boolean>> objectChecks = new HashMap<>();
+        Map<DhtObjectPointer, byte[]> objects = new HashMap<>();
+        Map<DhtObjectPointer, Map<Number160, Data>> encodedObjects = new HashMap<>();
+
+        for (Map.Entry<? extends DhtPathElement, byte[]> entry : contents.entrySet()) {
+            DhtObjectPointer pointer = DhtObjectPointer.of(entry.getValue());
+            pointers.put(entry.getKey(), pointer);
+
+            if (objectChecks.containsKey(pointer)) {
+                continue;
+            }
+
+            Map<Number160, Data> encodedObject = this.encode(pointer.getObjectPath(), entry.getValue());
+
+            objectChecks.put(pointer, this.hasObjectAsync(pointer, getHashes(encodedObject)));
+            objects.put(pointer, entry.getValue());
+            encodedObjects.put(pointer, encodedObject);
+        }
+
+        Map<DhtObjectPointer, FuturePut> objectPuts = new HashMap<>();
+        for (Map.Entry<DhtObjectPointer, CompletableFuture<Boolean>> objectCheck : objectChecks.entrySet()) {
+            if (! join(objectCheck.getValue())) {
+                DhtObjectPointer pointer = objectCheck.getKey();
+                objectPuts.put(pointer, this.startStore(pointer.getObjectPath(), objects.get(pointer), encodedObjects.get(pointer)));
+            }
+        }
+
+        // an object is only ever replaced by the same content, i.e. by the same number of chunks
+        Set<DhtObjectPointer> failedObjects = new HashSet<>();
+        for (Map.Entry<DhtObjectPointer, FuturePut> objectPut : objectPuts.entrySet()) {
+            this.await(objectPut.getValue());
+
+            if (objectPut.getValue().isFailed()) {
+                failedObjects.add(objectPut.getKey());
+            }
+        }
+
+        pointers.values().removeIf(failedObjects::contains);
+
+        return pointers;
+    }
+
+    /**
+     * Starts an upload to the given path. Chunks written to the session
+     * are buffered locally and transferred only once on commit, instead of
+     * re-sending the whole value on each {@link BaseDhtStorageAdapter#persist(StorageType, DhtPathElement, long, byte[])}.
+     *
+     * @param path The path to which the value is uploaded
+     *
+     * @return The upload session
+     */
+    public IDhtUploadSession beginUpload(DhtPathElement path) {
+        return new DhtUploadSession(this, path, DEFAULT_UPLOAD_BUFFER_SIZE);
+    }
+
+    /**
+     * Persists the given bytes at the given path without blocking the caller.
+     * In contrast to {@link BaseDhtStorageAdapter#persist(StorageType, DhtPathElement, byte[])},
+     * multiple operations may be in flight at the same time.
+     *
+     * @param type  The type of path which should be created
+     * @param path  The path used to identify the data
+     * @param bytes The bytes to store
+     *
+     * @return A future which completes once the data is stored or exceptionally with an {@link InputOutputException}
+     */
+    public CompletableFuture<Void> persistAsync(StorageType type, DhtPathElement path, byte[] bytes) {
+        if (StorageType.FILE != type) {
+            return failedFuture(new InputOutputException("Only files are allowed to be stored in the DHT"));
+        }
+
+        this.cacheValue(path, bytes);
+
+        if (this.isDeduplicated(path)) {
+            return this.storeAsync(path, bytes);
+        }
+
+        return this.getPreviousChunkCountAsync(path)
+                .thenCompose(previousChunkCount -> this.toCompletableFuture(path, this.startStore(path, bytes), this.getChunkCount(bytes), previousChunkCount));
+    }
+
+    /**
+     * Stores the given bytes as object, unless it already exists, and a
+     * pointer to it at the given path without blocking the caller
+     *
+     * @param path  The path to store the pointer at
+     * @param bytes The bytes to store
+     *
+     * @return A future which completes once the pointer is stored or exceptionally with an {@link InputOutputException}
+     */
+    protected CompletableFuture<Void> storeAsync(DhtPathElement path, byte[] bytes) {
+        DhtObjectPointer pointer = DhtObjectPointer.of(bytes);
+        String checksum = Checksums.md5(bytes);
+        Map<Number160, Data> encodedObject = this.encode(pointer.getObjectPath(), bytes);
+
+        return this.hasObjectAsync(pointer, getHashes(encodedObject))
+                .thenCompose(exists -> exists ? CompletableFuture.<Void>completedFuture(null) : this.toCompletableFuture(pointer.getObjectPath(), this.startStore(pointer.getObjectPath(), bytes, encodedObject), 0, 0))
+                .thenCompose(ignored -> this.getPreviousChunkCountAsync(path))
+                .thenCompose(previousChunkCount -> this.toCompletableFuture(path, this.startStorePointer(path, pointer, checksum), 0, previousChunkCount));
+    }
+
+    /**
+     * Converts the given started put of a value, manifest or pointer into a future completing
+     * once it succeeded and the chunks of a previous value, if it had more chunks, have been removed afterwards
+     *
+     * @param path               The path the value is stored at
+     * @param futurePut          The started put
+     * @param chunkCount         The number of chunks of the new value
+     * @param previousChunkCount The number of chunks of the previous value
+     *
+     * @return A future which completes once the value is stored or exceptionally with an {@link InputOutputException}
+     */
+    protected CompletableFuture<Void> toCompletableFuture(DhtPathElement path, FuturePut futurePut, long chunkCount, long previousChunkCount) {
+        CompletableFuture<Void> completablePut = new CompletableFuture<>();
+        futurePut.addListener(
+                new DhtCompletionListener<FuturePut, Void>(completablePut, future -> null)
+        );
+
+        return completablePut
+                .whenComplete((ignored, e) -> {
+                    if (null == e) {
+                        this.chunkCounts.put(path, chunkCount);
+                    } else {
+                        this.chunkCounts.remove(path);
+                    }
+                })
+                .thenCompose(ignored -> (previousChunkCount > chunkCount) ? this.toCompletableFuture(this.startRemoveChunks(path, chunkCount)) : CompletableFuture.<Void>completedFuture(null));
+    }
+
+    /**
+     * Converts the given started removal into a future completing once it finished
+     *
+     * @param futureRemove The started removal
+     *
+     * @return A future which completes once the removal finished or exceptionally with an {@link InputOutputException}
+     */
+    protected CompletableFuture<Void> toCompletableFuture(FutureRemove futureRemove) {
+        CompletableFuture<Void> completableRemove = new CompletableFuture<>();
+        futureRemove.addListener(
+                new DhtCompletionListener<FutureRemove, Void>(completableRemove, future -> null)
+        );
+
+        return completableRemove;
+    }
+
+    /**
+     * Deletes the content stored at the given path without blocking the caller.
+     *
+     * @param path The path to remove
+     *
+     * @return A future which completes once the data is removed or exceptionally with an {@link InputOutputException}
+     */
+    public CompletableFuture<Void> deleteAsync(DhtPathElement path) {
+        this.cache.putMissing(path);
+
+        return this.getPreviousChunkCountAsync(path).thenCompose(previousChunkCount -> {
+            FutureRemove futureRemove = this.createRemoveBuilder(path).start();
+
+            futureRemove.addListener(
+                    new DhtDeleteListener(this.dht)
+            );
+
+            // a manifest which could not be removed still refers to the chunks
+            return this.toCompletableFuture(futureRemove)
+                    .whenComplete((ignored, e) -> {
+                        if (null == e) {
+                            this.chunkCounts.put(path, 0L);
+                        } else {
+                            this.chunkCounts.remove(path);
+                        }
+                    })
+                    .thenCompose(ignored -> (previousChunkCount > 0) ? this.toCompletableFuture(this.startRemoveChunks(path, 0)) : CompletableFuture.<Void>completedFuture(null));
+        });
+    }
+
+    /**
+     * Reads the contents stored at the given path without blocking the caller.
+     *
+     * @param path The path from which to read
+     *
+     * @return A future completing with the content, an empty array if no content is stored, or exceptionally with an {@link InputOutputException}
+     */
+    public CompletableFuture<byte[]> readAsync(DhtPathElement path) {
+        byte[] cachedData = this.getCached(path);
+
+        if (null != cachedData) {
+            return CompletableFuture.completedFuture(cachedData);
+        }
+
+        // negative entries are only recorded by blocking requests, which are ordered with writes
+        if (this.cache.isMissing(path)) {
+            return CompletableFuture.completedFuture(new byte[0]);
+        }
+
+        return this.getAsync(this.createGetBuilder(path), future -> (null == future.data()) ? new byte[0] : PayloadCodec.decode(future.data().toBytes()))
+                .thenCompose(record -> {
+                    if (! DhtObjectPointer.isPointer(record)) {
+                        return this.fetchContentAsync(path, record);
+                    }
+
+                    DhtObjectPointer pointer = DhtObjectPointer.decode(record);
+                    DhtPathElement objectPath = pointer.getObjectPath();
+
+                    return this.getAsync(this.createGetBuilder(objectPath), future -> (null == future.data()) ? null : PayloadCodec.decode(future.data().toBytes()))
+                            .thenCompose(objectRecord -> {
+                                if (null == objectRecord) {
+                                    return failedFuture(new InputOutputException("Object " + pointer.getHash() + " referenced by " + path.getPath() + " is missing"));
+                                }
+
+                                return this.fetchContentAsync(objectPath, objectRecord);
+                            })
+                            .thenCompose(content -> {
+                                try {
+                                    this.verify(path, pointer, content);
+                                } catch (InputOutputException e) {
+                                    return failedFuture(e);
+                                }
+
+                                return CompletableFuture.completedFuture(content);
+                            });
+                });
+    }
+
+    /**
+     * Returns the content described by the given record without blocking the caller,
+     * fetching its chunks if the record is a manifest
+     *
+     * @param path   The path at which the record is stored
+     * @param record The record
+     *
+     * @return A future completing with the content
+     */
+    protected CompletableFuture<byte[]> fetchContentAsync(DhtPathElement path, byte[] record) {
+        if (! ChunkManifest.isManifest(record)) {
+            return CompletableFuture.completedFuture(record);
+        }
+
+        ChunkManifest manifest = ChunkManifest.decode(record);
+
+        if (manifest.getSize() > Integer.MAX_VALUE) {
+            return failedFuture(new InputOutputException("Content of " + path.getPath() + " is too large to be read at once"));
+        }
+
+        return this.fetchRangeAsync(path, manifest, 0, (int) manifest.getSize());
+    }
+
+    /**
+     * Checks whether the given path exists without blocking the caller.
+     *
+     * @param storageType The storage type to check for
+     * @param path        The path to check
+     *
+     * @return A future completing with true, if the path exists, or exceptionally with an {@link InputOutputException}
+     */
+    public CompletableFuture<Boolean> existsAsync(StorageType storageType, DhtPathElement path) {
+        if (StorageType.FILE != storageType) {
+            return failedFuture(new InputOutputException("Only files are allowed to be read from the DHT"));
+        }
+
+        if (null != this.cache.get(path)) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        if (this.cache.isMissing(path)) {
+            return CompletableFuture.completedFuture(false);
+        }
+
+        FutureDigest futureDigest = this.createDigestBuilder(path).start();
+
+        CompletableFuture<Boolean> completableFuture = new CompletableFuture<>();
+
+        futureDigest.addListener(
+                new DhtDigestListener(this.dht)
+        );
+        futureDigest.addListener(
+                new DhtCompletionListener<>(completableFuture, BaseDhtStorageAdapter::hasDigest)
+        );
+
+        return completableFuture;
+    }
+
+    /**
+     * Returns some meta information about the given path without blocking the caller.
+     *
+     * @param path The path element of which to get the meta information
+     *
+     * @return A future completing with the meta information or exceptionally with an {@link InputOutputException}, if the path does not exist
+     */
+    public CompletableFuture<IFileMetaInfo> getMetaInformationAsync(DhtPathElement path) {
+        byte[] cachedContent = this.cache.get(path);
+
+        if (null != cachedContent) {
+            try {
+                return CompletableFuture.completedFuture(new FileMetaInfo(getSize(cachedContent), true, ""));
+            } catch (InputOutputException e) {
+                return failedFuture(e);
+            }
+        }
+
+        if (this.cache.isMissing(path)) {
+            return failedFuture(new InputOutputException("Could not get meta information for " + path.getPath() + ". No such file or directory"));
+        }
+
+        GetBuilder metaGetBuilder = this.createGetBuilder(path, Collections.singletonList(DhtMetaRecord.getMetaKey(path)));
+
+        return this.getAsync(metaGetBuilder, future -> (null == future.data()) ? null : DhtMetaRecord.decode(future.data().toBytes()))
+                .thenCompose(metaRecord -> {
+                    if (null != metaRecord) {
+                        return CompletableFuture.completedFuture(new FileMetaInfo(metaRecord.getSize(), true, ""));
+                    }
+
+                    // values stored without a meta record
+                    return this.getAsync(this.createGetBuilder(path), future -> {
+                        if (null == future.data()) {
+                            throw new CompletionException(new InputOutputException("Could not get meta information for " + path.getPath() + ". No such file or directory"));
+                        }
+
+                        try {
+                            return new FileMetaInfo(getSize(future.data().toBytes()), true, "");
+                        } catch (InputOutputException e) {
+                            throw new CompletionException(e);
+                        }
+                    });
+                });
+    }
+
+    /**
+     * Fetches the value stored at the content key of the given path.
+     * This is either the content itself or the manifest of a chunked value.
+     *
+     * @param path The path to fetch
+     *
+     * @return The stored value or null, if nothing is stored at the path
+     *
+     * @throws InputOutputException If fetching has been interrupted
+     */
+    protected byte[] fetchRecord(DhtPathElement path)
+            throws InputOutputException {
+        FutureGet futureGet = this.createGetBuilder(path).start();
+
+        futureGet.addListener(
+                new DhtGetListener(this.dht)
+        );
+
+        this.await(futureGet);
+
+        if (null == futureGet.data()) {
+            this.chunkCounts.put(path, 0L);
+            return null;
+        }
+
+        byte[] record = decodePayload(path, futureGet.data().toBytes());
+        this.chunkCounts.put(path, ChunkManifest.isManifest(record) ? ChunkManifest.decode(record).getChunkCount() : 0L);
+
+        return record;
+    }
+
+    /**
+     * Caches the given value with its MD5 checksum as version,
+     * which matches the checksum of its meta record
+     *
+     * @param path  The path of the value
+     * @param bytes The value
+     */
+    protected void cacheValue(DhtPathElement path, byte[] bytes) {
+        this.cache.put(path, this.encodePayload(bytes, this.cacheCompressed), Checksums.md5(bytes));
+    }
+
+    /**
+     * Returns the cached value of the given path, decompressing it if required
+     *
+     * @param path The path of the value
+     *
+     * @return The value or null, if not cached
+     */
+    protected byte[] getCached(DhtPathElement path) {
+        byte[] bytes = this.cache.get(path);
+
+        if (null == bytes) {
+            return null;
+        }
+
+        try {
+            return PayloadCodec.decode(bytes);
+        } catch (IllegalArgumentException e) {
+            // e.g. a value cached on disk which has been damaged
+            logger.warn("Dropping corrupt cached value of " + path.getPath() + ". Message: " + e.getMessage());
+            this.cache.clear(path);
+
+            return null;
+        }
+    }
+
+    /**
+     * Decodes the given value fetched from the DHT or the cache
+     *
+     * @param path  The path of the value
+     * @param bytes The stored value
+     *
+     * @return The uncompressed value
+     *
+     * @throws InputOutputException If the value is corrupt or compressed by an unsupported codec
+     */
+    protected static byte[] decodePayload(DhtPathElement path, byte[] bytes)
+            throws InputOutputException {
+        try {
+            return PayloadCodec.decode(bytes);
+        } catch (IllegalArgumentException e) {
+            throw new InputOutputException("Value of " + path.getPath() + " is corrupt", e);
+        }
+    }
+
+    /**
+     * Encodes the given value to be stored in the DHT or the cache.
+     * Values looking like compressed values are always compressed, so
+     * that they are not mistaken as such when they are decoded.
+     *
+     * @param bytes    The value
+     * @param compress Whether to compress the value if compression is enabled and pays off
+     *
+     * @return The encoded value
+     */
+    protected byte[] encodePayload(byte[] bytes, boolean compress) {
+        PayloadCodec payloadCodec = this.payloadCodec;
+
+        if (compress && null != payloadCodec) {
+            return payloadCodec.encode(bytes);
+        }
+
+        return PayloadCodec.isCompressed(bytes) ? PayloadCodec.compress(bytes) : bytes;
+    }
+
+    /**
+     * Fetches the value of the given path and puts it into the cache. Concurrent
+     * requests for the same path share a single fetch. The caller must hold
+     * a lock of the path.
+     *
+     * @param path The path of the value
+     *
+     * @return The value or an empty array, if nothing is stored
+     *
+     * @throws InputOutputException If fetching failed
+     */
+    protected byte[] fetchAndCache(DhtPathElement path)
+            throws InputOutputException {
+        return this.readRequests.execute(path, () -> {
+            byte[] record = this.fetchRecord(path);
+
+            if (null == record) {
+                this.cache.putMissing(path);
+                return new byte[0];
+            }
+
+            byte[] content = this.fetchContent(path, record);
+
+            // fill the cache once for all callers waiting on this request
+            this.cacheValue(path, content);
+
+            return content;
+        });
+    }
+
+    /**
+     * Returns the content described by the given record, fetching its chunks if the
+     * record is a manifest and the object holding it if the record is a pointer
+     *
+     * @param path   The path at which the record is stored
+     * @param record The record
+     *
+     * @return The content
+     *
+     * @throws InputOutputException If fetching failed or the content is too large to be read at once
+     */
+    protected byte[] fetchContent(DhtPathElement path, byte[] record)
+            throws InputOutputException {
+        DhtPathElement contentPath = path;
+        DhtObjectPointer pointer = null;
+
+        if (DhtObjectPointer.isPointer(record)) {
+            pointer = DhtObjectPointer.decode(record);
+            contentPath = pointer.getObjectPath();
+            record = this.fetchObjectRecord(path, pointer);
+        }
+
+        byte[] content = record;
+
+        if (ChunkManifest.isManifest(record)) {
+            ChunkManifest manifest = ChunkManifest.decode(record);
+
+            if (manifest.getSize() > Integer.MAX_VALUE) {
+                throw new InputOutputException("Content of " + path.getPath() + " is too large to be read at once");
+            }
+
+            content = this.fetchRange(contentPath, manifest, 0, (int) manifest.getSize());
+        }
+
+        if (null != pointer) {
+            this.verify(path, pointer, content);
+        }
+
+        return content;
+    }
+
+    /**
+     * Fetches the record of the object the given pointer refers to
+     *
+     * @param path    The path holding the pointer
+     * @param pointer The pointer
+     *
+     * @return The record of the object
+     *
+     * @throws InputOutputException If fetching failed or the object is missing
+     */
+    protected byte[] fetchObjectRecord(DhtPathElement path, DhtObjectPointer pointer)
+            throws InputOutputException {
+        byte[] record = this.fetchRecord(pointer.getObjectPath());
+
+        if (null == record) {
+            throw new InputOutputException("Object " + pointer.getHash() + " referenced by " + path.getPath() + " is missing");
+        }
+
+        return record;
+    }
+
+    /**
+     * Verifies that the given content is the one of the object the pointer refers to.
+     * Objects are not protected against overwrites, since they are shared by all users.
+     * A corrupt object is repaired by storing its content again, which uploads the object
+     * again after checking it (see {@link BaseDhtStorageAdapter#hasObject(DhtObjectPointer, Map)}).
+     *
+     * @param path    The path holding the pointer
+     * @param pointer The pointer
+     * @param content The content of the object
+     *
+     * @throws InputOutputException If the content does not match the pointer
+     */
+    protected void verify(DhtPathElement path, DhtObjectPointer pointer, byte[] content)
+            throws InputOutputException {
+        if (! pointer.matches(content)) {
+            throw new InputOutputException("Object " + pointer.getHash() + " referenced by " + path.getPath() + " is corrupt");
+        }
+    }
+
+    /**
+     * Refreshes the value cached for the given path before it expires. If the checksum
+     * in the meta record still matches the cached value, only its expiry is extended,
+     * otherwise the current value is fetched. Holds the read lock of the path so that
+     * a concurrent write is not overwritten by an older value.
+     *
+     * @param path The path of the value
+     *
+     * @throws InputOutputException If fetching failed
+     */
+    protected void refresh(DhtPathElement path)
+            throws InputOutputException {
+        Lock lock = this.locks.readLock(path);
+        lock.lock();
+
+        try {
+            VersionedValue cachedValue = this.cache.getStale(path);
+
+            if (null == cachedValue) {
+                // evicted in the meantime, the next read fetches it anyway
+                return;
+            }
+
+            if (null != cachedValue.getVersion() && this.revalidate(path, cachedValue.getVersion())) {
+                return;
+            }
+
+            this.fetchAndCache(path);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Compares the version of the expired value cached for the given path with
+     * the checksum in its meta record. The cached value is considered fresh again
+     * if they are equal and removed from the cache otherwise.
+     *
+     * @param path    The path of the value
+     * @param version The version of the cached value
+     *
+     * @return True, if the cached value is fresh again
+     *
+     * @throws InputOutputException If fetching the meta record failed
+     */
+    protected boolean revalidate(DhtPathElement path, String version)
+            throws InputOutputException {
+        return this.revalidationRequests.execute(path, () -> {
+            DhtMetaRecord metaRecord = this.fetchMetaRecord(path);
+
+            return this.cache.revalidate(path, version, (null == metaRecord) ? null : metaRecord.getChecksum());
+        });
+    }
+
+    /**
+     * Revalidates the expired value cached for the given path in the background,
+     * unless a revalidation of the path is already running. If revalidation fails,
+     * the value stays in the cache and is revalidated again on the next read.
+     *
+     * @param path    The path of the value
+     * @param version The version of the cached value
+     */
+    protected void revalidateAsync(DhtPathElement path, String version) {
+        if (! this.pendingRevalidations.add(path)) {
+            return;
+        }
+
+        this.getAsync(
+                this.createGetBuilder(path, Collections.singletonList(DhtMetaRecord.getMetaKey(path))),
+                future -> (null == future.data()) ? null : DhtMetaRecord.decode(future.data().toBytes()).getChecksum()
+        ).whenComplete((checksum, throwable) -> {
+            this.pendingRevalidations.remove(path);
+
+            if (null == throwable) {
+                this.cache.revalidate(path, version, checksum);
+            }
+        });
+    }
+
+    /**
+     * Fetches the meta record stored beside the value of the given path
+     *
+     * @param path The path of the value
+     *
+     * @return The meta record or null, if none is stored
+     *
+     * @throws InputOutputException If fetching has been interrupted
+     */
+    protected DhtMetaRecord fetchMetaRecord(DhtPathElement path)
+            throws InputOutputException {
+        FutureGet futureGet = this.createGetBuilder(path, Collections.singletonList(DhtMetaRecord.getMetaKey(path))).start();
+
+        futureGet.addListener(
+                new DhtGetListener(this.dht)
+        );
+
+        this.await(futureGet);
+
+        if (null == futureGet.data()) {
+            return null;
+        }
+
+        return DhtMetaRecord.decode(futureGet.data().toBytes());
+    }
+
+    /**
+     * Fetches the chunks of the given chunked value which cover the specified range
+     * using a single get request and returns the content of the range
+     *
+     * @param path     The path of the chunked value
+     * @param manifest The manifest of the value
+     * @param offset   The offset where to start reading
+     * @param length   The length to read
+     *
+     * @return The read content. If length is exceeding the value's size, then the returned array will be shorter than the given length
+     *
+     * @throws InputOutputException If fetching has been interrupted or a chunk is missing
+     */
+    protected byte[] fetchRange(DhtPathElement path, ChunkManifest manifest, long offset, int length)
+            throws InputOutputException {
+        long end = Math.min(manifest.getSize(), offset + length);
+
+        if (offset >= end) {
+            return new byte[0];
+        }
+
+        Map<Long, byte[]> chunks = this.fetchChunks(path, getChunkIndices(manifest, offset, end));
+
+        return assemble(path, manifest, offset, end, chunks);
+    }
+
+    /**
+     * Like {@link BaseDhtStorageAdapter#fetchRange(DhtPathElement, ChunkManifest, long, int)}
+     * but without blocking the caller
+     *
+     * @param path     The path of the chunked value
+     * @param manifest The manifest of the value
+     * @param offset   The offset where to start reading
+     * @param length   The length to read
+     *
+     * @return A future completing with the read content
+     */
+    protected CompletableFuture<byte[]> fetchRangeAsync(DhtPathElement path, ChunkManifest manifest, long offset, int length) {
+        long end = Math.min(manifest.getSize(), offset + length);
+
+        if (offset >= end) {
+            return CompletableFuture.completedFuture(new byte[0]);
+        }
+
+        Map<Number160, Long> indices = getChunkKeys(path, getChunkIndices(manifest, offset, end));
+
+        FutureGet futureGet = this.createGetBuilder(path, indices.keySet()).start();
+
+        CompletableFuture<byte[]> completableFuture = new CompletableFuture<>();
+
+        futureGet.addListener(
+                new DhtGetListener(this.dht)
+        );
+        futureGet.addListener(
+                new DhtCompletionListener<FutureGet, byte[]>(completableFuture, future -> {
+                    try {
+                        return assemble(path, manifest, offset, end, toChunks(future, indices));
+                    } catch (InputOutputException e) {
+                        throw new CompletionException(e);
+                    }
+                })
+        );
+
+        return completableFuture;
+    }
+
+    /**
+     * Fetches the chunks with the given indices of the chunked value
+     * at the given path using a single get request
+     *
+     * @param path    The path of the chunked value
+     * @param indices The indices of the chunks to fetch
+     *
+     * @return The fetched chunks by their index. Missing chunks are not contained
+     *
+     * @throws InputOutputException If fetching has been interrupted
+     */
+    protected Map<Long, byte[]> fetchChunks(DhtPathElement path, Collection<Long> indices)
+            throws InputOutputException {
+        Map<Number160, Long> chunkKeys = getChunkKeys(path, indices);
+
+        FutureGet futureGet = this.createGetBuilder(path, chunkKeys.keySet()).start();
+
+        futureGet.addListener(
                 new DhtGetListener(this.dht)
         );
 
+        this.await(futureGet);
+
+        return toChunks(futureGet, chunkKeys);
+    }
+
+    /**
+     * Writes the given bytes at the given offset to the chunked value at the given path.
+     * Only the chunks affected by the write are fetched and stored again, together
+     * with the updated manifest in a single put request.
+     *
+     * @param path     The path of the chunked value
+     * @param manifest The current manifest of the value
+     * @param offset   The offset where to start writing. If larger than the value, the bytes are appended
+     * @param bytes    The bytes to write
+     *
+     * @throws InputOutputException If a chunk to update is missing or storing has been interrupted
+     */
+    protected void persistChunks(DhtPathElement path, ChunkManifest manifest, long offset, byte[] bytes)
+            throws InputOutputException {
+        if (0 == bytes.length) {
+            return;
+        }
+
+        long start = Math.min(offset, manifest.getSize());
+        long end = start + bytes.length;
+
+        ChunkManifest updatedManifest = new ChunkManifest(Math.max(manifest.getSize(), end), manifest.getChunkSize());
+
+        if (updatedManifest.getChunkCount() > ChunkManifest.MAX_CHUNKS) {
+            throw new InputOutputException("Content of " + path.getPath() + " would exceed the maximum number of chunks");
+        }
+
+        long firstIndex = updatedManifest.getChunkIndex(start);
+        long lastIndex = updatedManifest.getChunkIndex(end - 1);
+
+        // only the first and the last chunk may be overwritten partially
+        Set<Long> partialIndices = new TreeSet<>();
+        for (long index : new long[]{firstIndex, lastIndex}) {
+            long chunkStart = index * manifest.getChunkSize();
+            boolean isCovered = chunkStart >= start && chunkStart + updatedManifest.getChunkLength(index) <= end;
+
+            if (! isCovered && index < manifest.getChunkCount()) {
+                partialIndices.add(index);
+            }
+        }
+
+        Map<Long, byte[]> existingChunks = partialIndices.isEmpty() ? new HashMap<>() : this.fetchChunks(path, partialIndices);
+
+        Map<Number160, Data> dataMap = new HashMap<>();
+        for (long index = firstIndex; index <= lastIndex; index++) {
+            byte[] chunk = new byte[updatedManifest.getChunkLength(index)];
+
+            if (partialIndices.contains(index)) {
+                byte[] existingChunk = existingChunks.get(index);
+
+                if (null == existingChunk) {
+                    throw new InputOutputException("Chunk " + index + " of " + path.getPath() + " is missing");
+                }
+
+                System.arraycopy(existingChunk, 0, chunk, 0, Math.min(existingChunk.length, chunk.length));
+            }
+
+            long chunkStart = index * manifest.getChunkSize();
+            int srcPos = (int) Math.max(0, chunkStart - start);
+            int destPos = (int) Math.max(0, start - chunkStart);
+            int length = Math.min(chunk.length - destPos, bytes.length - srcPos);
+
+            System.arraycopy(bytes, srcPos, chunk, destPos, length);
+
+            dataMap.put(ChunkManifest.getChunkKey(path, index), new Data(chunk));
+        }
+
+        dataMap.put(path.getContentKey(), new Data(updatedManifest.encode()));
+        // the checksum would require all chunks and is computed on request
+        dataMap.put(DhtMetaRecord.getMetaKey(path), new Data(new DhtMetaRecord(updatedManifest.getSize(), null).encode()));
+
+        FuturePut futurePut = this.createPutBuilder(path, dataMap).start();
+
+        futurePut.addListener(
+                new DhtPutListener(this.dht)
+        );
+
+        // the value grows at most, so no chunks have to be removed
+        this.awaitStored(path, futurePut, updatedManifest.getChunkCount(), manifest.getChunkCount());
+    }
+
+    /**
+     * Checks whether the given value has to be stored chunked
+     *
+     * @param bytes The value to store
+     *
+     * @return True, if the value exceeds the chunk size or could be mistaken as manifest or pointer
+     */
+    protected boolean requiresChunking(byte[] bytes) {
+        return ChunkManifest.requiresChunking(bytes, this.chunkSize) || DhtObjectPointer.isPointer(bytes);
+    }
+
+    /**
+     * Stores the given bytes at the given path and waits until they are stored.
+     * If the path is stored deduplicated, the bytes are stored as object, unless
+     * it already exists intact, and the path only holds a pointer to it.
+     *
+     * @param path  The path to store the bytes at
+     * @param bytes The bytes to store
+     *
+     * @throws InputOutputException If storing has been interrupted or failed
+     */
+    protected void store(DhtPathElement path, byte[] bytes)
+            throws InputOutputException {
+        long previousChunkCount = this.getPreviousChunkCount(path);
+
+        if (! this.isDeduplicated(path)) {
+            this.awaitStored(path, this.startStore(path, bytes), this.getChunkCount(bytes), previousChunkCount);
+            return;
+        }
+
+        DhtObjectPointer pointer = DhtObjectPointer.of(bytes);
+        Map<Number160, Data> encodedObject = this.encode(pointer.getObjectPath(), bytes);
+
+        if (! this.hasObject(pointer, getHashes(encodedObject))) {
+            // never store a pointer to a missing object. An object is only
+            // ever replaced by the same content, so it has no chunks to remove
+            this.awaitStored(pointer.getObjectPath(), this.startStore(pointer.getObjectPath(), bytes, encodedObject), 0, 0);
+        }
+
+        this.awaitStored(path, this.startStorePointer(path, pointer, Checksums.md5(bytes)), 0, previousChunkCount);
+    }
+
+    /**
+     * Returns whether the given path is stored deduplicated. Secured paths are never
+     * stored deduplicated, since objects are stored without domain protection
+     *
+     * @param path The path to store a value at
+     *
+     * @return True, if deduplication is enabled and the path is not secured
+     */
+    protected boolean isDeduplicated(DhtPathElement path) {
+        return this.deduplicate && ! (path instanceof SecuredDhtPathElement);
+    }
+
+    /**
+     * Checks whether the object the given pointer refers to is stored intact.
+     * Since objects are not protected against overwrites, the hashes of its stored
+     * manifest and chunks are requested and compared against the ones of the locally
+     * encoded object, which does not transfer the object itself. An object stored
+     * in a different layout, e.g. without compression by another peer, is stored again.
+     * Reads verify the content regardless (see {@link BaseDhtStorageAdapter#verify(DhtPathElement, DhtObjectPointer, byte[])}).
+     *
+     * @param pointer The pointer
+     * @param hashes  The hashes of the encoded object by content key (see {@link BaseDhtStorageAdapter#getHashes(Map)})
+     *
+     * @return True, if the object is stored and matches the hashes, false if it is missing or corrupt
+     *
+     * @throws InputOutputException If the request has been interrupted
+     */
+    protected boolean hasObject(DhtObjectPointer pointer, Map<Number160, Number160> hashes)
+            throws InputOutputException {
+        FutureDigest futureDigest = this.startObjectDigest(pointer, hashes.keySet());
+
+        this.await(futureDigest);
+
+        if (futureDigest.isFailed()) {
+            logger.warn("Failed to check object " + pointer.getHash() + ", it is stored again. Message: " + futureDigest.failedReason());
+            return false;
+        }
+
+        return this.isIntact(pointer, futureDigest, hashes);
+    }
+
+    /**
+     * Like {@link BaseDhtStorageAdapter#hasObject(DhtObjectPointer, Map)} but without blocking the caller
+     *
+     * @param pointer The pointer
+     * @param hashes  The hashes of the encoded object by content key
+     *
+     * @return A future completing with true, if the object is stored and matches the hashes, false otherwise
+     */
+    protected CompletableFuture<Boolean> hasObjectAsync(DhtObjectPointer pointer, Map<Number160, Number160> hashes) {
+        FutureDigest futureDigest = this.startObjectDigest(pointer, hashes.keySet());
+
+        CompletableFuture<Boolean> completableFuture = new CompletableFuture<>();
+
+        futureDigest.addListener(
+                new DhtCompletionListener<FutureDigest, Boolean>(completableFuture, future -> this.isIntact(pointer, future, hashes))
+        );
+
+        return completableFuture.exceptionally(e -> {
+            logger.warn("Failed to check object " + pointer.getHash() + ", it is stored again. Message: " + e.getMessage());
+            return false;
+        });
+    }
+
+    /**
+     * Starts a digest request for the given content keys of the object the pointer refers to
+     *
+     * @param pointer     The pointer
+     * @param contentKeys The content keys of the manifest and the chunks of the object
+     *
+     * @return The started digest request
+     */
+    protected FutureDigest startObjectDigest(DhtObjectPointer pointer, Collection<Number160> contentKeys) {
+        FutureDigest futureDigest = this.dht
+                .digest(pointer.getObjectPath().getLocationKey())
+                .contentKeys(contentKeys)
+                .start();
+
+        futureDigest.addListener(
+                new DhtDigestListener(this.dht)
+        );
+
+        return futureDigest;
+    }
+
+    /**
+     * Checks whether the hashes returned by the given digest request match the expected ones
+     *
+     * @param pointer      The pointer
+     * @param futureDigest The completed digest request
+     * @param hashes       The expected hashes by content key
+     *
+     * @return True, if exactly the expected hashes have been returned, false otherwise
+     */
+    protected boolean isIntact(DhtObjectPointer pointer, FutureDigest futureDigest, Map<Number160, Number160> hashes) {
+        if (! hasDigest(futureDigest)) {
+            return false;
+        }
+
+        Map<Number160, Number160> storedHashes = new HashMap<>();
+        for (Map.Entry<Number640, Number160> entry : futureDigest.digest().keyDigest().entrySet()) {
+            storedHashes.put(entry.getKey().contentKey(), entry.getValue());
+        }
+
+        if (hashes.equals(storedHashes)) {
+            return true;
+        }
+
+        logger.warn("Object " + pointer.getHash() + " is corrupt or stored differently and is stored again");
+
+        return false;
+    }
+
+    /**
+     * Returns the hashes of the given encoded value, as returned by a digest request once stored
+     *
+     * @param encoded The encoded value by content key (see {@link BaseDhtStorageAdapter#encode(DhtPathElement, byte[])})
+     *
+     * @return The hashes by content key
+     */
+    protected static Map<Number160, Number160> getHashes(Map<Number160, Data> encoded) {
+        Map<Number160, Number160> hashes = new HashMap<>();
+        for (Map.Entry<Number160, Data> entry : encoded.entrySet()) {
+            hashes.put(entry.getKey(), entry.getValue().hash());
+        }
+
+        return hashes;
+    }
+
+    /**
+     * Starts storing the given pointer at the given path together with the meta record
+     * of the content it refers to. Once stored, all chunks of a previous value have
+     * to be removed (see {@link BaseDhtStorageAdapter#startRemoveChunks(DhtPathElement, long)}).
+     *
+     * @param path     The path to store the pointer at
+     * @param pointer  The pointer
+     * @param checksum The MD5 checksum of the content
+     *
+     * @return The started put
+     */
+    protected FuturePut startStorePointer(DhtPathElement path, DhtObjectPointer pointer, String checksum) {
+        Map<Number160, Data> dataMap = new HashMap<>();
+        dataMap.put(path.getContentKey(), new Data(pointer.encode()));
+        dataMap.put(DhtMetaRecord.getMetaKey(path), new Data(new DhtMetaRecord(pointer.getSize(), checksum).encode()));
+
+        FuturePut futurePut = this.createPutBuilder(path, dataMap).start();
+
+        futurePut.addListener(
+                new DhtPutListener(this.dht)
+        );
+
+        return futurePut;
+    }
+
+    /**
+     * Starts storing the given bytes at the given path. Values exceeding the chunk size
+     * are split into chunks which are stored together with their manifest using a single put request.
+     * Once stored, all chunks of a previous value which are not overwritten have to be removed
+     * (see {@link BaseDhtStorageAdapter#startRemoveChunks(DhtPathElement, long)}).
+     *
+     * @param path  The path to store the bytes at
+     * @param bytes The bytes to store
+     *
+     * @return The started put
+     */
+    protected FuturePut startStore(DhtPathElement path, byte[] bytes) {
+        return this.startStore(path, bytes, this.encode(path, bytes));
+    }
+
+    /**
+     * Like {@link BaseDhtStorageAdapter#startStore(DhtPathElement, byte[])} but
+     * storing the given, already encoded value
+     *
+     * @param path    The path to store the bytes at
+     * @param bytes   The bytes to store
+     * @param encoded The encoded bytes (see {@link BaseDhtStorageAdapter#encode(DhtPathElement, byte[])})
+     *
+     * @return The started put
+     */
+    protected FuturePut startStore(DhtPathElement path, byte[] bytes, Map<Number160, Data> encoded) {
+        Map<Number160, Data> dataMap = new HashMap<>(encoded);
+        dataMap.put(DhtMetaRecord.getMetaKey(path), new Data(new DhtMetaRecord(bytes.length, Checksums.md5(bytes)).encode()));
+
+        FuturePut futurePut = this.createPutBuilder(path, dataMap).start();
+
+        futurePut.addListener(
+                new DhtPutListener(this.dht)
+        );
+
+        return futurePut;
+    }
+
+    /**
+     * Encodes the given bytes as they are stored at the given path. Values exceeding
+     * the chunk size are split into chunks and a manifest describing them.
+     *
+     * @param path  The path to store the bytes at
+     * @param bytes The bytes to store
+     *
+     * @return The encoded value by content key, without the meta record
+     */
+    protected Map<Number160, Data> encode(DhtPathElement path, byte[] bytes) {
+        Map<Number160, Data> dataMap = new HashMap<>();
+
+        if (this.requiresChunking(bytes)) {
+            ChunkManifest manifest = new ChunkManifest(bytes.length, this.chunkSize);
+
+            for (long index = 0; index < manifest.getChunkCount(); index++) {
+                int from = (int) (index * this.chunkSize);
+                dataMap.put(
+                        ChunkManifest.getChunkKey(path, index),
+                        new Data(Arrays.copyOfRange(bytes, from, from + manifest.getChunkLength(index)))
+                );
+            }
+
+            dataMap.put(path.getContentKey(), new Data(manifest.encode()));
+        } else {
+            dataMap.put(path.getContentKey(), new Data(this.encodePayload(bytes, true)));
+        }
+
+        return dataMap;
+    }
+
+    /**
+     * Returns the number of chunks the given value is stored in
+     *
+     * @param bytes The value
+     *
+     * @return The number of chunks or 0, if the value is stored as a whole
+     */
+    protected long getChunkCount(byte[] bytes) {
+        return this.requiresChunking(bytes) ? new ChunkManifest(bytes.length, this.chunkSize).getChunkCount() : 0;
+    }
+
+    /**
+     * Starts removing the chunks of the given path from the given index on.
+     * Must only be started once the value or manifest replacing them is stored,
+     * since a previous manifest may still refer to them otherwise.
+     *
+     * @param path      The path of the chunks
+     * @param fromIndex The index of the first chunk to remove
+     *
+     * @return The started removal
+     */
+    protected FutureRemove startRemoveChunks(DhtPathElement path, long fromIndex) {
+        FutureRemove futureRemove = this.createChunkRemoveBuilder(path, fromIndex).start();
+
+        futureRemove.addListener(
+                new DhtDeleteListener(this.dht)
+        );
+
+        return futureRemove;
+    }
+
+    /**
+     * Stores the value assembled by an upload session at the given path.
+     * Large values are stored chunk-wise (see {@link BaseDhtStorageAdapter#storeChunks(DhtPathElement, SpillBuffer)}),
+     * as object referenced by a pointer if the path is stored deduplicated.
+     *
+     * @param path   The path to store the value at
+     * @param buffer The buffer holding the value
+     *
+     * @throws InputOutputException If reading the buffer or storing a chunk failed
+     */
+    protected void storeUpload(DhtPathElement path, SpillBuffer buffer)
+            throws InputOutputException {
+        Lock lock = this.locks.writeLock(path);
+        lock.lock();
+
+        try {
+            if (buffer.size() <= this.chunkSize) {
+                byte[] bytes = buffer.read(0, (int) buffer.size());
+
+                if (! this.requiresChunking(bytes)) {
+                    this.cacheValue(path, bytes);
+                    this.store(path, bytes);
+
+                    return;
+                }
+            }
+
+            this.cache.clear(path);
+
+            if (this.isDeduplicated(path)) {
+                this.storeUploadObject(path, buffer);
+            } else {
+                this.storeChunks(path, buffer);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stores the given buffer chunk-wise at the given path, using multiple put requests in parallel,
+     * reading only the chunks currently transferred from the buffer. The manifest is stored last,
+     * so that the previous value stays readable until all chunks are stored.
+     *
+     * @param path   The path to store the value at
+     * @param buffer The buffer holding the value
+     *
+     * @throws InputOutputException If reading the buffer or storing a chunk failed
+     */
+    protected void storeChunks(DhtPathElement path, SpillBuffer buffer)
+            throws InputOutputException {
+        ChunkManifest manifest = new ChunkManifest(buffer.size(), this.chunkSize);
+
+        if (manifest.getChunkCount() > ChunkManifest.MAX_CHUNKS) {
+            throw new InputOutputException("Content of " + path.getPath() + " would exceed the maximum number of chunks");
+        }
+
+        long previousChunkCount = this.getPreviousChunkCount(path);
+
+        MessageDigest checksumDigest = Checksums.createDigest(Checksums.MD5);
+
+        Deque<FuturePut> futurePuts = new ArrayDeque<>();
+        for (long index = 0; index < manifest.getChunkCount(); index += UPLOAD_CHUNKS_PER_PUT) {
+            Map<Number160, Data> dataMap = new HashMap<>();
+            for (long chunkIndex = index; chunkIndex < Math.min(manifest.getChunkCount(), index + UPLOAD_CHUNKS_PER_PUT); chunkIndex++) {
+                byte[] chunk = buffer.read(chunkIndex * this.chunkSize, manifest.getChunkLength(chunkIndex));
+                checksumDigest.update(chunk);
+
+                dataMap.put(ChunkManifest.getChunkKey(path, chunkIndex), new Data(chunk));
+            }
+
+            if (futurePuts.size() >= MAX_UPLOAD_PUTS_IN_FLIGHT) {
+                this.awaitSuccess(path, futurePuts.poll());
+            }
+
+            FuturePut futurePut = this.createPutBuilder(path, dataMap).start();
+
+            futurePut.addListener(
+                    new DhtPutListener(this.dht)
+            );
+
+            futurePuts.add(futurePut);
+        }
+
+        while (! futurePuts.isEmpty()) {
+            this.awaitSuccess(path, futurePuts.poll());
+        }
+
+        Map<Number160, Data> dataMap = new HashMap<>();
+        dataMap.put(path.getContentKey(), new Data(manifest.encode()));
+        dataMap.put(DhtMetaRecord.getMetaKey(path), new Data(new DhtMetaRecord(manifest.getSize(), Checksums.toHex(checksumDigest.digest())).encode()));
+
+        FuturePut futurePut = this.createPutBuilder(path, dataMap).start();
+
+        futurePut.addListener(
+                new DhtPutListener(this.dht)
+        );
+
+        this.awaitStored(path, futurePut, manifest.getChunkCount(), previousChunkCount);
+    }
+
+    /**
+     * Stores the given buffer as object, unless it already exists, and a pointer to it at the given path.
+     * The buffer is read once in advance to compute the hash identifying the object.
+     *
+     * @param path   The path to store the pointer at
+     * @param buffer The buffer holding the value
+     *
+     * @throws InputOutputException If reading the buffer or storing the object failed
+     */
+    protected void storeUploadObject(DhtPathElement path, SpillBuffer buffer)
+            throws InputOutputException {
+        MessageDigest objectDigest = DhtObjectPointer.createDigest();
+        MessageDigest checksumDigest = Checksums.createDigest(Checksums.MD5);
+        List<Number160> chunkHashes = new ArrayList<>();
+
+        for (long position = 0; position < buffer.size(); position += this.chunkSize) {
+            byte[] chunk = buffer.read(position, (int) Math.min(this.chunkSize, buffer.size() - position));
+            objectDigest.update(chunk);
+            checksumDigest.update(chunk);
+            chunkHashes.add(new Data(chunk).hash());
+        }
+
+        DhtObjectPointer pointer = new DhtObjectPointer(Checksums.toHex(objectDigest.digest()), buffer.size());
+
+        // the hashes of the object as stored by storeChunks
+        Map<Number160, Number160> hashes = new HashMap<>();
+        hashes.put(pointer.getObjectPath().getContentKey(), new Data(new ChunkManifest(buffer.size(), this.chunkSize).encode()).hash());
+        for (int index = 0; index < chunkHashes.size(); index++) {
+            hashes.put(ChunkManifest.getChunkKey(pointer.getObjectPath(), index), chunkHashes.get(index));
+        }
+
+        if (! this.hasObject(pointer, hashes)) {
+            this.storeChunks(pointer.getObjectPath(), buffer);
+        }
+
+        long previousChunkCount = this.getPreviousChunkCount(path);
+        this.awaitStored(path, this.startStorePointer(path, pointer, Checksums.toHex(checksumDigest.digest())), 0, previousChunkCount);
+    }
+
+    protected void awaitSuccess(DhtPathElement path, FuturePut futurePut)
+            throws InputOutputException {
+        this.await(futurePut);
+
+        if (futurePut.isFailed()) {
+            throw new InputOutputException("Failed to store " + path.getPath() + ". Reason: " + futurePut.failedReason());
+        }
+    }
+
+    /**
+     * Waits until the given put of a value, manifest or pointer succeeded and
+     * removes the chunks of the previous value which are not overwritten afterwards,
+     * if it had more chunks than the new value
+     *
+     * @param path               The path the value is stored at
+     * @param futurePut          The started put
+     * @param chunkCount         The number of chunks of the new value
+     * @param previousChunkCount The number of chunks of the previous value
+     *
+     * @throws InputOutputException If storing has been interrupted or failed
+     */
+    protected void awaitStored(DhtPathElement path, FuturePut futurePut, long chunkCount, long previousChunkCount)
+            throws InputOutputException {
+        try {
+            this.awaitSuccess(path, futurePut);
+        } catch (InputOutputException e) {
+            // the put may have been applied partially
+            this.chunkCounts.remove(path);
+            throw e;
+        }
+
+        this.chunkCounts.put(path, chunkCount);
+
+        if (previousChunkCount > chunkCount) {
+            this.await(this.startRemoveChunks(path, chunkCount));
+        }
+    }
+
+    /**
+     * Returns the number of chunks of the value currently stored at the given path.
+     * If this adapter did not store or fetch the path recently, its meta record is fetched.
+     * Values chunked by another adapter since are not noticed, leaving their chunks
+     * unreferenced once overwritten.
+     *
+     * @param path The path
+     *
+     * @return The number of chunks, 0 if the value is not chunked or nothing is stored
+     *
+     * @throws InputOutputException If fetching the meta record has been interrupted
+     */
+    protected long getPreviousChunkCount(DhtPathElement path)
+            throws InputOutputException {
+        Long chunkCount = this.chunkCounts.get(path);
+
+        if (null != chunkCount) {
+            return chunkCount;
+        }
+
+        return this.getChunkCount(this.fetchMetaRecord(path));
+    }
+
+    /**
+     * Like {@link BaseDhtStorageAdapter#getPreviousChunkCount(DhtPathElement)} but without blocking the caller
+     *
+     * @param path The path
+     *
+     * @return A future completing with the number of chunks
+     */
+    protected CompletableFuture<Long> getPreviousChunkCountAsync(DhtPathElement path) {
+        Long chunkCount = this.chunkCounts.get(path);
+
+        if (null != chunkCount) {
+            return CompletableFuture.completedFuture(chunkCount);
+        }
+
+        return this.getAsync(
+                this.createGetBuilder(path, Collections.singletonList(DhtMetaRecord.getMetaKey(path))),
+                future -> this.getChunkCount((null == future.data()) ? null : DhtMetaRecord.decode(future.data().toBytes()))
+        );
+    }
+
+    /**
+     * Returns the number of chunks of the values currently stored at the given paths.
+     * The meta records of paths this adapter did not store or fetch recently are fetched
+     * using a single get request per location and domain key.
+     *
+     * @param paths The paths
+     *
+     * @return The number of chunks by path
+     *
+     * @throws InputOutputException If fetching the meta records has been interrupted
+     */
+    protected Map<DhtPathElement, Long> getPreviousChunkCounts(Collection<? extends DhtPathElement> paths)
+            throws InputOutputException {
+        Map<DhtPathElement, Long> previousChunkCounts = new HashMap<>();
+
+        // location key -> domain key -> meta key -> path
+        Map<Number160, Map<Number160, Map<Number160, DhtPathElement>>> groups = new HashMap<>();
+        for (DhtPathElement path : paths) {
+            Long chunkCount = this.chunkCounts.get(path);
+
+            if (null != chunkCount) {
+                previousChunkCounts.put(path, chunkCount);
+                continue;
+            }
+
+            previousChunkCounts.put(path, 0L);
+
+            Number160 domainKey = (path instanceof SecuredDhtPathElement) ? ((SecuredDhtPathElement) path).getDomainKey() : null;
+
+            groups.computeIfAbsent(path.getLocationKey(), key -> new HashMap<>())
+                    .computeIfAbsent(domainKey, key -> new HashMap<>())
+                    .put(DhtMetaRecord.getMetaKey(path), path);
+        }
+
+        List<Pair<FutureGet, Map<Number160, DhtPathElement>>> futureGets = new ArrayList<>();
+        for (Map<Number160, Map<Number160, DhtPathElement>> locationGroup : groups.values()) {
+            for (Map<Number160, DhtPathElement> domainGroup : locationGroup.values()) {
+                DhtPathElement anyPath = domainGroup.values().iterator().next();
+                FutureGet futureGet = this.createGetBuilder(anyPath, domainGroup.keySet()).start();
+
+                futureGet.addListener(
+                        new DhtGetListener(this.dht)
+                );
+
+                futureGets.add(new Pair<>(futureGet, domainGroup));
+            }
+        }
+
+        for (Pair<FutureGet, Map<Number160, DhtPathElement>> pair : futureGets) {
+            FutureGet futureGet = pair.getFirst();
+
+            this.await(futureGet);
+
+            if (futureGet.isFailed() || null == futureGet.dataMap()) {
+                continue;
+            }
+
+            for (Map.Entry<Number640, Data> entry : futureGet.dataMap().entrySet()) {
+                DhtPathElement path = pair.getSecond().get(entry.getKey().contentKey());
+
+                if (null != path) {
+                    previousChunkCounts.put(path, this.getChunkCount(DhtMetaRecord.decode(entry.getValue().toBytes())));
+                }
+            }
+        }
+
+        return previousChunkCounts;
+    }
+
+    /**
+     * Returns the number of chunks of the value described by the given meta record
+     *
+     * @param metaRecord The meta record, may be null
+     *
+     * @return The number of chunks or 0, if the value is not chunked or there is no meta record.
+     *         Small values resembling a pointer are chunked although their size does not tell
+     */
+    protected long getChunkCount(DhtMetaRecord metaRecord) {
+        if (null == metaRecord || metaRecord.getSize() <= this.chunkSize) {
+            return 0;
+        }
+
+        return new ChunkManifest(metaRecord.getSize(), this.chunkSize).getChunkCount();
+    }
+
+    protected void await(BaseFuture future)
+            throws InputOutputException {
         try {
-            futureGet.await();
+            future.await();
         } catch (InterruptedException e) {
             // rethrow using our exception
             throw new InputOutputException(e);
         }
+    }
 
-        if (null == futureGet.data()) {
-            return new FileMetaInfo(0, true, "");
-        }
+    /**
+     * Starts the given get request and maps its result once completed
+     *
+     * @param getBuilder   The get request to start
+     * @param resultMapper The function creating the result from the completed get request
+     * @param <T>          The type of the result
+     *
+     * @return A future completing with the mapped result
+     */
+    protected <T> CompletableFuture<T> getAsync(GetBuilder getBuilder, Function<FutureGet, T> resultMapper) {
+        FutureGet futureGet = getBuilder.start();
+
+        CompletableFuture<T> completableFuture = new CompletableFuture<>();
+
+        futureGet.addListener(
+                new DhtGetListener(this.dht)
+        );
+        futureGet.addListener(
+                new DhtCompletionListener<>(completableFuture, resultMapper)
+        );
 
-        return new FileMetaInfo(futureGet.data().toBytes().length, true, "");
+        return completableFuture;
     }
 
-    public synchronized boolean exists(StorageType storageType, DhtPathElement path)
-            throws InputOutputException {
+    /**
+     * Creates a put request for the given path,
+     * using domain protection if the path is secured
+     *
+     * @param path  The path to store the bytes at
+     * @param bytes The bytes to store
+     *
+     * @return The put builder
+     */
+    protected PutBuilder createPutBuilder(DhtPathElement path, byte[] bytes) {
+        PutBuilder putBuilder = this.dht
+                .put(path.getLocationKey())
+                .data(path.getContentKey(), new Data(bytes));
 
-        if (StorageType.FILE != storageType) {
-            throw new InputOutputException("Only files are allowed to be read from the DHT");
+        // enable domain protection only if required
+        if (path instanceof SecuredDhtPathElement) {
+            putBuilder
+                    .protectDomain()
+                    .domainKey(((SecuredDhtPathElement) path).getDomainKey());
         }
 
-        byte[] cachedContent = this.cache.get(path);
+        return putBuilder;
+    }
 
-        if (null != cachedContent) {
-            return true;
+    /**
+     * Creates a put request storing all given values at the location key of the path,
+     * using domain protection if the path is secured
+     *
+     * @param path    The path whose location and domain key to use
+     * @param dataMap The values to store by their content key
+     *
+     * @return The put builder
+     */
+    protected PutBuilder createPutBuilder(DhtPathElement path, Map<Number160, Data> dataMap) {
+        PutBuilder putBuilder = this.dht
+                .put(path.getLocationKey())
+                .dataMapContent(dataMap);
+
+        // enable domain protection only if required
+        if (path instanceof SecuredDhtPathElement) {
+            putBuilder
+                    .protectDomain()
+                    .domainKey(((SecuredDhtPathElement) path).getDomainKey());
         }
 
+        return putBuilder;
+    }
+
+    /**
+     * Creates a get request for the given path
+     *
+     * @param path The path to fetch
+     *
+     * @return The get builder
+     */
+    protected GetBuilder createGetBuilder(DhtPathElement path) {
         GetBuilder getBuilder = this.dht
                 .get(path.getLocationKey())
                 .contentKey(path.getContentKey());
@@ -426,27 +2632,254 @@ public abstract class BaseDhtStorageAdapter {
             getBuilder.domainKey(((SecuredDhtPathElement) path).getDomainKey());
         }
 
-        FutureGet futureGet = getBuilder.start();
+        return getBuilder;
+    }
 
-        futureGet.addListener(
-                new DhtGetListener(this.dht)
-        );
+    /**
+     * Creates a get request for the given content keys
+     * at the location key of the path
+     *
+     * @param path        The path whose location and domain key to use
+     * @param contentKeys The content keys to fetch
+     *
+     * @return The get builder
+     */
+    protected GetBuilder createGetBuilder(DhtPathElement path, Collection<Number160> contentKeys) {
+        GetBuilder getBuilder = this.dht
+                .get(path.getLocationKey())
+                .contentKeys(contentKeys);
+
+        // use protection only on request
+        if (path instanceof SecuredDhtPathElement) {
+            getBuilder.domainKey(((SecuredDhtPathElement) path).getDomainKey());
+        }
+
+        return getBuilder;
+    }
+
+    /**
+     * Creates a digest request for the given path, which
+     * returns the hash of the stored value instead of the value
+     *
+     * @param path The path to check
+     *
+     * @return The digest builder
+     */
+    protected DigestBuilder createDigestBuilder(DhtPathElement path) {
+        DigestBuilder digestBuilder = this.dht
+                .digest(path.getLocationKey())
+                .contentKey(path.getContentKey());
+
+        // use protection only on request
+        if (path instanceof SecuredDhtPathElement) {
+            digestBuilder.domainKey(((SecuredDhtPathElement) path).getDomainKey());
+        }
+
+        return digestBuilder;
+    }
+
+    /**
+     * Creates a remove request for the given path and its meta record,
+     * using domain protection if the path is secured
+     *
+     * @param path The path to remove
+     *
+     * @return The remove builder
+     */
+    protected RemoveBuilder createRemoveBuilder(DhtPathElement path) {
+        RemoveBuilder removeBuilder = this.dht
+                .remove(path.getLocationKey())
+                .contentKeys(Arrays.asList(path.getContentKey(), DhtMetaRecord.getMetaKey(path)));
+
+        // enable protection only on request
+        if (path instanceof SecuredDhtPathElement) {
+            removeBuilder
+                    .protectDomain()
+                    .domainKey(((SecuredDhtPathElement) path).getDomainKey());
+        }
+
+        return removeBuilder;
+    }
+
+    /**
+     * Creates a remove request for all chunks of the given path
+     * starting at the given index, regardless of whether they exist
+     *
+     * @param path      The path whose chunks to remove
+     * @param fromIndex The index of the first chunk to remove
+     *
+     * @return The remove builder
+     */
+    protected RemoveBuilder createChunkRemoveBuilder(DhtPathElement path, long fromIndex) {
+        Number160 domainKey = (path instanceof SecuredDhtPathElement) ? ((SecuredDhtPathElement) path).getDomainKey() : DHTBuilder.DEFAULT_DOMAIN;
+
+        RemoveBuilder removeBuilder = this.dht
+                .remove(path.getLocationKey())
+                .from(new Number640(path.getLocationKey(), domainKey, ChunkManifest.getChunkKey(path, fromIndex), Number160.ZERO))
+                .to(new Number640(path.getLocationKey(), domainKey, ChunkManifest.getChunkKey(path, ChunkManifest.MAX_CHUNKS), Number160.MAX_VALUE));
+
+        // enable protection only on request
+        if (path instanceof SecuredDhtPathElement) {
+            removeBuilder
+                    .protectDomain()
+                    .domainKey(domainKey);
+        }
+
+        return removeBuilder;
+    }
+
+    /**
+     * Checks whether any peer reported a digest for the requested content key
+     *
+     * @param futureDigest The completed digest request
+     *
+     * @return True, if a value is stored
+     */
+    protected static boolean hasDigest(FutureDigest futureDigest) {
+        return null != futureDigest.digest() &&
+                null != futureDigest.digest().keyDigest() &&
+                ! futureDigest.digest().keyDigest().isEmpty();
+    }
+
+    /**
+     * Returns the size of the content described by the given stored value
+     *
+     * @param record The value stored at the content key of a path
+     *
+     * @return The size of the content in bytes
+     *
+     * @throws InputOutputException If the value is corrupt
+     */
+    protected static long getSize(byte[] record)
+            throws InputOutputException {
+        try {
+            if (ChunkManifest.isManifest(record)) {
+                return ChunkManifest.decode(record).getSize();
+            }
+
+            if (DhtObjectPointer.isPointer(record)) {
+                return DhtObjectPointer.decode(record).getSize();
+            }
+
+            return PayloadCodec.getSize(record);
+        } catch (IllegalArgumentException e) {
+            throw new InputOutputException("Stored value is corrupt", e);
+        }
+    }
+
+    protected static List<Long> getChunkIndices(ChunkManifest manifest, long start, long end) {
+        List<Long> indices = new ArrayList<>();
+        for (long index = manifest.getChunkIndex(start); index <= manifest.getChunkIndex(end - 1); index++) {
+            indices.add(index);
+        }
+
+        return indices;
+    }
+
+    protected static Map<Number160, Long> getChunkKeys(DhtPathElement path, Collection<Long> indices) {
+        Map<Number160, Long> chunkKeys = new HashMap<>();
+        for (long index : indices) {
+            chunkKeys.put(ChunkManifest.getChunkKey(path, index), index);
+        }
+
+        return chunkKeys;
+    }
+
+    protected static Map<Long, byte[]> toChunks(FutureGet futureGet, Map<Number160, Long> chunkKeys) {
+        Map<Long, byte[]> chunks = new HashMap<>();
+
+        if (null == futureGet.dataMap()) {
+            return chunks;
+        }
+
+        for (Map.Entry<Number640, Data> entry : futureGet.dataMap().entrySet()) {
+            Long index = chunkKeys.get(entry.getKey().contentKey());
+
+            if (null != index) {
+                chunks.put(index, entry.getValue().toBytes());
+            }
+        }
+
+        return chunks;
+    }
 
+    /**
+     * Waits until the given future completed and returns its result
+     *
+     * @param future The future to wait for
+     * @param <T>    The type of the result
+     *
+     * @return The result of the future
+     *
+     * @throws InputOutputException If waiting has been interrupted or the future completed exceptionally
+     */
+    protected static <T> T join(CompletableFuture<T> future)
+            throws InputOutputException {
         try {
-            futureGet.await();
+            return future.get();
         } catch (InterruptedException e) {
-            // rethrow using our exception
+            Thread.currentThread().interrupt();
             throw new InputOutputException(e);
-        }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof InputOutputException) {
+                throw (InputOutputException) e.getCause();
+            }
 
-        return null != futureGet.data();
+            throw new InputOutputException(e.getCause());
+        }
     }
 
-    public synchronized String getChecksum(DhtPathElement path)
+    /**
+     * Copies the specified range of a chunked value from the given chunks
+     *
+     * @param path     The path of the chunked value
+     * @param manifest The manifest of the value
+     * @param start    The offset of the first byte to copy
+     * @param end      The offset after the last byte to copy
+     * @param chunks   The chunks covering the range by their index
+     *
+     * @return The content of the range
+     *
+     * @throws InputOutputException If a chunk is missing
+     */
+    protected static byte[] assemble(DhtPathElement path, ChunkManifest manifest, long start, long end, Map<Long, byte[]> chunks)
             throws InputOutputException {
+        byte[] content = new byte[(int) (end - start)];
+
+        for (long index = manifest.getChunkIndex(start); index <= manifest.getChunkIndex(end - 1); index++) {
+            byte[] chunk = chunks.get(index);
+
+            if (null == chunk || chunk.length != manifest.getChunkLength(index)) {
+                throw new InputOutputException("Chunk " + index + " of " + path.getPath() + " is missing");
+            }
+
+            long chunkStart = index * manifest.getChunkSize();
+            int srcPos = (int) Math.max(0, start - chunkStart);
+            int destPos = (int) Math.max(0, chunkStart - start);
+            int length = Math.min(chunk.length - srcPos, content.length - destPos);
+
+            System.arraycopy(chunk, srcPos, content, destPos, length);
+        }
+
+        return content;
+    }
+
+    protected static void lockAll(List<Lock> locks) {
+        for (Lock lock : locks) {
+            lock.lock();
+        }
+    }
+
+    protected static void unlockAll(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
+        }
+    }
 
-        byte[] content = this.read(path);
+    protected static <T> CompletableFuture<T> failedFuture(Throwable throwable) {
+        CompletableFuture<T> completableFuture = new CompletableFuture<>();
+        completableFuture.completeExceptionally(throwable);
 
-        return Hash.hash(HashingAlgorithm.MD5, content);
+        return completableFuture;
     }
 }
@@ -0,0 +1,88 @@
+package org.rmatil.sync.persistence.core.dht.base;
+
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+import org.rmatil.sync.persistence.core.dht.IDhtUploadSession;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+/**
+ * An upload session which assembles the value in a {@link SpillBuffer}
+ * and stores it using the storage adapter which created the session.
+ */
+public class DhtUploadSession implements IDhtUploadSession {
+
+    protected final BaseDhtStorageAdapter storageAdapter;
+
+    protected final DhtPathElement path;
+
+    protected final SpillBuffer buffer;
+
+    /**
+     * Whether the session has neither been committed nor aborted
+     */
+    protected boolean isOpen;
+
+    /**
+     * @param storageAdapter The storage adapter storing the value on commit
+     * @param path           The path to which the value is uploaded
+     * @param maxMemorySize  The maximum number of bytes buffered in memory before spilling to disk
+     */
+    public DhtUploadSession(BaseDhtStorageAdapter storageAdapter, DhtPathElement path, long maxMemorySize) {
+        this.storageAdapter = storageAdapter;
+        this.path = path;
+        this.buffer = new SpillBuffer(maxMemorySize);
+        this.isOpen = true;
+    }
+
+    @Override
+    public DhtPathElement getPath() {
+        return this.path;
+    }
+
+    @Override
+    public synchronized void writeChunk(long offset, byte[] bytes)
+            throws InputOutputException {
+        this.ensureOpen();
+
+        this.buffer.write(offset, bytes);
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return this.buffer.size();
+    }
+
+    @Override
+    public synchronized void commit()
+            throws InputOutputException {
+        this.ensureOpen();
+
+        try {
+            this.storageAdapter.storeUpload(this.path, this.buffer);
+        } finally {
+            this.isOpen = false;
+            this.buffer.release();
+        }
+    }
+
+    @Override
+    public synchronized void abort()
+            throws InputOutputException {
+        this.isOpen = false;
+        this.buffer.release();
+    }
+
+    @Override
+    public synchronized void close()
+            throws InputOutputException {
+        if (this.isOpen) {
+            this.abort();
+        }
+    }
+
+    protected void ensureOpen()
+            throws InputOutputException {
+        if (! this.isOpen) {
+            throw new InputOutputException("Upload to " + this.path.getPath() + " has already been committed or aborted");
+        }
+    }
+}
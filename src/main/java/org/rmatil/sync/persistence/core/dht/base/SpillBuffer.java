@@ -0,0 +1,196 @@
+package org.rmatil.sync.persistence.core.dht.base;
+
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A byte buffer which is held in memory up to a given size
+ * and moved to a temporary file once it grows beyond it.
+ * <p>
+ * Writes follow the semantics of the storage adapters: Writing at an
+ * offset larger than the current size appends the bytes.
+ */
+public class SpillBuffer {
+
+    /**
+     * The maximum number of bytes held in memory
+     */
+    protected long maxMemorySize;
+
+    /**
+     * The buffered bytes, null once spilled to a file
+     */
+    protected byte[] memory;
+
+    /**
+     * The file holding the bytes once spilled
+     */
+    protected Path spillFile;
+
+    protected FileChannel spillChannel;
+
+    protected long size;
+
+    /**
+     * @param maxMemorySize The maximum number of bytes held in memory
+     */
+    public SpillBuffer(long maxMemorySize) {
+        // arrays can not exceed the integer range
+        this.maxMemorySize = Math.min(maxMemorySize, Integer.MAX_VALUE - 8);
+        this.memory = new byte[0];
+        this.size = 0;
+    }
+
+    /**
+     * Writes the given bytes at the given offset
+     *
+     * @param offset The offset where to start writing. If larger than the buffer, the bytes are appended
+     * @param bytes  The bytes to write
+     *
+     * @return The offset at which the bytes have been written
+     *
+     * @throws InputOutputException If spilling to or writing the temporary file failed
+     */
+    public long write(long offset, byte[] bytes)
+            throws InputOutputException {
+        long start = Math.min(offset, this.size);
+        long end = start + bytes.length;
+
+        if (null != this.memory && end > this.maxMemorySize) {
+            this.spill();
+        }
+
+        if (null != this.memory) {
+            if (end > this.memory.length) {
+                // grow exponentially but never beyond the memory limit
+                long capacity = Math.min(this.maxMemorySize, Math.max(end, 2L * this.memory.length));
+                this.memory = Arrays.copyOf(this.memory, (int) capacity);
+            }
+
+            System.arraycopy(bytes, 0, this.memory, (int) start, bytes.length);
+        } else {
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes);
+                long position = start;
+                while (buffer.hasRemaining()) {
+                    position += this.spillChannel.write(buffer, position);
+                }
+            } catch (IOException e) {
+                throw new InputOutputException(e);
+            }
+        }
+
+        this.size = Math.max(this.size, end);
+
+        return start;
+    }
+
+    /**
+     * Reads the specified range of the buffer
+     *
+     * @param offset The offset where to start reading
+     * @param length The length to read
+     *
+     * @return The read bytes. If length is exceeding the buffer, then the returned array will be shorter than the given length
+     *
+     * @throws InputOutputException If reading the temporary file failed
+     */
+    public byte[] read(long offset, int length)
+            throws InputOutputException {
+        long start = Math.min(offset, this.size);
+        int readLength = (int) Math.min(length, this.size - start);
+
+        if (null != this.memory) {
+            return Arrays.copyOfRange(this.memory, (int) start, (int) start + readLength);
+        }
+
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(readLength);
+            while (buffer.hasRemaining()) {
+                if (this.spillChannel.read(buffer, start + buffer.position()) == - 1) {
+                    break;
+                }
+            }
+
+            return buffer.array();
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+    }
+
+    /**
+     * Returns the number of bytes in the buffer
+     *
+     * @return The size of the buffer
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * Returns whether the bytes have been moved to a temporary file
+     *
+     * @return True, if spilled
+     */
+    public boolean isSpilled() {
+        return null == this.memory;
+    }
+
+    /**
+     * Discards all bytes and removes the temporary file, if any
+     *
+     * @throws InputOutputException If removing the temporary file failed
+     */
+    public void release()
+            throws InputOutputException {
+        this.memory = new byte[0];
+        this.size = 0;
+
+        if (null != this.spillChannel) {
+            try {
+                this.spillChannel.close();
+                Files.deleteIfExists(this.spillFile);
+            } catch (IOException e) {
+                throw new InputOutputException(e);
+            } finally {
+                this.spillChannel = null;
+                this.spillFile = null;
+            }
+        }
+    }
+
+    /**
+     * Moves the bytes held in memory to a temporary file
+     *
+     * @throws InputOutputException If creating or writing the temporary file failed
+     */
+    protected void spill()
+            throws InputOutputException {
+        try {
+            this.spillFile = Files.createTempFile("sync-persistence-upload", ".tmp");
+            this.spillChannel = FileChannel.open(
+                    this.spillFile,
+                    StandardOpenOption.READ,
+                    StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE
+            );
+
+            ByteBuffer buffer = ByteBuffer.wrap(this.memory, 0, (int) this.size);
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += this.spillChannel.write(buffer, position);
+            }
+
+            this.memory = null;
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Sets the time to live of each value from the observed interval between
+ * changes of its path: Each time a value is cached with another version than
+ * before, the time since the previous change is added to a moving average of
+ * the change interval. The time to live is a share of this interval, or of the
+ * time since the last change if the value has been stable for longer, bounded
+ * by a minimum and a maximum.
+ * <p>
+ * Values whose change interval is not known yet, or which are cached without
+ * version, get the time to live of the initial policy.
+ * Only the most recently cached paths are tracked.
+ */
+public class AdaptiveTtlPolicy implements ITtlPolicy {
+
+    /**
+     * The default share of the change interval used as time to live
+     */
+    public static final double DEFAULT_CHANGE_INTERVAL_RATIO = 0.5d;
+
+    /**
+     * The default maximum number of tracked paths
+     */
+    public static final int DEFAULT_MAX_TRACKED_PATHS = 10000;
+
+    /**
+     * The weight of the most recent interval in the moving average
+     */
+    protected static final double SMOOTHING = 0.5d;
+
+    /**
+     * The observed changes of a path
+     */
+    protected static class ChangeHistory {
+
+        protected String version;
+
+        protected long lastChange;
+
+        /**
+         * The moving average of the change interval or zero, if no change has been observed
+         */
+        protected long averageInterval;
+
+        protected ChangeHistory(String version, long lastChange) {
+            this.version = version;
+            this.lastChange = lastChange;
+            this.averageInterval = 0L;
+        }
+    }
+
+    protected final ITtlPolicy initialPolicy;
+
+    protected final long minTimeToLive;
+
+    protected final long maxTimeToLive;
+
+    protected final double changeIntervalRatio;
+
+    protected final LongSupplier clock;
+
+    /**
+     * The change histories in access order, guarded by this
+     */
+    protected final LinkedHashMap<String, ChangeHistory> histories;
+
+    /**
+     * @param minTimeToLive The minimum time to live in milliseconds
+     * @param maxTimeToLive The maximum time to live in milliseconds
+     */
+    public AdaptiveTtlPolicy(long minTimeToLive, long maxTimeToLive) {
+        this(
+                (pathElement, bytes, version, defaultTimeToLive) -> defaultTimeToLive,
+                minTimeToLive,
+                maxTimeToLive,
+                DEFAULT_CHANGE_INTERVAL_RATIO,
+                DEFAULT_MAX_TRACKED_PATHS,
+                System::currentTimeMillis
+        );
+    }
+
+    /**
+     * @param initialPolicy       The policy for values whose change interval is not known yet
+     * @param minTimeToLive       The minimum time to live in milliseconds
+     * @param maxTimeToLive       The maximum time to live in milliseconds
+     * @param changeIntervalRatio The share of the change interval used as time to live
+     * @param maxTrackedPaths     The maximum number of paths whose changes are tracked
+     * @param clock               The source of the current time in milliseconds
+     */
+    public AdaptiveTtlPolicy(ITtlPolicy initialPolicy, long minTimeToLive, long maxTimeToLive, double changeIntervalRatio, int maxTrackedPaths, LongSupplier clock) {
+        if (minTimeToLive > maxTimeToLive) {
+            throw new IllegalArgumentException("Minimum time to live must not exceed the maximum time to live");
+        }
+
+        this.initialPolicy = initialPolicy;
+        this.minTimeToLive = minTimeToLive;
+        this.maxTimeToLive = maxTimeToLive;
+        this.changeIntervalRatio = changeIntervalRatio;
+        this.clock = clock;
+        this.histories = new LinkedHashMap<String, ChangeHistory>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ChangeHistory> eldest) {
+                return this.size() > maxTrackedPaths;
+            }
+        };
+    }
+
+    @Override
+    public long getTimeToLive(DhtPathElement pathElement, byte[] bytes, String version, long defaultTimeToLive) {
+        if (null == version) {
+            return this.initialPolicy.getTimeToLive(pathElement, bytes, null, defaultTimeToLive);
+        }
+
+        long now = this.clock.getAsLong();
+        long interval;
+
+        synchronized (this) {
+            ChangeHistory history = this.histories.get(pathElement.getPath());
+
+            if (null == history) {
+                this.histories.put(pathElement.getPath(), new ChangeHistory(version, now));
+                interval = 0L;
+            } else {
+                if (! history.version.equals(version)) {
+                    long observed = now - history.lastChange;
+                    history.averageInterval = (0L == history.averageInterval) ? observed : (long) (SMOOTHING * observed + (1 - SMOOTHING) * history.averageInterval);
+                    history.version = version;
+                    history.lastChange = now;
+                }
+
+                interval = (0L == history.averageInterval) ? 0L : Math.max(history.averageInterval, now - history.lastChange);
+            }
+        }
+
+        if (0L == interval) {
+            return this.initialPolicy.getTimeToLive(pathElement, bytes, version, defaultTimeToLive);
+        }
+
+        long timeToLive = (long) (this.changeIntervalRatio * interval);
+
+        return Math.max(this.minTimeToLive, Math.min(this.maxTimeToLive, timeToLive));
+    }
+
+    /**
+     * Returns the moving average of the interval between changes of the given path
+     *
+     * @param pathElement The path element
+     *
+     * @return The average interval in milliseconds or zero, if no change has been observed
+     */
+    public synchronized long getAverageChangeInterval(DhtPathElement pathElement) {
+        ChangeHistory history = this.histories.get(pathElement.getPath());
+
+        return (null == history) ? 0L : history.averageInterval;
+    }
+}
@@ -0,0 +1,37 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Provides the scheduler shared by all caches for maintenance tasks
+ * like expiring entries. It runs a single daemon thread of minimum
+ * priority, so maintenance never competes with the actual work of a peer
+ * and does not prevent the JVM from exiting.
+ */
+public final class CacheScheduler {
+
+    protected static ScheduledExecutorService scheduler;
+
+    private CacheScheduler() {
+    }
+
+    /**
+     * Returns the shared scheduler, creating it on first use
+     *
+     * @return The shared scheduler
+     */
+    public static synchronized ScheduledExecutorService getDefault() {
+        if (null == scheduler) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "dht-cache-maintenance");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+
+                return thread;
+            });
+        }
+
+        return scheduler;
+    }
+}
@@ -0,0 +1,63 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A clock returning the current time in milliseconds from a
+ * field which is updated periodically on the {@link CacheScheduler}.
+ * Reading it is cheaper than {@link System#currentTimeMillis()}
+ * at the cost of being up to its resolution behind.
+ */
+public class CoarseClock implements LongSupplier {
+
+    /**
+     * The default interval in milliseconds in which the time is updated
+     */
+    public static final long DEFAULT_RESOLUTION = 10L;
+
+    protected static CoarseClock defaultClock;
+
+    protected volatile long now;
+
+    protected final ScheduledFuture<?> updater;
+
+    /**
+     * @param resolution The interval in milliseconds in which the time is updated
+     */
+    public CoarseClock(long resolution) {
+        this.now = System.currentTimeMillis();
+        this.updater = CacheScheduler.getDefault().scheduleAtFixedRate(
+                () -> this.now = System.currentTimeMillis(),
+                resolution,
+                resolution,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Returns a clock with the default resolution which is shared among all caches
+     *
+     * @return The shared clock
+     */
+    public static synchronized CoarseClock getDefault() {
+        if (null == defaultClock) {
+            defaultClock = new CoarseClock(DEFAULT_RESOLUTION);
+        }
+
+        return defaultClock;
+    }
+
+    @Override
+    public long getAsLong() {
+        return this.now;
+    }
+
+    /**
+     * Stops updating the time
+     */
+    public void shutdown() {
+        this.updater.cancel(false);
+    }
+}
@@ -1,59 +1,915 @@
 package org.rmatil.sync.persistence.core.dht.cache;
 
-import org.rmatil.sync.commons.collection.Pair;
 import org.rmatil.sync.persistence.core.dht.DhtPathElement;
 import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtStorageAdapter;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
 
 /**
  * A cache layer for the {@link SecuredDhtStorageAdapter}.
+ * <p>
+ * The cache is bounded by the number of bytes and entries it holds and
+ * evicts entries using a segmented CLOCK policy, an approximation of a segmented LRU:
+ * New entries are placed in a probationary segment and moved to the protected
+ * segment if they have been read once the eviction reaches them. Eviction removes
+ * probationary entries not read since their insertion first, so that values
+ * read only once do not displace frequently read ones. A new value which could only
+ * be admitted by evicting protected entries is not cached at all.
+ * Values larger than the configured limit bypass the cache.
+ * <p>
+ * Reading takes no lock: Entries are held in a concurrent map and reads only
+ * mark the entry as referenced. Space is reserved using compare-and-set before
+ * an entry is inserted and released by whoever removes it from the map, so the
+ * limits hold under concurrent access. Only puts which have to evict entries
+ * serialize on a lock.
+ * <p>
+ * Once the sweeper is started using {@link DhtCache#startSweeper()}, expired entries
+ * are removed in the background: Each entry is scheduled in a {@link TimingWheel}
+ * when put, so that sweeping only visits entries due for expiry.
+ * <p>
+ * If a stale time to live is configured, expired entries are retained for this time
+ * and can be revalidated using {@link DhtCache#revalidate(DhtPathElement, String, String)}
+ * if their version did not change.
  */
 public class DhtCache implements IDhtCache {
 
     /**
-     * The time to live for each element in the cache
+     * The maximum time to live of negative entries if not specified explicitly
+     */
+    public static final long DEFAULT_NEGATIVE_TIME_TO_LIVE = 1000L;
+
+    /**
+     * The default number of bytes the cache may hold
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * The default number of entries the cache may hold
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    /**
+     * The default size of the largest value which is cached
+     */
+    public static final long DEFAULT_MAX_VALUE_SIZE = 4L * 1024 * 1024;
+
+    /**
+     * The share of the byte and entry limits reserved for the protected segment
+     */
+    protected static final double PROTECTED_RATIO = 0.8;
+
+    /**
+     * The interval in milliseconds in which expired entries are removed
+     */
+    public static final long SWEEP_INTERVAL = 100L;
+
+    /**
+     * The number of sweep intervals covered by one revolution of the timing wheel
+     */
+    protected static final int WHEEL_TICKS = 512;
+
+    protected static final int PROBATION = 0;
+
+    protected static final int PROTECTED = 1;
+
+    protected static final int REMOVED = 2;
+
+    /**
+     * A cached value with its expiry time
+     */
+    protected static class Entry {
+
+        protected final String path;
+
+        /**
+         * The time to live the entry has been cached with
+         */
+        protected final long timeToLive;
+
+        /**
+         * Extended when the entry is revalidated
+         */
+        protected volatile long expiry;
+
+        protected final byte[] bytes;
+
+        protected final String version;
+
+        /**
+         * The segment of the entry or {@link DhtCache#REMOVED} once removed from the cache
+         */
+        protected final AtomicInteger state;
+
+        /**
+         * Whether the entry has been read since the eviction visited it
+         */
+        protected volatile boolean referenced;
+
+        /**
+         * The number of reads close to the expiry of the entry
+         */
+        protected final AtomicInteger accesses;
+
+        /**
+         * The scheduled expiry of the entry, replaced when the entry is revalidated
+         */
+        protected final AtomicReference<TimingWheel.Timeout<String>> timeout;
+
+        protected Entry(String path, long timeToLive, long expiry, byte[] bytes, String version) {
+            this.path = path;
+            this.timeToLive = timeToLive;
+            this.expiry = expiry;
+            this.bytes = bytes;
+            this.version = version;
+            this.state = new AtomicInteger(PROBATION);
+            this.accesses = new AtomicInteger();
+            this.timeout = new AtomicReference<>();
+        }
+    }
+
+    /**
+     * The time to live for each element in the cache, unless a policy is set
      */
     protected long timeToLive;
 
+    /**
+     * Determines the time to live of each value, null to use {@link DhtCache#timeToLive} for all
+     */
+    protected volatile ITtlPolicy ttlPolicy;
+
+    /**
+     * The time to live for each negative entry
+     */
+    protected long negativeTimeToLive;
+
+    /**
+     * The time for which expired entries are retained to be revalidated
+     */
+    protected long staleTimeToLive;
+
+    protected long maxBytes;
+
+    protected int maxEntries;
+
+    protected long maxValueSize;
+
+    /**
+     * The source of the current time in milliseconds
+     */
+    protected LongSupplier clock;
+
     /**
      * The "cache"
      */
-    protected ConcurrentHashMap<String, Pair<Long, byte[]>> cache;
+    protected ConcurrentHashMap<String, Entry> cache;
+
+    /**
+     * The order in which entries of the probationary segment are visited by the eviction
+     */
+    protected Queue<Entry> probation;
+
+    /**
+     * The order in which entries of the protected segment are visited by the eviction
+     */
+    protected Queue<Entry> protectedSegment;
+
+    /**
+     * The number of entries queued in the protected segment, including removed ones,
+     * since the size of a {@link ConcurrentLinkedQueue} is computed by traversing it
+     */
+    protected AtomicInteger protectedQueued;
+
+    /**
+     * Bytes reserved by entries, including those being inserted
+     */
+    protected AtomicLong usedBytes;
+
+    protected AtomicInteger usedEntries;
+
+    protected AtomicLong protectedBytes;
+
+    protected AtomicInteger protectedEntries;
+
+    /**
+     * The number of removed entries still referenced by the queues
+     */
+    protected AtomicInteger staleEntries;
+
+    /**
+     * Serializes eviction, i.e. the only writers of the queues besides insertion
+     */
+    protected ReentrantLock evictionLock;
+
+    /**
+     * The scheduled expiry of negative entries by path
+     */
+    protected ConcurrentHashMap<String, TimingWheel.Timeout<String>> missing;
+
+    protected LongAdder hits;
+
+    protected LongAdder misses;
+
+    protected LongAdder savedLookups;
+
+    protected LongAdder puts;
+
+    protected LongAdder sizeEvictions;
+
+    protected LongAdder expiryEvictions;
+
+    protected LongAdder expiredOnRead;
+
+    /**
+     * The expiry times of entries and negative entries by path
+     */
+    protected TimingWheel<String> expiries;
+
+    /**
+     * The task removing expired entries, null if not started
+     */
+    protected ScheduledFuture<?> sweeper;
 
     /**
      * @param timeToLive The time to live for all path elements
      */
     public DhtCache(long timeToLive) {
+        this(timeToLive, Math.min(timeToLive, DEFAULT_NEGATIVE_TIME_TO_LIVE));
+    }
+
+    /**
+     * @param timeToLive         The time to live for all path elements
+     * @param negativeTimeToLive The time to live for path elements known to not exist. Zero disables negative caching
+     */
+    public DhtCache(long timeToLive, long negativeTimeToLive) {
+        this(timeToLive, negativeTimeToLive, DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VALUE_SIZE);
+    }
+
+    /**
+     * @param timeToLive         The time to live for all path elements
+     * @param negativeTimeToLive The time to live for path elements known to not exist. Zero disables negative caching
+     * @param maxBytes           The maximum number of bytes held by the cache
+     * @param maxEntries         The maximum number of entries held by the cache
+     * @param maxValueSize       The size in bytes above which values are not cached
+     */
+    public DhtCache(long timeToLive, long negativeTimeToLive, long maxBytes, int maxEntries, long maxValueSize) {
+        this(timeToLive, negativeTimeToLive, maxBytes, maxEntries, maxValueSize, System::currentTimeMillis);
+    }
+
+    /**
+     * @param timeToLive         The time to live for all path elements
+     * @param negativeTimeToLive The time to live for path elements known to not exist. Zero disables negative caching
+     * @param maxBytes           The maximum number of bytes held by the cache
+     * @param maxEntries         The maximum number of entries held by the cache
+     * @param maxValueSize       The size in bytes above which values are not cached
+     * @param clock              The source of the current time in milliseconds, e.g. {@link CoarseClock#getDefault()}
+     */
+    public DhtCache(long timeToLive, long negativeTimeToLive, long maxBytes, int maxEntries, long maxValueSize, LongSupplier clock) {
+        this(timeToLive, negativeTimeToLive, 0L, maxBytes, maxEntries, maxValueSize, clock);
+    }
+
+    /**
+     * Creates a cache which retains expired values for the given time, so that values
+     * which have not changed in the meantime can be revalidated instead of being fetched again
+     *
+     * @param timeToLive         The time to live for all path elements
+     * @param negativeTimeToLive The time to live for path elements known to not exist. Zero disables negative caching
+     * @param staleTimeToLive    The time for which expired values are retained for revalidation. Zero disables revalidation
+     * @param maxBytes           The maximum number of bytes held by the cache
+     * @param maxEntries         The maximum number of entries held by the cache
+     * @param maxValueSize       The size in bytes above which values are not cached
+     * @param clock              The source of the current time in milliseconds, e.g. {@link CoarseClock#getDefault()}
+     */
+    public DhtCache(long timeToLive, long negativeTimeToLive, long staleTimeToLive, long maxBytes, int maxEntries, long maxValueSize, LongSupplier clock) {
+        if (maxBytes < 0 || maxEntries < 0 || maxValueSize < 0 || staleTimeToLive < 0) {
+            throw new IllegalArgumentException("Cache limits must not be negative");
+        }
+
         this.timeToLive = timeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+        this.staleTimeToLive = staleTimeToLive;
+        this.maxBytes = maxBytes;
+        this.maxEntries = maxEntries;
+        this.maxValueSize = Math.min(maxValueSize, maxBytes);
+        this.clock = clock;
         this.cache = new ConcurrentHashMap<>();
+        this.probation = new ConcurrentLinkedQueue<>();
+        this.protectedSegment = new ConcurrentLinkedQueue<>();
+        this.protectedQueued = new AtomicInteger();
+        this.usedBytes = new AtomicLong();
+        this.usedEntries = new AtomicInteger();
+        this.protectedBytes = new AtomicLong();
+        this.protectedEntries = new AtomicInteger();
+        this.staleEntries = new AtomicInteger();
+        this.evictionLock = new ReentrantLock();
+        this.missing = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.savedLookups = new LongAdder();
+        this.puts = new LongAdder();
+        this.sizeEvictions = new LongAdder();
+        this.expiryEvictions = new LongAdder();
+        this.expiredOnRead = new LongAdder();
+        this.expiries = new TimingWheel<>(SWEEP_INTERVAL, WHEEL_TICKS, clock.getAsLong());
+    }
+
+    @Override
+    public void put(DhtPathElement pathElement, byte[] bytes) {
+        this.put(pathElement, bytes, null);
     }
 
     @Override
-    public synchronized void put(DhtPathElement pathElement, byte[] bytes) {
-        this.cache.put(pathElement.getPath(), new Pair<>(System.currentTimeMillis() + timeToLive, bytes));
+    public void put(DhtPathElement pathElement, byte[] bytes, String version) {
+        this.put(pathElement, bytes, version, this.timeToLiveOf(pathElement, bytes, version));
     }
 
     @Override
-    public synchronized byte[] get(DhtPathElement pathElement) {
-        long now = System.currentTimeMillis();
+    public void put(DhtPathElement pathElement, byte[] bytes, String version, long timeToLive) {
+        String path = pathElement.getPath();
 
-        Pair<Long, byte[]> pair = this.cache.get(pathElement.getPath());
+        this.removeMissing(path);
 
-        if (null != pair && pair.getFirst() > now) {
-            return pair.getSecond();
+        if (bytes.length > this.maxValueSize || this.maxEntries == 0 || timeToLive <= 0) {
+            // bypass the cache but do not keep an outdated value
+            this.remove(path);
+            return;
         }
 
-        return null;
+        // admit the value only if it fits without displacing protected entries
+        if (bytes.length > this.maxBytes - this.protectedBytes.get() || this.protectedEntries.get() >= this.maxEntries) {
+            this.remove(path);
+            return;
+        }
+
+        if (! this.reserve(bytes.length)) {
+            this.remove(path);
+            return;
+        }
+
+        Entry entry = new Entry(path, timeToLive, this.clock.getAsLong() + timeToLive, bytes, version);
+        // scheduled before the entry is visible, so that it is cancelled once the entry is removed
+        this.scheduleExpiry(entry);
+
+        Entry previous = this.cache.put(path, entry);
+        if (null != previous) {
+            this.release(previous);
+        }
+
+        this.probation.add(entry);
+        this.puts.increment();
+
+        if (this.staleEntries.get() > Math.max(64, this.usedEntries.get())) {
+            this.purgeStaleEntries();
+        }
+    }
+
+    /**
+     * Returns the time to live of the given value according to the policy of this cache
+     *
+     * @param pathElement The path element of the value
+     * @param bytes       The value
+     * @param version     The version of the value or null, if unknown
+     *
+     * @return The time to live in milliseconds
+     */
+    protected long timeToLiveOf(DhtPathElement pathElement, byte[] bytes, String version) {
+        ITtlPolicy ttlPolicy = this.ttlPolicy;
+
+        return (null == ttlPolicy) ? this.timeToLive : ttlPolicy.getTimeToLive(pathElement, bytes, version, this.timeToLive);
+    }
+
+    @Override
+    public byte[] get(DhtPathElement pathElement) {
+        String path = pathElement.getPath();
+
+        Entry entry = this.cache.get(path);
+
+        if (null == entry) {
+            this.misses.increment();
+            return null;
+        }
+
+        long now = this.clock.getAsLong();
+
+        if (entry.expiry <= now) {
+            // keep stale entries for revalidation
+            if (entry.expiry + this.staleTimeToLive <= now && this.cache.remove(path, entry)) {
+                this.release(entry);
+            }
+
+            this.expiredOnRead.increment();
+            this.misses.increment();
+            return null;
+        }
+
+        // avoid writing the shared field if not required
+        if (! entry.referenced) {
+            entry.referenced = true;
+        }
+
+        this.hits.increment();
+
+        return entry.bytes;
+    }
+
+    @Override
+    public VersionedValue getStale(DhtPathElement pathElement) {
+        Entry entry = this.cache.get(pathElement.getPath());
+
+        if (null == entry || entry.expiry + this.staleTimeToLive <= this.clock.getAsLong()) {
+            return null;
+        }
+
+        return new VersionedValue(entry.bytes, entry.version);
+    }
+
+    @Override
+    public boolean revalidate(DhtPathElement pathElement, String cachedVersion, String currentVersion) {
+        String path = pathElement.getPath();
+        Entry entry = this.cache.get(path);
+
+        if (null == entry || null == entry.version || ! entry.version.equals(cachedVersion)) {
+            // replaced in the meantime
+            return false;
+        }
+
+        if (cachedVersion.equals(currentVersion)) {
+            entry.expiry = this.clock.getAsLong() + entry.timeToLive;
+            entry.accesses.set(0);
+            this.scheduleExpiry(entry);
+
+            return true;
+        }
+
+        if (this.cache.remove(path, entry)) {
+            this.release(entry);
+        }
+
+        return false;
     }
 
     @Override
-    public synchronized void clear(DhtPathElement pathElement) {
-        this.cache.remove(pathElement.getPath());
+    public boolean shouldRefresh(DhtPathElement pathElement, double refreshRatio, int minAccesses) {
+        Entry entry = this.cache.get(pathElement.getPath());
+
+        if (null == entry) {
+            return false;
+        }
+
+        long remaining = entry.expiry - this.clock.getAsLong();
+        if (remaining <= 0 || remaining > refreshRatio * entry.timeToLive) {
+            return false;
+        }
+
+        // only the read reaching the threshold requests the refresh
+        return entry.accesses.incrementAndGet() == Math.max(1, minAccesses);
     }
 
     @Override
-    public synchronized void clear() {
-        this.cache.clear();
+    public void putMissing(DhtPathElement pathElement) {
+        String path = pathElement.getPath();
+
+        this.remove(path);
+
+        if (this.negativeTimeToLive <= 0 || this.maxEntries == 0) {
+            this.removeMissing(path);
+            return;
+        }
+
+        long expiry = this.clock.getAsLong() + this.negativeTimeToLive;
+
+        TimingWheel.Timeout<String> previous = this.missing.put(path, this.expiries.schedule(path, expiry));
+        if (null != previous) {
+            previous.cancel();
+        }
+
+        // negative entries share the entry limit but are not accounted in the segments
+        Iterator<TimingWheel.Timeout<String>> iterator = this.missing.values().iterator();
+        while (this.missing.size() > this.maxEntries && iterator.hasNext()) {
+            TimingWheel.Timeout<String> timeout = iterator.next();
+            iterator.remove();
+            timeout.cancel();
+        }
+    }
+
+    @Override
+    public boolean isMissing(DhtPathElement pathElement) {
+        String path = pathElement.getPath();
+        TimingWheel.Timeout<String> timeout = this.missing.get(path);
+
+        if (null == timeout) {
+            return false;
+        }
+
+        if (timeout.getDeadline() > this.clock.getAsLong()) {
+            this.savedLookups.increment();
+            return true;
+        }
+
+        if (this.missing.remove(path, timeout)) {
+            timeout.cancel();
+        }
+
+        return false;
+    }
+
+    @Override
+    public long getSavedLookups() {
+        return this.savedLookups.sum();
+    }
+
+    @Override
+    public void setTtlPolicy(ITtlPolicy ttlPolicy) {
+        this.ttlPolicy = ttlPolicy;
+    }
+
+    @Override
+    public DhtCacheStats getStats() {
+        return new DhtCacheStats(
+                this.hits.sum(),
+                this.misses.sum(),
+                this.savedLookups.sum(),
+                this.puts.sum(),
+                this.sizeEvictions.sum(),
+                this.expiryEvictions.sum(),
+                this.expiredOnRead.sum(),
+                this.usedEntries.get(),
+                this.usedBytes.get()
+        );
+    }
+
+    @Override
+    public void clear(DhtPathElement pathElement) {
+        this.remove(pathElement.getPath());
+        this.removeMissing(pathElement.getPath());
+    }
+
+    @Override
+    public void clear() {
+        for (String path : this.cache.keySet()) {
+            this.remove(path);
+        }
+
+        this.missing.clear();
+        this.expiries.clear();
+        this.purgeStaleEntries();
+    }
+
+    /**
+     * Starts removing expired entries periodically on the shared {@link CacheScheduler}
+     */
+    public void startSweeper() {
+        this.startSweeper(CacheScheduler.getDefault());
+    }
+
+    /**
+     * Starts removing expired entries periodically on the given scheduler.
+     * The sweeper does not keep the cache from being garbage collected
+     * and stops once the cache has been collected.
+     *
+     * @param scheduler The scheduler to run the sweeper on
+     */
+    public synchronized void startSweeper(ScheduledExecutorService scheduler) {
+        if (null != this.sweeper) {
+            return;
+        }
+
+        this.sweeper = ExpirySweeper.start(scheduler, this, DhtCache::sweep, SWEEP_INTERVAL);
+    }
+
+    /**
+     * Stops removing expired entries in the background
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (null != this.sweeper) {
+            this.sweeper.cancel(false);
+            this.sweeper = null;
+        }
+    }
+
+    /**
+     * Removes all entries and negative entries which have expired
+     *
+     * @return The number of expiry times which have passed, including those of already replaced entries
+     */
+    public synchronized int sweep() {
+        return this.expiries.advance(this.clock.getAsLong(), this::expire);
+    }
+
+    /**
+     * Returns the number of bytes currently held by the cache
+     *
+     * @return The number of cached bytes
+     */
+    public long getSize() {
+        return this.usedBytes.get();
+    }
+
+    /**
+     * Returns the number of values currently held by the cache
+     *
+     * @return The number of cached values
+     */
+    public int getEntryCount() {
+        return this.usedEntries.get();
+    }
+
+    /**
+     * Returns the number of reads answered by the cache
+     *
+     * @return The number of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of reads which found no valid value in the cache
+     *
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Removes the entry and negative entry of the given path,
+     * if they expire not later than the given deadline
+     *
+     * @param path     The path to expire
+     * @param deadline The passed expiry time scheduled for the path
+     */
+    protected void expire(String path, long deadline) {
+        Entry entry = this.cache.get(path);
+
+        // entries put again or revalidated since have a later expiry time
+        if (null != entry && entry.expiry + this.staleTimeToLive <= deadline && this.cache.remove(path, entry)) {
+            this.release(entry);
+            this.expiryEvictions.increment();
+        }
+
+        TimingWheel.Timeout<String> missingTimeout = this.missing.get(path);
+
+        if (null != missingTimeout && missingTimeout.getDeadline() <= deadline) {
+            this.missing.remove(path, missingTimeout);
+        }
+    }
+
+    /**
+     * Schedules the expiry of the given entry and cancels the one scheduled before,
+     * so that the timing wheel holds a single deadline per entry
+     *
+     * @param entry The entry
+     */
+    protected void scheduleExpiry(Entry entry) {
+        TimingWheel.Timeout<String> previous = entry.timeout.getAndSet(this.expiries.schedule(entry.path, entry.expiry + this.staleTimeToLive));
+
+        if (null != previous) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Cancels the scheduled expiry of the given removed entry
+     *
+     * @param entry The entry
+     */
+    protected static void cancelExpiry(Entry entry) {
+        TimingWheel.Timeout<String> timeout = entry.timeout.getAndSet(null);
+
+        if (null != timeout) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Removes the negative entry of the given path, if any, and cancels its expiry
+     *
+     * @param path The path
+     */
+    protected void removeMissing(String path) {
+        TimingWheel.Timeout<String> timeout = this.missing.remove(path);
+
+        if (null != timeout) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Removes the entry of the given path, if any
+     *
+     * @param path The path to remove
+     */
+    protected void remove(String path) {
+        Entry entry = this.cache.remove(path);
+
+        if (null != entry) {
+            this.release(entry);
+        }
+    }
+
+    /**
+     * Releases the space of the given entry. Must only be called by
+     * the thread which removed the entry from the map.
+     *
+     * @param entry The removed entry
+     */
+    protected void release(Entry entry) {
+        int previousState = entry.state.getAndSet(REMOVED);
+
+        if (REMOVED == previousState) {
+            return;
+        }
+
+        cancelExpiry(entry);
+
+        if (PROTECTED == previousState) {
+            this.protectedBytes.addAndGet(- entry.bytes.length);
+            this.protectedEntries.decrementAndGet();
+        }
+
+        this.usedBytes.addAndGet(- entry.bytes.length);
+        this.usedEntries.decrementAndGet();
+        this.staleEntries.incrementAndGet();
+    }
+
+    /**
+     * Reserves space for a new entry of the given size, evicting entries if required
+     *
+     * @param length The size of the new entry
+     *
+     * @return True, if the space has been reserved
+     */
+    protected boolean reserve(int length) {
+        while (true) {
+            long bytes = this.usedBytes.get();
+
+            if (bytes + length <= this.maxBytes) {
+                if (this.usedBytes.compareAndSet(bytes, bytes + length)) {
+                    break;
+                }
+            } else if (! this.evict(length, 0)) {
+                return false;
+            }
+        }
+
+        while (true) {
+            int entries = this.usedEntries.get();
+
+            if (entries + 1 <= this.maxEntries) {
+                if (this.usedEntries.compareAndSet(entries, entries + 1)) {
+                    return true;
+                }
+            } else if (! this.evict(0, 1)) {
+                this.usedBytes.addAndGet(- length);
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Evicts entries until the given number of bytes and entries are available
+     *
+     * @param length  The number of bytes to make available
+     * @param entries The number of entries to make available
+     *
+     * @return True, if the space is available, false if no more entries could be evicted
+     */
+    protected boolean evict(int length, int entries) {
+        this.evictionLock.lock();
+
+        try {
+            this.demote();
+
+            while (this.usedBytes.get() + length > this.maxBytes || this.usedEntries.get() + entries > this.maxEntries) {
+                Entry entry = this.probation.poll();
+
+                if (null == entry) {
+                    return false;
+                }
+
+                if (REMOVED == entry.state.get()) {
+                    this.staleEntries.decrementAndGet();
+                    continue;
+                }
+
+                if (entry.referenced) {
+                    // read since inserted, move to the protected segment
+                    entry.referenced = false;
+
+                    if (entry.state.compareAndSet(PROBATION, PROTECTED)) {
+                        this.protectedBytes.addAndGet(entry.bytes.length);
+                        this.protectedEntries.incrementAndGet();
+                        this.protectedSegment.add(entry);
+                        this.protectedQueued.incrementAndGet();
+                        this.demote();
+                    } else {
+                        // removed concurrently and no longer queued
+                        this.staleEntries.decrementAndGet();
+                    }
+
+                    continue;
+                }
+
+                if (this.cache.remove(entry.path, entry)) {
+                    this.release(entry);
+                    this.sizeEvictions.increment();
+                }
+
+                // the entry is no longer queued
+                this.staleEntries.decrementAndGet();
+            }
+
+            return true;
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    /**
+     * Moves protected entries back to the probationary segment
+     * while the protected segment exceeds its share of the limits.
+     * Entries read since the last visit get a second chance.
+     */
+    protected void demote() {
+        long maxProtectedBytes = (long) (this.maxBytes * PROTECTED_RATIO);
+        int maxProtectedEntries = (int) (this.maxEntries * PROTECTED_RATIO);
+
+        // each entry is visited at most twice, since the first visit clears its reference
+        int visits = 2 * this.protectedQueued.get();
+
+        while ((this.protectedBytes.get() > maxProtectedBytes || this.protectedEntries.get() > maxProtectedEntries) && visits-- > 0) {
+            Entry entry = this.protectedSegment.poll();
+
+            if (null == entry) {
+                return;
+            }
+
+            this.protectedQueued.decrementAndGet();
+
+            if (REMOVED == entry.state.get()) {
+                this.staleEntries.decrementAndGet();
+                continue;
+            }
+
+            if (entry.referenced) {
+                entry.referenced = false;
+                this.protectedSegment.add(entry);
+                this.protectedQueued.incrementAndGet();
+                continue;
+            }
+
+            if (entry.state.compareAndSet(PROTECTED, PROBATION)) {
+                this.protectedBytes.addAndGet(- entry.bytes.length);
+                this.protectedEntries.decrementAndGet();
+                this.probation.add(entry);
+            } else {
+                this.staleEntries.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops removed entries from the queues, unless
+     * another thread is currently evicting
+     */
+    protected void purgeStaleEntries() {
+        if (! this.evictionLock.tryLock()) {
+            return;
+        }
+
+        try {
+            int purged = 0;
+
+            for (Iterator<Entry> iterator = this.probation.iterator(); iterator.hasNext(); ) {
+                if (REMOVED == iterator.next().state.get()) {
+                    iterator.remove();
+                    purged++;
+                }
+            }
+
+            int purgedProtected = 0;
+            for (Iterator<Entry> iterator = this.protectedSegment.iterator(); iterator.hasNext(); ) {
+                if (REMOVED == iterator.next().state.get()) {
+                    iterator.remove();
+                    purgedProtected++;
+                }
+            }
+
+            this.protectedQueued.addAndGet(- purgedProtected);
+            purged += purgedProtected;
+
+            this.staleEntries.addAndGet(- purged);
+        } finally {
+            this.evictionLock.unlock();
+        }
     }
 }
@@ -0,0 +1,31 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+/**
+ * The management interface exposing the statistics
+ * of an {@link IDhtCache} through JMX.
+ * See {@link DhtCacheStats} for the meaning of the attributes.
+ */
+public interface DhtCacheMXBean {
+
+    long getHits();
+
+    long getMisses();
+
+    long getNegativeHits();
+
+    long getPuts();
+
+    long getSizeEvictions();
+
+    long getExpiryEvictions();
+
+    long getExpiredOnRead();
+
+    long getEntryCount();
+
+    long getSize();
+
+    double getHitRatio();
+
+    double getAverageEntrySize();
+}
@@ -0,0 +1,119 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Exposes the statistics of an {@link IDhtCache} as MBean
+ * of the platform MBean server. Each attribute is read from
+ * a new snapshot of the statistics of the cache.
+ */
+public class DhtCacheMonitor implements DhtCacheMXBean {
+
+    /**
+     * The JMX domain of all registered caches
+     */
+    public static final String DOMAIN = "org.rmatil.sync.persistence";
+
+    protected final IDhtCache cache;
+
+    /**
+     * @param cache The cache to expose
+     */
+    public DhtCacheMonitor(IDhtCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Registers a monitor of the given cache at the platform MBean server
+     *
+     * @param cache The cache to expose
+     * @param name  The name distinguishing the cache from others
+     *
+     * @return The object name under which the monitor is registered
+     *
+     * @throws JMException If the name is invalid or already in use
+     */
+    public static ObjectName register(IDhtCache cache, String name)
+            throws JMException {
+        ObjectName objectName = new ObjectName(DOMAIN + ":type=DhtCache,name=" + ObjectName.quote(name));
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        server.registerMBean(new DhtCacheMonitor(cache), objectName);
+
+        return objectName;
+    }
+
+    /**
+     * Removes the monitor registered under the given name, if still registered
+     *
+     * @param objectName The object name returned on registration
+     *
+     * @throws JMException If removing the monitor failed
+     */
+    public static void unregister(ObjectName objectName)
+            throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+    }
+
+    @Override
+    public long getHits() {
+        return this.cache.getStats().getHits();
+    }
+
+    @Override
+    public long getMisses() {
+        return this.cache.getStats().getMisses();
+    }
+
+    @Override
+    public long getNegativeHits() {
+        return this.cache.getStats().getNegativeHits();
+    }
+
+    @Override
+    public long getPuts() {
+        return this.cache.getStats().getPuts();
+    }
+
+    @Override
+    public long getSizeEvictions() {
+        return this.cache.getStats().getSizeEvictions();
+    }
+
+    @Override
+    public long getExpiryEvictions() {
+        return this.cache.getStats().getExpiryEvictions();
+    }
+
+    @Override
+    public long getExpiredOnRead() {
+        return this.cache.getStats().getExpiredOnRead();
+    }
+
+    @Override
+    public long getEntryCount() {
+        return this.cache.getStats().getEntryCount();
+    }
+
+    @Override
+    public long getSize() {
+        return this.cache.getStats().getSize();
+    }
+
+    @Override
+    public double getHitRatio() {
+        return this.cache.getStats().getHitRatio();
+    }
+
+    @Override
+    public double getAverageEntrySize() {
+        return this.cache.getStats().getAverageEntrySize();
+    }
+}
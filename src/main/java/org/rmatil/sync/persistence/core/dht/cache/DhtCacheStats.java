@@ -0,0 +1,127 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+/**
+ * An immutable snapshot of the counters of an {@link IDhtCache}.
+ * Counters are cumulative since the cache has been created, whereas
+ * the entry count and size describe the cache at the time of the snapshot.
+ */
+public class DhtCacheStats {
+
+    protected final long hits;
+
+    protected final long misses;
+
+    protected final long negativeHits;
+
+    protected final long puts;
+
+    protected final long sizeEvictions;
+
+    protected final long expiryEvictions;
+
+    protected final long expiredOnRead;
+
+    protected final long entryCount;
+
+    protected final long size;
+
+    /**
+     * @param hits            The number of reads answered by the cache
+     * @param misses          The number of reads which found no valid value in the cache
+     * @param negativeHits    The number of lookups answered by negative entries
+     * @param puts            The number of values stored in the cache
+     * @param sizeEvictions   The number of values evicted to stay within the limits of the cache
+     * @param expiryEvictions The number of expired values removed in the background
+     * @param expiredOnRead   The number of values found to be expired when read
+     * @param entryCount      The number of values currently held by the cache
+     * @param size            The number of bytes currently held by the cache
+     */
+    public DhtCacheStats(long hits, long misses, long negativeHits, long puts, long sizeEvictions, long expiryEvictions, long expiredOnRead, long entryCount, long size) {
+        this.hits = hits;
+        this.misses = misses;
+        this.negativeHits = negativeHits;
+        this.puts = puts;
+        this.sizeEvictions = sizeEvictions;
+        this.expiryEvictions = expiryEvictions;
+        this.expiredOnRead = expiredOnRead;
+        this.entryCount = entryCount;
+        this.size = size;
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns the number of reads which found no valid value in the cache,
+     * including those finding an expired value
+     *
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getNegativeHits() {
+        return negativeHits;
+    }
+
+    public long getPuts() {
+        return puts;
+    }
+
+    public long getSizeEvictions() {
+        return sizeEvictions;
+    }
+
+    public long getExpiryEvictions() {
+        return expiryEvictions;
+    }
+
+    public long getExpiredOnRead() {
+        return expiredOnRead;
+    }
+
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the share of reads answered by the cache
+     *
+     * @return The hit ratio between 0 and 1, or 0 if nothing has been read yet
+     */
+    public double getHitRatio() {
+        long reads = this.hits + this.misses;
+
+        return (0 == reads) ? 0 : (double) this.hits / reads;
+    }
+
+    /**
+     * Returns the average size of the values currently held by the cache
+     *
+     * @return The average size in bytes, or 0 if the cache is empty
+     */
+    public double getAverageEntrySize() {
+        return (0 == this.entryCount) ? 0 : (double) this.size / this.entryCount;
+    }
+
+    @Override
+    public String toString() {
+        return "DhtCacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", negativeHits=" + negativeHits +
+                ", puts=" + puts +
+                ", sizeEvictions=" + sizeEvictions +
+                ", expiryEvictions=" + expiryEvictions +
+                ", expiredOnRead=" + expiredOnRead +
+                ", entryCount=" + entryCount +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,63 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Periodically removes expired entries of a cache. The sweeper does
+ * not keep the cache from being garbage collected and stops once
+ * the cache has been collected.
+ *
+ * @param <C> The type of the cache
+ */
+public class ExpirySweeper<C> implements Runnable {
+
+    protected final WeakReference<C> cache;
+
+    protected final Consumer<C> sweep;
+
+    protected volatile Future<?> future;
+
+    protected ExpirySweeper(C cache, Consumer<C> sweep) {
+        this.cache = new WeakReference<>(cache);
+        this.sweep = sweep;
+    }
+
+    /**
+     * Starts sweeping the given cache periodically
+     *
+     * @param scheduler The scheduler to run the sweeper on
+     * @param cache     The cache to sweep
+     * @param sweep     Removes the expired entries of the cache
+     * @param interval  The interval in milliseconds between two sweeps
+     * @param <C>       The type of the cache
+     *
+     * @return The future of the sweeper, which cancels it
+     */
+    public static <C> ScheduledFuture<?> start(ScheduledExecutorService scheduler, C cache, Consumer<C> sweep, long interval) {
+        ExpirySweeper<C> sweeper = new ExpirySweeper<>(cache, sweep);
+        ScheduledFuture<?> future = scheduler.scheduleWithFixedDelay(sweeper, interval, interval, TimeUnit.MILLISECONDS);
+        sweeper.future = future;
+
+        return future;
+    }
+
+    @Override
+    public void run() {
+        C cache = this.cache.get();
+
+        if (null == cache) {
+            if (null != this.future) {
+                this.future.cancel(false);
+            }
+
+            return;
+        }
+
+        this.sweep.accept(cache);
+    }
+}
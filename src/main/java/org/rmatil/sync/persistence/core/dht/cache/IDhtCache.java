@@ -8,8 +8,10 @@ import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtStorageAdapter;
  * by classes which provide a cache layer to the {@link SecuredDhtStorageAdapter}
  * to reduce the load in the network.
  * <p>
- * The time to live should be equal for all elements in the cache,
- * whereas it is specified by the implementing class.
+ * The time to live of each element is determined by the implementing class when
+ * it is put, either as a default for all elements or per element by an {@link ITtlPolicy},
+ * unless a time to live is passed explicitly. Negative entries, i.e. path elements
+ * known to not exist, may use a different time to live.
  */
 public interface IDhtCache {
 
@@ -21,6 +23,29 @@ public interface IDhtCache {
      */
     void put(DhtPathElement pathElement, byte[] bytes);
 
+    /**
+     * Puts the given path element in the cache together with
+     * the version of the data, so that the data can be revalidated
+     * once expired instead of being fetched again
+     *
+     * @param pathElement The path element
+     * @param bytes       The associated data to cache
+     * @param version     The MD5 checksum of the data or null, if unknown
+     */
+    void put(DhtPathElement pathElement, byte[] bytes, String version);
+
+    /**
+     * Puts the given path element in the cache for the given time to live instead of
+     * the one the cache would determine, e.g. to keep the remaining time to live of
+     * data moved from another cache
+     *
+     * @param pathElement The path element
+     * @param bytes       The associated data to cache
+     * @param version     The MD5 checksum of the data or null, if unknown
+     * @param timeToLive  The time to live in milliseconds
+     */
+    void put(DhtPathElement pathElement, byte[] bytes, String version, long timeToLive);
+
     /**
      * Returns the data stored in the cache for the given
      * path element. If no associated data is found for the
@@ -33,7 +58,85 @@ public interface IDhtCache {
     byte[] get(DhtPathElement pathElement);
 
     /**
-     * Resets the content of the given path element
+     * Returns the data of the given path element regardless of whether
+     * it has expired, as long as it is retained for revalidation
+     *
+     * @param pathElement The path element from which to get the data
+     *
+     * @return The data with its version or null, if no data is retained for the path
+     */
+    VersionedValue getStale(DhtPathElement pathElement);
+
+    /**
+     * Revalidates the data of the given path element, if it is still cached with
+     * the given version: If the current version of the data equals it, the data is
+     * considered fresh for another time to live, otherwise it is removed.
+     *
+     * @param pathElement    The path element to revalidate
+     * @param cachedVersion  The version with which the data has been cached
+     * @param currentVersion The version of the data currently stored or null, if unknown
+     *
+     * @return True, if the cached data is fresh again
+     */
+    boolean revalidate(DhtPathElement pathElement, String cachedVersion, String currentVersion);
+
+    /**
+     * Counts a read of the given path element if the remaining time to live of its
+     * data is at most the given share of the time to live, and determines whether
+     * the data has been read often enough since to be refreshed ahead of its expiry.
+     * Returns true at most once until the data is put again or revalidated.
+     *
+     * @param pathElement  The path element which has been read
+     * @param refreshRatio The share of the time to live remaining from which on reads are counted
+     * @param minAccesses  The number of counted reads required to refresh the data
+     *
+     * @return True, if the data should be refreshed
+     */
+    boolean shouldRefresh(DhtPathElement pathElement, double refreshRatio, int minAccesses);
+
+    /**
+     * Remembers that nothing is stored at the given path element.
+     * Negative entries expire after their own time to live and are
+     * replaced by putting data for the path element.
+     *
+     * @param pathElement The path element which does not exist
+     */
+    void putMissing(DhtPathElement pathElement);
+
+    /**
+     * Checks whether the given path element is known to not exist.
+     * Each positive answer counts as saved lookup.
+     *
+     * @param pathElement The path element to check
+     *
+     * @return True, if a negative entry exists for the path element
+     */
+    boolean isMissing(DhtPathElement pathElement);
+
+    /**
+     * Returns the number of lookups which have been answered
+     * by negative entries instead of the network
+     *
+     * @return The number of saved lookups
+     */
+    long getSavedLookups();
+
+    /**
+     * Returns a snapshot of the statistics of the cache
+     *
+     * @return The statistics
+     */
+    DhtCacheStats getStats();
+
+    /**
+     * Sets the policy determining the time to live of values cached afterwards
+     *
+     * @param ttlPolicy The policy or null, to use the time to live the cache has been configured with
+     */
+    void setTtlPolicy(ITtlPolicy ttlPolicy);
+
+    /**
+     * Resets the content and the negative entry of the given path element
      *
      * @param pathElement The path element for which to reset the cache
      */
@@ -43,4 +146,10 @@ public interface IDhtCache {
      * Clears the whole cache
      */
     void clear();
+
+    /**
+     * Stops all background tasks of the cache and
+     * releases the resources held by it
+     */
+    void shutdown();
 }
@@ -0,0 +1,22 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+
+/**
+ * Determines how long a value is cached by an {@link IDhtCache},
+ * e.g. to keep rarely changing values longer than others.
+ */
+public interface ITtlPolicy {
+
+    /**
+     * Returns the time to live of the given value, which is about to be cached
+     *
+     * @param pathElement       The path element of the value
+     * @param bytes             The value
+     * @param version           The version of the value or null, if unknown
+     * @param defaultTimeToLive The time to live the cache has been configured with
+     *
+     * @return The time to live in milliseconds. Values with a time to live of zero or less are not cached
+     */
+    long getTimeToLive(DhtPathElement pathElement, byte[] bytes, String version, long defaultTimeToLive);
+}
@@ -0,0 +1,1019 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A cache which keeps the cached values outside of the Java heap,
+ * so that large caches do not prolong garbage collection pauses.
+ * Only small entries describing where a value is stored remain on the heap.
+ * <p>
+ * Values are stored in slabs of {@link OffHeapDhtCache#SLAB_SIZE} bytes allocated
+ * as direct byte buffers. Each slab is divided into slots of a single size class, i.e. a power
+ * of two between {@link OffHeapDhtCache#MIN_SLOT_SIZE} and the slab size, and a value is
+ * stored in a slot of the smallest fitting class. Slots of removed values are reused
+ * by later values of the same class, and slabs without any used slot are handed over
+ * to other classes. If no slot is available, the values of the same class are evicted
+ * in CLOCK order, giving values read since the last visit a second chance. A class
+ * without any value to evict takes over the least recently used slab of another class,
+ * so that the slabs follow the sizes of the values over time.
+ * Values larger than a slab bypass the cache.
+ * <p>
+ * Reading takes no lock: A value is copied optimistically and the copy is
+ * discarded if the slab has been written to meanwhile. Writes serialize on the cache.
+ * Returned arrays are always copies, so callers never observe reused slots.
+ */
+public class OffHeapDhtCache implements IDhtCache {
+
+    /**
+     * The size in bytes of each slab, which is also the largest value cached
+     */
+    public static final int SLAB_SIZE = 1024 * 1024;
+
+    /**
+     * The size in bytes of the smallest slot
+     */
+    public static final int MIN_SLOT_SIZE = 64;
+
+    /**
+     * The default number of bytes allocated for slabs
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * The maximum number of negative entries
+     */
+    public static final int MAX_NEGATIVE_ENTRIES = DhtCache.DEFAULT_MAX_ENTRIES;
+
+    protected static final int SIZE_CLASSES = Integer.numberOfTrailingZeros(SLAB_SIZE / MIN_SLOT_SIZE) + 1;
+
+    /**
+     * The location of a cached value
+     */
+    protected static class Entry {
+
+        protected final String path;
+
+        protected final int slab;
+
+        protected final int offset;
+
+        protected final int length;
+
+        /**
+         * The time to live the entry has been cached with
+         */
+        protected final long timeToLive;
+
+        /**
+         * Extended when the entry is revalidated
+         */
+        protected volatile long expiry;
+
+        protected final String version;
+
+        /**
+         * Set while holding the write lock of the slab once the slot may be reused
+         */
+        protected volatile boolean released;
+
+        protected volatile boolean referenced;
+
+        /**
+         * The number of reads close to the expiry of the entry
+         */
+        protected final AtomicInteger accesses;
+
+        /**
+         * The scheduled expiry of the entry, replaced when the entry is revalidated
+         */
+        protected final AtomicReference<TimingWheel.Timeout<String>> timeout;
+
+        protected Entry(String path, int slab, int offset, int length, long timeToLive, long expiry, String version) {
+            this.path = path;
+            this.slab = slab;
+            this.offset = offset;
+            this.length = length;
+            this.timeToLive = timeToLive;
+            this.expiry = expiry;
+            this.version = version;
+            this.accesses = new AtomicInteger();
+            this.timeout = new AtomicReference<>();
+        }
+    }
+
+    /**
+     * A direct buffer divided into slots of the same size
+     */
+    protected static class Slab {
+
+        protected final ByteBuffer buffer;
+
+        /**
+         * Guards the content of the buffer, allowing optimistic reads
+         */
+        protected final StampedLock lock;
+
+        protected int sizeClass;
+
+        protected int usedSlots;
+
+        /**
+         * The time in milliseconds a value of the slab has last been written or read
+         */
+        protected volatile long lastUse;
+
+        protected Slab(int sizeClass) {
+            this.buffer = ByteBuffer.allocateDirect(SLAB_SIZE);
+            this.lock = new StampedLock();
+            this.sizeClass = sizeClass;
+        }
+    }
+
+    /**
+     * The time to live for each element in the cache, unless a policy is set
+     */
+    protected long timeToLive;
+
+    /**
+     * Determines the time to live of each value, null to use {@link OffHeapDhtCache#timeToLive} for all
+     */
+    protected volatile ITtlPolicy ttlPolicy;
+
+    /**
+     * The time to live for each negative entry
+     */
+    protected long negativeTimeToLive;
+
+    /**
+     * The time for which expired entries are retained to be revalidated
+     */
+    protected long staleTimeToLive;
+
+    protected int maxSlabs;
+
+    /**
+     * The source of the current time in milliseconds
+     */
+    protected LongSupplier clock;
+
+    protected ConcurrentHashMap<String, Entry> cache;
+
+    protected AtomicReferenceArray<Slab> slabs;
+
+    protected int slabCount;
+
+    /**
+     * The free slots by size class, each encoded as slab index in the
+     * upper and offset in the lower 32 bits
+     */
+    protected ArrayDeque<Long>[] freeSlots;
+
+    /**
+     * The cached values by size class in the order visited by the eviction
+     */
+    protected ArrayDeque<Entry>[] clocks;
+
+    /**
+     * The number of cached values by size class
+     */
+    protected int[] classEntries;
+
+    protected AtomicLong storedBytes;
+
+    protected AtomicInteger entryCount;
+
+    /**
+     * The scheduled expiry of negative entries by path
+     */
+    protected ConcurrentHashMap<String, TimingWheel.Timeout<String>> missing;
+
+    protected LongAdder hits;
+
+    protected LongAdder misses;
+
+    protected LongAdder savedLookups;
+
+    protected LongAdder puts;
+
+    protected LongAdder sizeEvictions;
+
+    protected LongAdder expiryEvictions;
+
+    protected LongAdder expiredOnRead;
+
+    protected TimingWheel<String> expiries;
+
+    protected ScheduledFuture<?> sweeper;
+
+    /**
+     * @param timeToLive The time to live for all path elements
+     */
+    public OffHeapDhtCache(long timeToLive) {
+        this(timeToLive, Math.min(timeToLive, DhtCache.DEFAULT_NEGATIVE_TIME_TO_LIVE), DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param timeToLive         The time to live for all path elements
+     * @param negativeTimeToLive The time to live for path elements known to not exist. Zero disables negative caching
+     * @param maxBytes           The maximum number of bytes allocated off-heap, rounded down to whole slabs
+     */
+    public OffHeapDhtCache(long timeToLive, long negativeTimeToLive, long maxBytes) {
+        this(timeToLive, negativeTimeToLive, maxBytes, System::currentTimeMillis);
+    }
+
+    /**
+     * @param timeToLive         The time to live for all path elements
+     * @param negativeTimeToLive The time to live for path elements known to not exist. Zero disables negative caching
+     * @param maxBytes           The maximum number of bytes allocated off-heap, rounded down to whole slabs
+     * @param clock              The source of the current time in milliseconds
+     */
+    public OffHeapDhtCache(long timeToLive, long negativeTimeToLive, long maxBytes, LongSupplier clock) {
+        this(timeToLive, negativeTimeToLive, 0L, maxBytes, clock);
+    }
+
+    /**
+     * @param timeToLive         The time to live for all path elements
+     * @param negativeTimeToLive The time to live for path elements known to not exist. Zero disables negative caching
+     * @param staleTimeToLive    The time for which expired values are retained for revalidation. Zero disables revalidation
+     * @param maxBytes           The maximum number of bytes allocated off-heap, rounded down to whole slabs
+     * @param clock              The source of the current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public OffHeapDhtCache(long timeToLive, long negativeTimeToLive, long staleTimeToLive, long maxBytes, LongSupplier clock) {
+        if (maxBytes < 0 || staleTimeToLive < 0) {
+            throw new IllegalArgumentException("Cache limits must not be negative");
+        }
+
+        this.timeToLive = timeToLive;
+        this.negativeTimeToLive = negativeTimeToLive;
+        this.staleTimeToLive = staleTimeToLive;
+        this.maxSlabs = (int) Math.min(Integer.MAX_VALUE, maxBytes / SLAB_SIZE);
+        this.clock = clock;
+        this.cache = new ConcurrentHashMap<>();
+        this.slabs = new AtomicReferenceArray<>(this.maxSlabs);
+        this.slabCount = 0;
+        this.freeSlots = new ArrayDeque[SIZE_CLASSES];
+        this.clocks = new ArrayDeque[SIZE_CLASSES];
+        this.classEntries = new int[SIZE_CLASSES];
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            this.freeSlots[i] = new ArrayDeque<>();
+            this.clocks[i] = new ArrayDeque<>();
+        }
+        this.storedBytes = new AtomicLong();
+        this.entryCount = new AtomicInteger();
+        this.missing = new ConcurrentHashMap<>();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.savedLookups = new LongAdder();
+        this.puts = new LongAdder();
+        this.sizeEvictions = new LongAdder();
+        this.expiryEvictions = new LongAdder();
+        this.expiredOnRead = new LongAdder();
+        this.expiries = new TimingWheel<>(DhtCache.SWEEP_INTERVAL, 512, clock.getAsLong());
+    }
+
+    @Override
+    public void put(DhtPathElement pathElement, byte[] bytes) {
+        this.put(pathElement, bytes, null);
+    }
+
+    @Override
+    public void put(DhtPathElement pathElement, byte[] bytes, String version) {
+        this.put(pathElement, bytes, version, this.timeToLiveOf(pathElement, bytes, version));
+    }
+
+    @Override
+    public void put(DhtPathElement pathElement, byte[] bytes, String version, long timeToLive) {
+        String path = pathElement.getPath();
+
+        this.removeMissing(path);
+
+        synchronized (this) {
+            this.remove(path);
+
+            if (bytes.length > SLAB_SIZE || timeToLive <= 0) {
+                // bypass the cache
+                return;
+            }
+
+            int sizeClass = sizeClassOf(bytes.length);
+            Long slot = this.allocate(sizeClass);
+
+            if (null == slot) {
+                return;
+            }
+
+            int slabIndex = (int) (slot >>> 32);
+            int offset = (int) slot.longValue();
+            Slab slab = this.slabs.get(slabIndex);
+
+            long stamp = slab.lock.writeLock();
+            try {
+                ByteBuffer buffer = slab.buffer.duplicate();
+                buffer.position(offset);
+                buffer.put(bytes);
+            } finally {
+                slab.lock.unlockWrite(stamp);
+            }
+
+            Entry entry = new Entry(path, slabIndex, offset, bytes.length, timeToLive, this.clock.getAsLong() + timeToLive, version);
+
+            slab.usedSlots++;
+            slab.lastUse = entry.expiry - timeToLive;
+            this.cache.put(path, entry);
+            this.clocks[sizeClass].add(entry);
+            this.classEntries[sizeClass]++;
+            this.storedBytes.addAndGet(bytes.length);
+            this.entryCount.incrementAndGet();
+            this.scheduleExpiry(entry);
+            this.puts.increment();
+        }
+    }
+
+    /**
+     * Returns the time to live of the given value according to the policy of this cache
+     *
+     * @param pathElement The path element of the value
+     * @param bytes       The value
+     * @param version     The version of the value or null, if unknown
+     *
+     * @return The time to live in milliseconds
+     */
+    protected long timeToLiveOf(DhtPathElement pathElement, byte[] bytes, String version) {
+        ITtlPolicy ttlPolicy = this.ttlPolicy;
+
+        return (null == ttlPolicy) ? this.timeToLive : ttlPolicy.getTimeToLive(pathElement, bytes, version, this.timeToLive);
+    }
+
+    @Override
+    public byte[] get(DhtPathElement pathElement) {
+        String path = pathElement.getPath();
+        Entry entry = this.cache.get(path);
+
+        if (null == entry) {
+            this.misses.increment();
+            return null;
+        }
+
+        long now = this.clock.getAsLong();
+
+        if (entry.expiry <= now) {
+            // keep stale entries for revalidation
+            if (entry.expiry + this.staleTimeToLive <= now) {
+                synchronized (this) {
+                    if (this.cache.remove(path, entry)) {
+                        this.free(entry);
+                    }
+                }
+            }
+
+            this.expiredOnRead.increment();
+            this.misses.increment();
+            return null;
+        }
+
+        byte[] bytes = this.read(entry);
+
+        if (null == bytes) {
+            this.misses.increment();
+            return null;
+        }
+
+        if (! entry.referenced) {
+            entry.referenced = true;
+        }
+
+        this.markUsed(entry, now);
+        this.hits.increment();
+
+        return bytes;
+    }
+
+    @Override
+    public VersionedValue getStale(DhtPathElement pathElement) {
+        Entry entry = this.cache.get(pathElement.getPath());
+
+        if (null == entry || entry.expiry + this.staleTimeToLive <= this.clock.getAsLong()) {
+            return null;
+        }
+
+        byte[] bytes = this.read(entry);
+
+        return (null == bytes) ? null : new VersionedValue(bytes, entry.version);
+    }
+
+    @Override
+    public boolean revalidate(DhtPathElement pathElement, String cachedVersion, String currentVersion) {
+        String path = pathElement.getPath();
+        Entry entry = this.cache.get(path);
+
+        if (null == entry || null == entry.version || ! entry.version.equals(cachedVersion)) {
+            // replaced in the meantime
+            return false;
+        }
+
+        if (cachedVersion.equals(currentVersion)) {
+            entry.expiry = this.clock.getAsLong() + entry.timeToLive;
+            entry.accesses.set(0);
+            this.scheduleExpiry(entry);
+
+            return true;
+        }
+
+        synchronized (this) {
+            if (this.cache.remove(path, entry)) {
+                this.free(entry);
+            }
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean shouldRefresh(DhtPathElement pathElement, double refreshRatio, int minAccesses) {
+        Entry entry = this.cache.get(pathElement.getPath());
+
+        if (null == entry) {
+            return false;
+        }
+
+        long remaining = entry.expiry - this.clock.getAsLong();
+        if (remaining <= 0 || remaining > refreshRatio * entry.timeToLive) {
+            return false;
+        }
+
+        // only the read reaching the threshold requests the refresh
+        return entry.accesses.incrementAndGet() == Math.max(1, minAccesses);
+    }
+
+    @Override
+    public void putMissing(DhtPathElement pathElement) {
+        String path = pathElement.getPath();
+
+        synchronized (this) {
+            this.remove(path);
+        }
+
+        if (this.negativeTimeToLive <= 0) {
+            this.removeMissing(path);
+            return;
+        }
+
+        long expiry = this.clock.getAsLong() + this.negativeTimeToLive;
+
+        TimingWheel.Timeout<String> previous = this.missing.put(path, this.expiries.schedule(path, expiry));
+        if (null != previous) {
+            previous.cancel();
+        }
+
+        Iterator<TimingWheel.Timeout<String>> iterator = this.missing.values().iterator();
+        while (this.missing.size() > MAX_NEGATIVE_ENTRIES && iterator.hasNext()) {
+            TimingWheel.Timeout<String> timeout = iterator.next();
+            iterator.remove();
+            timeout.cancel();
+        }
+    }
+
+    @Override
+    public boolean isMissing(DhtPathElement pathElement) {
+        String path = pathElement.getPath();
+        TimingWheel.Timeout<String> timeout = this.missing.get(path);
+
+        if (null == timeout) {
+            return false;
+        }
+
+        if (timeout.getDeadline() > this.clock.getAsLong()) {
+            this.savedLookups.increment();
+            return true;
+        }
+
+        if (this.missing.remove(path, timeout)) {
+            timeout.cancel();
+        }
+
+        return false;
+    }
+
+    @Override
+    public long getSavedLookups() {
+        return this.savedLookups.sum();
+    }
+
+    @Override
+    public void setTtlPolicy(ITtlPolicy ttlPolicy) {
+        this.ttlPolicy = ttlPolicy;
+    }
+
+    @Override
+    public DhtCacheStats getStats() {
+        return new DhtCacheStats(
+                this.hits.sum(),
+                this.misses.sum(),
+                this.savedLookups.sum(),
+                this.puts.sum(),
+                this.sizeEvictions.sum(),
+                this.expiryEvictions.sum(),
+                this.expiredOnRead.sum(),
+                this.entryCount.get(),
+                this.storedBytes.get()
+        );
+    }
+
+    @Override
+    public synchronized void clear(DhtPathElement pathElement) {
+        this.remove(pathElement.getPath());
+        this.removeMissing(pathElement.getPath());
+    }
+
+    @Override
+    public synchronized void clear() {
+        for (String path : this.cache.keySet()) {
+            this.remove(path);
+        }
+
+        this.missing.clear();
+        this.expiries.clear();
+    }
+
+    /**
+     * Starts removing expired entries periodically on the shared {@link CacheScheduler}
+     */
+    public void startSweeper() {
+        this.startSweeper(CacheScheduler.getDefault());
+    }
+
+    /**
+     * Starts removing expired entries periodically on the given scheduler
+     *
+     * @param scheduler The scheduler to run the sweeper on
+     */
+    public synchronized void startSweeper(ScheduledExecutorService scheduler) {
+        if (null != this.sweeper) {
+            return;
+        }
+
+        this.sweeper = ExpirySweeper.start(scheduler, this, OffHeapDhtCache::sweep, DhtCache.SWEEP_INTERVAL);
+    }
+
+    /**
+     * Removes all entries and negative entries which have expired
+     *
+     * @return The number of expiry times which have passed, including those of already replaced entries
+     */
+    public synchronized int sweep() {
+        return this.expiries.advance(this.clock.getAsLong(), this::expire);
+    }
+
+    /**
+     * Stops the sweeper and drops all slabs, so that their memory
+     * is released once the buffers are garbage collected
+     */
+    @Override
+    public synchronized void shutdown() {
+        if (null != this.sweeper) {
+            this.sweeper.cancel(false);
+            this.sweeper = null;
+        }
+
+        this.clear();
+
+        for (int i = 0; i < this.slabCount; i++) {
+            this.slabs.set(i, null);
+        }
+
+        this.slabCount = 0;
+
+        for (int i = 0; i < SIZE_CLASSES; i++) {
+            this.freeSlots[i].clear();
+            this.clocks[i].clear();
+            this.classEntries[i] = 0;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of all cached values
+     *
+     * @return The number of cached bytes
+     */
+    public long getSize() {
+        return this.storedBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes allocated off-heap for slabs
+     *
+     * @return The number of allocated bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return (long) this.slabCount * SLAB_SIZE;
+    }
+
+    /**
+     * Returns the number of values currently held by the cache
+     *
+     * @return The number of cached values
+     */
+    public int getEntryCount() {
+        return this.entryCount.get();
+    }
+
+    /**
+     * Returns the number of reads answered by the cache
+     *
+     * @return The number of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of reads which found no valid value in the cache
+     *
+     * @return The number of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the size class of the smallest slots fitting the given length
+     *
+     * @param length The length of the value
+     *
+     * @return The size class
+     */
+    protected static int sizeClassOf(int length) {
+        int slotSize = MIN_SLOT_SIZE;
+        int sizeClass = 0;
+        while (slotSize < length) {
+            slotSize <<= 1;
+            sizeClass++;
+        }
+
+        return sizeClass;
+    }
+
+    protected static int slotSizeOf(int sizeClass) {
+        return MIN_SLOT_SIZE << sizeClass;
+    }
+
+    /**
+     * Copies the value of the given entry from its slot
+     *
+     * @param entry The entry to read
+     *
+     * @return The value or null, if the slot has been released in the meantime
+     */
+    protected byte[] read(Entry entry) {
+        Slab slab = this.slabs.get(entry.slab);
+
+        if (null == slab) {
+            // the cache has been shut down
+            return null;
+        }
+
+        byte[] bytes = new byte[entry.length];
+
+        long stamp = slab.lock.tryOptimisticRead();
+        boolean released = entry.released;
+        if (! released) {
+            copy(slab, entry, bytes);
+        }
+
+        if (! slab.lock.validate(stamp)) {
+            // the slab has been written to while copying
+            stamp = slab.lock.readLock();
+            try {
+                released = entry.released;
+                if (! released) {
+                    copy(slab, entry, bytes);
+                }
+            } finally {
+                slab.lock.unlockRead(stamp);
+            }
+        }
+
+        return released ? null : bytes;
+    }
+
+    protected static void copy(Slab slab, Entry entry, byte[] target) {
+        ByteBuffer buffer = slab.buffer.duplicate();
+        buffer.position(entry.offset);
+        buffer.get(target, 0, entry.length);
+    }
+
+    /**
+     * Records the use of the slab of the given entry
+     *
+     * @param entry The entry which has been read
+     * @param now   The current time in milliseconds
+     */
+    protected void markUsed(Entry entry, long now) {
+        Slab slab = this.slabs.get(entry.slab);
+
+        // avoid contended writes for slabs read repeatedly within the same millisecond
+        if (null != slab && slab.lastUse < now) {
+            slab.lastUse = now;
+        }
+    }
+
+    /**
+     * Returns a free slot of the given size class, adding or reassigning
+     * a slab or evicting a value of the same class if required.
+     * If the class has no value to evict, the least recently
+     * used slab of another class is reassigned.
+     * Must be called while holding the lock of the cache.
+     *
+     * @param sizeClass The size class of the slot
+     *
+     * @return The encoded slot or null, if no slot could be made available
+     */
+    protected Long allocate(int sizeClass) {
+        ArrayDeque<Long> free = this.freeSlots[sizeClass];
+
+        if (free.isEmpty() && ! this.addSlab(sizeClass) && ! this.reassignEmptySlab(sizeClass)) {
+            this.evict(sizeClass);
+
+            if (free.isEmpty()) {
+                this.reassignLeastRecentlyUsedSlab(sizeClass);
+            }
+        }
+
+        return free.poll();
+    }
+
+    protected boolean addSlab(int sizeClass) {
+        if (this.slabCount >= this.maxSlabs) {
+            return false;
+        }
+
+        this.slabs.set(this.slabCount, new Slab(sizeClass));
+        this.addSlots(this.slabCount, sizeClass);
+        this.slabCount++;
+
+        return true;
+    }
+
+    /**
+     * Hands over a slab without used slots from another size class
+     *
+     * @param sizeClass The size class to hand the slab over to
+     *
+     * @return True, if a slab has been reassigned
+     */
+    protected boolean reassignEmptySlab(int sizeClass) {
+        for (int i = 0; i < this.slabCount; i++) {
+            Slab slab = this.slabs.get(i);
+
+            if (0 != slab.usedSlots || sizeClass == slab.sizeClass) {
+                continue;
+            }
+
+            this.reassign(i, sizeClass);
+
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * Evicts all values of the least recently used slab of another
+     * size class and hands the slab over to the given class
+     *
+     * @param sizeClass The size class to hand the slab over to
+     *
+     * @return True, if a slab has been reassigned
+     */
+    protected boolean reassignLeastRecentlyUsedSlab(int sizeClass) {
+        int slabIndex = -1;
+        long lastUse = Long.MAX_VALUE;
+
+        for (int i = 0; i < this.slabCount; i++) {
+            Slab slab = this.slabs.get(i);
+
+            if (sizeClass != slab.sizeClass && slab.lastUse < lastUse) {
+                slabIndex = i;
+                lastUse = slab.lastUse;
+            }
+        }
+
+        if (- 1 == slabIndex) {
+            return false;
+        }
+
+        Slab slab = this.slabs.get(slabIndex);
+
+        // collect first, since freeing may drop released entries from the clock
+        List<Entry> evicted = new ArrayList<>();
+        for (Entry entry : this.clocks[slab.sizeClass]) {
+            if (! entry.released && slabIndex == entry.slab) {
+                evicted.add(entry);
+            }
+        }
+
+        for (Entry entry : evicted) {
+            if (this.cache.remove(entry.path, entry)) {
+                this.free(entry);
+                this.sizeEvictions.increment();
+            }
+        }
+
+        if (0 != slab.usedSlots) {
+            return false;
+        }
+
+        this.reassign(slabIndex, sizeClass);
+
+        return true;
+    }
+
+    /**
+     * Hands over the given slab without used slots to the given size class
+     *
+     * @param slabIndex The index of the slab
+     * @param sizeClass The size class to hand the slab over to
+     */
+    protected void reassign(int slabIndex, int sizeClass) {
+        Slab slab = this.slabs.get(slabIndex);
+
+        final long index = slabIndex;
+        this.freeSlots[slab.sizeClass].removeIf(slot -> (slot >>> 32) == index);
+
+        slab.sizeClass = sizeClass;
+        this.addSlots(slabIndex, sizeClass);
+    }
+
+    protected void addSlots(int slabIndex, int sizeClass) {
+        int slotSize = slotSizeOf(sizeClass);
+        for (int offset = 0; offset + slotSize <= SLAB_SIZE; offset += slotSize) {
+            this.freeSlots[sizeClass].add(((long) slabIndex << 32) | offset);
+        }
+    }
+
+    /**
+     * Evicts a value of the given size class, giving
+     * values read since the last visit a second chance
+     *
+     * @param sizeClass The size class to evict a value of
+     */
+    protected void evict(int sizeClass) {
+        ArrayDeque<Entry> clock = this.clocks[sizeClass];
+
+        // each entry is visited at most twice, since the first visit clears its reference
+        int visits = 2 * clock.size();
+
+        while (visits-- > 0) {
+            Entry entry = clock.poll();
+
+            if (null == entry) {
+                return;
+            }
+
+            if (entry.released) {
+                continue;
+            }
+
+            if (entry.referenced) {
+                entry.referenced = false;
+                clock.add(entry);
+                continue;
+            }
+
+            if (this.cache.remove(entry.path, entry)) {
+                this.free(entry);
+                this.sizeEvictions.increment();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Schedules the expiry of the given entry and cancels the one scheduled before,
+     * so that the timing wheel holds a single deadline per entry
+     *
+     * @param entry The entry
+     */
+    protected void scheduleExpiry(Entry entry) {
+        TimingWheel.Timeout<String> previous = entry.timeout.getAndSet(this.expiries.schedule(entry.path, entry.expiry + this.staleTimeToLive));
+
+        if (null != previous) {
+            previous.cancel();
+        }
+    }
+
+    /**
+     * Cancels the scheduled expiry of the given removed entry
+     *
+     * @param entry The entry
+     */
+    protected static void cancelExpiry(Entry entry) {
+        TimingWheel.Timeout<String> timeout = entry.timeout.getAndSet(null);
+
+        if (null != timeout) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Removes the negative entry of the given path, if any, and cancels its expiry
+     *
+     * @param path The path
+     */
+    protected void removeMissing(String path) {
+        TimingWheel.Timeout<String> timeout = this.missing.remove(path);
+
+        if (null != timeout) {
+            timeout.cancel();
+        }
+    }
+
+    /**
+     * Removes the value of the given path, if any.
+     * Must be called while holding the lock of the cache.
+     *
+     * @param path The path to remove
+     */
+    protected void remove(String path) {
+        Entry entry = this.cache.remove(path);
+
+        if (null != entry) {
+            this.free(entry);
+        }
+    }
+
+    /**
+     * Returns the slot of the given entry to the free slots.
+     * Must be called while holding the lock of the cache and
+     * only by the thread which removed the entry from the map.
+     *
+     * @param entry The removed entry
+     */
+    protected void free(Entry entry) {
+        cancelExpiry(entry);
+
+        Slab slab = this.slabs.get(entry.slab);
+
+        // invalidate optimistic reads of the slot before it is reused
+        long stamp = slab.lock.writeLock();
+        try {
+            entry.released = true;
+        } finally {
+            slab.lock.unlockWrite(stamp);
+        }
+
+        slab.usedSlots--;
+        this.freeSlots[slab.sizeClass].add(((long) entry.slab << 32) | entry.offset);
+        this.classEntries[slab.sizeClass]--;
+        this.storedBytes.addAndGet(- entry.length);
+        this.entryCount.decrementAndGet();
+
+        // drop released entries waiting for their visit once they outnumber the live ones
+        if (this.clocks[slab.sizeClass].size() > 2 * Math.max(16, this.classEntries[slab.sizeClass])) {
+            for (Iterator<Entry> iterator = this.clocks[slab.sizeClass].iterator(); iterator.hasNext(); ) {
+                if (iterator.next().released) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes the entry and negative entry of the given path,
+     * if they expire not later than the given deadline
+     *
+     * @param path     The path to expire
+     * @param deadline The passed expiry time scheduled for the path
+     */
+    protected void expire(String path, long deadline) {
+        Entry entry = this.cache.get(path);
+
+        if (null != entry && entry.expiry + this.staleTimeToLive <= deadline && this.cache.remove(path, entry)) {
+            this.free(entry);
+            this.expiryEvictions.increment();
+        }
+
+        TimingWheel.Timeout<String> missingTimeout = this.missing.get(path);
+
+        if (null != missingTimeout && missingTimeout.getDeadline() <= deadline) {
+            this.missing.remove(path, missingTimeout);
+        }
+    }
+}
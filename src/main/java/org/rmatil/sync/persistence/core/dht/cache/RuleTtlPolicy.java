@@ -0,0 +1,90 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Picks the time to live of a value from rules configured for its
+ * content key, its location key or its size, in this order of precedence.
+ * Values matching no rule use the default time to live of the cache.
+ * <p>
+ * Rules may be added while the policy is in use.
+ * They apply to values cached afterwards.
+ */
+public class RuleTtlPolicy implements ITtlPolicy {
+
+    protected final Map<String, Long> contentKeyRules;
+
+    protected final Map<String, Long> locationKeyRules;
+
+    /**
+     * The time to live of values larger than the size used as key
+     */
+    protected final ConcurrentNavigableMap<Long, Long> sizeRules;
+
+    public RuleTtlPolicy() {
+        this.contentKeyRules = new ConcurrentHashMap<>();
+        this.locationKeyRules = new ConcurrentHashMap<>();
+        this.sizeRules = new ConcurrentSkipListMap<>();
+    }
+
+    /**
+     * Sets the time to live of values having the given content key
+     *
+     * @param contentKey The raw content key
+     * @param timeToLive The time to live in milliseconds
+     *
+     * @return This policy
+     */
+    public RuleTtlPolicy forContentKey(String contentKey, long timeToLive) {
+        this.contentKeyRules.put(contentKey, timeToLive);
+        return this;
+    }
+
+    /**
+     * Sets the time to live of values stored at the given location key
+     *
+     * @param locationKey The raw location key
+     * @param timeToLive  The time to live in milliseconds
+     *
+     * @return This policy
+     */
+    public RuleTtlPolicy forLocationKey(String locationKey, long timeToLive) {
+        this.locationKeyRules.put(locationKey, timeToLive);
+        return this;
+    }
+
+    /**
+     * Sets the time to live of values larger than the given size.
+     * If several size rules match, the one with the largest size applies.
+     *
+     * @param size       The size in bytes which values must exceed
+     * @param timeToLive The time to live in milliseconds
+     *
+     * @return This policy
+     */
+    public RuleTtlPolicy forSizeAbove(long size, long timeToLive) {
+        this.sizeRules.put(size, timeToLive);
+        return this;
+    }
+
+    @Override
+    public long getTimeToLive(DhtPathElement pathElement, byte[] bytes, String version, long defaultTimeToLive) {
+        Long timeToLive = this.contentKeyRules.get(pathElement.getRawContentKey());
+
+        if (null == timeToLive) {
+            timeToLive = this.locationKeyRules.get(pathElement.getRawLocationKey());
+        }
+
+        if (null == timeToLive) {
+            Map.Entry<Long, Long> sizeRule = this.sizeRules.lowerEntry((long) bytes.length);
+            timeToLive = (null == sizeRule) ? null : sizeRule.getValue();
+        }
+
+        return (null == timeToLive) ? defaultTimeToLive : timeToLive;
+    }
+}
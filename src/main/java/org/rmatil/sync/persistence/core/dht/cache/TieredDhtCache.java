@@ -0,0 +1,952 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.Checksums;
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+import org.rmatil.sync.persistence.core.tree.TreePathElement;
+import org.rmatil.sync.persistence.core.tree.local.ILocalStorageAdapter;
+import org.rmatil.sync.persistence.core.tree.local.LocalStorageAdapter;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * A two-tier cache consisting of a small in-memory cache in front
+ * of a larger cache on the local disk.
+ * <p>
+ * Each value is stored in its own file beneath the cache directory, named by
+ * the SHA-256 hash of its path, i.e. of its location, content and domain key.
+ * The file starts with a header holding the path, the version, the expiry time and
+ * the time of the last use of the value, so that the disk tier is rebuilt from the cache directory
+ * on startup and values cached before a restart are not fetched from the network again.
+ * <p>
+ * The disk tier has its own byte budget and evicts the least recently used
+ * values once it is exceeded, where only reads missing the memory tier count as use.
+ * Values found on disk are promoted to the memory tier for their remaining time to live.
+ * Negative entries are only held in memory.
+ * <p>
+ * Values are written to disk by a background writer, so that neither puts nor reads wait
+ * for the disk to be written. A value replaced or removed before its write ran is not written.
+ * The times of the last use are kept in memory and written in batches.
+ * <p>
+ * The index of the disk tier is guarded by the monitor of the cache, which is never
+ * held while accessing the disk. Disk accesses are serialized per value instead.
+ */
+public class TieredDhtCache implements IDhtCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(TieredDhtCache.class);
+
+    /**
+     * The default number of bytes the disk tier may hold
+     */
+    public static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+    /**
+     * The default number of bytes the memory tier may hold
+     */
+    public static final long DEFAULT_MAX_MEMORY_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * The default number of entries the memory tier may hold
+     */
+    public static final int DEFAULT_MAX_MEMORY_ENTRIES = 1000;
+
+    /**
+     * The number of locks to distribute the disk accesses of the values on
+     */
+    protected static final int FILE_LOCK_STRIPES = 64;
+
+    /**
+     * The number of bytes of values waiting to be written to disk, above which further values are not written
+     */
+    protected static final long MAX_PENDING_WRITE_BYTES = 32L * 1024 * 1024;
+
+    /**
+     * The number of changed times of the last use from which on they are written
+     */
+    protected static final int LAST_USE_BATCH_SIZE = 256;
+
+    /**
+     * The time in milliseconds to wait for pending writes on shutdown
+     */
+    protected static final long SHUTDOWN_TIMEOUT = 10000L;
+
+    protected static final int VERSION = 3;
+
+    /**
+     * The size of the fixed part of the header: record version, expiry, last use,
+     * path length, length of the version of the value and value length
+     */
+    protected static final int HEADER_SIZE = 4 + 8 + 8 + 4 + 4 + 4;
+
+    /**
+     * The position of the time of the last use in the header
+     */
+    protected static final int LAST_USE_OFFSET = 4 + 8;
+
+    /**
+     * A value stored in the disk tier
+     */
+    protected static class DiskEntry {
+
+        protected final TreePathElement file;
+
+        protected final long size;
+
+        protected final long expiry;
+
+        /**
+         * The time of the last use when the value has been loaded, only used to order loaded values
+         */
+        protected final long lastUse;
+
+        protected DiskEntry(TreePathElement file, long size, long expiry, long lastUse) {
+            this.file = file;
+            this.size = size;
+            this.expiry = expiry;
+            this.lastUse = lastUse;
+        }
+    }
+
+    protected final IDhtCache memory;
+
+    protected final ILocalStorageAdapter disk;
+
+    protected final long timeToLive;
+
+    /**
+     * Determines the time to live of values on disk, null to use {@link TieredDhtCache#timeToLive} for all
+     */
+    protected volatile ITtlPolicy ttlPolicy;
+
+    protected final long maxDiskBytes;
+
+    protected final LongSupplier clock;
+
+    /**
+     * The values on disk by the hash of their path, in least recently used order
+     */
+    protected final LinkedHashMap<String, DiskEntry> index;
+
+    protected long diskBytes;
+
+    /**
+     * Serializes the disk accesses per value, by the hash of its path
+     */
+    protected final Lock[] fileLocks;
+
+    /**
+     * Writes the values to disk in the order they have been put
+     */
+    protected final Executor writer;
+
+    /**
+     * The latest write of each value whose write has not run yet, by the hash of its path.
+     * Writes which are not the latest one of their value are skipped.
+     */
+    protected final Map<String, Object> pendingWrites;
+
+    protected final AtomicLong pendingWriteBytes;
+
+    /**
+     * The times of the last use not written to disk yet, by the hash of the path of the value
+     */
+    protected final Map<String, Long> lastUses;
+
+    protected final AtomicBoolean lastUseWriteScheduled;
+
+    protected final LongAdder diskHits;
+
+    protected final LongAdder diskPuts;
+
+    protected final LongAdder diskSizeEvictions;
+
+    protected final LongAdder diskExpiryEvictions;
+
+    protected final LongAdder diskExpiredOnRead;
+
+    /**
+     * Creates a cache with a {@link DhtCache} of {@link TieredDhtCache#DEFAULT_MAX_MEMORY_BYTES}
+     * as memory tier and the given directory as disk tier, which is created if it does not exist.
+     *
+     * @param cacheDir   The directory in which the disk tier is stored
+     * @param timeToLive The time to live for all path elements
+     *
+     * @throws InputOutputException If the cache directory could not be created or read
+     */
+    public TieredDhtCache(Path cacheDir, long timeToLive)
+            throws InputOutputException {
+        this(
+                new DhtCache(
+                        timeToLive,
+                        Math.min(timeToLive, DhtCache.DEFAULT_NEGATIVE_TIME_TO_LIVE),
+                        DEFAULT_MAX_MEMORY_BYTES,
+                        DEFAULT_MAX_MEMORY_ENTRIES,
+                        DhtCache.DEFAULT_MAX_VALUE_SIZE
+                ),
+                createDiskStorage(cacheDir),
+                timeToLive,
+                DEFAULT_MAX_DISK_BYTES,
+                System::currentTimeMillis
+        );
+    }
+
+    /**
+     * @param memory       The memory tier
+     * @param disk         The storage adapter whose root directory holds the disk tier
+     * @param timeToLive   The time to live of values in the disk tier
+     * @param maxDiskBytes The maximum number of bytes the disk tier may hold, including headers
+     * @param clock        The source of the current time in milliseconds
+     *
+     * @throws InputOutputException If the contents of the disk tier could not be read
+     */
+    public TieredDhtCache(IDhtCache memory, ILocalStorageAdapter disk, long timeToLive, long maxDiskBytes, LongSupplier clock)
+            throws InputOutputException {
+        this(memory, disk, timeToLive, maxDiskBytes, clock, createWriter());
+    }
+
+    /**
+     * @param memory       The memory tier
+     * @param disk         The storage adapter whose root directory holds the disk tier
+     * @param timeToLive   The time to live of values in the disk tier
+     * @param maxDiskBytes The maximum number of bytes the disk tier may hold, including headers
+     * @param clock        The source of the current time in milliseconds
+     * @param writer       The executor writing values to disk, which must run writes in the order they are submitted.
+     *                     An executor service is shut down by {@link TieredDhtCache#shutdown()}
+     *
+     * @throws InputOutputException If the contents of the disk tier could not be read
+     */
+    public TieredDhtCache(IDhtCache memory, ILocalStorageAdapter disk, long timeToLive, long maxDiskBytes, LongSupplier clock, Executor writer)
+            throws InputOutputException {
+        if (maxDiskBytes < 0) {
+            throw new IllegalArgumentException("Cache limits must not be negative");
+        }
+
+        this.memory = memory;
+        this.disk = disk;
+        this.timeToLive = timeToLive;
+        this.maxDiskBytes = maxDiskBytes;
+        this.clock = clock;
+        this.index = new LinkedHashMap<>(16, 0.75f, true);
+        this.diskBytes = 0;
+        this.fileLocks = new Lock[FILE_LOCK_STRIPES];
+        for (int i = 0; i < FILE_LOCK_STRIPES; i++) {
+            this.fileLocks[i] = new ReentrantLock();
+        }
+        this.writer = writer;
+        this.pendingWrites = new ConcurrentHashMap<>();
+        this.pendingWriteBytes = new AtomicLong();
+        this.lastUses = new ConcurrentHashMap<>();
+        this.lastUseWriteScheduled = new AtomicBoolean(false);
+        this.diskHits = new LongAdder();
+        this.diskPuts = new LongAdder();
+        this.diskSizeEvictions = new LongAdder();
+        this.diskExpiryEvictions = new LongAdder();
+        this.diskExpiredOnRead = new LongAdder();
+
+        this.load();
+    }
+
+    @Override
+    public void put(DhtPathElement pathElement, byte[] bytes) {
+        this.put(pathElement, bytes, null);
+    }
+
+    @Override
+    public void put(DhtPathElement pathElement, byte[] bytes, String version) {
+        ITtlPolicy ttlPolicy = this.ttlPolicy;
+        long timeToLive = (null == ttlPolicy) ? this.timeToLive : ttlPolicy.getTimeToLive(pathElement, bytes, version, this.timeToLive);
+
+        this.put(pathElement, bytes, version, timeToLive);
+    }
+
+    /**
+     * The value is written to disk in the background
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public void put(DhtPathElement pathElement, byte[] bytes, String version, long timeToLive) {
+        this.memory.put(pathElement, bytes, version, timeToLive);
+
+        String path = pathElement.getPath();
+        String name = hash(path);
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        byte[] versionBytes = (null == version) ? new byte[0] : version.getBytes(StandardCharsets.UTF_8);
+        long size = HEADER_SIZE + pathBytes.length + versionBytes.length + bytes.length;
+
+        // bypass the disk tier, also if writes are piling up
+        boolean bypass = size > this.maxDiskBytes || timeToLive <= 0 || this.pendingWriteBytes.get() + size > MAX_PENDING_WRITE_BYTES;
+
+        Object write = new Object();
+        Lock lock = this.fileLock(name);
+        lock.lock();
+
+        try {
+            // the previous value must not be read anymore, its file is replaced by the write
+            this.pendingWrites.put(name, write);
+            this.unindex(name);
+            this.lastUses.remove(name);
+        } finally {
+            lock.unlock();
+        }
+
+        long writeSize = bypass ? 0 : size;
+        this.pendingWriteBytes.addAndGet(writeSize);
+
+        this.writer.execute(() -> {
+            try {
+                this.write(name, write, path, pathBytes, versionBytes, bypass ? null : bytes, this.clock.getAsLong() + timeToLive);
+            } finally {
+                this.pendingWriteBytes.addAndGet(- writeSize);
+            }
+        });
+    }
+
+    /**
+     * Writes the given value to disk, unless it has been replaced or removed in the meantime
+     *
+     * @param name         The hash of the path of the value
+     * @param write        The write of the value, as registered in {@link TieredDhtCache#pendingWrites}
+     * @param path         The path of the value
+     * @param pathBytes    The encoded path of the value
+     * @param versionBytes The encoded version of the value, empty if unknown
+     * @param bytes        The value or null, to only remove the file of the previous value
+     * @param expiry       The time at which the value expires
+     */
+    protected void write(String name, Object write, String path, byte[] pathBytes, byte[] versionBytes, byte[] bytes, long expiry) {
+        Map<String, DiskEntry> evicted;
+        Lock lock = this.fileLock(name);
+        lock.lock();
+
+        try {
+            if (! this.pendingWrites.remove(name, write)) {
+                // replaced or removed in the meantime
+                return;
+            }
+
+            TreePathElement file = fileOf(name);
+
+            if (null == bytes) {
+                this.delete(file);
+                return;
+            }
+
+            long now = this.clock.getAsLong();
+            long size = HEADER_SIZE + pathBytes.length + versionBytes.length + bytes.length;
+            byte[] record = ByteBuffer.allocate((int) size)
+                    .putInt(VERSION)
+                    .putLong(expiry)
+                    .putLong(now)
+                    .putInt(pathBytes.length)
+                    .putInt(versionBytes.length)
+                    .putInt(bytes.length)
+                    .put(pathBytes)
+                    .put(versionBytes)
+                    .put(bytes)
+                    .array();
+
+            TreePathElement bucket = new TreePathElement(name.substring(0, 2));
+
+            try {
+                if (! this.disk.exists(StorageType.DIRECTORY, bucket)) {
+                    this.disk.persist(StorageType.DIRECTORY, bucket, null);
+                }
+
+                this.disk.persist(StorageType.FILE, file, record);
+            } catch (InputOutputException e) {
+                logger.warn("Failed to write " + path + " to the disk cache. Message: " + e.getMessage());
+                this.delete(file);
+                return;
+            }
+
+            synchronized (this) {
+                this.index.put(name, new DiskEntry(file, size, expiry, now));
+                this.diskBytes += size;
+                this.diskPuts.increment();
+
+                evicted = this.evict();
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        // the lock of this value must not be held while acquiring the ones of others
+        this.deleteEvicted(evicted);
+    }
+
+    @Override
+    public byte[] get(DhtPathElement pathElement) {
+        byte[] bytes = this.memory.get(pathElement);
+
+        if (null != bytes) {
+            return bytes;
+        }
+
+        String path = pathElement.getPath();
+        String name = hash(path);
+
+        Lock lock = this.fileLock(name);
+        lock.lock();
+
+        long now = this.clock.getAsLong();
+        long remaining;
+        VersionedValue value;
+
+        try {
+            DiskEntry entry;
+            boolean expired = false;
+
+            synchronized (this) {
+                entry = this.index.get(name);
+
+                if (null == entry) {
+                    return null;
+                }
+
+                if (entry.expiry <= now) {
+                    this.unindex(name);
+                    this.lastUses.remove(name);
+                    this.diskExpiredOnRead.increment();
+                    expired = true;
+                }
+            }
+
+            if (expired) {
+                this.delete(entry.file);
+                return null;
+            }
+
+            remaining = entry.expiry - now;
+
+            try {
+                value = readRecord(ByteBuffer.wrap(this.disk.read(entry.file)), path);
+
+                if (null == value) {
+                    // the hash of another path collides with this one
+                    return null;
+                }
+            } catch (InputOutputException | RuntimeException e) {
+                logger.warn("Failed to read " + path + " from the disk cache. Message: " + e.getMessage());
+                this.remove(name);
+                return null;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        this.diskHits.increment();
+        this.touch(name, now);
+
+        // the value must not outlive its expiry on disk, and keeps its version for revalidation
+        this.memory.put(pathElement, value.getBytes(), value.getVersion(), remaining);
+
+        return value.getBytes();
+    }
+
+    /**
+     * Remembers the given time of the last use of a value, so that the order of use
+     * is kept across restarts. The times are written in batches by the writer.
+     *
+     * @param name    The hash of the path of the value
+     * @param lastUse The time of the last use
+     */
+    protected void touch(String name, long lastUse) {
+        this.lastUses.put(name, lastUse);
+
+        if (this.lastUses.size() >= LAST_USE_BATCH_SIZE && this.lastUseWriteScheduled.compareAndSet(false, true)) {
+            this.writer.execute(() -> {
+                this.lastUseWriteScheduled.set(false);
+                this.writeLastUses();
+            });
+        }
+    }
+
+    /**
+     * Writes the remembered times of the last use into the headers of the values still on disk
+     */
+    protected void writeLastUses() {
+        for (String name : new ArrayList<>(this.lastUses.keySet())) {
+            Lock lock = this.fileLock(name);
+            lock.lock();
+
+            try {
+                Long lastUse = this.lastUses.remove(name);
+                DiskEntry entry;
+
+                synchronized (this) {
+                    entry = this.index.get(name);
+                }
+
+                if (null == lastUse || null == entry) {
+                    continue;
+                }
+
+                this.disk.persist(StorageType.FILE, entry.file, LAST_USE_OFFSET, ByteBuffer.allocate(8).putLong(lastUse).array());
+            } catch (InputOutputException e) {
+                logger.warn("Failed to write the last use to the disk cache. Message: " + e.getMessage());
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Only values of the memory tier are retained for revalidation
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    public VersionedValue getStale(DhtPathElement pathElement) {
+        return this.memory.getStale(pathElement);
+    }
+
+    @Override
+    public boolean revalidate(DhtPathElement pathElement, String cachedVersion, String currentVersion) {
+        return this.memory.revalidate(pathElement, cachedVersion, currentVersion);
+    }
+
+    @Override
+    public boolean shouldRefresh(DhtPathElement pathElement, double refreshRatio, int minAccesses) {
+        return this.memory.shouldRefresh(pathElement, refreshRatio, minAccesses);
+    }
+
+    @Override
+    public void putMissing(DhtPathElement pathElement) {
+        this.memory.putMissing(pathElement);
+        this.removeLocked(hash(pathElement.getPath()));
+    }
+
+    @Override
+    public boolean isMissing(DhtPathElement pathElement) {
+        return this.memory.isMissing(pathElement);
+    }
+
+    @Override
+    public long getSavedLookups() {
+        return this.memory.getSavedLookups();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The policy applies to both tiers.
+     */
+    @Override
+    public void setTtlPolicy(ITtlPolicy ttlPolicy) {
+        this.memory.setTtlPolicy(ttlPolicy);
+        this.ttlPolicy = ttlPolicy;
+    }
+
+    /**
+     * Hits and misses cover both tiers, i.e. reads missing the memory
+     * tier but answered by the disk tier count as hits. All other values
+     * describe the disk tier, which holds the values of the memory tier too.
+     * Negative hits are answered by the memory tier.
+     *
+     * @return The statistics
+     */
+    @Override
+    public DhtCacheStats getStats() {
+        DhtCacheStats memoryStats = this.memory.getStats();
+        long diskHits = this.diskHits.sum();
+
+        int entryCount;
+        long size;
+        synchronized (this) {
+            entryCount = this.index.size();
+            size = this.diskBytes;
+        }
+
+        return new DhtCacheStats(
+                memoryStats.getHits() + diskHits,
+                Math.max(0, memoryStats.getMisses() - diskHits),
+                memoryStats.getNegativeHits(),
+                this.diskPuts.sum(),
+                this.diskSizeEvictions.sum(),
+                this.diskExpiryEvictions.sum(),
+                this.diskExpiredOnRead.sum(),
+                entryCount,
+                size
+        );
+    }
+
+    @Override
+    public void clear(DhtPathElement pathElement) {
+        this.memory.clear(pathElement);
+        this.removeLocked(hash(pathElement.getPath()));
+    }
+
+    @Override
+    public void clear() {
+        this.memory.clear();
+
+        Set<String> names;
+        synchronized (this) {
+            names = new HashSet<>(this.index.keySet());
+        }
+        names.addAll(this.pendingWrites.keySet());
+
+        for (String name : names) {
+            this.removeLocked(name);
+        }
+    }
+
+    /**
+     * Stops the memory tier and writes all pending writes of the
+     * disk tier, which is kept to be used again after a restart
+     */
+    @Override
+    public void shutdown() {
+        this.memory.shutdown();
+
+        if (this.writer instanceof ExecutorService) {
+            ExecutorService executorService = (ExecutorService) this.writer;
+            executorService.shutdown();
+
+            try {
+                if (! executorService.awaitTermination(SHUTDOWN_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    logger.warn("Pending writes of the disk cache did not finish in time");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        this.writeLastUses();
+
+        try {
+            this.disk.flush();
+        } catch (InputOutputException e) {
+            logger.warn("Failed to flush the disk cache. Message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the number of bytes held by the disk tier, including headers
+     *
+     * @return The number of bytes on disk
+     */
+    public synchronized long getDiskSize() {
+        return this.diskBytes;
+    }
+
+    /**
+     * Returns the number of values held by the disk tier
+     *
+     * @return The number of values on disk
+     */
+    public synchronized int getDiskEntryCount() {
+        return this.index.size();
+    }
+
+    /**
+     * Returns the number of reads missing the memory tier which were answered by the disk tier
+     *
+     * @return The number of disk hits
+     */
+    public long getDiskHits() {
+        return this.diskHits.sum();
+    }
+
+    /**
+     * Rebuilds the index of the disk tier from the files in the cache directory.
+     * Expired, unreadable and partially written files are removed.
+     * Values are ordered by the time of their last use stored in their
+     * header, restoring the least recently used order before the restart.
+     *
+     * @throws InputOutputException If the cache directory could not be listed
+     */
+    protected synchronized void load()
+            throws InputOutputException {
+        List<DiskEntry> entries = new ArrayList<>();
+        long now = this.clock.getAsLong();
+
+        for (TreePathElement element : this.disk.getDirectoryContents(new TreePathElement(""))) {
+            if (! this.disk.isFile(element)) {
+                continue;
+            }
+
+            try {
+                long size = this.disk.getMetaInformation(element).getTotalFileSize();
+                ByteBuffer header = ByteBuffer.wrap(this.disk.read(element, 0, HEADER_SIZE));
+
+                if (header.remaining() < HEADER_SIZE || VERSION != header.getInt()) {
+                    this.delete(element);
+                    continue;
+                }
+
+                long expiry = header.getLong();
+                long lastUse = header.getLong();
+                int pathLength = header.getInt();
+                int versionLength = header.getInt();
+                int valueLength = header.getInt();
+
+                if (expiry <= now) {
+                    this.delete(element);
+                    this.diskExpiryEvictions.increment();
+                    continue;
+                }
+
+                if (size != (long) HEADER_SIZE + pathLength + versionLength + valueLength) {
+                    // partially written
+                    this.delete(element);
+                    continue;
+                }
+
+                entries.add(new DiskEntry(element, size, expiry, lastUse));
+            } catch (InputOutputException e) {
+                logger.warn("Failed to load " + element.getPath() + " from the disk cache. Message: " + e.getMessage());
+                this.delete(element);
+            }
+        }
+
+        entries.sort(Comparator.comparingLong(entry -> entry.lastUse));
+
+        for (DiskEntry entry : entries) {
+            this.index.put(Paths.get(entry.file.getPath()).getFileName().toString(), entry);
+            this.diskBytes += entry.size;
+        }
+
+        for (DiskEntry entry : this.evict().values()) {
+            this.delete(entry.file);
+        }
+    }
+
+    /**
+     * Removes the least recently used values from the index until the disk
+     * tier fits its byte budget. The caller must hold the monitor of the cache.
+     *
+     * @return The removed values by the hash of their path, whose files still have to be deleted
+     */
+    protected Map<String, DiskEntry> evict() {
+        Map<String, DiskEntry> evicted = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, DiskEntry>> iterator = this.index.entrySet().iterator();
+
+        while (this.diskBytes > this.maxDiskBytes && iterator.hasNext()) {
+            Map.Entry<String, DiskEntry> entry = iterator.next();
+            iterator.remove();
+
+            this.diskBytes -= entry.getValue().size;
+            this.diskSizeEvictions.increment();
+            evicted.put(entry.getKey(), entry.getValue());
+        }
+
+        return evicted;
+    }
+
+    /**
+     * Deletes the files of the given evicted values, unless a value
+     * has been put again in the meantime. The caller must not hold
+     * the lock of any value.
+     *
+     * @param evicted The evicted values by the hash of their path
+     */
+    protected void deleteEvicted(Map<String, DiskEntry> evicted) {
+        for (Map.Entry<String, DiskEntry> entry : evicted.entrySet()) {
+            Lock lock = this.fileLock(entry.getKey());
+            lock.lock();
+
+            try {
+                synchronized (this) {
+                    if (this.index.containsKey(entry.getKey())) {
+                        // the file has been written again
+                        continue;
+                    }
+                }
+
+                this.delete(entry.getValue().file);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the value with the given name from the disk tier, skipping its pending write.
+     * The caller must hold the lock of the value.
+     *
+     * @param name The hash of the path of the value
+     */
+    protected void remove(String name) {
+        this.lastUses.remove(name);
+
+        DiskEntry entry = this.unindex(name);
+        // the file of a value replaced by a pending write is not indexed anymore
+        Object pendingWrite = this.pendingWrites.remove(name);
+
+        if (null != entry || null != pendingWrite) {
+            this.delete(fileOf(name));
+        }
+    }
+
+    /**
+     * Removes the value with the given name from the disk tier, acquiring its lock
+     *
+     * @param name The hash of the path of the value
+     */
+    protected void removeLocked(String name) {
+        Lock lock = this.fileLock(name);
+        lock.lock();
+
+        try {
+            this.remove(name);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes the value with the given name from the index without deleting its file
+     *
+     * @param name The hash of the path of the value
+     *
+     * @return The removed value or null, if not on disk
+     */
+    protected synchronized DiskEntry unindex(String name) {
+        DiskEntry entry = this.index.remove(name);
+
+        if (null != entry) {
+            this.diskBytes -= entry.size;
+        }
+
+        return entry;
+    }
+
+    /**
+     * Returns the lock serializing the disk accesses of the value with the given name
+     *
+     * @param name The hash of the path of the value
+     *
+     * @return The lock
+     */
+    protected Lock fileLock(String name) {
+        return this.fileLocks[(name.hashCode() & 0x7fffffff) % this.fileLocks.length];
+    }
+
+    /**
+     * Deletes the given file, ignoring any failure
+     *
+     * @param file The file to delete
+     */
+    protected void delete(TreePathElement file) {
+        try {
+            if (this.disk.exists(StorageType.FILE, file)) {
+                this.disk.delete(file);
+            }
+        } catch (InputOutputException e) {
+            logger.warn("Failed to remove " + file.getPath() + " from the disk cache. Message: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Reads the value and its version from the given record
+     *
+     * @param record The record
+     * @param path   The path of the value which is expected to be stored in the record
+     *
+     * @return The value with its version, or null if the record holds the value of another path
+     */
+    protected static VersionedValue readRecord(ByteBuffer record, String path) {
+        if (VERSION != record.getInt()) {
+            throw new IllegalArgumentException("Unsupported disk cache record version");
+        }
+
+        // expiry and last use
+        record.getLong();
+        record.getLong();
+        byte[] pathBytes = new byte[record.getInt()];
+        byte[] versionBytes = new byte[record.getInt()];
+        byte[] bytes = new byte[record.getInt()];
+        record.get(pathBytes);
+        record.get(versionBytes);
+
+        if (record.remaining() != bytes.length) {
+            throw new IllegalArgumentException("Disk cache record is incomplete");
+        }
+
+        if (! path.equals(new String(pathBytes, StandardCharsets.UTF_8))) {
+            return null;
+        }
+
+        record.get(bytes);
+
+        return new VersionedValue(bytes, (0 == versionBytes.length) ? null : new String(versionBytes, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the file storing the value with the given name
+     *
+     * @param name The hash of the path of the value
+     *
+     * @return The file in the bucket of the value
+     */
+    protected static TreePathElement fileOf(String name) {
+        return new TreePathElement(Paths.get(name.substring(0, 2)).resolve(name).toString());
+    }
+
+    /**
+     * Creates the executor writing values to disk, which runs a single daemon thread
+     *
+     * @return The executor
+     */
+    protected static ExecutorService createWriter() {
+        return Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "dht-cache-disk-writer");
+            thread.setDaemon(true);
+
+            return thread;
+        });
+    }
+
+    /**
+     * Returns the name of the file storing the value of the given path
+     *
+     * @param path The path of the value
+     *
+     * @return The hexadecimal SHA-256 hash of the path
+     */
+    protected static String hash(String path) {
+        return Checksums.sha256(path.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates the storage adapter for the disk tier in the given directory
+     *
+     * @param cacheDir The directory of the disk tier
+     *
+     * @return The storage adapter
+     *
+     * @throws InputOutputException If the directory could not be created
+     */
+    protected static ILocalStorageAdapter createDiskStorage(Path cacheDir)
+            throws InputOutputException {
+        try {
+            Files.createDirectories(cacheDir);
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+
+        // values are always read as a whole
+        return new LocalStorageAdapter(cacheDir, 0);
+    }
+}
@@ -0,0 +1,385 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+/**
+ * A hierarchical timing wheel of deadlines. The lowest level has a bucket per
+ * tick, each higher level has buckets covering as many ticks as a whole revolution
+ * of the level below. Keys are put into the bucket of the lowest level whose range
+ * covers their deadline. Once the range of a bucket of a higher level begins, its keys
+ * are moved down to the level below, so each key is moved at most once per level and
+ * advancing the wheel only visits the buckets of elapsed ticks, never keys far ahead.
+ * <p>
+ * Scheduling returns a {@link Timeout} which is removed from its bucket in constant time
+ * when cancelled, so the wheel only holds the deadlines which are still relevant.
+ * <p>
+ * Keys may be scheduled and cancelled concurrently, while the wheel must be
+ * advanced by a single thread at a time.
+ *
+ * @param <K> The type of the scheduled keys
+ */
+public class TimingWheel<K> {
+
+    /**
+     * The number of levels of the wheel. Deadlines beyond the range
+     * of the highest level are moved down once its range is reached.
+     */
+    protected static final int LEVELS = 4;
+
+    /**
+     * A scheduled key with its deadline
+     *
+     * @param <K> The type of the key
+     */
+    public static class Timeout<K> {
+
+        protected final K key;
+
+        protected final long deadline;
+
+        /**
+         * The bucket the timeout is linked into or null, while being moved or once removed
+         */
+        protected volatile Bucket<K> bucket;
+
+        protected volatile boolean cancelled;
+
+        protected Timeout<K> previous;
+
+        protected Timeout<K> next;
+
+        protected final AtomicInteger size;
+
+        protected Timeout(K key, long deadline, AtomicInteger size) {
+            this.key = key;
+            this.deadline = deadline;
+            this.size = size;
+        }
+
+        public K getKey() {
+            return key;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        /**
+         * Removes the timeout from the wheel, so that its key is not expired by it
+         */
+        public void cancel() {
+            this.cancelled = true;
+
+            Bucket<K> bucket;
+            while (null != (bucket = this.bucket)) {
+                synchronized (bucket) {
+                    // the timeout may have been moved in the meantime
+                    if (bucket == this.bucket) {
+                        bucket.unlink(this);
+                        this.size.decrementAndGet();
+                        return;
+                    }
+                }
+            }
+
+            // a timeout being moved is dropped by the wheel once it sees the cancellation
+        }
+    }
+
+    /**
+     * A doubly linked list of timeouts, guarded by its own monitor
+     *
+     * @param <K> The type of the keys
+     */
+    protected static class Bucket<K> {
+
+        protected Timeout<K> head;
+
+        protected Timeout<K> tail;
+
+        protected void link(Timeout<K> timeout) {
+            timeout.previous = this.tail;
+            timeout.next = null;
+
+            if (null == this.tail) {
+                this.head = timeout;
+            } else {
+                this.tail.next = timeout;
+            }
+
+            this.tail = timeout;
+            timeout.bucket = this;
+        }
+
+        protected void unlink(Timeout<K> timeout) {
+            if (null == timeout.previous) {
+                this.head = timeout.next;
+            } else {
+                timeout.previous.next = timeout.next;
+            }
+
+            if (null == timeout.next) {
+                this.tail = timeout.previous;
+            } else {
+                timeout.next.previous = timeout.previous;
+            }
+
+            timeout.previous = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        /**
+         * Removes all timeouts from the bucket
+         *
+         * @return The first of the removed timeouts, which are still chained by {@link Timeout#next}
+         */
+        protected synchronized Timeout<K> detach() {
+            Timeout<K> head = this.head;
+
+            for (Timeout<K> timeout = head; null != timeout; timeout = timeout.next) {
+                timeout.bucket = null;
+            }
+
+            this.head = null;
+            this.tail = null;
+
+            return head;
+        }
+    }
+
+    protected final long tickDuration;
+
+    protected final int ticks;
+
+    /**
+     * The buckets of each level, the lowest level first
+     */
+    protected final Bucket<K>[][] levels;
+
+    /**
+     * The number of ticks covered by a bucket of each level
+     */
+    protected final long[] bucketTicks;
+
+    /**
+     * The number of ticks ahead beyond which deadlines exceed the range of the wheel
+     */
+    protected final long maxDelta;
+
+    /**
+     * The number of scheduled timeouts
+     */
+    protected final AtomicInteger size;
+
+    /**
+     * The last fully elapsed tick whose bucket has been visited
+     */
+    protected volatile long lastTick;
+
+    /**
+     * @param tickDuration The duration of a tick in milliseconds
+     * @param ticks        The number of buckets per level
+     * @param now          The current time in milliseconds
+     */
+    @SuppressWarnings("unchecked")
+    public TimingWheel(long tickDuration, int ticks, long now) {
+        if (tickDuration <= 0 || ticks < 2) {
+            throw new IllegalArgumentException("Tick duration must be positive and a level must have at least two ticks");
+        }
+
+        this.tickDuration = tickDuration;
+        this.ticks = ticks;
+        this.levels = new Bucket[LEVELS][ticks];
+        this.bucketTicks = new long[LEVELS];
+
+        long span = 1;
+        for (int level = 0; level < LEVELS; level++) {
+            for (int i = 0; i < ticks; i++) {
+                this.levels[level][i] = new Bucket<>();
+            }
+
+            this.bucketTicks[level] = span;
+            span = (span > Long.MAX_VALUE / ticks) ? Long.MAX_VALUE : span * ticks;
+        }
+
+        long highestBucketTicks = this.bucketTicks[LEVELS - 1];
+        this.maxDelta = (highestBucketTicks > Long.MAX_VALUE / (ticks - 1)) ? Long.MAX_VALUE : highestBucketTicks * (ticks - 1);
+        this.size = new AtomicInteger();
+        this.lastTick = now / tickDuration - 1;
+    }
+
+    /**
+     * Schedules the given key to expire at the given deadline
+     *
+     * @param key      The key
+     * @param deadline The time in milliseconds at which the key expires
+     *
+     * @return The timeout, which has to be cancelled if the deadline does not apply anymore
+     */
+    public Timeout<K> schedule(K key, long deadline) {
+        Timeout<K> timeout = new Timeout<>(key, deadline, this.size);
+        this.size.incrementAndGet();
+
+        // deadlines in visited ticks are handled by the next tick
+        this.place(timeout, this.lastTick + 1);
+
+        return timeout;
+    }
+
+    /**
+     * Visits the buckets of all ticks elapsed since the last
+     * invocation and removes the keys whose deadline has passed.
+     * The bucket of the current, partly elapsed tick is visited
+     * again on the next invocation.
+     *
+     * @param now    The current time in milliseconds
+     * @param expire Invoked for each expired key with its deadline
+     *
+     * @return The number of expired keys
+     */
+    public int advance(long now, BiConsumer<K, Long> expire) {
+        long currentTick = now / this.tickDuration;
+
+        int expired = 0;
+        for (long tick = this.lastTick + 1; tick <= currentTick; tick++) {
+            // move down the keys of higher levels whose range begins, the highest level first
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if (0 == tick % this.bucketTicks[level]) {
+                    this.cascade(this.bucket(level, tick), tick);
+                }
+            }
+
+            expired += this.expire(tick, now, expire);
+
+            if (tick < currentTick) {
+                this.lastTick = tick;
+
+                // keys scheduled into the tick while it was visited
+                expired += this.expire(tick, now, expire);
+            }
+        }
+
+        // keys of the current tick which are not yet expired must not wait for the next revolution
+        this.lastTick = Math.max(this.lastTick, currentTick - 1);
+
+        return expired;
+    }
+
+    /**
+     * Returns the number of scheduled timeouts which have neither expired nor been cancelled
+     *
+     * @return The number of timeouts
+     */
+    public int size() {
+        return this.size.get();
+    }
+
+    /**
+     * Removes all scheduled keys
+     */
+    public void clear() {
+        for (Bucket<K>[] level : this.levels) {
+            for (Bucket<K> bucket : level) {
+                for (Timeout<K> timeout = bucket.detach(); null != timeout; timeout = timeout.next) {
+                    this.size.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Puts the given timeout into the bucket of the lowest level whose range covers its deadline
+     *
+     * @param timeout The timeout
+     * @param base    The next tick whose bucket is visited
+     */
+    protected void place(Timeout<K> timeout, long base) {
+        long tick = Math.max(timeout.deadline / this.tickDuration, base);
+        long delta = tick - base;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= this.bucketTicks[level + 1]) {
+            level++;
+        }
+
+        if (delta >= this.maxDelta) {
+            // beyond the range of the wheel, wait in the last bucket of the highest level
+            tick = base + this.maxDelta;
+        }
+
+        Bucket<K> bucket = this.bucket(level, tick);
+
+        synchronized (bucket) {
+            if (timeout.cancelled) {
+                this.size.decrementAndGet();
+                return;
+            }
+
+            bucket.link(timeout);
+        }
+    }
+
+    /**
+     * Moves the timeouts of the given bucket of a higher level down to the lower levels
+     *
+     * @param bucket The bucket whose range begins
+     * @param tick   The tick being visited
+     */
+    protected void cascade(Bucket<K> bucket, long tick) {
+        Timeout<K> timeout = bucket.detach();
+
+        while (null != timeout) {
+            Timeout<K> next = timeout.next;
+            this.place(timeout, tick);
+            timeout = next;
+        }
+    }
+
+    /**
+     * Removes the timeouts of the given tick whose deadline has passed
+     *
+     * @param tick   The tick
+     * @param now    The current time in milliseconds
+     * @param expire Invoked for each expired key with its deadline
+     *
+     * @return The number of expired keys
+     */
+    protected int expire(long tick, long now, BiConsumer<K, Long> expire) {
+        Bucket<K> bucket = this.bucket(0, tick);
+        Timeout<K> timeout = bucket.detach();
+
+        int expired = 0;
+        while (null != timeout) {
+            Timeout<K> next = timeout.next;
+
+            if (timeout.cancelled) {
+                this.size.decrementAndGet();
+            } else if (timeout.deadline <= now) {
+                this.size.decrementAndGet();
+                expire.accept(timeout.key, timeout.deadline);
+                expired++;
+            } else {
+                // not yet expired within the partly elapsed tick
+                this.place(timeout, tick);
+            }
+
+            timeout = next;
+        }
+
+        return expired;
+    }
+
+    /**
+     * Returns the bucket of the given level covering the given tick
+     *
+     * @param level The level
+     * @param tick  The tick
+     *
+     * @return The bucket
+     */
+    protected Bucket<K> bucket(int level, long tick) {
+        return this.levels[level][(int) ((tick / this.bucketTicks[level]) % this.ticks)];
+    }
+}
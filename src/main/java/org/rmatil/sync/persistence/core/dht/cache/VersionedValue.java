@@ -0,0 +1,31 @@
+package org.rmatil.sync.persistence.core.dht.cache;
+
+/**
+ * A cached value together with the version it has been cached with
+ */
+public class VersionedValue {
+
+    protected final byte[] bytes;
+
+    /**
+     * The MD5 checksum of the value or null, if unknown
+     */
+    protected final String version;
+
+    /**
+     * @param bytes   The cached value
+     * @param version The MD5 checksum of the value or null, if unknown
+     */
+    public VersionedValue(byte[] bytes, String version) {
+        this.bytes = bytes;
+        this.version = version;
+    }
+
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+}
@@ -0,0 +1,186 @@
+package org.rmatil.sync.persistence.core.dht.chunk;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.utils.Utils;
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Describes a value which is stored in the DHT as multiple chunks
+ * of a fixed size. The manifest is stored at the content key of the
+ * path itself, the chunks at content keys derived from it
+ * (see {@link ChunkManifest#getChunkKey(DhtPathElement, long)}).
+ * <p>
+ * All chunk keys of a path share their upper 128 bits and contain the index of
+ * the chunk in their lower 32 bits. Therefore, the chunks of a path form a contiguous
+ * range of content keys which allows to remove them without knowing their number.
+ */
+public class ChunkManifest {
+
+    /**
+     * Marks a stored value as manifest. Values starting with
+     * these bytes are always stored chunked to stay distinguishable
+     */
+    protected static final byte[] MAGIC = new byte[]{0x00, 's', 'y', 'n', 'c', 'c', 'h', 'k'};
+
+    protected static final int VERSION = 1;
+
+    /**
+     * The length of an encoded manifest in bytes
+     */
+    protected static final int LENGTH = MAGIC.length + 4 + 8 + 4;
+
+    /**
+     * The maximum number of chunks of a single value
+     */
+    public static final long MAX_CHUNKS = 0xFFFFFFFFL;
+
+    /**
+     * The total size of the value in bytes
+     */
+    protected long size;
+
+    /**
+     * The size of each chunk except the last one
+     */
+    protected int chunkSize;
+
+    /**
+     * @param size      The total size of the value in bytes
+     * @param chunkSize The size of each chunk except the last one
+     */
+    public ChunkManifest(long size, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+
+        this.size = size;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Checks whether the given stored value is a manifest
+     *
+     * @param bytes The value stored at the content key of a path
+     *
+     * @return True, if the value describes a chunked value
+     */
+    public static boolean isManifest(byte[] bytes) {
+        return null != bytes &&
+                bytes.length == LENGTH &&
+                Arrays.equals(MAGIC, Arrays.copyOf(bytes, MAGIC.length));
+    }
+
+    /**
+     * Checks whether the given value has to be stored chunked
+     *
+     * @param bytes     The value to store
+     * @param chunkSize The maximum size of values stored as a whole
+     *
+     * @return True, if the value exceeds the chunk size or could be mistaken as manifest
+     */
+    public static boolean requiresChunking(byte[] bytes, int chunkSize) {
+        return bytes.length > chunkSize || isManifest(bytes);
+    }
+
+    /**
+     * Decodes the given manifest
+     *
+     * @param bytes The encoded manifest
+     *
+     * @return The manifest
+     *
+     * @throws IllegalArgumentException If the given bytes are not a manifest or of an unsupported version
+     */
+    public static ChunkManifest decode(byte[] bytes) {
+        if (! isManifest(bytes)) {
+            throw new IllegalArgumentException("The given bytes are not a chunk manifest");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, MAGIC.length, bytes.length - MAGIC.length);
+
+        int version = buffer.getInt();
+        if (VERSION != version) {
+            throw new IllegalArgumentException("Unsupported chunk manifest version " + version);
+        }
+
+        long size = buffer.getLong();
+        int chunkSize = buffer.getInt();
+
+        return new ChunkManifest(size, chunkSize);
+    }
+
+    /**
+     * Returns the content key at which the chunk with the given index of the path is stored
+     *
+     * @param path  The path of the chunked value
+     * @param index The index of the chunk
+     *
+     * @return The content key of the chunk
+     */
+    public static Number160 getChunkKey(DhtPathElement path, long index) {
+        byte[] key = Utils.makeSHAHash(path.getContentKey().toString() + "/chunks").toByteArray();
+
+        key[key.length - 4] = (byte) (index >>> 24);
+        key[key.length - 3] = (byte) (index >>> 16);
+        key[key.length - 2] = (byte) (index >>> 8);
+        key[key.length - 1] = (byte) index;
+
+        return new Number160(key);
+    }
+
+    /**
+     * Encodes this manifest to be stored in the DHT
+     *
+     * @return The encoded manifest
+     */
+    public byte[] encode() {
+        return ByteBuffer.allocate(LENGTH)
+                .put(MAGIC)
+                .putInt(VERSION)
+                .putLong(this.size)
+                .putInt(this.chunkSize)
+                .array();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * Returns the number of chunks of the value
+     *
+     * @return The number of chunks
+     */
+    public long getChunkCount() {
+        return (this.size + this.chunkSize - 1) / this.chunkSize;
+    }
+
+    /**
+     * Returns the index of the chunk containing the given byte
+     *
+     * @param offset The offset of the byte
+     *
+     * @return The index of the chunk
+     */
+    public long getChunkIndex(long offset) {
+        return offset / this.chunkSize;
+    }
+
+    /**
+     * Returns the size of the chunk with the given index
+     *
+     * @param index The index of the chunk
+     *
+     * @return The size of the chunk in bytes
+     */
+    public int getChunkLength(long index) {
+        return (int) Math.min(this.chunkSize, this.size - index * this.chunkSize);
+    }
+}
@@ -0,0 +1,112 @@
+package org.rmatil.sync.persistence.core.dht.coalesce;
+
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Merges concurrent requests for the same key into a single one.
+ * The first caller for a key executes the request, while callers arriving
+ * before it has completed wait for and share its result. Once completed,
+ * the next caller for the key executes a new request.
+ *
+ * @param <K> The type of the keys
+ * @param <V> The type of the results
+ */
+public class RequestCoalescer<K, V> {
+
+    /**
+     * A request which may be shared among concurrent callers
+     *
+     * @param <V> The type of the result
+     */
+    public interface Request<V> {
+
+        /**
+         * Executes the request
+         *
+         * @return The result
+         *
+         * @throws InputOutputException If the request failed
+         */
+        V execute()
+                throws InputOutputException;
+    }
+
+    /**
+     * The requests currently executed by their key
+     */
+    protected final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Executes the given request or joins the one already in
+     * progress for the same key
+     *
+     * @param key     The key of the request
+     * @param request The request to execute if none is in progress
+     *
+     * @return The result of the request
+     *
+     * @throws InputOutputException If the request failed or waiting for it has been interrupted
+     */
+    public V execute(K key, Request<V> request)
+            throws InputOutputException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> runningFuture = this.inFlight.putIfAbsent(key, future);
+
+        if (null != runningFuture) {
+            return this.join(runningFuture);
+        }
+
+        try {
+            V result = request.execute();
+            future.complete(result);
+
+            return result;
+        } catch (Throwable t) {
+            // never leave waiting callers behind
+            future.completeExceptionally(t);
+            throw t;
+        } finally {
+            this.inFlight.remove(key, future);
+        }
+    }
+
+    /**
+     * Returns the number of requests currently in progress
+     *
+     * @return The number of requests in progress
+     */
+    public int size() {
+        return this.inFlight.size();
+    }
+
+    protected V join(CompletableFuture<V> future)
+            throws InputOutputException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InputOutputException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof InputOutputException) {
+                throw new InputOutputException(cause.getMessage(), cause);
+            }
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+
+            throw new InputOutputException(cause);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+package org.rmatil.sync.persistence.core.dht.compress;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses values before they are stored in the DHT. A compressed value
+ * starts with a header consisting of a magic number, the codec used and the
+ * size of the uncompressed value, followed by the compressed bytes.
+ * <p>
+ * Values are only compressed if compression saves enough space: Small values
+ * are stored as they are, and for large values the compression ratio of a
+ * sample at their start is checked first, so that incompressible values, e.g.
+ * already compressed files, are not compressed as a whole in vain.
+ * Values starting with the magic number are always compressed to stay distinguishable.
+ */
+public class PayloadCodec {
+
+    /**
+     * Marks a stored value as compressed
+     */
+    protected static final byte[] MAGIC = new byte[]{0x00, 's', 'y', 'n', 'c', 'z', 'i', 'p'};
+
+    /**
+     * The codec compressing values using deflate
+     */
+    public static final byte DEFLATE = 1;
+
+    /**
+     * The length of the header of a compressed value in bytes
+     */
+    protected static final int HEADER_SIZE = MAGIC.length + 1 + 4;
+
+    /**
+     * The maximum ratio of uncompressed to compressed size deflate achieves
+     */
+    protected static final int MAX_DEFLATE_RATIO = 1032;
+
+    /**
+     * The default size in bytes below which values are not compressed
+     */
+    public static final int DEFAULT_MIN_SIZE = 256;
+
+    /**
+     * The default ratio of compressed to uncompressed size above which values are stored uncompressed
+     */
+    public static final double DEFAULT_MAX_RATIO = 0.9d;
+
+    /**
+     * The default size of the sample whose compression ratio is checked first
+     */
+    public static final int DEFAULT_SAMPLE_SIZE = 4096;
+
+    protected final int minSize;
+
+    protected final double maxRatio;
+
+    protected final int sampleSize;
+
+    protected final LongAdder compressedValues;
+
+    protected final LongAdder skippedValues;
+
+    protected final LongAdder savedBytes;
+
+    public PayloadCodec() {
+        this(DEFAULT_MIN_SIZE, DEFAULT_MAX_RATIO, DEFAULT_SAMPLE_SIZE);
+    }
+
+    /**
+     * @param minSize    The size in bytes below which values are not compressed
+     * @param maxRatio   The ratio of compressed to uncompressed size above which values are stored uncompressed
+     * @param sampleSize The size of the sample whose compression ratio is checked before compressing larger values
+     */
+    public PayloadCodec(int minSize, double maxRatio, int sampleSize) {
+        if (sampleSize <= 0) {
+            throw new IllegalArgumentException("Sample size must be positive");
+        }
+
+        this.minSize = minSize;
+        this.maxRatio = maxRatio;
+        this.sampleSize = sampleSize;
+        this.compressedValues = new LongAdder();
+        this.skippedValues = new LongAdder();
+        this.savedBytes = new LongAdder();
+    }
+
+    /**
+     * Checks whether the given stored value is compressed
+     *
+     * @param bytes The stored value
+     *
+     * @return True, if the value starts with the header of a compressed value
+     */
+    public static boolean isCompressed(byte[] bytes) {
+        return null != bytes &&
+                bytes.length >= HEADER_SIZE &&
+                Arrays.equals(MAGIC, Arrays.copyOf(bytes, MAGIC.length));
+    }
+
+    /**
+     * Returns the size of the given value once decompressed. Since the size is read
+     * from the header of a value which may be corrupt, it is checked against the
+     * size the compressed bytes may expand to at most.
+     *
+     * @param bytes The stored value
+     *
+     * @return The size of the uncompressed value
+     *
+     * @throws IllegalArgumentException If the size in the header is negative or cannot be the one of the compressed bytes
+     */
+    public static int getSize(byte[] bytes) {
+        if (! isCompressed(bytes)) {
+            return bytes.length;
+        }
+
+        int size = ByteBuffer.wrap(bytes, MAGIC.length + 1, 4).getInt();
+        long maxSize = Math.max(1L, bytes.length - HEADER_SIZE) * MAX_DEFLATE_RATIO;
+
+        if (size < 0 || size > maxSize) {
+            throw new IllegalArgumentException("Compressed value has an invalid size of " + size + " bytes");
+        }
+
+        return size;
+    }
+
+    /**
+     * Compresses the given value, regardless of whether this saves space
+     *
+     * @param bytes The value to compress
+     *
+     * @return The compressed value including its header
+     */
+    public static byte[] compress(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_SIZE + bytes.length / 2);
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(DEFLATE);
+        out.write(ByteBuffer.allocate(4).putInt(bytes.length).array(), 0, 4);
+
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] buffer = new byte[8192];
+            while (! deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                out.write(buffer, 0, length);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Decompresses the given stored value. Uncompressed values are returned as they are.
+     *
+     * @param bytes The stored value
+     *
+     * @return The uncompressed value
+     *
+     * @throws IllegalArgumentException If the value is corrupt, has an invalid size or is compressed by an unsupported codec
+     */
+    public static byte[] decode(byte[] bytes) {
+        if (! isCompressed(bytes)) {
+            return bytes;
+        }
+
+        byte codec = bytes[MAGIC.length];
+        if (DEFLATE != codec) {
+            throw new IllegalArgumentException("Unsupported compression codec " + codec);
+        }
+
+        byte[] content = new byte[getSize(bytes)];
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE);
+
+            int length = 0;
+            while (length < content.length && ! inflater.finished()) {
+                int inflated = inflater.inflate(content, length, content.length - length);
+
+                if (0 == inflated && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+
+                length += inflated;
+            }
+
+            if (length != content.length) {
+                throw new IllegalArgumentException("Compressed value is truncated");
+            }
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Compressed value is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+
+        return content;
+    }
+
+    /**
+     * Compresses the given value if this saves enough space
+     *
+     * @param bytes The value to store
+     *
+     * @return The compressed value or the given value, if compression does not pay off
+     */
+    public byte[] encode(byte[] bytes) {
+        // such values must be compressed in any case
+        boolean required = isCompressed(bytes);
+
+        if (! required && (bytes.length < this.minSize || (bytes.length > this.sampleSize && ! this.isSampleCompressible(bytes)))) {
+            this.skippedValues.increment();
+            return bytes;
+        }
+
+        byte[] compressed = compress(bytes);
+
+        if (! required && compressed.length > this.maxRatio * bytes.length) {
+            this.skippedValues.increment();
+            return bytes;
+        }
+
+        this.compressedValues.increment();
+        this.savedBytes.add(bytes.length - compressed.length);
+
+        return compressed;
+    }
+
+    /**
+     * Returns the number of values which have been compressed
+     *
+     * @return The number of compressed values
+     */
+    public long getCompressedCount() {
+        return this.compressedValues.sum();
+    }
+
+    /**
+     * Returns the number of values which have been left uncompressed
+     *
+     * @return The number of uncompressed values
+     */
+    public long getSkippedCount() {
+        return this.skippedValues.sum();
+    }
+
+    /**
+     * Returns the number of bytes saved by compressing values
+     *
+     * @return The saved bytes
+     */
+    public long getSavedBytes() {
+        return this.savedBytes.sum();
+    }
+
+    /**
+     * Checks whether the sample at the start of the given value compresses well enough
+     *
+     * @param bytes The value to store
+     *
+     * @return True, if the ratio of the sample does not exceed the maximum ratio
+     */
+    protected boolean isSampleCompressible(byte[] bytes) {
+        long compressedLength = 0;
+
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes, 0, this.sampleSize);
+            deflater.finish();
+
+            byte[] buffer = new byte[1024];
+            while (! deflater.finished()) {
+                compressedLength += deflater.deflate(buffer);
+            }
+        } finally {
+            deflater.end();
+        }
+
+        return compressedLength <= this.maxRatio * this.sampleSize;
+    }
+}
@@ -0,0 +1,196 @@
+package org.rmatil.sync.persistence.core.dht.dedup;
+
+import org.rmatil.sync.persistence.core.Checksums;
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+/**
+ * Points from a path to an object holding its value. Objects are stored
+ * once per content at a path derived from the SHA-256 hash of the content
+ * (see {@link DhtObjectPointer#getObjectPath()}), so that all paths having
+ * the same content, also of different users, share a single copy.
+ * <p>
+ * Objects are stored without domain protection to be shareable.
+ * Their content is therefore verified against the hash when read
+ * and before an already stored object is referenced again.
+ */
+public class DhtObjectPointer {
+
+    /**
+     * Marks a stored value as pointer. Values starting with
+     * these bytes are always stored chunked to stay distinguishable
+     */
+    protected static final byte[] MAGIC = new byte[]{0x00, 's', 'y', 'n', 'c', 'p', 't', 'r'};
+
+    protected static final int VERSION = 1;
+
+    /**
+     * The length of the hexadecimal SHA-256 hash
+     */
+    protected static final int HASH_LENGTH = 64;
+
+    /**
+     * The length of an encoded pointer in bytes
+     */
+    protected static final int LENGTH = MAGIC.length + 4 + 8 + HASH_LENGTH;
+
+    /**
+     * The prefix of the location key of objects, separating them from other paths
+     */
+    public static final String OBJECT_LOCATION_PREFIX = "sync-object/";
+
+    /**
+     * The SHA-256 hash of the content
+     */
+    protected String hash;
+
+    /**
+     * The size of the content in bytes
+     */
+    protected long size;
+
+    /**
+     * @param hash The hexadecimal SHA-256 hash of the content
+     * @param size The size of the content in bytes
+     */
+    public DhtObjectPointer(String hash, long size) {
+        if (null == hash || HASH_LENGTH != hash.length()) {
+            throw new IllegalArgumentException("Hash must be a hexadecimal SHA-256 hash");
+        }
+
+        this.hash = hash;
+        this.size = size;
+    }
+
+    /**
+     * Creates a pointer to the object holding the given content
+     *
+     * @param bytes The content
+     *
+     * @return The pointer
+     */
+    public static DhtObjectPointer of(byte[] bytes) {
+        MessageDigest digest = createDigest();
+        digest.update(bytes);
+
+        return new DhtObjectPointer(Checksums.toHex(digest.digest()), bytes.length);
+    }
+
+    /**
+     * Creates the digest computing the hash identifying objects
+     *
+     * @return The digest
+     */
+    public static MessageDigest createDigest() {
+        return Checksums.createDigest(Checksums.SHA_256);
+    }
+
+    /**
+     * Checks whether the given stored value is a pointer
+     *
+     * @param bytes The value stored at the content key of a path
+     *
+     * @return True, if the value points to an object
+     */
+    public static boolean isPointer(byte[] bytes) {
+        return null != bytes &&
+                bytes.length == LENGTH &&
+                Arrays.equals(MAGIC, Arrays.copyOf(bytes, MAGIC.length));
+    }
+
+    /**
+     * Decodes the given pointer
+     *
+     * @param bytes The encoded pointer
+     *
+     * @return The pointer
+     *
+     * @throws IllegalArgumentException If the given bytes are not a pointer or of an unsupported version
+     */
+    public static DhtObjectPointer decode(byte[] bytes) {
+        if (! isPointer(bytes)) {
+            throw new IllegalArgumentException("The given bytes are not an object pointer");
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, MAGIC.length, bytes.length - MAGIC.length);
+
+        int version = buffer.getInt();
+        if (VERSION != version) {
+            throw new IllegalArgumentException("Unsupported object pointer version " + version);
+        }
+
+        long size = buffer.getLong();
+
+        byte[] hashBytes = new byte[HASH_LENGTH];
+        buffer.get(hashBytes);
+
+        return new DhtObjectPointer(new String(hashBytes, StandardCharsets.US_ASCII), size);
+    }
+
+    /**
+     * Encodes this pointer to be stored in the DHT
+     *
+     * @return The encoded pointer
+     */
+    public byte[] encode() {
+        return ByteBuffer.allocate(LENGTH)
+                .put(MAGIC)
+                .putInt(VERSION)
+                .putLong(this.size)
+                .put(this.hash.getBytes(StandardCharsets.US_ASCII))
+                .array();
+    }
+
+    /**
+     * Returns the path at which the object holding the content is stored
+     *
+     * @return The path of the object
+     */
+    public DhtPathElement getObjectPath() {
+        return new UnsecuredDhtPathElement(OBJECT_LOCATION_PREFIX + this.hash, this.hash);
+    }
+
+    /**
+     * Checks whether the given content is the one this pointer refers to
+     *
+     * @param bytes The content of the object
+     *
+     * @return True, if size and hash of the content match
+     */
+    public boolean matches(byte[] bytes) {
+        return bytes.length == this.size && this.equals(of(bytes));
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (null == o || this.getClass() != o.getClass()) {
+            return false;
+        }
+
+        DhtObjectPointer that = (DhtObjectPointer) o;
+
+        return this.size == that.size && this.hash.equals(that.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.hash.hashCode() + (int) (this.size ^ (this.size >>> 32));
+    }
+}
@@ -0,0 +1,59 @@
+package org.rmatil.sync.persistence.core.dht.listener;
+
+import net.tomp2p.futures.BaseFuture;
+import net.tomp2p.futures.BaseFutureListener;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+
+/**
+ * A listener which completes a {@link CompletableFuture} once
+ * the operation on the DHT it is attached to has finished.
+ * <p>
+ * If the operation failed, the completable future is completed
+ * exceptionally with an {@link InputOutputException}.
+ *
+ * @param <F> The type of the TomP2P future
+ * @param <T> The type of the result
+ */
+public class DhtCompletionListener<F extends BaseFuture, T> implements BaseFutureListener<F> {
+
+    protected CompletableFuture<T> completableFuture;
+
+    protected Function<F, T> resultMapper;
+
+    /**
+     * @param completableFuture The future to complete
+     * @param resultMapper      A function creating the result from the successfully completed TomP2P future.
+     *                          It may throw a {@link CompletionException} to fail the future with its cause
+     */
+    public DhtCompletionListener(CompletableFuture<T> completableFuture, Function<F, T> resultMapper) {
+        this.completableFuture = completableFuture;
+        this.resultMapper = resultMapper;
+    }
+
+    @Override
+    public void operationComplete(F future)
+            throws Exception {
+        if (future.isFailed()) {
+            this.completableFuture.completeExceptionally(new InputOutputException(future.failedReason()));
+            return;
+        }
+
+        try {
+            this.completableFuture.complete(this.resultMapper.apply(future));
+        } catch (CompletionException e) {
+            this.completableFuture.completeExceptionally(e.getCause());
+        } catch (RuntimeException e) {
+            this.completableFuture.completeExceptionally(new InputOutputException(e));
+        }
+    }
+
+    @Override
+    public void exceptionCaught(Throwable t)
+            throws Exception {
+        this.completableFuture.completeExceptionally(new InputOutputException(t));
+    }
+}
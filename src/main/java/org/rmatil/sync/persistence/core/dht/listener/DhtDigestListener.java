@@ -0,0 +1,41 @@
+package org.rmatil.sync.persistence.core.dht.listener;
+
+import net.tomp2p.dht.FutureDigest;
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.futures.BaseFutureListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A listener which is called whenever digests of data are fetched from the DHT.
+ */
+public class DhtDigestListener implements BaseFutureListener<FutureDigest> {
+
+    private static final Logger logger = LoggerFactory.getLogger(DhtDigestListener.class);
+
+    protected PeerDHT dht;
+
+    /**
+     * @param dht The peer DHT which was used for the digest operation
+     */
+    public DhtDigestListener(PeerDHT dht) {
+        this.dht = dht;
+    }
+
+    @Override
+    public void operationComplete(FutureDigest future)
+            throws Exception {
+        if (future.isSuccess()) {
+            logger.debug("[Peer @ " + this.dht.peerAddress().inetAddress().getHostAddress() + ":" + this.dht.peerAddress().tcpPort() + "]: Digest of data succeeded. ");
+        } else if (future.isFailed()) {
+            logger.warn("[Peer @ " + this.dht.peerAddress().inetAddress().getHostAddress() + ":" + this.dht.peerAddress().tcpPort() + "]: Digest of data failed. Reason: " + future.failedReason());
+        }
+    }
+
+    @Override
+    public void exceptionCaught(Throwable t)
+            throws Exception {
+        logger.error("[Peer @ " + this.dht.peerAddress().inetAddress().getHostAddress() + ":" + this.dht.peerAddress().tcpPort() + "]: Caught exception " + t.getMessage());
+    }
+
+}
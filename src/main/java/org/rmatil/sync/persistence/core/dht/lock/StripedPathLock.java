@@ -0,0 +1,130 @@
+package org.rmatil.sync.persistence.core.dht.lock;
+
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Serializes operations per path element using a fixed
+ * number of read write locks. Each path is mapped to one of the
+ * stripes by its location, content and domain key, so operations on
+ * the same path are ordered while operations on different
+ * paths usually do not contend.
+ * <p>
+ * Since multiple paths may share a stripe, locks on several paths
+ * must be acquired using {@link StripedPathLock#writeLocks(DhtPathElement...)}
+ * or {@link StripedPathLock#readLocks(Collection)}
+ * to avoid dead locks.
+ */
+public class StripedPathLock {
+
+    /**
+     * The default number of stripes
+     */
+    public static final int DEFAULT_STRIPES = 256;
+
+    protected final ReadWriteLock[] stripes;
+
+    public StripedPathLock() {
+        this(DEFAULT_STRIPES);
+    }
+
+    /**
+     * @param stripes The number of locks to distribute the paths on
+     */
+    public StripedPathLock(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("The number of stripes must be positive");
+        }
+
+        this.stripes = new ReadWriteLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    /**
+     * Returns the lock to acquire for reading the given path
+     *
+     * @param path The path to read
+     *
+     * @return The read lock of the path's stripe
+     */
+    public Lock readLock(DhtPathElement path) {
+        return this.stripes[this.indexOf(path)].readLock();
+    }
+
+    /**
+     * Returns the lock to acquire for modifying the given path
+     *
+     * @param path The path to modify
+     *
+     * @return The write lock of the path's stripe
+     */
+    public Lock writeLock(DhtPathElement path) {
+        return this.stripes[this.indexOf(path)].writeLock();
+    }
+
+    /**
+     * Returns the write locks of all given paths in the order
+     * in which they have to be acquired. Locks must be released
+     * in reverse order.
+     *
+     * @param paths The paths to modify
+     *
+     * @return The distinct write locks of the paths' stripes
+     */
+    public List<Lock> writeLocks(DhtPathElement... paths) {
+        List<Lock> locks = new ArrayList<>();
+        for (int index : this.indicesOf(Arrays.asList(paths))) {
+            locks.add(this.stripes[index].writeLock());
+        }
+
+        return locks;
+    }
+
+    /**
+     * Returns the read locks of all given paths in the order
+     * in which they have to be acquired. Locks must be released
+     * in reverse order.
+     *
+     * @param paths The paths to read
+     *
+     * @return The distinct read locks of the paths' stripes
+     */
+    public List<Lock> readLocks(Collection<? extends DhtPathElement> paths) {
+        List<Lock> locks = new ArrayList<>();
+        for (int index : this.indicesOf(paths)) {
+            locks.add(this.stripes[index].readLock());
+        }
+
+        return locks;
+    }
+
+    /**
+     * Returns the distinct stripe indices of the given paths in ascending order
+     *
+     * @param paths The paths
+     *
+     * @return The sorted indices
+     */
+    protected SortedSet<Integer> indicesOf(Collection<? extends DhtPathElement> paths) {
+        SortedSet<Integer> indices = new TreeSet<>();
+        for (DhtPathElement path : paths) {
+            indices.add(this.indexOf(path));
+        }
+
+        return indices;
+    }
+
+    protected int indexOf(DhtPathElement path) {
+        int hash = path.getPath().hashCode();
+        // spread the higher bits since only the lower ones are used
+        hash ^= (hash >>> 16);
+
+        return (hash & 0x7fffffff) % this.stripes.length;
+    }
+}
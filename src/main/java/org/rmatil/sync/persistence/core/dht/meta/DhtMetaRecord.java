@@ -0,0 +1,101 @@
+package org.rmatil.sync.persistence.core.dht.meta;
+
+import net.tomp2p.peers.Number160;
+import net.tomp2p.utils.Utils;
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Describes the value stored at a path by its size and checksum.
+ * The record is stored beside the value at a content key derived from
+ * the path (see {@link DhtMetaRecord#getMetaKey(DhtPathElement)}),
+ * so that meta information is available without transferring the value itself.
+ */
+public class DhtMetaRecord {
+
+    protected static final int VERSION = 1;
+
+    /**
+     * The size of the value in bytes
+     */
+    protected long size;
+
+    /**
+     * The MD5 checksum of the value or null, if unknown
+     */
+    protected String checksum;
+
+    /**
+     * @param size     The size of the value in bytes
+     * @param checksum The MD5 checksum of the value or null, if unknown
+     */
+    public DhtMetaRecord(long size, String checksum) {
+        this.size = size;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Returns the content key at which the meta record of the given path is stored
+     *
+     * @param path The path of the value
+     *
+     * @return The content key of the meta record
+     */
+    public static Number160 getMetaKey(DhtPathElement path) {
+        return Utils.makeSHAHash(path.getContentKey().toString() + "/meta");
+    }
+
+    /**
+     * Decodes the given meta record
+     *
+     * @param bytes The encoded meta record
+     *
+     * @return The meta record
+     *
+     * @throws IllegalArgumentException If the record is of an unsupported version
+     */
+    public static DhtMetaRecord decode(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+
+        int version = buffer.getInt();
+        if (VERSION != version) {
+            throw new IllegalArgumentException("Unsupported meta record version " + version);
+        }
+
+        long size = buffer.getLong();
+
+        String checksum = null;
+        if (buffer.hasRemaining()) {
+            byte[] checksumBytes = new byte[buffer.remaining()];
+            buffer.get(checksumBytes);
+            checksum = new String(checksumBytes, StandardCharsets.US_ASCII);
+        }
+
+        return new DhtMetaRecord(size, checksum);
+    }
+
+    /**
+     * Encodes this record to be stored in the DHT
+     *
+     * @return The encoded meta record
+     */
+    public byte[] encode() {
+        byte[] checksumBytes = (null == this.checksum) ? new byte[0] : this.checksum.getBytes(StandardCharsets.US_ASCII);
+
+        return ByteBuffer.allocate(4 + 8 + checksumBytes.length)
+                .putInt(VERSION)
+                .putLong(this.size)
+                .put(checksumBytes)
+                .array();
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+}
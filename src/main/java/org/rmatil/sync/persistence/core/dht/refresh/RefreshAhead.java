@@ -0,0 +1,220 @@
+package org.rmatil.sync.persistence.core.dht.refresh;
+
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Refreshes cached values in the background before they expire, so that
+ * frequently read values do not expire on the path of a read request.
+ * <p>
+ * Requested keys are queued and refreshed one after another on a single daemon
+ * thread, waiting a fixed interval between two refreshes to limit the load
+ * put on the network. Keys requested while already queued are refreshed once,
+ * and requests exceeding the maximum number of queued keys are dropped.
+ *
+ * @param <K> The type of the keys
+ */
+public class RefreshAhead<K> {
+
+    private static final Logger logger = LoggerFactory.getLogger(RefreshAhead.class);
+
+    /**
+     * The default maximum number of keys waiting to be refreshed
+     */
+    public static final int DEFAULT_MAX_PENDING = 1024;
+
+    /**
+     * Refreshes the cached value of a key
+     *
+     * @param <K> The type of the keys
+     */
+    public interface Refresher<K> {
+
+        /**
+         * Refreshes the cached value of the given key
+         *
+         * @param key The key to refresh
+         *
+         * @throws InputOutputException If refreshing failed
+         */
+        void refresh(K key)
+                throws InputOutputException;
+    }
+
+    protected final Refresher<K> refresher;
+
+    /**
+     * The share of the time to live remaining at which values are refreshed
+     */
+    protected final double refreshRatio;
+
+    /**
+     * The number of reads within the remaining share of the time to live required to refresh a value
+     */
+    protected final int minAccesses;
+
+    /**
+     * The time in milliseconds to wait between two refreshes
+     */
+    protected final long refreshInterval;
+
+    protected final int maxPending;
+
+    /**
+     * The keys waiting to be refreshed in the order of their request
+     */
+    protected final LinkedHashSet<K> pending;
+
+    protected final LongAdder refreshes;
+
+    protected ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * Whether a refresh is currently scheduled or running
+     */
+    protected boolean scheduled;
+
+    protected boolean shutdown;
+
+    /**
+     * @param refresher             Refreshes the cached value of a key
+     * @param refreshRatio          The share of the time to live remaining at which values are refreshed, e.g. 0.2
+     * @param minAccesses           The number of reads within the remaining share of the time to live required to refresh a value
+     * @param maxRefreshesPerSecond The maximum number of values refreshed per second
+     */
+    public RefreshAhead(Refresher<K> refresher, double refreshRatio, int minAccesses, int maxRefreshesPerSecond) {
+        if (refreshRatio <= 0 || refreshRatio > 1) {
+            throw new IllegalArgumentException("Refresh ratio must be in (0, 1]");
+        }
+
+        if (maxRefreshesPerSecond <= 0) {
+            throw new IllegalArgumentException("Maximum number of refreshes must be positive");
+        }
+
+        this.refresher = refresher;
+        this.refreshRatio = refreshRatio;
+        this.minAccesses = Math.max(1, minAccesses);
+        this.refreshInterval = 1000L / maxRefreshesPerSecond;
+        this.maxPending = DEFAULT_MAX_PENDING;
+        this.pending = new LinkedHashSet<>();
+        this.refreshes = new LongAdder();
+        this.scheduled = false;
+        this.shutdown = false;
+    }
+
+    /**
+     * Queues the given key to be refreshed
+     *
+     * @param key The key to refresh
+     *
+     * @return True, if the key has been queued, false if it is already queued or too many keys are queued
+     */
+    public synchronized boolean request(K key) {
+        if (this.shutdown || this.pending.size() >= this.maxPending || ! this.pending.add(key)) {
+            return false;
+        }
+
+        if (! this.scheduled) {
+            this.scheduled = true;
+            this.getScheduler().execute(this::refreshNext);
+        }
+
+        return true;
+    }
+
+    /**
+     * Stops refreshing and discards all queued keys
+     */
+    public synchronized void shutdown() {
+        this.shutdown = true;
+        this.pending.clear();
+
+        if (null != this.scheduler) {
+            this.scheduler.shutdownNow();
+        }
+    }
+
+    public double getRefreshRatio() {
+        return refreshRatio;
+    }
+
+    public int getMinAccesses() {
+        return minAccesses;
+    }
+
+    /**
+     * Returns the number of keys waiting to be refreshed
+     *
+     * @return The number of queued keys
+     */
+    public synchronized int getPendingCount() {
+        return this.pending.size();
+    }
+
+    /**
+     * Returns the number of refreshes executed so far, including failed ones
+     *
+     * @return The number of refreshes
+     */
+    public long getRefreshCount() {
+        return this.refreshes.sum();
+    }
+
+    /**
+     * Refreshes the key queued first and schedules
+     * the next refresh, if further keys are queued
+     */
+    protected void refreshNext() {
+        K key;
+        synchronized (this) {
+            Iterator<K> iterator = this.pending.iterator();
+
+            if (this.shutdown || ! iterator.hasNext()) {
+                this.scheduled = false;
+                return;
+            }
+
+            key = iterator.next();
+            iterator.remove();
+        }
+
+        try {
+            this.refresher.refresh(key);
+        } catch (InputOutputException | RuntimeException e) {
+            logger.warn("Failed to refresh " + key + " ahead of its expiry. Message: " + e.getMessage());
+        }
+
+        this.refreshes.increment();
+
+        synchronized (this) {
+            if (this.shutdown || this.pending.isEmpty()) {
+                this.scheduled = false;
+                return;
+            }
+
+            this.getScheduler().schedule(this::refreshNext, this.refreshInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    protected ScheduledThreadPoolExecutor getScheduler() {
+        if (null == this.scheduler) {
+            this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "dht-refresh-ahead");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.scheduler.setKeepAliveTime(60L, TimeUnit.SECONDS);
+            // do not keep an idle thread around
+            this.scheduler.allowCoreThreadTimeOut(true);
+        }
+
+        return this.scheduler;
+    }
+}
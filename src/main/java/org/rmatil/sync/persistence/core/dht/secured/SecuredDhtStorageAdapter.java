@@ -4,8 +4,11 @@ import net.tomp2p.dht.PeerDHT;
 import org.rmatil.sync.persistence.api.IFileMetaInfo;
 import org.rmatil.sync.persistence.api.StorageType;
 import org.rmatil.sync.persistence.core.dht.base.BaseDhtStorageAdapter;
+import org.rmatil.sync.persistence.core.dht.cache.IDhtCache;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A DHT Storage adapter which uses domain protection
  * of the given {@link PeerDHT} to protect values.
@@ -83,6 +86,46 @@ public class SecuredDhtStorageAdapter extends BaseDhtStorageAdapter implements I
 
     }
 
+    /**
+     * Creates a storage adapter for the DHT which protects each peers domain
+     * and stores values larger than the given chunk size in multiple chunks.
+     * See {@link SecuredDhtStorageAdapter#SecuredDhtStorageAdapter(PeerDHT)} for bootstrapping the PeerDHT.
+     *
+     * @param dht        A PeerDHT bootstrapped with domain protection
+     * @param timeToLive The time to live of cached values in milliseconds
+     * @param chunkSize  The size in bytes above which values are stored in chunks
+     */
+    public SecuredDhtStorageAdapter(PeerDHT dht, long timeToLive, int chunkSize) {
+        super(dht, timeToLive, chunkSize);
+
+        if (null == dht.peerBean().keyPair().getPublic() ||
+                null == dht.peerBean().keyPair().getPrivate()) {
+            // we require a public private key pair to protect domains
+            throw new IllegalArgumentException("The given peer dht must have a public private keypair set");
+        }
+
+    }
+
+    /**
+     * Creates a storage adapter for the DHT which protects each peers domain
+     * and caches values in the given cache.
+     * See {@link SecuredDhtStorageAdapter#SecuredDhtStorageAdapter(PeerDHT)} for bootstrapping the PeerDHT.
+     *
+     * @param dht       A PeerDHT bootstrapped with domain protection
+     * @param cache     The cache to use, shut down together with the adapter
+     * @param chunkSize The size in bytes above which values are stored in chunks
+     */
+    public SecuredDhtStorageAdapter(PeerDHT dht, IDhtCache cache, int chunkSize) {
+        super(dht, cache, chunkSize);
+
+        if (null == dht.peerBean().keyPair().getPublic() ||
+                null == dht.peerBean().keyPair().getPrivate()) {
+            // we require a public private key pair to protect domains
+            throw new IllegalArgumentException("The given peer dht must have a public private keypair set");
+        }
+
+    }
+
     @Override
     public void persist(StorageType type, SecuredDhtPathElement path, byte[] bytes)
             throws InputOutputException {
@@ -139,4 +182,29 @@ public class SecuredDhtStorageAdapter extends BaseDhtStorageAdapter implements I
             throws InputOutputException {
         return super.getChecksum(path);
     }
+
+    @Override
+    public CompletableFuture<Void> persistAsync(StorageType type, SecuredDhtPathElement path, byte[] bytes) {
+        return super.persistAsync(type, path, bytes);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(SecuredDhtPathElement path) {
+        return super.deleteAsync(path);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> readAsync(SecuredDhtPathElement path) {
+        return super.readAsync(path);
+    }
+
+    @Override
+    public CompletableFuture<IFileMetaInfo> getMetaInformationAsync(SecuredDhtPathElement path) {
+        return super.getMetaInformationAsync(path);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsAsync(StorageType storageType, SecuredDhtPathElement path) {
+        return super.existsAsync(storageType, path);
+    }
 }
@@ -5,6 +5,8 @@ import org.rmatil.sync.persistence.api.StorageType;
 import org.rmatil.sync.persistence.core.dht.IDhtStorageAdapter;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * An interface for DHT storage adapters which
  * do not provide domain protection
@@ -141,4 +143,62 @@ public interface IUnsecuredDhtStorageAdapter extends IDhtStorageAdapter {
      */
     String getChecksum(UnsecuredDhtPathElement path)
             throws InputOutputException;
+
+    /**
+     * Persists the given bytes at the given path without waiting for the DHT
+     * <p>
+     * <p style="color:red">Note, that no domain protection is used.</p>
+     *
+     * @param type  The type of path which should be created
+     * @param path  The path used to identify the data
+     * @param bytes The bytes to store
+     *
+     * @return A future which completes once the bytes are stored
+     */
+    CompletableFuture<Void> persistAsync(StorageType type, UnsecuredDhtPathElement path, byte[] bytes);
+
+    /**
+     * Deletes the content stored at path without waiting for the DHT
+     * <p>
+     * <p style="color:red">Note, that no domain protection is used</p>
+     *
+     * @param path The path to remove
+     *
+     * @return A future which completes once the content is removed
+     */
+    CompletableFuture<Void> deleteAsync(UnsecuredDhtPathElement path);
+
+    /**
+     * Reads the contents stored at path without waiting for the DHT
+     * <p>
+     * <p style="color:red">Note, that no domain protection is used</p>
+     *
+     * @param path The path from which to read
+     *
+     * @return A future completing with the content as byte array
+     */
+    CompletableFuture<byte[]> readAsync(UnsecuredDhtPathElement path);
+
+    /**
+     * Returns some meta information about the given path without waiting for the DHT
+     * <p>
+     * <p style="color:red">Note, that no domain protection is used</p>
+     *
+     * @param path The path element of which to get the meta information
+     *
+     * @return A future completing with the meta information
+     */
+    CompletableFuture<IFileMetaInfo> getMetaInformationAsync(UnsecuredDhtPathElement path);
+
+    /**
+     * Checks whether the given path already exists without waiting for the DHT
+     * <p>
+     * <p style="color:red">Note, that no domain protection is used</p>
+     *
+     * @param storageType The storage type to check for
+     * @param path        The path to check
+     *
+     * @return A future completing with true, if existing, false otherwise
+     */
+    CompletableFuture<Boolean> existsAsync(StorageType storageType, UnsecuredDhtPathElement path);
 }
@@ -4,9 +4,12 @@ import net.tomp2p.dht.PeerDHT;
 import org.rmatil.sync.persistence.api.IFileMetaInfo;
 import org.rmatil.sync.persistence.api.StorageType;
 import org.rmatil.sync.persistence.core.dht.base.BaseDhtStorageAdapter;
+import org.rmatil.sync.persistence.core.dht.cache.IDhtCache;
 import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtStorageAdapter;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * A DHT Storage adapter which does not use domain protection
  * for storing values.
@@ -36,6 +39,30 @@ public class UnsecuredDhtStorageAdapter extends BaseDhtStorageAdapter implements
         super(dht, timeToLive);
     }
 
+    /**
+     * Creates a storage adapter for the DHT which does not protect values
+     * and stores values larger than the given chunk size in multiple chunks.
+     *
+     * @param dht        A PeerDHT
+     * @param timeToLive The time to live of cached values in milliseconds
+     * @param chunkSize  The size in bytes above which values are stored in chunks
+     */
+    public UnsecuredDhtStorageAdapter(PeerDHT dht, long timeToLive, int chunkSize) {
+        super(dht, timeToLive, chunkSize);
+    }
+
+    /**
+     * Creates a storage adapter for the DHT which does not protect values
+     * and caches values in the given cache.
+     *
+     * @param dht       A PeerDHT
+     * @param cache     The cache to use, shut down together with the adapter
+     * @param chunkSize The size in bytes above which values are stored in chunks
+     */
+    public UnsecuredDhtStorageAdapter(PeerDHT dht, IDhtCache cache, int chunkSize) {
+        super(dht, cache, chunkSize);
+    }
+
     @Override
     public void persist(StorageType type, UnsecuredDhtPathElement path, byte[] bytes)
             throws InputOutputException {
@@ -90,4 +117,28 @@ public class UnsecuredDhtStorageAdapter extends BaseDhtStorageAdapter implements
         return super.getChecksum(path);
     }
 
-}
\ No newline at end of file
+    @Override
+    public CompletableFuture<Void> persistAsync(StorageType type, UnsecuredDhtPathElement path, byte[] bytes) {
+        return super.persistAsync(type, path, bytes);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(UnsecuredDhtPathElement path) {
+        return super.deleteAsync(path);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> readAsync(UnsecuredDhtPathElement path) {
+        return super.readAsync(path);
+    }
+
+    @Override
+    public CompletableFuture<IFileMetaInfo> getMetaInformationAsync(UnsecuredDhtPathElement path) {
+        return super.getMetaInformationAsync(path);
+    }
+
+    @Override
+    public CompletableFuture<Boolean> existsAsync(StorageType storageType, UnsecuredDhtPathElement path) {
+        return super.existsAsync(storageType, path);
+    }
+}
@@ -1,6 +1,7 @@
 package org.rmatil.sync.persistence.core.tree;
 
 import org.rmatil.sync.persistence.api.IStorageAdapter;
+import org.rmatil.sync.persistence.core.tree.snapshot.TreeSnapshot;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 
 import java.util.List;
@@ -49,6 +50,22 @@ public interface ITreeStorageAdapter extends IStorageAdapter<TreePathElement> {
     List<TreePathElement> getDirectoryContents(TreePathElement directory)
             throws InputOutputException;
 
+    /**
+     * Captures the size, modification time and checksum of all contents
+     * of the given directory. Checksums of files which have the same size and
+     * modification time as in the given previous snapshot are taken over from it.
+     * Use {@link TreeSnapshot#diff(TreeSnapshot, TreeSnapshot)} to compare two snapshots.
+     *
+     * @param directory The directory of which to capture its contents
+     * @param previous  A previous snapshot of the same directory (may be null)
+     *
+     * @return The snapshot, having paths relative to the root directory
+     *
+     * @throws InputOutputException If the given path is not a directory
+     */
+    TreeSnapshot getSnapshot(TreePathElement directory, TreeSnapshot previous)
+            throws InputOutputException;
+
     /**
      * Returns the root directory of this storage adapter
      *
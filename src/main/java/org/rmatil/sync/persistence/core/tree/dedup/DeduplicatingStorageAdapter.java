@@ -0,0 +1,560 @@
+package org.rmatil.sync.persistence.core.tree.dedup;
+
+import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.tree.TreePathElement;
+import org.rmatil.sync.persistence.core.tree.local.LocalStorageAdapter;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.*;
+
+/**
+ * A storage adapter which stores the data on the local disk
+ * relative to the specified root directory, but keeps the content
+ * of each file only once in an object store located in {@link DeduplicatingStorageAdapter#OBJECT_STORE_DIR}.
+ * <p>
+ * Files written or copied through this adapter are hard links to the objects in the store,
+ * so that persisting content which is already stored or copying a file does not write
+ * any data. Objects are private copies written by the adapter only, files modified
+ * or created by other processes are never linked into the store.
+ * <p>
+ * Objects, and therefore all files linked to them, are read-only, so that a file
+ * can not be modified in place without making it writable first. Such a modification
+ * would also change the object, so an object is only reused while it is still read-only
+ * and of the expected size. Otherwise, it is written again. Writes at an offset
+ * through this adapter detach the file from its object first.
+ * <p>
+ * Deduplication requires hard links, POSIX file permissions and the link count of files
+ * to decide when an object is not referenced anymore. On file systems lacking any of these,
+ * the adapter stores files like a {@link LocalStorageAdapter}.
+ */
+public class DeduplicatingStorageAdapter extends LocalStorageAdapter implements IDeduplicatingStorageAdapter {
+
+    /**
+     * The name of the object store directory, relative to the root directory
+     */
+    public static final String OBJECT_STORE_DIR = ".objects";
+
+    protected Path objectStore;
+
+    /**
+     * The references of the files in the tree to objects in the store.
+     * Files which are not contained are resolved on demand
+     */
+    protected Map<Path, ObjectReference> index;
+
+    /**
+     * Whether the file system supports deduplication, null if not yet probed
+     */
+    protected Boolean deduplicating;
+
+    public DeduplicatingStorageAdapter(Path rootDir) {
+        super(rootDir);
+        this.objectStore = rootDir.resolve(OBJECT_STORE_DIR);
+        this.index = new HashMap<>();
+    }
+
+    @Override
+    synchronized public void persist(StorageType type, TreePathElement path, long offset, byte[] bytes)
+            throws InputOutputException {
+        if (! this.isDeduplicating()) {
+            super.persist(type, path, offset, bytes);
+            return;
+        }
+
+        Path filePath = rootDir.resolve(path.getPath());
+
+        switch (type) {
+            case FILE:
+                long currentSize = this.writeBehindBuffer.getSize(filePath);
+
+                if (Math.min(offset, currentSize) == 0) {
+                    // the file is truncated, i.e. its new content are exactly the given bytes
+                    this.writeBehindBuffer.discard(filePath);
+                    this.readAheadBuffer.invalidate(filePath);
+                    this.storeObject(filePath, bytes);
+                } else {
+                    if (! this.writeBehindBuffer.hasPendingWrites(filePath)) {
+                        // files with buffered writes are already detached
+                        this.detach(filePath);
+                    }
+
+                    super.persist(type, path, offset, bytes);
+                }
+                break;
+            case DIRECTORY:
+                super.persist(type, path, offset, bytes);
+                break;
+        }
+    }
+
+    @Override
+    synchronized public void delete(TreePathElement path)
+            throws InputOutputException {
+        Path filePath = rootDir.resolve(path.getPath());
+        super.delete(filePath);
+
+        for (ObjectReference reference : this.removeReferences(filePath).values()) {
+            this.release(reference);
+        }
+    }
+
+    @Override
+    synchronized public void move(StorageType storageType, TreePathElement oldPath, TreePathElement newPath)
+            throws InputOutputException {
+        super.move(storageType, oldPath, newPath);
+
+        Path oldFilePath = rootDir.resolve(oldPath.getPath()).normalize();
+        Path newFilePath = rootDir.resolve(newPath.getPath()).normalize();
+
+        for (Map.Entry<Path, ObjectReference> entry : this.removeReferences(oldFilePath).entrySet()) {
+            this.index.put(newFilePath.resolve(oldFilePath.relativize(entry.getKey())), entry.getValue());
+        }
+    }
+
+    @Override
+    synchronized public void copy(StorageType storageType, TreePathElement sourcePath, TreePathElement targetPath)
+            throws InputOutputException {
+        Path sourceFilePath = rootDir.resolve(sourcePath.getPath());
+        Path targetFilePath = rootDir.resolve(targetPath.getPath());
+
+        this.writeBehindBuffer.flush(sourceFilePath);
+
+        if (! this.exists(storageType, sourcePath)) {
+            throw new InputOutputException("Source path " + sourceFilePath.toString() + " does not exist");
+        }
+
+        if (this.exists(storageType, targetPath)) {
+            throw new InputOutputException("Target path " + targetFilePath.toString() + " does already exist");
+        }
+
+        this.readAheadBuffer.invalidate(targetFilePath);
+
+        switch (storageType) {
+            case FILE:
+                if (! this.isDeduplicating()) {
+                    try {
+                        Files.copy(sourceFilePath, targetFilePath);
+                    } catch (IOException e) {
+                        throw new InputOutputException(e);
+                    }
+                    break;
+                }
+
+                ObjectReference reference = this.getReference(sourceFilePath);
+
+                if (! this.isIntact(reference)) {
+                    // the source is not linked to an intact object
+                    reference = this.storeFileObject(sourceFilePath);
+                }
+
+                this.link(reference, targetFilePath);
+                break;
+            case DIRECTORY:
+                createDir(targetFilePath);
+
+                File[] children = sourceFilePath.toFile().listFiles();
+                if (null == children) {
+                    throw new InputOutputException(sourceFilePath.toString() + " is not a directory!");
+                }
+
+                for (File child : children) {
+                    this.copy(
+                            child.isDirectory() ? StorageType.DIRECTORY : StorageType.FILE,
+                            new TreePathElement(Paths.get(sourcePath.getPath()).resolve(child.getName()).toString()),
+                            new TreePathElement(Paths.get(targetPath.getPath()).resolve(child.getName()).toString())
+                    );
+                }
+                break;
+        }
+    }
+
+    /**
+     * Returns the checksum of the given file. Since files written through this adapter
+     * are referencing a content addressed object, this is usually only a lookup.
+     * Files which are not yet known are hashed once, without modifying them.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    synchronized public String getChecksum(TreePathElement path)
+            throws InputOutputException {
+        if (! this.isFile(path)) {
+            throw new InputOutputException("Failed to generate checksum. Only files can have a checksum");
+        }
+
+        if (! this.isDeduplicating()) {
+            return super.getChecksum(path);
+        }
+
+        return this.getReference(rootDir.resolve(path.getPath())).getChecksum();
+    }
+
+    @Override
+    synchronized public void collectGarbage()
+            throws InputOutputException {
+        if (! this.isDeduplicating()) {
+            return;
+        }
+
+        File[] buckets = this.objectStore.toFile().listFiles();
+
+        if (null == buckets) {
+            return;
+        }
+
+        for (File bucket : buckets) {
+            File[] objects = bucket.listFiles();
+
+            if (null == objects) {
+                // a left over temporary file
+                bucket.delete();
+                continue;
+            }
+
+            for (File object : objects) {
+                if (this.getLinkCount(object.toPath()) == 1) {
+                    object.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the reference of the given file to its object.
+     * If the file is unknown or has been modified since, it is hashed again.
+     * The object it refers to is not necessarily stored.
+     *
+     * @param filePath The file of which to get the reference
+     *
+     * @return The reference to the object
+     *
+     * @throws InputOutputException If the file could not be read
+     */
+    protected ObjectReference getReference(Path filePath)
+            throws InputOutputException {
+        ObjectReference reference = this.index.get(filePath.normalize());
+
+        if (null != reference && reference.isUpToDate(filePath.toFile())) {
+            return reference;
+        }
+
+        ObjectReference currentReference = ObjectReference.of(filePath);
+        this.index.put(filePath.normalize(), currentReference);
+
+        if (null != reference && ! reference.getObjectHash().equals(currentReference.getObjectHash())) {
+            // the file has been replaced by another process
+            this.release(reference);
+        }
+
+        return currentReference;
+    }
+
+    /**
+     * Stores a private copy of the given file in the object store, if the object
+     * is not yet stored intact. The file itself is left untouched.
+     *
+     * @param filePath The file to copy to the store
+     *
+     * @return The reference to the stored object
+     *
+     * @throws InputOutputException If the object could not be stored
+     */
+    protected ObjectReference storeFileObject(Path filePath)
+            throws InputOutputException {
+        try {
+            Files.createDirectories(this.objectStore);
+
+            // hash the copy, since the file may be modified concurrently
+            Path tmpFile = Files.createTempFile(this.objectStore, "object", ".tmp");
+            Files.copy(filePath, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+
+            ObjectReference reference = ObjectReference.of(tmpFile);
+
+            if (this.isIntact(reference)) {
+                Files.delete(tmpFile);
+            } else {
+                this.moveToStore(tmpFile, reference);
+            }
+
+            return reference;
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+    }
+
+    /**
+     * Stores the given bytes in the object store, if not yet present intact,
+     * and references them from the given file
+     *
+     * @param filePath The file which should contain the bytes
+     * @param bytes    The bytes to store
+     *
+     * @throws InputOutputException If the object could not be stored
+     */
+    protected void storeObject(Path filePath, byte[] bytes)
+            throws InputOutputException {
+        if (null == filePath.getParent() || ! filePath.getParent().toFile().isDirectory()) {
+            throw new InputOutputException(filePath.toString() + " (No such file or directory)");
+        }
+
+        if (filePath.toFile().isDirectory()) {
+            throw new InputOutputException(filePath.toString() + " (Is a directory)");
+        }
+
+        ObjectReference reference = ObjectReference.of(bytes);
+
+        if (! this.isIntact(reference)) {
+            try {
+                Files.createDirectories(this.objectStore);
+
+                // write to a temporary file first to never expose partially written objects
+                Path tmpFile = Files.createTempFile(this.objectStore, "object", ".tmp");
+                Files.write(tmpFile, bytes);
+                this.moveToStore(tmpFile, reference);
+            } catch (IOException e) {
+                throw new InputOutputException(e);
+            }
+        }
+
+        this.link(reference, filePath);
+    }
+
+    /**
+     * Makes the given temporary file read-only and moves it to the path of the object.
+     * An object already stored at this path is replaced, while files still linked to it keep their content.
+     *
+     * @param tmpFile   The temporary file holding the content of the object
+     * @param reference The reference of the object
+     *
+     * @throws IOException If moving failed
+     */
+    protected void moveToStore(Path tmpFile, ObjectReference reference)
+            throws IOException {
+        Path objectPath = this.getObjectPath(reference.getObjectHash());
+
+        Files.createDirectories(objectPath.getParent());
+        Files.setPosixFilePermissions(tmpFile, PosixFilePermissions.fromString("r--r--r--"));
+        Files.move(tmpFile, objectPath, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Checks whether the object of the given reference is stored and has
+     * not been modified through any file linked to it. Modifying a linked file
+     * in place requires making it writable, which also makes the object writable.
+     *
+     * @param reference The reference of the object
+     *
+     * @return True, if the object is stored, read-only and of the expected size
+     */
+    protected boolean isIntact(ObjectReference reference) {
+        Path objectPath = this.getObjectPath(reference.getObjectHash());
+
+        try {
+            Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(objectPath);
+
+            return Files.size(objectPath) == reference.getSize() &&
+                    ! permissions.contains(PosixFilePermission.OWNER_WRITE) &&
+                    ! permissions.contains(PosixFilePermission.GROUP_WRITE) &&
+                    ! permissions.contains(PosixFilePermission.OTHERS_WRITE);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the given file by a reference to the object of the given reference
+     *
+     * @param reference The reference of the object
+     * @param filePath  The file which should reference the object
+     *
+     * @return The reference bound to the given file
+     *
+     * @throws InputOutputException If linking failed
+     */
+    protected ObjectReference link(ObjectReference reference, Path filePath)
+            throws InputOutputException {
+        Path objectPath = this.getObjectPath(reference.getObjectHash());
+
+        try {
+            Files.createDirectories(this.objectStore);
+            Path tmpLink = this.objectStore.resolve(UUID.randomUUID().toString() + ".tmp");
+
+            try {
+                Files.createLink(tmpLink, objectPath);
+            } catch (UnsupportedOperationException | IOException e) {
+                Files.copy(objectPath, tmpLink);
+            }
+
+            // renaming is atomic, so readers never see a missing file
+            Files.move(tmpLink, filePath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+
+        ObjectReference boundReference = reference.bindTo(filePath.toFile());
+        ObjectReference previous = this.index.put(filePath.normalize(), boundReference);
+
+        if (null != previous && ! previous.getObjectHash().equals(reference.getObjectHash())) {
+            this.release(previous);
+        }
+
+        return boundReference;
+    }
+
+    /**
+     * Detaches the given file from the object it references, so that
+     * it can be modified in place without altering other files
+     *
+     * @param filePath The file to detach
+     *
+     * @throws InputOutputException If the file could not be detached
+     */
+    protected void detach(Path filePath)
+            throws InputOutputException {
+        ObjectReference reference = this.index.remove(filePath.normalize());
+
+        if (null == reference && this.getLinkCount(filePath) <= 1) {
+            // the file does not share its content
+            return;
+        }
+
+        try {
+            Path tmpFile = Files.createTempFile(this.objectStore, "detach", ".tmp");
+            Files.copy(filePath, tmpFile, StandardCopyOption.REPLACE_EXISTING);
+
+            // the detached file is writable again
+            Set<PosixFilePermission> permissions = EnumSet.copyOf(Files.getPosixFilePermissions(filePath));
+            permissions.add(PosixFilePermission.OWNER_WRITE);
+            Files.setPosixFilePermissions(tmpFile, permissions);
+
+            Files.move(tmpFile, filePath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+
+        this.release(reference);
+    }
+
+    /**
+     * Removes the object of the given reference from the store,
+     * if it is not referenced by any file anymore
+     *
+     * @param reference The reference which is not used anymore (may be null)
+     */
+    protected void release(ObjectReference reference) {
+        if (null == reference) {
+            return;
+        }
+
+        Path objectPath = this.getObjectPath(reference.getObjectHash());
+
+        if (this.getLinkCount(objectPath) == 1) {
+            objectPath.toFile().delete();
+        }
+    }
+
+    /**
+     * Removes the references of the given file and all files beneath it from the index
+     *
+     * @param filePath The file or directory
+     *
+     * @return The removed references
+     */
+    protected Map<Path, ObjectReference> removeReferences(Path filePath) {
+        Path normalizedPath = filePath.normalize();
+        Map<Path, ObjectReference> removed = new HashMap<>();
+
+        Iterator<Map.Entry<Path, ObjectReference>> itr = this.index.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Path, ObjectReference> entry = itr.next();
+            if (entry.getKey().startsWith(normalizedPath)) {
+                removed.put(entry.getKey(), entry.getValue());
+                itr.remove();
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Returns whether the file system of the root directory supports deduplication,
+     * i.e. hard links, POSIX file permissions and link counts. The result is probed once.
+     *
+     * @return True, if files are stored deduplicated
+     */
+    protected boolean isDeduplicating() {
+        if (null == this.deduplicating) {
+            this.deduplicating = this.probeDeduplication();
+        }
+
+        return this.deduplicating;
+    }
+
+    /**
+     * Probes whether the file system of the root directory supports deduplication
+     *
+     * @return True, if deduplication is supported
+     */
+    protected boolean probeDeduplication() {
+        Path probe = null;
+        Path probeLink = this.objectStore.resolve(UUID.randomUUID().toString() + ".tmp");
+
+        try {
+            Files.createDirectories(this.objectStore);
+            probe = Files.createTempFile(this.objectStore, "probe", ".tmp");
+
+            Files.getPosixFilePermissions(probe);
+            Files.createLink(probeLink, probe);
+
+            return this.getLinkCount(probe) == 2;
+        } catch (UnsupportedOperationException | IOException e) {
+            return false;
+        } finally {
+            probeLink.toFile().delete();
+            if (null != probe) {
+                probe.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of hard links to the given file
+     *
+     * @param path The file
+     *
+     * @return The number of links or -1, if the file does not exist or the file system does not provide this information
+     */
+    protected int getLinkCount(Path path) {
+        try {
+            return (Integer) Files.getAttribute(path, "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException | IOException e) {
+            return - 1;
+        }
+    }
+
+    /**
+     * Returns the path of the object with the given hash in the object store
+     *
+     * @param objectHash The hash of the object
+     *
+     * @return The path to the object
+     */
+    protected Path getObjectPath(String objectHash) {
+        return this.objectStore.resolve(objectHash.substring(0, 2)).resolve(objectHash);
+    }
+
+    /**
+     * Excludes the object store and its contents
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean isExcluded(TreePathElement path) {
+        return Paths.get(path.getPath()).normalize().startsWith(OBJECT_STORE_DIR);
+    }
+}
@@ -0,0 +1,37 @@
+package org.rmatil.sync.persistence.core.tree.dedup;
+
+import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.tree.TreePathElement;
+import org.rmatil.sync.persistence.core.tree.local.ILocalStorageAdapter;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+/**
+ * An interface for a local storage adapter which
+ * stores the content of each file only once per content hash.
+ * Elements in the tree are then references to the stored objects.
+ */
+public interface IDeduplicatingStorageAdapter extends ILocalStorageAdapter {
+
+    /**
+     * Copies the contents stored at sourcePath to targetPath.
+     * Files are not copied physically but only referenced once more
+     * from the target path.
+     *
+     * @param storageType The storage type of the source and target path
+     * @param sourcePath  The path to copy
+     * @param targetPath  The path to which the contents should be copied
+     *
+     * @throws InputOutputException If the source does not exist or the target path already exists
+     */
+    void copy(StorageType storageType, TreePathElement sourcePath, TreePathElement targetPath)
+            throws InputOutputException;
+
+    /**
+     * Removes all objects from the object store which are not
+     * referenced by any element of the tree anymore
+     *
+     * @throws InputOutputException If the object store could not be traversed
+     */
+    void collectGarbage()
+            throws InputOutputException;
+}
@@ -0,0 +1,139 @@
+package org.rmatil.sync.persistence.core.tree.dedup;
+
+import org.rmatil.sync.persistence.core.Checksums;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+/**
+ * A reference from an element in the tree to an
+ * object in the object store of a {@link DeduplicatingStorageAdapter}
+ */
+public class ObjectReference {
+
+    /**
+     * The hash identifying the object in the object store (SHA-256)
+     */
+    protected String objectHash;
+
+    /**
+     * The checksum of the content as returned by getChecksum (MD5)
+     */
+    protected String checksum;
+
+    /**
+     * The size of the referencing file at the time the reference was recorded
+     */
+    protected long size;
+
+    /**
+     * The modification time of the referencing file at the time the reference was recorded
+     */
+    protected long lastModified;
+
+    /**
+     * @param objectHash   The hash identifying the object in the object store
+     * @param checksum     The checksum of the content
+     * @param size         The size of the referencing file
+     * @param lastModified The modification time of the referencing file
+     */
+    public ObjectReference(String objectHash, String checksum, long size, long lastModified) {
+        this.objectHash = objectHash;
+        this.checksum = checksum;
+        this.size = size;
+        this.lastModified = lastModified;
+    }
+
+    /**
+     * Creates a reference for the given content
+     *
+     * @param bytes The content to hash
+     *
+     * @return The reference, not yet bound to any file
+     */
+    public static ObjectReference of(byte[] bytes) {
+        MessageDigest objectDigest = Checksums.createDigest(Checksums.SHA_256);
+        MessageDigest checksumDigest = Checksums.createDigest(Checksums.MD5);
+
+        objectDigest.update(bytes);
+        checksumDigest.update(bytes);
+
+        return new ObjectReference(Checksums.toHex(objectDigest.digest()), Checksums.toHex(checksumDigest.digest()), bytes.length, 0);
+    }
+
+    /**
+     * Creates a reference for the content of the given file,
+     * reading it only once to compute both hashes
+     *
+     * @param filePath The file to hash
+     *
+     * @return The reference, bound to the size and modification time of the file
+     *
+     * @throws InputOutputException If the file could not be read
+     */
+    public static ObjectReference of(Path filePath)
+            throws InputOutputException {
+        MessageDigest objectDigest = Checksums.createDigest(Checksums.SHA_256);
+        MessageDigest checksumDigest = Checksums.createDigest(Checksums.MD5);
+
+        try (InputStream inputStream = Files.newInputStream(filePath)) {
+            byte[] buffer = new byte[8192];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != - 1) {
+                objectDigest.update(buffer, 0, bytesRead);
+                checksumDigest.update(buffer, 0, bytesRead);
+            }
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+
+        File file = filePath.toFile();
+
+        return new ObjectReference(Checksums.toHex(objectDigest.digest()), Checksums.toHex(checksumDigest.digest()), file.length(), file.lastModified());
+    }
+
+    /**
+     * Returns a copy of this reference bound to the current state of the given file
+     *
+     * @param file The file referencing the object
+     *
+     * @return The bound reference
+     */
+    public ObjectReference bindTo(File file) {
+        return new ObjectReference(this.objectHash, this.checksum, file.length(), file.lastModified());
+    }
+
+    /**
+     * Checks whether the given file has not been modified
+     * since this reference was recorded
+     *
+     * @param file The file referencing the object
+     *
+     * @return True, if size and modification time are unchanged, false otherwise
+     */
+    public boolean isUpToDate(File file) {
+        return file.isFile() && file.length() == this.size && file.lastModified() == this.lastModified;
+    }
+
+    public String getObjectHash() {
+        return objectHash;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+}
@@ -1,6 +1,7 @@
 package org.rmatil.sync.persistence.core.tree.local;
 
 import org.rmatil.sync.persistence.core.tree.ITreeStorageAdapter;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
 
 /**
  * An interface for a storage adapter
@@ -8,4 +9,11 @@ import org.rmatil.sync.persistence.core.tree.ITreeStorageAdapter;
  */
 public interface ILocalStorageAdapter extends ITreeStorageAdapter {
 
+    /**
+     * Writes all writes which are buffered in memory to disk
+     *
+     * @throws InputOutputException If writing failed
+     */
+    void flush()
+            throws InputOutputException;
 }
@@ -6,10 +6,13 @@ import org.rmatil.sync.persistence.api.IFileMetaInfo;
 import org.rmatil.sync.persistence.api.StorageType;
 import org.rmatil.sync.persistence.core.FileMetaInfo;
 import org.rmatil.sync.persistence.core.tree.TreePathElement;
+import org.rmatil.sync.persistence.core.tree.snapshot.SnapshotEntry;
+import org.rmatil.sync.persistence.core.tree.snapshot.TreeSnapshot;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 
 import java.io.*;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -21,13 +24,68 @@ import static java.nio.file.StandardOpenOption.*;
  */
 public class LocalStorageAdapter implements ILocalStorageAdapter {
 
+    /**
+     * The number of chunks prefetched ahead of sequential chunked reads by default.
+     * Read-ahead is disabled by default, since prefetched chunks are only checked against
+     * the size and modification time of the file and may miss a rewrite by another process
+     */
+    public static final int DEFAULT_READ_AHEAD_CHUNKS = 0;
+
+    /**
+     * The maximum number of bytes held in prefetched chunks by default
+     */
+    public static final long DEFAULT_READ_AHEAD_BUFFER_SIZE = 32L * 1024L * 1024L;
+
+    /**
+     * The time in milliseconds after which buffered writes are flushed
+     */
+    public static final long DEFAULT_WRITE_BEHIND_FLUSH_DELAY = 1000L;
+
+    /**
+     * Writes larger than this are never buffered
+     */
+    public static final int MAX_BUFFERED_WRITE_SIZE = 1024 * 1024;
+
     protected Path rootDir;
 
     protected OpenOption[] optionOptions;
 
+    protected ReadAheadBuffer readAheadBuffer;
+
+    protected WriteBehindBuffer writeBehindBuffer;
+
     public LocalStorageAdapter(Path rootDir) {
+        this(rootDir, DEFAULT_READ_AHEAD_CHUNKS);
+    }
+
+    /**
+     * Creates a local storage adapter which prefetches chunks of files read in consecutive chunks.
+     * Prefetched chunks are discarded if the size or modification time of the file changes,
+     * so read-ahead should only be enabled if the files are not rewritten in place
+     * by other processes within the granularity of the modification time.
+     *
+     * @param rootDir         The root directory to which all paths are relative
+     * @param readAheadChunks The number of chunks to prefetch when a file is read in consecutive chunks. Use 0 to disable read-ahead
+     */
+    public LocalStorageAdapter(Path rootDir, int readAheadChunks) {
+        this(rootDir, readAheadChunks, 0);
+    }
+
+    /**
+     * Creates a local storage adapter which buffers small writes at an offset
+     * in memory and flushes them in large sequential writes.
+     * Buffered writes are flushed after {@link LocalStorageAdapter#DEFAULT_WRITE_BEHIND_FLUSH_DELAY} milliseconds,
+     * before any other access to the same file or on an explicit {@link LocalStorageAdapter#flush()}.
+     *
+     * @param rootDir               The root directory to which all paths are relative
+     * @param readAheadChunks       The number of chunks to prefetch when a file is read in consecutive chunks. Use 0 to disable read-ahead
+     * @param writeBehindBufferSize The maximum number of bytes buffered over all files. Use 0 to disable write-behind
+     */
+    public LocalStorageAdapter(Path rootDir, int readAheadChunks, long writeBehindBufferSize) {
         this.rootDir = rootDir;
         this.optionOptions = new OpenOption[]{WRITE, CREATE, TRUNCATE_EXISTING};
+        this.readAheadBuffer = new ReadAheadBuffer(readAheadChunks, DEFAULT_READ_AHEAD_BUFFER_SIZE);
+        this.writeBehindBuffer = new WriteBehindBuffer(writeBehindBufferSize, DEFAULT_WRITE_BEHIND_FLUSH_DELAY);
     }
 
     @Override
@@ -43,7 +101,14 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
 
         switch (type) {
             case FILE:
-                writeData(filePath, offset, bytes);
+                if (this.writeBehindBuffer.isEnabled() && bytes.length <= MAX_BUFFERED_WRITE_SIZE) {
+                    this.readAheadBuffer.invalidate(filePath);
+                    this.writeBehindBuffer.write(filePath, offset, bytes);
+                } else {
+                    // keep the order of writes
+                    this.writeBehindBuffer.flush(filePath);
+                    writeData(filePath, offset, bytes);
+                }
                 break;
             case DIRECTORY:
                 createDir(filePath);
@@ -63,6 +128,7 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
             throws InputOutputException {
 
         Path filePath = rootDir.resolve(path.getPath());
+        this.writeBehindBuffer.flush(filePath);
 
         try {
             return Files.readAllBytes(filePath);
@@ -71,33 +137,20 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
         }
     }
 
+    /**
+     * Consecutive reads of chunks with the same length are detected
+     * and the following chunks are prefetched in the background.
+     * <p>
+     * {@inheritDoc}
+     */
     @Override
     synchronized public byte[] read(TreePathElement path, long offset, int length)
             throws InputOutputException {
 
         Path filePath = rootDir.resolve(path.getPath());
+        this.writeBehindBuffer.flush(filePath);
 
-        byte[] chunk = new byte[length];
-        FileInputStream fileInputStream;
-        try {
-            fileInputStream = new FileInputStream(filePath.toFile());
-            BufferedInputStream buffer = new BufferedInputStream(fileInputStream);
-            // skip to offset
-            buffer.skip(offset);
-            int bytesRead = buffer.read(chunk, 0, length);
-            buffer.close();
-
-            if (bytesRead < length && bytesRead > - 1) {
-                // we have to truncate the byte array to not return null bytes
-                byte[] trimmedChunk = new byte[bytesRead];
-                System.arraycopy(chunk, 0, trimmedChunk, 0, bytesRead);
-                return trimmedChunk;
-            }
-
-            return chunk;
-        } catch (IOException e) {
-            throw new InputOutputException(e);
-        }
+        return this.readAheadBuffer.read(filePath, offset, length);
     }
 
     @Override
@@ -111,6 +164,10 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
             throw new InputOutputException("Target path " + newFilePath.toString() + " does already exist");
         }
 
+        this.writeBehindBuffer.flush(oldFilePath);
+        this.readAheadBuffer.invalidate(oldFilePath);
+        this.readAheadBuffer.invalidate(newFilePath);
+
         switch (storageType) {
             case FILE:
                 try {
@@ -146,6 +203,7 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
     synchronized public IFileMetaInfo getMetaInformation(TreePathElement path)
             throws InputOutputException {
         Path filePath = rootDir.resolve(path.getPath());
+        this.writeBehindBuffer.flush(filePath);
 
         File file = filePath.toFile();
         if (! file.exists()) {
@@ -173,6 +231,11 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
     synchronized public boolean exists(StorageType storageType, TreePathElement path) {
         Path filePath = rootDir.resolve(path.getPath());
 
+        if (this.writeBehindBuffer.hasPendingWrites(filePath)) {
+            // the file will be created on flushing
+            return StorageType.FILE == storageType;
+        }
+
         if (! filePath.toFile().exists()) {
             return false;
         }
@@ -191,6 +254,7 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
     synchronized public boolean isFile(TreePathElement path)
             throws InputOutputException {
         Path filePath = rootDir.resolve(path.getPath());
+        this.writeBehindBuffer.flush(filePath);
 
         if (! filePath.toFile().exists()) {
             throw new InputOutputException("Can not check whether element on path " + path.getPath() + " is a file: No such file or directory");
@@ -203,6 +267,7 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
     synchronized public boolean isDir(TreePathElement path)
             throws InputOutputException {
         Path filePath = rootDir.resolve(path.getPath());
+        this.writeBehindBuffer.flush(filePath);
 
         if (! filePath.toFile().exists()) {
             throw new InputOutputException("Can not check whether element on path " + path.getPath() + " is a directory: No such file or directory");
@@ -222,6 +287,7 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
         }
 
         Path filePath = rootDir.resolve(directory.getPath());
+        this.writeBehindBuffer.flush(filePath);
 
         if (! filePath.toFile().exists()) {
             throw new InputOutputException("No such file or directory");
@@ -248,13 +314,17 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
         }
 
         for (File file : files) {
-            pathElements.add(new TreePathElement(canonicalRootPath.relativize(file.toPath()).toString()));
+            TreePathElement element = new TreePathElement(canonicalRootPath.relativize(file.toPath()).toString());
+
+            if (this.isExcluded(element)) {
+                continue;
+            }
+
+            pathElements.add(element);
 
             // add all subdirs too
             if (file.isDirectory()) {
-                pathElements.addAll(this.getDirectoryContents(
-                        new TreePathElement(canonicalRootPath.relativize(file.toPath()).toString())
-                ));
+                pathElements.addAll(this.getDirectoryContents(element));
             }
         }
 
@@ -277,11 +347,118 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
         }
     }
 
+    /**
+     * Walks the directory once, reading size and modification time
+     * of all contents. Only files which are not contained in the previous
+     * snapshot with the same attributes are hashed.
+     * <p>
+     * {@inheritDoc}
+     */
+    @Override
+    synchronized public TreeSnapshot getSnapshot(TreePathElement directory, TreeSnapshot previous)
+            throws InputOutputException {
+
+        if ("/".equals(directory.getPath())) {
+            // prevent resolving to actual root
+            // use root of this root dir instead
+            directory = new TreePathElement("");
+        }
+
+        Path filePath = rootDir.resolve(directory.getPath());
+        this.writeBehindBuffer.flush(filePath);
+
+        if (! filePath.toFile().isDirectory()) {
+            throw new InputOutputException("Path must be a directory");
+        }
+
+        long createdAt = System.currentTimeMillis();
+        List<SnapshotEntry> entries = new ArrayList<>();
+
+        try {
+            final Path canonicalDir = filePath.toFile().getCanonicalFile().toPath();
+            final Path canonicalRootPath = Paths.get(rootDir.toFile().getCanonicalPath());
+
+            Files.walkFileTree(canonicalDir, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(canonicalDir)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    TreePathElement element = new TreePathElement(canonicalRootPath.relativize(dir).toString());
+                    if (isExcluded(element)) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+
+                    entries.add(new SnapshotEntry(element.getPath(), false, 0, attrs.lastModifiedTime().toMillis(), null));
+
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    TreePathElement element = new TreePathElement(canonicalRootPath.relativize(file).toString());
+                    if (! isExcluded(element)) {
+                        entries.add(new SnapshotEntry(element.getPath(), true, attrs.size(), attrs.lastModifiedTime().toMillis(), null));
+                    }
+
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+
+        List<SnapshotEntry> hashedEntries = new ArrayList<>(entries.size());
+        for (SnapshotEntry entry : entries) {
+            if (! entry.isFile()) {
+                hashedEntries.add(entry);
+                continue;
+            }
+
+            SnapshotEntry previousEntry = (null != previous) ? previous.getEntry(entry.getPath()) : null;
+
+            String checksum;
+            if (null != previousEntry && null != previousEntry.getChecksum() && previousEntry.hasSameAttributes(entry)) {
+                checksum = previousEntry.getChecksum();
+            } else {
+                checksum = this.getChecksum(new TreePathElement(entry.getPath()));
+            }
+
+            hashedEntries.add(new SnapshotEntry(entry.getPath(), true, entry.getSize(), entry.getLastModified(), checksum));
+        }
+
+        return new TreeSnapshot(createdAt, hashedEntries);
+    }
+
+    /**
+     * Writes all buffered writes to disk
+     *
+     * @throws InputOutputException If writing failed
+     */
+    @Override
+    synchronized public void flush()
+            throws InputOutputException {
+        this.writeBehindBuffer.flush();
+    }
+
     @Override
     public TreePathElement getRootDir() {
         return new TreePathElement(this.rootDir.toString());
     }
 
+    /**
+     * Checks whether the given path is used internally by this
+     * storage adapter and therefore not part of its contents
+     *
+     * @param path The path element relative to the root directory
+     *
+     * @return True, if the path should be excluded
+     */
+    protected boolean isExcluded(TreePathElement path) {
+        return false;
+    }
+
     /**
      * Creates a directory on the given file path
      *
@@ -310,6 +487,8 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
     protected void writeData(Path filePath, long offset, byte[] bytes)
             throws InputOutputException {
 
+        this.readAheadBuffer.invalidate(filePath);
+
         try {
             RandomAccessFile randomAccessFile = new RandomAccessFile(filePath.toString(), "rw");
 
@@ -344,10 +523,20 @@ public class LocalStorageAdapter implements ILocalStorageAdapter {
     protected void delete(Path path)
             throws InputOutputException {
 
+        boolean hasPendingWrites = this.writeBehindBuffer.hasPendingWrites(path);
+        this.writeBehindBuffer.discard(path);
+
         if (! path.toFile().exists()) {
+            if (hasPendingWrites) {
+                // the file has never been written to disk
+                return;
+            }
+
             throw new InputOutputException(path.toString() + " (No such file or directory)");
         }
 
+        this.readAheadBuffer.invalidate(path);
+
         File file;
         try {
             file = path.toFile().getCanonicalFile();
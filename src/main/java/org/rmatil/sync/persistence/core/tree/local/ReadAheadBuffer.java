@@ -0,0 +1,339 @@
+package org.rmatil.sync.persistence.core.tree.local;
+
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Detects sequential chunked reads of a file, i.e. reads
+ * of the same length where each one starts at the end of the previous one,
+ * and prefetches the following chunks asynchronously.
+ * <p>
+ * Prefetched chunks are only handed out if the file has neither changed its
+ * size nor its modification time since they were read. Modifications made
+ * through the storage adapter must be announced using {@link ReadAheadBuffer#invalidate(Path)}.
+ */
+public class ReadAheadBuffer {
+
+    /**
+     * The maximum number of files for which sequential reads are tracked
+     */
+    protected static final int MAX_STREAMS = 64;
+
+    /**
+     * The number of chunks to prefetch ahead of the last read
+     */
+    protected int chunksAhead;
+
+    /**
+     * The maximum number of bytes held in prefetched chunks over all files
+     */
+    protected long maxBufferedBytes;
+
+    /**
+     * The number of bytes currently reserved by prefetched chunks
+     */
+    protected long bufferedBytes;
+
+    /**
+     * The read streams per file, in order of their last access
+     */
+    protected LinkedHashMap<Path, Stream> streams;
+
+    protected ThreadPoolExecutor executorService;
+
+    /**
+     * @param chunksAhead      The number of chunks to prefetch ahead of the last read. Use 0 to disable prefetching
+     * @param maxBufferedBytes The maximum number of bytes held in prefetched chunks over all files
+     */
+    public ReadAheadBuffer(int chunksAhead, long maxBufferedBytes) {
+        this.chunksAhead = chunksAhead;
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.bufferedBytes = 0;
+        this.streams = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Reads the given chunk of the file, using a prefetched chunk if available.
+     *
+     * @param filePath The file from which to read
+     * @param offset   The offset where to start reading
+     * @param length   The length to read
+     *
+     * @return The read content. If length is exceeding the file's content, then the returned array will be shorter than the given length.
+     * If the offset is at or beyond the end of the file, an array of the given length filled with zeros is returned
+     *
+     * @throws InputOutputException If an error occurred during reading
+     */
+    public byte[] read(Path filePath, long offset, int length)
+            throws InputOutputException {
+        if (this.chunksAhead <= 0) {
+            return readChunk(filePath, offset, length).getData();
+        }
+
+        Future<Chunk> prefetchedChunk = this.take(filePath.normalize(), offset, length);
+
+        if (null != prefetchedChunk) {
+            try {
+                Chunk chunk = prefetchedChunk.get();
+
+                if (chunk.isUpToDate(filePath)) {
+                    return chunk.getData();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InputOutputException(e);
+            } catch (ExecutionException e) {
+                // read the chunk again below to report the actual cause
+            }
+
+            // the file changed in the meantime
+            this.invalidate(filePath);
+        }
+
+        return readChunk(filePath, offset, length).getData();
+    }
+
+    /**
+     * Discards all prefetched chunks of the given file
+     * or of all files beneath the given directory
+     *
+     * @param path The modified file or directory
+     */
+    public synchronized void invalidate(Path path) {
+        Path normalizedPath = path.normalize();
+
+        Iterator<Map.Entry<Path, Stream>> itr = this.streams.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Path, Stream> entry = itr.next();
+            if (entry.getKey().startsWith(normalizedPath)) {
+                this.release(entry.getValue());
+                itr.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of bytes currently reserved by prefetched chunks
+     *
+     * @return The number of buffered bytes
+     */
+    public synchronized long getBufferedBytes() {
+        return this.bufferedBytes;
+    }
+
+    /**
+     * Records the given read and returns the prefetched chunk for it, if any.
+     * If the read continues a sequential stream, the following chunks are prefetched.
+     *
+     * @param filePath The normalized path of the file
+     * @param offset   The offset of the read
+     * @param length   The length of the read
+     *
+     * @return The prefetched chunk or null, if the chunk was not prefetched
+     */
+    protected synchronized Future<Chunk> take(Path filePath, long offset, int length) {
+        Stream stream = this.streams.get(filePath);
+
+        if (null == stream || stream.chunkLength != length || stream.nextOffset != offset) {
+            // not (yet) a sequential read
+            if (null != stream) {
+                this.release(stream);
+            }
+
+            stream = new Stream(length, offset + length);
+            this.streams.put(filePath, stream);
+            this.evictStreams();
+
+            return null;
+        }
+
+        stream.nextOffset = offset + length;
+
+        Future<Chunk> chunk = stream.chunks.remove(offset);
+        if (null != chunk) {
+            this.bufferedBytes -= length;
+        }
+
+        this.prefetch(filePath, stream);
+
+        return chunk;
+    }
+
+    /**
+     * Schedules reads of the chunks following the last read of the given stream
+     *
+     * @param filePath The path of the file
+     * @param stream   The stream of the file
+     */
+    protected void prefetch(final Path filePath, Stream stream) {
+        final int length = stream.chunkLength;
+        long fileSize = filePath.toFile().length();
+
+        if (stream.prefetchOffset < stream.nextOffset) {
+            stream.prefetchOffset = stream.nextOffset;
+        }
+
+        while (stream.chunks.size() < this.chunksAhead &&
+                stream.prefetchOffset < fileSize &&
+                this.bufferedBytes + length <= this.maxBufferedBytes) {
+
+            final long chunkOffset = stream.prefetchOffset;
+            Future<Chunk> future = this.getExecutorService().submit(
+                    () -> readChunk(filePath, chunkOffset, length)
+            );
+
+            stream.chunks.put(chunkOffset, future);
+            stream.prefetchOffset += length;
+            this.bufferedBytes += length;
+        }
+    }
+
+    /**
+     * Stops tracking the least recently read files, if too many are tracked
+     */
+    protected void evictStreams() {
+        Iterator<Stream> itr = this.streams.values().iterator();
+        while (this.streams.size() > MAX_STREAMS && itr.hasNext()) {
+            this.release(itr.next());
+            itr.remove();
+        }
+    }
+
+    /**
+     * Discards all prefetched chunks of the given stream
+     *
+     * @param stream The stream to release
+     */
+    protected void release(Stream stream) {
+        for (Future<Chunk> chunk : stream.chunks.values()) {
+            chunk.cancel(false);
+            this.bufferedBytes -= stream.chunkLength;
+        }
+
+        stream.chunks.clear();
+    }
+
+    protected ExecutorService getExecutorService() {
+        if (null == this.executorService) {
+            this.executorService = new ThreadPoolExecutor(2, 2, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "local-storage-read-ahead");
+                thread.setDaemon(true);
+                return thread;
+            });
+            // do not keep idle threads around
+            this.executorService.allowCoreThreadTimeOut(true);
+        }
+
+        return this.executorService;
+    }
+
+    /**
+     * Reads the specified chunk of the given file
+     *
+     * @param filePath The file from which to read
+     * @param offset   The offset where to start reading
+     * @param length   The length to read
+     *
+     * @return The read chunk, trimmed if the file ends before offset + length or filled with zeros if nothing is left to read
+     *
+     * @throws InputOutputException If an error occurred during reading
+     */
+    protected static Chunk readChunk(Path filePath, long offset, int length)
+            throws InputOutputException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long lastModified = filePath.toFile().lastModified();
+            long size = channel.size();
+
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, offset + buffer.position()) == - 1) {
+                    break;
+                }
+            }
+
+            byte[] data = buffer.array();
+            // a read at or beyond the end of the file returns the requested length filled with zeros
+            if (buffer.position() > 0 && buffer.position() < length) {
+                // we have to truncate the byte array to not return null bytes
+                data = Arrays.copyOf(data, buffer.position());
+            }
+
+            return new Chunk(data, size, lastModified);
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+    }
+
+    /**
+     * The state of sequential reads on a single file
+     */
+    protected static class Stream {
+
+        /**
+         * The length of the chunks read
+         */
+        protected int chunkLength;
+
+        /**
+         * The offset at which the next sequential read will start
+         */
+        protected long nextOffset;
+
+        /**
+         * The offset up to which chunks have been prefetched
+         */
+        protected long prefetchOffset;
+
+        /**
+         * The prefetched chunks by their offset
+         */
+        protected Map<Long, Future<Chunk>> chunks;
+
+        protected Stream(int chunkLength, long nextOffset) {
+            this.chunkLength = chunkLength;
+            this.nextOffset = nextOffset;
+            this.prefetchOffset = nextOffset;
+            this.chunks = new HashMap<>();
+        }
+    }
+
+    /**
+     * A chunk of a file together with the state of the file at the time it was read
+     */
+    protected static class Chunk {
+
+        protected byte[] data;
+
+        protected long fileSize;
+
+        protected long lastModified;
+
+        protected Chunk(byte[] data, long fileSize, long lastModified) {
+            this.data = data;
+            this.fileSize = fileSize;
+            this.lastModified = lastModified;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        /**
+         * Checks whether the file is still in the same state as when this chunk was read
+         *
+         * @param filePath The path of the file
+         *
+         * @return True, if neither size nor modification time have changed
+         */
+        public boolean isUpToDate(Path filePath) {
+            return filePath.toFile().length() == this.fileSize && filePath.toFile().lastModified() == this.lastModified;
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package org.rmatil.sync.persistence.core.tree.local;
+
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Buffers small writes at an offset per file in memory.
+ * Overlapping writes replace the overwritten parts of previous ones
+ * without copying them and adjacent writes are written to disk together
+ * in a single gathering write, so that the data is written in few large sequential writes.
+ * <p>
+ * Buffered writes are flushed once the buffer exceeds its size,
+ * once the oldest buffered write of a file is older than the flush delay
+ * or when requested explicitly. Writes of a file of which the flush failed
+ * are kept buffered until a later flush succeeds. The semantics of writing at an offset
+ * are the same as in {@link LocalStorageAdapter}: Writes at an offset larger than the file
+ * are appended and writing at offset 0 truncates the file.
+ */
+public class WriteBehindBuffer {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    /**
+     * The maximum number of bytes buffered over all files.
+     * A value of 0 disables buffering
+     */
+    protected long maxBufferedBytes;
+
+    /**
+     * The time in milliseconds after which buffered writes are flushed
+     */
+    protected long flushDelay;
+
+    /**
+     * The number of bytes currently buffered
+     */
+    protected long bufferedBytes;
+
+    /**
+     * The buffered writes per file, in order of their first write
+     */
+    protected Map<Path, PendingWrites> pendingWrites;
+
+    /**
+     * Failures of flushes in the background per file, reported on the next flush of the file
+     */
+    protected Map<Path, InputOutputException> failures;
+
+    protected ScheduledThreadPoolExecutor scheduler;
+
+    /**
+     * @param maxBufferedBytes The maximum number of bytes buffered over all files. Use 0 to disable buffering
+     * @param flushDelay       The time in milliseconds after which buffered writes are flushed
+     */
+    public WriteBehindBuffer(long maxBufferedBytes, long flushDelay) {
+        this.maxBufferedBytes = maxBufferedBytes;
+        this.flushDelay = flushDelay;
+        this.bufferedBytes = 0;
+        this.pendingWrites = new LinkedHashMap<>();
+        this.failures = new HashMap<>();
+    }
+
+    /**
+     * Returns whether writes are buffered at all
+     *
+     * @return True, if buffering is enabled
+     */
+    public boolean isEnabled() {
+        return this.maxBufferedBytes > 0;
+    }
+
+    /**
+     * Buffers the given bytes to be written to the file at the given offset
+     *
+     * @param filePath The file to write to
+     * @param offset   The offset where to start writing
+     * @param bytes    The bytes to write
+     *
+     * @throws InputOutputException If the parent directory of the file does not exist or a flush failed
+     */
+    public synchronized void write(Path filePath, long offset, byte[] bytes)
+            throws InputOutputException {
+        Path key = filePath.normalize();
+        File file = key.toFile();
+
+        if (file.isDirectory() || null == key.getParent() || ! key.getParent().toFile().isDirectory()) {
+            throw new InputOutputException(filePath.toString() + " (No such file or directory)");
+        }
+
+        PendingWrites pending = this.pendingWrites.get(key);
+        if (null == pending) {
+            pending = new PendingWrites(file.isFile() ? file.length() : 0);
+            this.pendingWrites.put(key, pending);
+
+            this.scheduleFlush();
+        }
+
+        long effectiveOffset = Math.min(offset, pending.size);
+
+        if (effectiveOffset == 0) {
+            // truncates the file, so all previous writes are obsolete
+            this.bufferedBytes -= pending.bufferedBytes;
+            pending.truncate();
+        }
+
+        long delta = pending.merge(effectiveOffset, bytes);
+        this.bufferedBytes += delta;
+
+        if (this.bufferedBytes > this.maxBufferedBytes) {
+            this.flush();
+        }
+    }
+
+    /**
+     * Returns whether writes to the given file are buffered
+     *
+     * @param filePath The file
+     *
+     * @return True, if writes are buffered for the given file
+     */
+    public synchronized boolean hasPendingWrites(Path filePath) {
+        return this.pendingWrites.containsKey(filePath.normalize());
+    }
+
+    /**
+     * Returns the size of the given file after applying all buffered writes
+     *
+     * @param filePath The file
+     *
+     * @return The size of the file in bytes, 0 if it does not exist
+     */
+    public synchronized long getSize(Path filePath) {
+        PendingWrites pending = this.pendingWrites.get(filePath.normalize());
+
+        if (null != pending) {
+            return pending.size;
+        }
+
+        File file = filePath.toFile();
+
+        return file.isFile() ? file.length() : 0;
+    }
+
+    /**
+     * Writes all buffered writes to the given file or to files beneath the given directory
+     *
+     * @param path The file or directory
+     *
+     * @throws InputOutputException If writing failed
+     */
+    public synchronized void flush(Path path)
+            throws InputOutputException {
+        Path normalizedPath = path.normalize();
+
+        InputOutputException failure = null;
+
+        Iterator<Map.Entry<Path, PendingWrites>> itr = this.pendingWrites.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Path, PendingWrites> entry = itr.next();
+            if (entry.getKey().startsWith(normalizedPath)) {
+                try {
+                    this.flush(entry.getKey(), entry.getValue());
+                    itr.remove();
+                } catch (InputOutputException e) {
+                    failure = e;
+                }
+            }
+        }
+
+        Iterator<Map.Entry<Path, InputOutputException>> failureItr = this.failures.entrySet().iterator();
+        while (failureItr.hasNext()) {
+            Map.Entry<Path, InputOutputException> entry = failureItr.next();
+            if (entry.getKey().startsWith(normalizedPath)) {
+                failure = entry.getValue();
+                failureItr.remove();
+            }
+        }
+
+        if (null != failure) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Writes all buffered writes to disk
+     *
+     * @throws InputOutputException If writing failed for any file
+     */
+    public synchronized void flush()
+            throws InputOutputException {
+        InputOutputException failure = null;
+
+        Iterator<Map.Entry<Path, PendingWrites>> itr = this.pendingWrites.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Path, PendingWrites> entry = itr.next();
+            try {
+                this.flush(entry.getKey(), entry.getValue());
+                itr.remove();
+            } catch (InputOutputException e) {
+                failure = e;
+            }
+        }
+
+        if (! this.failures.isEmpty()) {
+            failure = this.failures.values().iterator().next();
+            this.failures.clear();
+        }
+
+        if (null != failure) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Discards all buffered writes to the given file or to files beneath the given directory
+     *
+     * @param path The file or directory which is removed
+     */
+    public synchronized void discard(Path path) {
+        Path normalizedPath = path.normalize();
+
+        Iterator<Map.Entry<Path, PendingWrites>> itr = this.pendingWrites.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Path, PendingWrites> entry = itr.next();
+            if (entry.getKey().startsWith(normalizedPath)) {
+                this.bufferedBytes -= entry.getValue().bufferedBytes;
+                itr.remove();
+            }
+        }
+
+        this.failures.keySet().removeIf(key -> key.startsWith(normalizedPath));
+    }
+
+    /**
+     * Returns the number of bytes currently buffered
+     *
+     * @return The number of buffered bytes
+     */
+    public synchronized long getBufferedBytes() {
+        return this.bufferedBytes;
+    }
+
+    /**
+     * Writes the given buffered writes to disk using one sequential pass.
+     * Adjacent segments are written using a single gathering write.
+     * On failure, the buffered writes are left untouched, so that
+     * writing them again later yields the same content.
+     *
+     * @param filePath The file to write to
+     * @param pending  The buffered writes of the file
+     *
+     * @throws InputOutputException If writing failed
+     */
+    protected void flush(Path filePath, PendingWrites pending)
+            throws InputOutputException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            if (pending.truncate) {
+                channel.truncate(0);
+            }
+
+            List<ByteBuffer> run = new ArrayList<>();
+            long runStart = 0;
+            long runEnd = 0;
+            for (Map.Entry<Long, Segment> segment : pending.segments.entrySet()) {
+                if (! run.isEmpty() && segment.getKey() != runEnd) {
+                    this.write(channel, runStart, run);
+                    run.clear();
+                }
+
+                if (run.isEmpty()) {
+                    runStart = segment.getKey();
+                }
+
+                run.add(segment.getValue().toByteBuffer());
+                runEnd = segment.getKey() + segment.getValue().length;
+            }
+
+            if (! run.isEmpty()) {
+                this.write(channel, runStart, run);
+            }
+        } catch (IOException e) {
+            throw new InputOutputException(e);
+        }
+
+        this.bufferedBytes -= pending.bufferedBytes;
+        // the data of a previously failed flush is on disk now
+        this.failures.remove(filePath);
+    }
+
+    /**
+     * Writes the given adjacent buffers to the channel starting at the given position
+     *
+     * @param channel  The channel to write to
+     * @param position The position of the first buffer
+     * @param buffers  The buffers to write
+     *
+     * @throws IOException If writing failed
+     */
+    protected void write(FileChannel channel, long position, List<ByteBuffer> buffers)
+            throws IOException {
+        ByteBuffer[] bufferArray = buffers.toArray(new ByteBuffer[buffers.size()]);
+        ByteBuffer last = bufferArray[bufferArray.length - 1];
+
+        channel.position(position);
+        while (last.hasRemaining()) {
+            channel.write(bufferArray);
+        }
+    }
+
+    /**
+     * Flushes all files of which the first buffered write is older than the flush delay.
+     * Files of which the flush failed stay buffered and are flushed again after the next delay
+     */
+    protected synchronized void flushExpired() {
+        long now = System.currentTimeMillis();
+
+        Iterator<Map.Entry<Path, PendingWrites>> itr = this.pendingWrites.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Path, PendingWrites> entry = itr.next();
+            if (entry.getValue().createdAt + this.flushDelay > now) {
+                // all following files have been written later
+                break;
+            }
+
+            try {
+                this.flush(entry.getKey(), entry.getValue());
+                itr.remove();
+            } catch (InputOutputException e) {
+                logger.error("Failed to flush buffered writes to " + entry.getKey().toString() + ". Retrying after " + this.flushDelay + "ms. Message: " + e.getMessage());
+                this.failures.put(entry.getKey(), e);
+            }
+        }
+
+        if (! this.pendingWrites.isEmpty()) {
+            this.scheduleFlush();
+        }
+    }
+
+    protected void scheduleFlush() {
+        if (null == this.scheduler) {
+            this.scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+                Thread thread = new Thread(runnable, "local-storage-write-behind");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.scheduler.setKeepAliveTime(60L, TimeUnit.SECONDS);
+            // do not keep an idle thread around
+            this.scheduler.allowCoreThreadTimeOut(true);
+        }
+
+        if (this.scheduler.getQueue().isEmpty()) {
+            this.scheduler.schedule(this::flushExpired, this.flushDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * The buffered writes of a single file
+     */
+    protected static class PendingWrites {
+
+        /**
+         * The time in milliseconds of the first buffered write
+         */
+        protected long createdAt;
+
+        /**
+         * Whether the file has to be truncated before writing the ranges
+         */
+        protected boolean truncate;
+
+        /**
+         * The size of the file after applying all buffered writes
+         */
+        protected long size;
+
+        /**
+         * The number of bytes held in segments
+         */
+        protected long bufferedBytes;
+
+        /**
+         * Non-overlapping segments to write by their offset
+         */
+        protected TreeMap<Long, Segment> segments;
+
+        protected PendingWrites(long size) {
+            this.createdAt = System.currentTimeMillis();
+            this.truncate = false;
+            this.size = size;
+            this.bufferedBytes = 0;
+            this.segments = new TreeMap<>();
+        }
+
+        protected void truncate() {
+            this.truncate = true;
+            this.size = 0;
+            this.bufferedBytes = 0;
+            this.segments.clear();
+        }
+
+        /**
+         * Adds the given bytes as a new segment. The given bytes take precedence
+         * over already buffered ones, i.e. overlapped segments are trimmed
+         * or split without copying their data.
+         *
+         * @param offset The offset of the bytes
+         * @param bytes  The bytes to write
+         *
+         * @return The change of the number of buffered bytes
+         */
+        protected long merge(long offset, byte[] bytes) {
+            if (0 == bytes.length) {
+                this.size = Math.max(this.size, offset);
+                return 0;
+            }
+
+            long start = offset;
+            long end = offset + bytes.length;
+
+            long removedBytes = 0;
+
+            // a segment starting before the new one may overlap its start or even span it entirely
+            Map.Entry<Long, Segment> lower = this.segments.lowerEntry(start);
+            if (null != lower && lower.getKey() + lower.getValue().length > start) {
+                Segment segment = lower.getValue();
+                long segmentEnd = lower.getKey() + segment.length;
+
+                if (segmentEnd > end) {
+                    this.segments.put(end, segment.slice((int) (end - lower.getKey()), (int) (segmentEnd - end)));
+                }
+
+                this.segments.put(lower.getKey(), segment.slice(0, (int) (start - lower.getKey())));
+                removedBytes += Math.min(segmentEnd, end) - start;
+            }
+
+            NavigableMap<Long, Segment> affected = this.segments.subMap(start, true, end, false);
+
+            Map.Entry<Long, Segment> last = affected.lastEntry();
+            if (null != last && last.getKey() + last.getValue().length > end) {
+                // keep the part of the last overlapped segment behind the new one
+                Segment segment = last.getValue();
+                long segmentEnd = last.getKey() + segment.length;
+
+                this.segments.put(end, segment.slice((int) (end - last.getKey()), (int) (segmentEnd - end)));
+                removedBytes -= segmentEnd - end;
+            }
+
+            for (Segment segment : affected.values()) {
+                removedBytes += segment.length;
+            }
+
+            affected.clear();
+            // callers may reuse their array
+            this.segments.put(start, new Segment(Arrays.copyOf(bytes, bytes.length), 0, bytes.length));
+
+            this.size = Math.max(this.size, end);
+            this.bufferedBytes += bytes.length - removedBytes;
+
+            return bytes.length - removedBytes;
+        }
+    }
+
+    /**
+     * A part of an array holding buffered bytes
+     */
+    protected static class Segment {
+
+        protected final byte[] data;
+
+        protected final int offset;
+
+        protected final int length;
+
+        protected Segment(byte[] data, int offset, int length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Returns a part of this segment sharing the same array
+         *
+         * @param from   The start of the part relative to this segment
+         * @param length The length of the part
+         *
+         * @return The part
+         */
+        protected Segment slice(int from, int length) {
+            return new Segment(this.data, this.offset + from, length);
+        }
+
+        protected ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(this.data, this.offset, this.length);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.rmatil.sync.persistence.core.tree.snapshot;
+
+import org.rmatil.sync.commons.collection.Pair;
+
+import java.util.List;
+
+/**
+ * The differences between two {@link TreeSnapshot}s
+ */
+public class SnapshotDiff {
+
+    /**
+     * Entries only present in the newer snapshot
+     */
+    protected List<SnapshotEntry> added;
+
+    /**
+     * Entries only present in the older snapshot
+     */
+    protected List<SnapshotEntry> removed;
+
+    /**
+     * Files present in both snapshots with a different content, as pairs of old and new entry
+     */
+    protected List<Pair<SnapshotEntry, SnapshotEntry>> modified;
+
+    /**
+     * Files which have been moved to another path, as pairs of old and new entry
+     */
+    protected List<Pair<SnapshotEntry, SnapshotEntry>> moved;
+
+    public SnapshotDiff(List<SnapshotEntry> added, List<SnapshotEntry> removed, List<Pair<SnapshotEntry, SnapshotEntry>> modified, List<Pair<SnapshotEntry, SnapshotEntry>> moved) {
+        this.added = added;
+        this.removed = removed;
+        this.modified = modified;
+        this.moved = moved;
+    }
+
+    public List<SnapshotEntry> getAdded() {
+        return added;
+    }
+
+    public List<SnapshotEntry> getRemoved() {
+        return removed;
+    }
+
+    public List<Pair<SnapshotEntry, SnapshotEntry>> getModified() {
+        return modified;
+    }
+
+    public List<Pair<SnapshotEntry, SnapshotEntry>> getMoved() {
+        return moved;
+    }
+
+    /**
+     * Returns whether both snapshots are equal
+     *
+     * @return True, if no differences have been found
+     */
+    public boolean isEmpty() {
+        return this.added.isEmpty() && this.removed.isEmpty() && this.modified.isEmpty() && this.moved.isEmpty();
+    }
+}
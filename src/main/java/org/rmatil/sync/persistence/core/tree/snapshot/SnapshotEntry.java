@@ -0,0 +1,86 @@
+package org.rmatil.sync.persistence.core.tree.snapshot;
+
+/**
+ * The state of a single file or directory
+ * at the time a {@link TreeSnapshot} was captured
+ */
+public class SnapshotEntry {
+
+    /**
+     * The path relative to the root directory of the storage adapter
+     */
+    protected String path;
+
+    /**
+     * Whether the path is a file
+     */
+    protected boolean isFile;
+
+    /**
+     * The size in bytes, 0 for directories
+     */
+    protected long size;
+
+    /**
+     * The last modification time in milliseconds
+     */
+    protected long lastModified;
+
+    /**
+     * The checksum of the file, null for directories
+     */
+    protected String checksum;
+
+    /**
+     * @param path         The path relative to the root directory of the storage adapter
+     * @param isFile       Whether the path is a file
+     * @param size         The size in bytes
+     * @param lastModified The last modification time in milliseconds
+     * @param checksum     The checksum of the file, null for directories
+     */
+    public SnapshotEntry(String path, boolean isFile, long size, long lastModified, String checksum) {
+        this.path = path;
+        this.isFile = isFile;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.checksum = checksum;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public boolean isFile() {
+        return isFile;
+    }
+
+    public boolean isDirectory() {
+        return ! isFile;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Checks whether the given entry describes the same file
+     * without reading its content, i.e. with the same size and modification time
+     *
+     * @param other The entry to compare with
+     *
+     * @return True, if type, size and modification time are equal
+     */
+    public boolean hasSameAttributes(SnapshotEntry other) {
+        return this.isFile == other.isFile &&
+                this.size == other.size &&
+                this.lastModified == other.lastModified;
+    }
+}
@@ -0,0 +1,177 @@
+package org.rmatil.sync.persistence.core.tree.snapshot;
+
+import org.rmatil.sync.commons.collection.Pair;
+
+import java.util.*;
+
+/**
+ * A lightweight snapshot of the contents of a tree storage adapter.
+ * Entries are kept sorted by their path, so that two snapshots
+ * can be compared in linear time without accessing the storage again.
+ */
+public class TreeSnapshot {
+
+    /**
+     * The time in milliseconds at which the snapshot was captured
+     */
+    protected long createdAt;
+
+    /**
+     * The entries, sorted by their path
+     */
+    protected List<SnapshotEntry> entries;
+
+    /**
+     * The entries by their path
+     */
+    protected Map<String, SnapshotEntry> entriesByPath;
+
+    /**
+     * @param createdAt The time in milliseconds at which the snapshot was captured
+     * @param entries   The entries of the snapshot in any order
+     */
+    public TreeSnapshot(long createdAt, Collection<SnapshotEntry> entries) {
+        this.createdAt = createdAt;
+        this.entries = new ArrayList<>(entries);
+        this.entries.sort(Comparator.comparing(SnapshotEntry::getPath));
+        this.entriesByPath = new HashMap<>();
+
+        for (SnapshotEntry entry : this.entries) {
+            this.entriesByPath.put(entry.getPath(), entry);
+        }
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * Returns all entries sorted by their path
+     *
+     * @return The sorted entries
+     */
+    public List<SnapshotEntry> getEntries() {
+        return Collections.unmodifiableList(this.entries);
+    }
+
+    /**
+     * Returns the entry of the given path
+     *
+     * @param path The path relative to the root directory
+     *
+     * @return The entry or null, if the path was not present
+     */
+    public SnapshotEntry getEntry(String path) {
+        return this.entriesByPath.get(path);
+    }
+
+    /**
+     * Compares the given snapshots by merging their sorted entries.
+     * Files which have been removed from one path and added at another
+     * with the same checksum are reported as moved.
+     *
+     * @param from The older snapshot
+     * @param to   The newer snapshot
+     *
+     * @return The differences between both snapshots
+     */
+    public static SnapshotDiff diff(TreeSnapshot from, TreeSnapshot to) {
+        List<SnapshotEntry> added = new ArrayList<>();
+        List<SnapshotEntry> removed = new ArrayList<>();
+        List<Pair<SnapshotEntry, SnapshotEntry>> modified = new ArrayList<>();
+
+        Iterator<SnapshotEntry> fromItr = from.entries.iterator();
+        Iterator<SnapshotEntry> toItr = to.entries.iterator();
+
+        SnapshotEntry fromEntry = fromItr.hasNext() ? fromItr.next() : null;
+        SnapshotEntry toEntry = toItr.hasNext() ? toItr.next() : null;
+
+        while (null != fromEntry || null != toEntry) {
+            int comparison;
+            if (null == fromEntry) {
+                comparison = 1;
+            } else if (null == toEntry) {
+                comparison = - 1;
+            } else {
+                comparison = fromEntry.getPath().compareTo(toEntry.getPath());
+            }
+
+            if (comparison < 0) {
+                removed.add(fromEntry);
+                fromEntry = fromItr.hasNext() ? fromItr.next() : null;
+            } else if (comparison > 0) {
+                added.add(toEntry);
+                toEntry = toItr.hasNext() ? toItr.next() : null;
+            } else {
+                if (fromEntry.isFile() != toEntry.isFile()) {
+                    // the type changed, i.e. the old element is gone
+                    removed.add(fromEntry);
+                    added.add(toEntry);
+                } else if (fromEntry.isFile() && isModified(fromEntry, toEntry)) {
+                    modified.add(new Pair<>(fromEntry, toEntry));
+                }
+
+                fromEntry = fromItr.hasNext() ? fromItr.next() : null;
+                toEntry = toItr.hasNext() ? toItr.next() : null;
+            }
+        }
+
+        List<Pair<SnapshotEntry, SnapshotEntry>> moved = detectMoves(removed, added);
+
+        return new SnapshotDiff(added, removed, modified, moved);
+    }
+
+    /**
+     * Matches removed and added files by their checksum.
+     * Matched files are removed from both lists.
+     *
+     * @param removed The removed entries
+     * @param added   The added entries
+     *
+     * @return The moved files as pairs of old and new entry
+     */
+    protected static List<Pair<SnapshotEntry, SnapshotEntry>> detectMoves(List<SnapshotEntry> removed, List<SnapshotEntry> added) {
+        List<Pair<SnapshotEntry, SnapshotEntry>> moved = new ArrayList<>();
+
+        Map<String, Deque<SnapshotEntry>> removedByChecksum = new HashMap<>();
+        for (SnapshotEntry entry : removed) {
+            if (entry.isFile() && null != entry.getChecksum()) {
+                removedByChecksum.computeIfAbsent(entry.getChecksum(), k -> new ArrayDeque<>()).add(entry);
+            }
+        }
+
+        if (removedByChecksum.isEmpty()) {
+            return moved;
+        }
+
+        Set<SnapshotEntry> movedSources = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        Iterator<SnapshotEntry> itr = added.iterator();
+        while (itr.hasNext()) {
+            SnapshotEntry entry = itr.next();
+            if (! entry.isFile() || null == entry.getChecksum()) {
+                continue;
+            }
+
+            Deque<SnapshotEntry> candidates = removedByChecksum.get(entry.getChecksum());
+            if (null != candidates && ! candidates.isEmpty()) {
+                SnapshotEntry source = candidates.poll();
+                moved.add(new Pair<>(source, entry));
+                movedSources.add(source);
+                itr.remove();
+            }
+        }
+
+        removed.removeIf(movedSources::contains);
+
+        return moved;
+    }
+
+    protected static boolean isModified(SnapshotEntry fromEntry, SnapshotEntry toEntry) {
+        if (null != fromEntry.getChecksum() && null != toEntry.getChecksum()) {
+            return ! fromEntry.getChecksum().equals(toEntry.getChecksum());
+        }
+
+        return ! fromEntry.hasSameAttributes(toEntry);
+    }
+}
@@ -0,0 +1,28 @@
+package org.rmatil.sync.persistence.test.core;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.Checksums;
+
+import java.security.MessageDigest;
+
+import static org.junit.Assert.*;
+
+public class ChecksumsTest {
+
+    @Test
+    public void testToHex() {
+        assertEquals("Hex representation is wrong", "00ff10", Checksums.toHex(new byte[]{0x00, (byte) 0xff, 0x10}));
+    }
+
+    @Test
+    public void testMd5() {
+        assertEquals("MD5 checksum is wrong", "d41d8cd98f00b204e9800998ecf8427e", Checksums.md5(new byte[0]));
+
+        // checksums computed incrementally must match the ones computed at once
+        MessageDigest digest = Checksums.createDigest(Checksums.MD5);
+        digest.update("Some ".getBytes());
+        digest.update("content".getBytes());
+
+        assertEquals("Incremental checksum should be equal", Checksums.md5("Some content".getBytes()), Checksums.toHex(digest.digest()));
+    }
+}
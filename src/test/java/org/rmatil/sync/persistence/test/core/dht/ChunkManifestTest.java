@@ -0,0 +1,51 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.chunk.ChunkManifest;
+
+import static org.junit.Assert.*;
+
+public class ChunkManifestTest {
+
+    @Test
+    public void testEncodeDecode() {
+        ChunkManifest manifest = new ChunkManifest(10L * Integer.MAX_VALUE, 1024);
+
+        byte[] encoded = manifest.encode();
+        assertTrue("Encoded manifest should be recognized", ChunkManifest.isManifest(encoded));
+
+        ChunkManifest decoded = ChunkManifest.decode(encoded);
+        assertEquals("Size should be equal", 10L * Integer.MAX_VALUE, decoded.getSize());
+        assertEquals("Chunk size should be equal", 1024, decoded.getChunkSize());
+
+        assertFalse("Content should not be recognized as manifest", ChunkManifest.isManifest("Some content".getBytes()));
+        assertFalse("Null should not be recognized as manifest", ChunkManifest.isManifest(null));
+    }
+
+    @Test
+    public void testChunks() {
+        ChunkManifest manifest = new ChunkManifest(2500, 1000);
+
+        assertEquals("Chunk count is wrong", 3, manifest.getChunkCount());
+        assertEquals("Chunk index is wrong", 0, manifest.getChunkIndex(999));
+        assertEquals("Chunk index is wrong", 1, manifest.getChunkIndex(1000));
+        assertEquals("Full chunk length is wrong", 1000, manifest.getChunkLength(1));
+        assertEquals("Last chunk length is wrong", 500, manifest.getChunkLength(2));
+
+        assertEquals("Empty values have no chunks", 0, new ChunkManifest(0, 1000).getChunkCount());
+    }
+
+    @Test
+    public void testRequiresChunking() {
+        assertFalse("Small values should be stored as a whole", ChunkManifest.requiresChunking(new byte[1000], 1000));
+        assertTrue("Large values should be chunked", ChunkManifest.requiresChunking(new byte[1001], 1000));
+
+        // values which look like a manifest must be chunked to be read correctly
+        assertTrue("Manifests should be chunked", ChunkManifest.requiresChunking(new ChunkManifest(1, 1).encode(), 1000));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeInvalid() {
+        ChunkManifest.decode("Some content".getBytes());
+    }
+}
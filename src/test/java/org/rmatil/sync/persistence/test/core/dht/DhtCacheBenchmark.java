@@ -0,0 +1,116 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.rmatil.sync.persistence.core.dht.cache.CoarseClock;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCache;
+import org.rmatil.sync.persistence.core.dht.cache.IDhtCache;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures how the throughput of the cache scales with the number of
+ * threads. Threads read and write random paths of a shared key set,
+ * so that they contend on the same entries.
+ * <p>
+ * This is not run as part of the test suite. Start it using
+ * <pre>
+ *     mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=org.rmatil.sync.persistence.test.core.dht.DhtCacheBenchmark \
+ *       -Dexec.args="[nrOfKeys] [writePercentage] [millisPerRun]"
+ * </pre>
+ */
+public class DhtCacheBenchmark {
+
+    protected static final int[] THREADS = new int[]{1, 2, 4, 8, 16, 32, 64};
+
+    public static void main(String[] args)
+            throws Exception {
+        int nrOfKeys = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int writePercentage = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        long millisPerRun = args.length > 2 ? Long.parseLong(args[2]) : 2000L;
+
+        UnsecuredDhtPathElement[] paths = new UnsecuredDhtPathElement[nrOfKeys];
+        for (int i = 0; i < nrOfKeys; i++) {
+            paths[i] = new UnsecuredDhtPathElement("location key", "content key " + i);
+        }
+
+        byte[] content = new byte[1024];
+
+        System.out.println(String.format("%d keys, %d%% writes, %d available processors", nrOfKeys, writePercentage, Runtime.getRuntime().availableProcessors()));
+        System.out.println(String.format("%8s %16s %16s", "threads", "system clock", "coarse clock"));
+
+        for (int threads : THREADS) {
+            double systemClock = run(new DhtCache(60000L), paths, content, threads, writePercentage, millisPerRun);
+            double coarseClock = run(
+                    new DhtCache(60000L, 1000L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, DhtCache.DEFAULT_MAX_VALUE_SIZE, CoarseClock.getDefault()),
+                    paths,
+                    content,
+                    threads,
+                    writePercentage,
+                    millisPerRun
+            );
+
+            System.out.println(String.format("%8d %14.0f/s %14.0f/s", threads, systemClock, coarseClock));
+        }
+    }
+
+    /**
+     * Runs the given number of threads against the cache and returns the throughput
+     *
+     * @return The number of operations per second
+     */
+    protected static double run(IDhtCache cache, UnsecuredDhtPathElement[] paths, byte[] content, int threads, int writePercentage, long millisPerRun)
+            throws InterruptedException {
+        for (UnsecuredDhtPathElement path : paths) {
+            cache.put(path, content);
+        }
+
+        AtomicBoolean running = new AtomicBoolean(true);
+        LongAdder ops = new LongAdder();
+        CountDownLatch started = new CountDownLatch(threads);
+
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+
+                started.countDown();
+
+                while (running.get()) {
+                    UnsecuredDhtPathElement path = paths[random.nextInt(paths.length)];
+
+                    if (random.nextInt(100) < writePercentage) {
+                        cache.put(path, content);
+                    } else {
+                        cache.get(path);
+                    }
+
+                    count++;
+                }
+
+                ops.add(count);
+            }));
+        }
+
+        for (Thread worker : workers) {
+            worker.start();
+        }
+
+        started.await();
+        long start = System.nanoTime();
+        Thread.sleep(millisPerRun);
+        running.set(false);
+
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        return ops.sum() / ((System.nanoTime() - start) / 1e9);
+    }
+}
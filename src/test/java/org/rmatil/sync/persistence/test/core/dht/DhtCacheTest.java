@@ -2,8 +2,22 @@ package org.rmatil.sync.persistence.test.core.dht;
 
 import org.junit.Test;
 import org.rmatil.sync.persistence.core.dht.cache.DhtCache;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCacheMonitor;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCacheStats;
 import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtPathElement;
 import org.rmatil.sync.persistence.core.dht.cache.IDhtCache;
+import org.rmatil.sync.persistence.core.dht.cache.RuleTtlPolicy;
+import org.rmatil.sync.persistence.core.dht.cache.VersionedValue;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
 import static org.junit.Assert.*;
 
@@ -22,6 +36,20 @@ public class DhtCacheTest {
     protected static byte[]                content1               = "This is the content for the first element".getBytes();
     protected static byte[]                content2               = "This is the content for the second element".getBytes();
 
+    /**
+     * Exposes the number of expiries scheduled in the timing wheel
+     */
+    protected static class ScheduledDhtCache extends DhtCache {
+
+        public ScheduledDhtCache(long timeToLive, long negativeTimeToLive, long staleTimeToLive, LongSupplier clock) {
+            super(timeToLive, negativeTimeToLive, staleTimeToLive, DEFAULT_MAX_BYTES, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_VALUE_SIZE, clock);
+        }
+
+        public int getScheduledExpiries() {
+            return this.expiries.size();
+        }
+    }
+
 
     @Test
     public void test() {
@@ -43,4 +71,294 @@ public class DhtCacheTest {
         assertNull("Content should be null", dhtCache.get(securedDhtPathElement));
         assertNull("Content should be null", dhtCache.get(securedDhtPathElement2));
     }
+
+    @Test
+    public void testNegativeEntries()
+            throws InterruptedException {
+        IDhtCache dhtCache = new DhtCache(2000L, 500L);
+
+        assertFalse("Unknown elements should not be missing", dhtCache.isMissing(securedDhtPathElement));
+
+        dhtCache.putMissing(securedDhtPathElement);
+
+        assertTrue("Element should be missing", dhtCache.isMissing(securedDhtPathElement));
+        assertNull("Content should be null", dhtCache.get(securedDhtPathElement));
+        assertEquals("Lookup should be saved", 1, dhtCache.getSavedLookups());
+
+        dhtCache.put(securedDhtPathElement, content1);
+
+        assertFalse("Putting content should remove the negative entry", dhtCache.isMissing(securedDhtPathElement));
+        assertArrayEquals("Content should be equal", content1, dhtCache.get(securedDhtPathElement));
+
+        dhtCache.putMissing(securedDhtPathElement2);
+
+        Thread.sleep(600L);
+
+        assertFalse("Negative entry should be expired", dhtCache.isMissing(securedDhtPathElement2));
+        assertArrayEquals("Content should still be cached", content1, dhtCache.get(securedDhtPathElement));
+        assertEquals("Lookups should be counted once", 1, dhtCache.getSavedLookups());
+
+        // negative caching is disabled without a time to live
+        IDhtCache disabledCache = new DhtCache(2000L, 0L);
+        disabledCache.putMissing(securedDhtPathElement);
+        assertFalse("Element should not be missing", disabledCache.isMissing(securedDhtPathElement));
+    }
+
+    @Test
+    public void testLimits() {
+        DhtCache dhtCache = new DhtCache(2000L, 0L, 100L, 3, 50L);
+
+        dhtCache.put(new UnsecuredDhtPathElement("location", "large"), new byte[51]);
+        assertNull("Large values should bypass the cache", dhtCache.get(new UnsecuredDhtPathElement("location", "large")));
+
+        for (int i = 0; i < 5; i++) {
+            dhtCache.put(new UnsecuredDhtPathElement("location", "content " + i), new byte[40]);
+
+            assertTrue("Byte limit should not be exceeded", dhtCache.getSize() <= 100L);
+            assertTrue("Entry limit should not be exceeded", dhtCache.getEntryCount() <= 3);
+        }
+
+        assertNull("Least recently used entry should be evicted", dhtCache.get(new UnsecuredDhtPathElement("location", "content 0")));
+        assertNotNull("Most recently used entry should be cached", dhtCache.get(new UnsecuredDhtPathElement("location", "content 4")));
+    }
+
+    @Test
+    public void testScanResistance() {
+        DhtCache dhtCache = new DhtCache(2000L, 0L, 1000L, 10, 1000L);
+        UnsecuredDhtPathElement hotPath = new UnsecuredDhtPathElement("location", "hot");
+
+        dhtCache.put(hotPath, content1);
+        // reading again promotes the entry
+        assertArrayEquals("Content should be equal", content1, dhtCache.get(hotPath));
+
+        // values read only once should not displace the hot entry
+        for (int i = 0; i < 100; i++) {
+            dhtCache.put(new UnsecuredDhtPathElement("location", "scan " + i), new byte[50]);
+        }
+
+        assertArrayEquals("Hot entry should survive the scan", content1, dhtCache.get(hotPath));
+        assertTrue("Entry limit should not be exceeded", dhtCache.getEntryCount() <= 10);
+    }
+
+    @Test
+    public void testConcurrentLimits()
+            throws InterruptedException {
+        DhtCache dhtCache = new DhtCache(2000L, 0L, 10000L, 50, 500L);
+        AtomicBoolean exceeded = new AtomicBoolean(false);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    UnsecuredDhtPathElement path = new UnsecuredDhtPathElement("location", "content " + ((thread * 31 + i) % 200));
+                    dhtCache.put(path, new byte[i % 500]);
+                    dhtCache.get(path);
+
+                    if (dhtCache.getSize() > 10000L || dhtCache.getEntryCount() > 50) {
+                        exceeded.set(true);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse("Limits should never be exceeded", exceeded.get());
+    }
+
+    @Test
+    public void testStats()
+            throws JMException {
+        DhtCache dhtCache = new DhtCache(2000L, 500L, 100L, 10, 100L);
+
+        dhtCache.put(securedDhtPathElement, content1);
+        dhtCache.get(securedDhtPathElement2);
+        dhtCache.putMissing(securedDhtPathElement2);
+        dhtCache.isMissing(securedDhtPathElement2);
+
+        // exceeds the byte limit together with the first value, which has not been read
+        dhtCache.put(securedDhtPathElement2, new byte[80]);
+        dhtCache.get(securedDhtPathElement2);
+
+        DhtCacheStats stats = dhtCache.getStats();
+        assertEquals("Hits should be counted", 1, stats.getHits());
+        assertEquals("Misses should be counted", 1, stats.getMisses());
+        assertEquals("Negative hits should be counted", 1, stats.getNegativeHits());
+        assertEquals("Puts should be counted", 2, stats.getPuts());
+        assertEquals("Evictions should be counted", 1, stats.getSizeEvictions());
+        assertEquals("Only the second value should be cached", 1, stats.getEntryCount());
+        assertEquals("Average entry size should be the size of the second value", 80.0, stats.getAverageEntrySize(), 0.0);
+        assertEquals("Hit ratio should be calculated", 0.5, stats.getHitRatio(), 0.0);
+
+        ObjectName name = DhtCacheMonitor.register(dhtCache, "testStats");
+        try {
+            assertEquals("Statistics should be exposed through JMX", 2L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Puts"));
+        } finally {
+            DhtCacheMonitor.unregister(name);
+        }
+    }
+
+    @Test
+    public void testExpiryStats() {
+        AtomicLong now = new AtomicLong(1000L);
+        DhtCache dhtCache = new DhtCache(100L, 100L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, DhtCache.DEFAULT_MAX_VALUE_SIZE, now::get);
+
+        dhtCache.put(securedDhtPathElement, content1);
+        dhtCache.put(securedDhtPathElement2, content2);
+
+        now.addAndGet(200L);
+
+        assertNull("Content should be expired", dhtCache.get(securedDhtPathElement));
+        dhtCache.sweep();
+
+        DhtCacheStats stats = dhtCache.getStats();
+        assertEquals("Values expired on read should be counted", 1, stats.getExpiredOnRead());
+        assertEquals("Values expired in the background should be counted", 1, stats.getExpiryEvictions());
+        assertEquals("Expired values should be misses", 1, stats.getMisses());
+    }
+
+    @Test
+    public void testRevalidation() {
+        AtomicLong now = new AtomicLong(1000L);
+        DhtCache dhtCache = new DhtCache(100L, 0L, 500L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, DhtCache.DEFAULT_MAX_VALUE_SIZE, now::get);
+
+        dhtCache.put(securedDhtPathElement, content1, "version1");
+        dhtCache.put(securedDhtPathElement2, content2, "version2");
+
+        now.addAndGet(200L);
+
+        assertNull("Expired content should not be returned", dhtCache.get(securedDhtPathElement));
+
+        VersionedValue staleValue = dhtCache.getStale(securedDhtPathElement);
+        assertNotNull("Expired content should be retained", staleValue);
+        assertArrayEquals("Retained content should be equal", content1, staleValue.getBytes());
+        assertEquals("Version should be retained", "version1", staleValue.getVersion());
+
+        assertFalse("Outdated versions should not revalidate", dhtCache.revalidate(securedDhtPathElement, "version0", "version0"));
+        assertTrue("Unchanged values should be revalidated", dhtCache.revalidate(securedDhtPathElement, "version1", "version1"));
+        assertArrayEquals("Revalidated content should be fresh", content1, dhtCache.get(securedDhtPathElement));
+
+        assertFalse("Changed values should not be revalidated", dhtCache.revalidate(securedDhtPathElement2, "version2", "version3"));
+        assertNull("Changed values should be removed", dhtCache.getStale(securedDhtPathElement2));
+
+        now.addAndGet(700L);
+
+        assertNull("Content should not be retained beyond the stale time to live", dhtCache.getStale(securedDhtPathElement));
+    }
+
+    @Test
+    public void testShouldRefresh() {
+        AtomicLong now = new AtomicLong(1000L);
+        DhtCache dhtCache = new DhtCache(100L, 0L, 0L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, DhtCache.DEFAULT_MAX_VALUE_SIZE, now::get);
+
+        dhtCache.put(securedDhtPathElement, content1, "version1");
+
+        assertFalse("Reads long before the expiry should not be counted", dhtCache.shouldRefresh(securedDhtPathElement, 0.2, 1));
+        assertFalse("Reads long before the expiry should not be counted", dhtCache.shouldRefresh(securedDhtPathElement, 0.2, 1));
+
+        now.addAndGet(90L);
+
+        assertFalse("Values should not be refreshed before enough reads", dhtCache.shouldRefresh(securedDhtPathElement, 0.2, 2));
+        assertTrue("Values should be refreshed once read often enough", dhtCache.shouldRefresh(securedDhtPathElement, 0.2, 2));
+        assertFalse("Refresh should be requested only once", dhtCache.shouldRefresh(securedDhtPathElement, 0.2, 2));
+        assertFalse("Missing values should not be refreshed", dhtCache.shouldRefresh(securedDhtPathElement2, 0.2, 2));
+
+        assertTrue("Unchanged values should be revalidated", dhtCache.revalidate(securedDhtPathElement, "version1", "version1"));
+
+        now.addAndGet(90L);
+
+        assertFalse("Revalidation should reset the reads", dhtCache.shouldRefresh(securedDhtPathElement, 0.2, 2));
+        assertTrue("Revalidated values should be refreshed again", dhtCache.shouldRefresh(securedDhtPathElement, 0.2, 2));
+
+        now.addAndGet(20L);
+
+        assertFalse("Expired values should not be refreshed", dhtCache.shouldRefresh(securedDhtPathElement, 0.2, 1));
+    }
+
+    @Test
+    public void testTtlPolicy() {
+        AtomicLong now = new AtomicLong(1000L);
+        DhtCache dhtCache = new DhtCache(100L, 0L, 0L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, DhtCache.DEFAULT_MAX_VALUE_SIZE, now::get);
+        dhtCache.setTtlPolicy(new RuleTtlPolicy().forLocationKey("locationKey2", 1000L).forContentKey("contentKey3", 0L));
+
+        SecuredDhtPathElement uncached = new SecuredDhtPathElement("locationKey", "contentKey3", "domainKey");
+
+        dhtCache.put(securedDhtPathElement, content1, "version1");
+        dhtCache.put(securedDhtPathElement2, content2, "version2");
+        dhtCache.put(uncached, content1);
+
+        assertNull("Values with a time to live of zero should not be cached", dhtCache.get(uncached));
+
+        now.addAndGet(200L);
+
+        assertNull("Default time to live should apply", dhtCache.get(securedDhtPathElement));
+        assertArrayEquals("Time to live of the policy should apply", content2, dhtCache.get(securedDhtPathElement2));
+
+        now.addAndGet(900L);
+        assertTrue("Unchanged values should be revalidated", dhtCache.revalidate(securedDhtPathElement2, "version2", "version2"));
+
+        now.addAndGet(900L);
+        assertArrayEquals("Revalidation should extend by the time to live of the entry", content2, dhtCache.get(securedDhtPathElement2));
+    }
+
+    @Test
+    public void testSweep()
+            throws InterruptedException {
+        // start in the middle of a sweep interval
+        AtomicLong now = new AtomicLong(1050L);
+        DhtCache dhtCache = new DhtCache(100L, 100L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, DhtCache.DEFAULT_MAX_VALUE_SIZE, now::get);
+
+        dhtCache.put(securedDhtPathElement, content1);
+        dhtCache.putMissing(securedDhtPathElement2);
+
+        // the interval of the expiry has begun, but the entries are not yet expired
+        now.set(1120L);
+        assertEquals("Entries should not be removed before their expiry", 0, dhtCache.sweep());
+
+        now.set(1160L);
+        assertEquals("Expired entries should be removed", 2, dhtCache.sweep());
+        assertEquals("Expired entries should not use space", 0, dhtCache.getSize());
+        assertEquals("Expired entries should not be counted", 0, dhtCache.getEntryCount());
+
+        dhtCache.startSweeper();
+        dhtCache.put(securedDhtPathElement, content2);
+
+        now.addAndGet(200L);
+
+        // wait for the next run of the sweeper
+        for (int i = 0; i < 50 && 0 != dhtCache.getEntryCount(); i++) {
+            Thread.sleep(100L);
+        }
+
+        assertEquals("Sweeper should remove expired entries", 0, dhtCache.getEntryCount());
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testScheduledExpiries() {
+        AtomicLong now = new AtomicLong(1000L);
+        ScheduledDhtCache dhtCache = new ScheduledDhtCache(10000L, 10000L, 500L, now::get);
+
+        // overwrites and revalidations replace the deadline instead of adding one
+        for (int i = 0; i < 100; i++) {
+            dhtCache.put(securedDhtPathElement, content1, "version1");
+            dhtCache.revalidate(securedDhtPathElement, "version1", "version1");
+            dhtCache.putMissing(securedDhtPathElement2);
+        }
+
+        assertEquals("Wheel should hold a deadline per entry", 2, dhtCache.getScheduledExpiries());
+
+        dhtCache.put(securedDhtPathElement2, content2);
+        dhtCache.clear(securedDhtPathElement);
+
+        assertEquals("Removed entries should not keep their deadline", 1, dhtCache.getScheduledExpiries());
+    }
 }
@@ -0,0 +1,31 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.meta.DhtMetaRecord;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+
+import static org.junit.Assert.*;
+
+public class DhtMetaRecordTest {
+
+    @Test
+    public void testEncodeDecode() {
+        DhtMetaRecord record = new DhtMetaRecord(10L * Integer.MAX_VALUE, "061875632d79f95204fa082ac64d4d75");
+
+        DhtMetaRecord decoded = DhtMetaRecord.decode(record.encode());
+        assertEquals("Size should be equal", 10L * Integer.MAX_VALUE, decoded.getSize());
+        assertEquals("Checksum should be equal", "061875632d79f95204fa082ac64d4d75", decoded.getChecksum());
+
+        DhtMetaRecord unknownChecksum = DhtMetaRecord.decode(new DhtMetaRecord(12, null).encode());
+        assertEquals("Size should be equal", 12, unknownChecksum.getSize());
+        assertNull("Checksum should be unknown", unknownChecksum.getChecksum());
+    }
+
+    @Test
+    public void testMetaKey() {
+        UnsecuredDhtPathElement path = new UnsecuredDhtPathElement("location key", "content key");
+
+        assertEquals("Meta key should be stable", DhtMetaRecord.getMetaKey(path), DhtMetaRecord.getMetaKey(new UnsecuredDhtPathElement("location key", "content key")));
+        assertNotEquals("Meta key should differ from the content key", path.getContentKey(), DhtMetaRecord.getMetaKey(path));
+    }
+}
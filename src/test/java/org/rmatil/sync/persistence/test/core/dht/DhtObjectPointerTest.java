@@ -0,0 +1,47 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.chunk.ChunkManifest;
+import org.rmatil.sync.persistence.core.dht.dedup.DhtObjectPointer;
+
+import static org.junit.Assert.*;
+
+public class DhtObjectPointerTest {
+
+    @Test
+    public void testEncodeDecode() {
+        DhtObjectPointer pointer = DhtObjectPointer.of("Some content".getBytes());
+
+        byte[] encoded = pointer.encode();
+        assertTrue("Encoded pointer should be recognized", DhtObjectPointer.isPointer(encoded));
+        assertFalse("Pointer should not be recognized as manifest", ChunkManifest.isManifest(encoded));
+
+        DhtObjectPointer decoded = DhtObjectPointer.decode(encoded);
+        assertEquals("Pointer should be equal", pointer, decoded);
+        assertEquals("Size should be equal", 12, decoded.getSize());
+
+        assertFalse("Content should not be recognized as pointer", DhtObjectPointer.isPointer("Some content".getBytes()));
+        assertFalse("Null should not be recognized as pointer", DhtObjectPointer.isPointer(null));
+    }
+
+    @Test
+    public void testObjectPath() {
+        DhtObjectPointer pointer = DhtObjectPointer.of("Some content".getBytes());
+
+        assertEquals("Same content should share its object", pointer.getObjectPath(), DhtObjectPointer.of("Some content".getBytes()).getObjectPath());
+        assertNotEquals("Other content should not share the object", pointer.getObjectPath(), DhtObjectPointer.of("Other content".getBytes()).getObjectPath());
+    }
+
+    @Test
+    public void testMatches() {
+        DhtObjectPointer pointer = DhtObjectPointer.of("Some content".getBytes());
+
+        assertTrue("Content should match", pointer.matches("Some content".getBytes()));
+        assertFalse("Modified content should not match", pointer.matches("Some c0ntent".getBytes()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDecodeInvalid() {
+        DhtObjectPointer.decode("Some content".getBytes());
+    }
+}
@@ -0,0 +1,147 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import net.tomp2p.connection.Bindings;
+import net.tomp2p.connection.StandardProtocolFamily;
+import net.tomp2p.dht.PeerBuilderDHT;
+import net.tomp2p.dht.PeerDHT;
+import net.tomp2p.futures.FutureBootstrap;
+import net.tomp2p.p2p.PeerBuilder;
+import net.tomp2p.peers.Number160;
+import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.dht.IDhtStorageAdapter;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtStorageAdapter;
+import org.rmatil.sync.persistence.test.config.Config;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how the throughput of a storage adapter scales with the number
+ * of client threads. Each thread writes and reads its own path, so
+ * operations do not contend on the same key.
+ * <p>
+ * This is not run as part of the test suite. Start it using
+ * <pre>
+ *     mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=org.rmatil.sync.persistence.test.core.dht.DhtStorageAdapterBenchmark \
+ *       -Dexec.args="[nrOfPeers] [opsPerThread]"
+ * </pre>
+ */
+public class DhtStorageAdapterBenchmark {
+
+    protected static final int[] THREADS = new int[]{1, 2, 4, 8, 16, 32};
+
+    public static void main(String[] args)
+            throws Exception {
+        int nrOfPeers = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int opsPerThread = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+
+        List<PeerDHT> peers = createPeers(nrOfPeers);
+
+        // disable the cache so that every read hits the network
+        List<IDhtStorageAdapter> adapters = new ArrayList<>();
+        for (PeerDHT peer : peers) {
+            adapters.add(new UnsecuredDhtStorageAdapter(peer, 0));
+        }
+
+        try {
+            // warm up connections among the peers
+            run(adapters, 4, opsPerThread / 4);
+
+            System.out.println(String.format("%8s %12s %12s", "threads", "ops/s", "avg ms/op"));
+            for (int threads : THREADS) {
+                long ops = (long) threads * opsPerThread * 2;
+
+                long start = System.nanoTime();
+                run(adapters, threads, opsPerThread);
+                long duration = System.nanoTime() - start;
+
+                System.out.println(String.format(
+                        "%8d %12.1f %12.3f",
+                        threads,
+                        ops / (duration / 1e9),
+                        (duration / 1e6) / ((double) ops / threads)
+                ));
+            }
+        } finally {
+            for (int i = peers.size() - 1; i >= 0; i--) {
+                peers.get(i).shutdown().awaitUninterruptibly();
+            }
+        }
+    }
+
+    /**
+     * Persists and reads back a value on a distinct path per thread.
+     * Threads are spread evenly over the given storage adapters.
+     *
+     * @param adapters     The storage adapters to use
+     * @param threads      The number of client threads
+     * @param opsPerThread The number of persist and read pairs per thread
+     */
+    protected static void run(List<IDhtStorageAdapter> adapters, int threads, int opsPerThread)
+            throws InterruptedException, ExecutionException {
+        ExecutorService executorService = Executors.newFixedThreadPool(threads);
+        CyclicBarrier barrier = new CyclicBarrier(threads);
+        AtomicLong failures = new AtomicLong();
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            final IDhtStorageAdapter adapter = adapters.get(i % adapters.size());
+            final UnsecuredDhtPathElement path = new UnsecuredDhtPathElement("benchmark", "thread-" + i);
+            final byte[] data = ("content of thread " + i).getBytes();
+
+            futures.add(executorService.submit(() -> {
+                barrier.await();
+
+                for (int j = 0; j < opsPerThread; j++) {
+                    adapter.persist(StorageType.FILE, path, data);
+                    if (adapter.read(path).length != data.length) {
+                        failures.incrementAndGet();
+                    }
+                }
+
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        executorService.shutdown();
+
+        if (failures.get() > 0) {
+            System.err.println(failures.get() + " reads did not return the previously written value");
+        }
+    }
+
+    protected static List<PeerDHT> createPeers(int nrOfPeers)
+            throws Exception {
+        InetAddress address = InetAddress.getByName(Config.DEFAULT.getTestIpV4Address());
+        Bindings b = new Bindings().addProtocol(StandardProtocolFamily.INET).addAddress(address);
+
+        List<PeerDHT> peers = new ArrayList<>();
+
+        // bootstrap peer
+        peers.add(new PeerBuilderDHT(new PeerBuilder(Number160.ONE).ports(Config.DEFAULT.getTestPort()).bindings(b).start()).start());
+
+        for (int i = 1; i < nrOfPeers; i++) {
+            PeerDHT peer = new PeerBuilderDHT(new PeerBuilder(Number160.createHash(i + 1)).masterPeer(peers.get(0).peer()).start()).start();
+
+            FutureBootstrap futureBootstrap = peer.peer().bootstrap().inetAddress(address).ports(Config.DEFAULT.getTestPort()).start();
+            futureBootstrap.awaitUninterruptibly();
+
+            if (futureBootstrap.isFailed()) {
+                throw new IllegalStateException("Failed to bootstrap peer " + i + ". Reason: " + futureBootstrap.failedReason());
+            }
+
+            peers.add(peer);
+        }
+
+        return peers;
+    }
+}
@@ -0,0 +1,227 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.cache.OffHeapDhtCache;
+import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtPathElement;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class OffHeapDhtCacheTest {
+
+    protected static SecuredDhtPathElement securedDhtPathElement  = new SecuredDhtPathElement(
+            "locationKey",
+            "contentKey",
+            "domainKey"
+    );
+    protected static SecuredDhtPathElement securedDhtPathElement2 = new SecuredDhtPathElement(
+            "locationKey2",
+            "contentKey2",
+            "domainKey2"
+    );
+    protected static byte[]                content1               = "This is the content for the first element".getBytes();
+    protected static byte[]                content2               = "This is the content for the second element".getBytes();
+
+    @Test
+    public void test() {
+        OffHeapDhtCache dhtCache = new OffHeapDhtCache(2000L);
+
+        dhtCache.put(securedDhtPathElement, content1);
+
+        byte[] cached = dhtCache.get(securedDhtPathElement);
+        assertArrayEquals("Content should be equal", content1, cached);
+        assertNull("Content should be null", dhtCache.get(securedDhtPathElement2));
+
+        // modifying a returned value must not change the cached one
+        cached[0] = 'X';
+        assertArrayEquals("Cached content should not be modified", content1, dhtCache.get(securedDhtPathElement));
+
+        dhtCache.put(securedDhtPathElement, content2);
+
+        assertArrayEquals("Content should be equal", content2, dhtCache.get(securedDhtPathElement));
+        assertEquals("Size should be the one of the replaced value", content2.length, dhtCache.getSize());
+        assertEquals("Only one value should be cached", 1, dhtCache.getEntryCount());
+
+        dhtCache.clear();
+
+        assertNull("Content should be null", dhtCache.get(securedDhtPathElement));
+        assertEquals("Cleared cache should be empty", 0, dhtCache.getSize());
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testLargeValues() {
+        OffHeapDhtCache dhtCache = new OffHeapDhtCache(2000L);
+
+        dhtCache.put(securedDhtPathElement, new byte[OffHeapDhtCache.SLAB_SIZE + 1]);
+
+        assertNull("Values larger than a slab should not be cached", dhtCache.get(securedDhtPathElement));
+        assertEquals("No slab should be allocated", 0, dhtCache.getAllocatedBytes());
+
+        byte[] slabSized = new byte[OffHeapDhtCache.SLAB_SIZE];
+        slabSized[slabSized.length - 1] = 42;
+        dhtCache.put(securedDhtPathElement, slabSized);
+
+        assertArrayEquals("Values filling a slab should be cached", slabSized, dhtCache.get(securedDhtPathElement));
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testSlotReuse() {
+        OffHeapDhtCache dhtCache = new OffHeapDhtCache(2000L);
+
+        for (int i = 0; i < 1000; i++) {
+            dhtCache.put(new UnsecuredDhtPathElement("path" + (i % 10), "locationKey"), content1);
+        }
+
+        assertEquals("Replaced values should free their slots", 10, dhtCache.getEntryCount());
+        assertEquals("Freed slots should be reused", OffHeapDhtCache.SLAB_SIZE, dhtCache.getAllocatedBytes());
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testEviction() {
+        // a single slab of 1 KiB slots
+        OffHeapDhtCache dhtCache = new OffHeapDhtCache(2000L, 0L, OffHeapDhtCache.SLAB_SIZE);
+        int slots = OffHeapDhtCache.SLAB_SIZE / 1024;
+
+        for (int i = 0; i < 2 * slots; i++) {
+            byte[] bytes = new byte[1024];
+            bytes[0] = (byte) i;
+            dhtCache.put(new UnsecuredDhtPathElement("path" + i, "locationKey"), bytes);
+        }
+
+        assertEquals("Cache should not allocate more than its limit", OffHeapDhtCache.SLAB_SIZE, dhtCache.getAllocatedBytes());
+        assertEquals("Cache should hold as many values as fit", slots, dhtCache.getEntryCount());
+
+        byte[] last = dhtCache.get(new UnsecuredDhtPathElement("path" + (2 * slots - 1), "locationKey"));
+        assertNotNull("Most recent value should be cached", last);
+        assertEquals("Most recent value should be intact", (byte) (2 * slots - 1), last[0]);
+
+        // values of another size class take over the slab once it is empty
+        dhtCache.clear();
+        dhtCache.put(securedDhtPathElement, content1);
+
+        assertArrayEquals("Emptied slab should be reassigned", content1, dhtCache.get(securedDhtPathElement));
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testSlabReassignment() {
+        AtomicLong now = new AtomicLong(1000L);
+        // two slabs, each taken by a different size class
+        OffHeapDhtCache dhtCache = new OffHeapDhtCache(100000L, 0L, 0L, 2L * OffHeapDhtCache.SLAB_SIZE, now::get);
+
+        UnsecuredDhtPathElement small = new UnsecuredDhtPathElement("small", "locationKey");
+        UnsecuredDhtPathElement large = new UnsecuredDhtPathElement("large", "locationKey");
+        UnsecuredDhtPathElement other = new UnsecuredDhtPathElement("other", "locationKey");
+
+        dhtCache.put(small, new byte[1024]);
+        now.addAndGet(10L);
+        dhtCache.put(large, new byte[64 * 1024]);
+
+        // the slab of the small value is used more recently
+        now.addAndGet(10L);
+        assertNotNull("Small value should be cached", dhtCache.get(small));
+
+        // a third size class takes over the least recently used slab
+        now.addAndGet(10L);
+        byte[] bytes = new byte[4096];
+        bytes[0] = 42;
+        dhtCache.put(other, bytes);
+
+        assertArrayEquals("Value of a class without slab should be cached", bytes, dhtCache.get(other));
+        assertNull("Values of the reassigned slab should be evicted", dhtCache.get(large));
+        assertNotNull("Values of the recently used slab should be kept", dhtCache.get(small));
+        assertEquals("Cache should not allocate more than its limit", 2L * OffHeapDhtCache.SLAB_SIZE, dhtCache.getAllocatedBytes());
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testNegativeEntries()
+            throws InterruptedException {
+        OffHeapDhtCache dhtCache = new OffHeapDhtCache(2000L, 500L, OffHeapDhtCache.DEFAULT_MAX_BYTES);
+
+        dhtCache.put(securedDhtPathElement, content1);
+        dhtCache.putMissing(securedDhtPathElement);
+
+        assertTrue("Element should be missing", dhtCache.isMissing(securedDhtPathElement));
+        assertNull("Negative entry should replace the value", dhtCache.get(securedDhtPathElement));
+
+        dhtCache.put(securedDhtPathElement, content1);
+
+        assertFalse("Putting content should remove the negative entry", dhtCache.isMissing(securedDhtPathElement));
+
+        dhtCache.putMissing(securedDhtPathElement2);
+
+        Thread.sleep(600L);
+
+        assertFalse("Negative entry should be expired", dhtCache.isMissing(securedDhtPathElement2));
+        assertEquals("Lookups should be counted once", 1, dhtCache.getSavedLookups());
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testRevalidation() {
+        AtomicLong now = new AtomicLong(1000L);
+        OffHeapDhtCache dhtCache = new OffHeapDhtCache(100L, 0L, 500L, OffHeapDhtCache.SLAB_SIZE, now::get);
+
+        dhtCache.put(securedDhtPathElement, content1, "version1");
+
+        now.addAndGet(200L);
+
+        assertNull("Expired content should not be returned", dhtCache.get(securedDhtPathElement));
+        assertArrayEquals("Expired content should be retained", content1, dhtCache.getStale(securedDhtPathElement).getBytes());
+        assertTrue("Unchanged values should be revalidated", dhtCache.revalidate(securedDhtPathElement, "version1", "version1"));
+        assertArrayEquals("Revalidated content should be fresh", content1, dhtCache.get(securedDhtPathElement));
+
+        assertFalse("Changed values should not be revalidated", dhtCache.revalidate(securedDhtPathElement, "version1", "version2"));
+        assertNull("Changed values should be removed", dhtCache.getStale(securedDhtPathElement));
+        assertEquals("Slot of the changed value should be freed", 0, dhtCache.getEntryCount());
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testSweep()
+            throws InterruptedException {
+        // start in the middle of a sweep interval
+        AtomicLong now = new AtomicLong(1050L);
+        OffHeapDhtCache dhtCache = new OffHeapDhtCache(100L, 100L, OffHeapDhtCache.DEFAULT_MAX_BYTES, now::get);
+
+        dhtCache.put(securedDhtPathElement, content1);
+        dhtCache.putMissing(securedDhtPathElement2);
+
+        now.set(1120L);
+        assertEquals("Entries should not be removed before their expiry", 0, dhtCache.sweep());
+
+        now.set(1160L);
+        assertEquals("Expired entries should be removed", 2, dhtCache.sweep());
+        assertEquals("Expired entries should not use space", 0, dhtCache.getSize());
+
+        dhtCache.startSweeper();
+        dhtCache.put(securedDhtPathElement, content2);
+
+        now.addAndGet(200L);
+
+        // wait for the next run of the sweeper
+        for (int i = 0; i < 50 && 0 != dhtCache.getEntryCount(); i++) {
+            Thread.sleep(100L);
+        }
+
+        assertEquals("Sweeper should remove expired entries", 0, dhtCache.getEntryCount());
+
+        dhtCache.shutdown();
+
+        assertEquals("Shutdown should release all slabs", 0, dhtCache.getAllocatedBytes());
+        assertNull("Shut down cache should be empty", dhtCache.get(securedDhtPathElement));
+    }
+}
@@ -0,0 +1,99 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.compress.PayloadCodec;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class PayloadCodecTest {
+
+    protected static byte[] json() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < 200; i++) {
+            builder.append("{\"path\":\"dir/file").append(i).append("\",\"isFile\":true,\"version\":").append(i).append("},");
+        }
+
+        return builder.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testEncodeDecode() {
+        PayloadCodec payloadCodec = new PayloadCodec();
+        byte[] content = json();
+
+        byte[] encoded = payloadCodec.encode(content);
+
+        assertTrue("Compressible values should be compressed", PayloadCodec.isCompressed(encoded));
+        assertTrue("Compressed value should be smaller", encoded.length < content.length / 4);
+        assertEquals("Header should contain the uncompressed size", content.length, PayloadCodec.getSize(encoded));
+        assertArrayEquals("Decoded value should be equal", content, PayloadCodec.decode(encoded));
+        assertEquals("Compressed values should be counted", 1, payloadCodec.getCompressedCount());
+        assertEquals("Saved bytes should be counted", content.length - encoded.length, payloadCodec.getSavedBytes());
+
+        byte[] small = "Some content".getBytes();
+        assertSame("Small values should not be compressed", small, payloadCodec.encode(small));
+        assertSame("Uncompressed values should be decoded as they are", small, PayloadCodec.decode(small));
+        assertFalse("Null should not be recognized as compressed", PayloadCodec.isCompressed(null));
+    }
+
+    @Test
+    public void testIncompressible() {
+        PayloadCodec payloadCodec = new PayloadCodec();
+
+        byte[] random = new byte[64 * 1024];
+        new Random(42).nextBytes(random);
+
+        assertSame("Incompressible values should not be compressed", random, payloadCodec.encode(random));
+        assertEquals("Skipped values should be counted", 1, payloadCodec.getSkippedCount());
+
+        // a value whose start compresses well but the rest does not
+        byte[] mixed = Arrays.copyOf(json(), 64 * 1024);
+        System.arraycopy(random, 0, mixed, PayloadCodec.DEFAULT_SAMPLE_SIZE, mixed.length - PayloadCodec.DEFAULT_SAMPLE_SIZE);
+
+        assertSame("Values not paying off should not be compressed", mixed, payloadCodec.encode(mixed));
+    }
+
+    @Test
+    public void testMagicValues() {
+        PayloadCodec payloadCodec = new PayloadCodec();
+        byte[] compressed = PayloadCodec.compress(new byte[0]);
+
+        // a value which is stored uncompressed must not be mistaken as compressed
+        byte[] encoded = payloadCodec.encode(compressed);
+
+        assertNotSame("Values looking compressed should always be compressed", compressed, encoded);
+        assertArrayEquals("Decoded value should be equal", compressed, PayloadCodec.decode(encoded));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTruncated() {
+        byte[] encoded = PayloadCodec.compress(json());
+
+        PayloadCodec.decode(Arrays.copyOf(encoded, encoded.length / 2));
+    }
+
+    @Test
+    public void testInvalidSize() {
+        byte[] zeros = new byte[16 * 1024 * 1024];
+        assertArrayEquals("Highly compressible values should be decoded", zeros, PayloadCodec.decode(PayloadCodec.compress(zeros)));
+
+        byte[] encoded = PayloadCodec.compress(json());
+
+        for (int size : new int[]{- 1, Integer.MAX_VALUE}) {
+            // the header, after the magic number and the codec, claims a size the compressed bytes cannot expand to
+            ByteBuffer.wrap(encoded, 9, 4).putInt(size);
+
+            try {
+                PayloadCodec.decode(encoded);
+                fail("Decoding a value with an invalid size should fail");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.refresh.RefreshAhead;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class RefreshAheadTest {
+
+    @Test
+    public void testRequests()
+            throws InterruptedException {
+        List<String> refreshed = new CopyOnWriteArrayList<>();
+        CountDownLatch release = new CountDownLatch(1);
+
+        RefreshAhead<String> refreshAhead = new RefreshAhead<>(key -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InputOutputException(e);
+            }
+
+            refreshed.add(key);
+        }, 0.2, 1, 1000);
+
+        assertTrue("Key should be queued", refreshAhead.request("key1"));
+        // wait until the first key is taken from the queue
+        Thread.sleep(100L);
+
+        assertTrue("Key should be queued", refreshAhead.request("key2"));
+        assertFalse("Queued keys should not be queued again", refreshAhead.request("key2"));
+        assertEquals("One key should wait", 1, refreshAhead.getPendingCount());
+
+        release.countDown();
+        Thread.sleep(200L);
+
+        assertEquals("Each key should be refreshed once", 2, refreshed.size());
+        assertEquals("Keys should be refreshed in order", "key1", refreshed.get(0));
+        assertEquals("Refreshes should be counted", 2, refreshAhead.getRefreshCount());
+
+        refreshAhead.shutdown();
+
+        assertFalse("Shut down refresher should not accept keys", refreshAhead.request("key3"));
+    }
+
+    @Test
+    public void testRateLimit()
+            throws InterruptedException {
+        CountDownLatch refreshes = new CountDownLatch(3);
+
+        RefreshAhead<String> refreshAhead = new RefreshAhead<>(key -> {
+            refreshes.countDown();
+            // failures must not stop refreshing the remaining keys
+            throw new InputOutputException("Failed to refresh " + key);
+        }, 0.2, 1, 10);
+
+        long start = System.currentTimeMillis();
+
+        for (int i = 0; i < 3; i++) {
+            refreshAhead.request("key" + i);
+        }
+
+        assertTrue("All keys should be refreshed", refreshes.await(5, TimeUnit.SECONDS));
+        assertTrue("Refreshes should be spaced out", System.currentTimeMillis() - start >= 200L);
+
+        refreshAhead.shutdown();
+    }
+}
@@ -0,0 +1,84 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.coalesce.RequestCoalescer;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class RequestCoalescerTest {
+
+    @Test
+    public void testConcurrentRequests()
+            throws InterruptedException, ExecutionException {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        Callable<String> caller = () -> coalescer.execute("key", () -> {
+            executions.incrementAndGet();
+            started.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InputOutputException(e);
+            }
+
+            return "value";
+        });
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        results.add(executorService.submit(caller));
+
+        started.await();
+
+        for (int i = 0; i < 7; i++) {
+            results.add(executorService.submit(caller));
+        }
+
+        // let the other callers join the running request
+        Thread.sleep(200L);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertEquals("All callers should get the result", "value", result.get());
+        }
+
+        executorService.shutdown();
+
+        assertEquals("Request should be executed once", 1, executions.get());
+        assertEquals("No request should be in progress", 0, coalescer.size());
+    }
+
+    @Test
+    public void testSequentialRequests()
+            throws InputOutputException {
+        RequestCoalescer<String, Integer> coalescer = new RequestCoalescer<>();
+        AtomicInteger executions = new AtomicInteger();
+
+        assertEquals("Result is wrong", Integer.valueOf(1), coalescer.execute("key", executions::incrementAndGet));
+        assertEquals("Completed requests should not be shared", Integer.valueOf(2), coalescer.execute("key", executions::incrementAndGet));
+    }
+
+    @Test(expected = InputOutputException.class)
+    public void testFailedRequest()
+            throws InputOutputException {
+        RequestCoalescer<String, String> coalescer = new RequestCoalescer<>();
+
+        try {
+            coalescer.execute("key", () -> {
+                throw new InputOutputException("Failed");
+            });
+        } finally {
+            assertEquals("Failed requests should be removed", 0, coalescer.size());
+        }
+    }
+}
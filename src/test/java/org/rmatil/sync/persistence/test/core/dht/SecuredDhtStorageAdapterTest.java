@@ -2,6 +2,7 @@ package org.rmatil.sync.persistence.test.core.dht;
 
 import net.tomp2p.connection.Bindings;
 import net.tomp2p.connection.StandardProtocolFamily;
+import net.tomp2p.dht.FutureGet;
 import net.tomp2p.dht.PeerBuilderDHT;
 import net.tomp2p.dht.PeerDHT;
 import net.tomp2p.dht.StorageLayer;
@@ -13,7 +14,9 @@ import org.junit.*;
 import org.junit.rules.ExpectedException;
 import org.rmatil.sync.persistence.api.IFileMetaInfo;
 import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
 import org.rmatil.sync.persistence.core.dht.IDhtStorageAdapter;
+import org.rmatil.sync.persistence.core.dht.dedup.DhtObjectPointer;
 import org.rmatil.sync.persistence.core.dht.secured.ISecuredDhtStorageAdapter;
 import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtPathElement;
 import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtStorageAdapter;
@@ -104,6 +107,8 @@ public class SecuredDhtStorageAdapterTest {
 
     @AfterClass
     public static void tearDown() {
+        dhtStorageAdapter2.shutdown();
+        dhtStorageAdapter1.shutdown();
         peer2.shutdown();
         peer1.shutdown();
     }
@@ -333,6 +338,25 @@ public class SecuredDhtStorageAdapterTest {
         SecuredDhtStorageAdapter tmpAdapter = new SecuredDhtStorageAdapter(tmpPeer);
     }
 
+    @Test
+    public void testDeduplicationOfSecuredPath()
+            throws InputOutputException {
+        SecuredDhtStorageAdapter deduplicatingAdapter = new SecuredDhtStorageAdapter(peer1);
+        deduplicatingAdapter.setDeduplication(true);
+
+        deduplicatingAdapter.persist(StorageType.FILE, path1, data);
+
+        // objects are not protected, so secured content must stay in its domain
+        DhtPathElement objectPath = DhtObjectPointer.of(data).getObjectPath();
+        FutureGet futureGet = peer1.get(objectPath.getLocationKey()).contentKey(objectPath.getContentKey()).start();
+        futureGet.awaitUninterruptibly();
+
+        assertNull("Secured content should not be stored as object", futureGet.data());
+        assertArrayEquals("Content is not the same", data, dhtStorageAdapter2.read(path1));
+
+        deduplicatingAdapter.shutdown();
+    }
+
     @Test
     public void testGetChecksum()
             throws InputOutputException, InterruptedException {
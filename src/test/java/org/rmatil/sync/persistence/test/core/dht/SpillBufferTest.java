@@ -0,0 +1,51 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.base.SpillBuffer;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+
+import static org.junit.Assert.*;
+
+public class SpillBufferTest {
+
+    @Test
+    public void testWriteInMemory()
+            throws InputOutputException {
+        SpillBuffer buffer = new SpillBuffer(1024);
+
+        buffer.write(0, "abcde".getBytes());
+        buffer.write(3, "DEF".getBytes());
+
+        // offsets beyond the end are appended
+        assertEquals("Bytes should be appended", 6, buffer.write(100, "g".getBytes()));
+
+        assertFalse("Buffer should not be spilled", buffer.isSpilled());
+        assertEquals("Size is wrong", 7, buffer.size());
+        assertArrayEquals("Content is wrong", "abcDEFg".getBytes(), buffer.read(0, 100));
+        assertArrayEquals("Range is wrong", "cDE".getBytes(), buffer.read(2, 3));
+
+        buffer.release();
+        assertEquals("Buffer should be empty", 0, buffer.size());
+    }
+
+    @Test
+    public void testSpill()
+            throws InputOutputException {
+        SpillBuffer buffer = new SpillBuffer(4);
+
+        buffer.write(0, "abc".getBytes());
+        assertFalse("Buffer should not be spilled", buffer.isSpilled());
+
+        buffer.write(3, "defg".getBytes());
+        assertTrue("Buffer should be spilled", buffer.isSpilled());
+
+        buffer.write(1, "B".getBytes());
+
+        assertEquals("Size is wrong", 7, buffer.size());
+        assertArrayEquals("Content is wrong", "aBcdefg".getBytes(), buffer.read(0, 7));
+        assertArrayEquals("Range is wrong", "efg".getBytes(), buffer.read(4, 10));
+
+        buffer.release();
+        assertEquals("Buffer should be empty", 0, buffer.size());
+    }
+}
@@ -0,0 +1,46 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.lock.StripedPathLock;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+
+import static org.junit.Assert.*;
+
+public class StripedPathLockTest {
+
+    @Test
+    public void testSamePath() {
+        StripedPathLock locks = new StripedPathLock();
+
+        UnsecuredDhtPathElement path1 = new UnsecuredDhtPathElement("location key", "content key");
+        UnsecuredDhtPathElement path2 = new UnsecuredDhtPathElement("location key", "content key");
+
+        assertSame("Equal paths should share the lock", locks.writeLock(path1), locks.writeLock(path2));
+        assertSame("Equal paths should share the lock", locks.readLock(path1), locks.readLock(path2));
+    }
+
+    @Test
+    public void testWriteLocks() {
+        StripedPathLock locks = new StripedPathLock(1);
+
+        UnsecuredDhtPathElement path1 = new UnsecuredDhtPathElement("location key", "content key");
+        UnsecuredDhtPathElement path2 = new UnsecuredDhtPathElement("location key", "other content key");
+
+        // both paths share the only stripe
+        List<Lock> writeLocks = locks.writeLocks(path1, path2);
+        assertEquals("Locks should be distinct", 1, writeLocks.size());
+
+        locks = new StripedPathLock(1024);
+        List<Lock> locks1 = locks.writeLocks(path1, path2);
+        List<Lock> locks2 = locks.writeLocks(path2, path1);
+        assertEquals("Locks should be acquired in the same order", locks1, locks2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testIllegalStripes() {
+        new StripedPathLock(0);
+    }
+}
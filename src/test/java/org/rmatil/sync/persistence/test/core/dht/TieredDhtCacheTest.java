@@ -0,0 +1,307 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCache;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCacheStats;
+import org.rmatil.sync.persistence.core.dht.cache.RuleTtlPolicy;
+import org.rmatil.sync.persistence.core.dht.cache.TieredDhtCache;
+import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtPathElement;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+import org.rmatil.sync.persistence.core.tree.local.LocalStorageAdapter;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.persistence.test.config.Config;
+import org.rmatil.sync.persistence.test.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TieredDhtCacheTest {
+
+    protected static final Path CACHE_DIR = Config.DEFAULT.getRootTestDir().resolve("dhtCache");
+
+    protected static SecuredDhtPathElement securedDhtPathElement  = new SecuredDhtPathElement(
+            "locationKey",
+            "contentKey",
+            "domainKey"
+    );
+    protected static SecuredDhtPathElement securedDhtPathElement2 = new SecuredDhtPathElement(
+            "locationKey",
+            "contentKey",
+            "domainKey2"
+    );
+    protected static byte[]                content1               = "This is the content for the first element".getBytes();
+    protected static byte[]                content2               = "This is the content for the second element".getBytes();
+
+    protected AtomicLong now;
+
+    @Before
+    public void setUp()
+            throws IOException {
+        FileUtil.delete(CACHE_DIR.toFile());
+        Files.createDirectories(CACHE_DIR);
+
+        this.now = new AtomicLong(1000L);
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.delete(CACHE_DIR.toFile());
+    }
+
+    protected TieredDhtCache createCache(long maxDiskBytes)
+            throws InputOutputException {
+        return this.createCache(DhtCache.DEFAULT_MAX_VALUE_SIZE, maxDiskBytes);
+    }
+
+    protected TieredDhtCache createCache(long maxMemoryValueSize, long maxDiskBytes)
+            throws InputOutputException {
+        return this.createCache(this.createMemory(maxMemoryValueSize), maxDiskBytes, Runnable::run);
+    }
+
+    protected DhtCache createMemory(long maxMemoryValueSize) {
+        return new DhtCache(1000L, 0L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, maxMemoryValueSize, this.now::get);
+    }
+
+    /**
+     * @param writer The executor writing to disk, writes run directly on the caller to check the disk right after a put
+     */
+    protected TieredDhtCache createCache(DhtCache memory, long maxDiskBytes, Executor writer)
+            throws InputOutputException {
+        return new TieredDhtCache(
+                memory,
+                new LocalStorageAdapter(CACHE_DIR, 0),
+                1000L,
+                maxDiskBytes,
+                this.now::get,
+                writer
+        );
+    }
+
+    @Test
+    public void test()
+            throws InputOutputException {
+        TieredDhtCache dhtCache = this.createCache(TieredDhtCache.DEFAULT_MAX_DISK_BYTES);
+
+        dhtCache.put(securedDhtPathElement, content1);
+
+        assertArrayEquals("Content should be equal", content1, dhtCache.get(securedDhtPathElement));
+        assertNull("Values with another domain key should not be found", dhtCache.get(securedDhtPathElement2));
+        assertEquals("Value should be stored on disk", 1, dhtCache.getDiskEntryCount());
+
+        dhtCache.put(securedDhtPathElement, content2);
+
+        assertArrayEquals("Content should be equal", content2, dhtCache.get(securedDhtPathElement));
+        assertEquals("Replaced value should be removed from disk", 1, dhtCache.getDiskEntryCount());
+
+        dhtCache.putMissing(securedDhtPathElement);
+
+        assertNull("Missing values should be removed", dhtCache.get(securedDhtPathElement));
+        assertEquals("Missing values should be removed from disk", 0, dhtCache.getDiskEntryCount());
+
+        dhtCache.put(securedDhtPathElement, content1);
+        dhtCache.clear();
+
+        assertNull("Content should be null", dhtCache.get(securedDhtPathElement));
+        assertEquals("Cleared cache should not use disk space", 0, dhtCache.getDiskSize());
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testRestart()
+            throws InputOutputException {
+        TieredDhtCache dhtCache = this.createCache(TieredDhtCache.DEFAULT_MAX_DISK_BYTES);
+
+        dhtCache.put(securedDhtPathElement, content1);
+        dhtCache.put(securedDhtPathElement2, content2);
+        dhtCache.shutdown();
+
+        TieredDhtCache restartedCache = this.createCache(TieredDhtCache.DEFAULT_MAX_DISK_BYTES);
+
+        assertEquals("Values should be loaded from disk", 2, restartedCache.getDiskEntryCount());
+        assertArrayEquals("Content should survive a restart", content1, restartedCache.get(securedDhtPathElement));
+        assertArrayEquals("Content should survive a restart", content2, restartedCache.get(securedDhtPathElement2));
+        assertEquals("Values should be read from disk", 2, restartedCache.getDiskHits());
+
+        restartedCache.get(securedDhtPathElement);
+        assertEquals("Values read from disk should be kept in memory", 2, restartedCache.getDiskHits());
+
+        DhtCacheStats stats = restartedCache.getStats();
+        assertEquals("Reads answered by either tier should be hits", 3, stats.getHits());
+        assertEquals("Reads answered by the disk tier should not be misses", 0, stats.getMisses());
+        assertEquals("Statistics should describe the disk tier", 2, stats.getEntryCount());
+
+        restartedCache.shutdown();
+
+        this.now.addAndGet(1000L);
+
+        TieredDhtCache expiredCache = this.createCache(TieredDhtCache.DEFAULT_MAX_DISK_BYTES);
+
+        assertEquals("Expired values should not be loaded", 0, expiredCache.getDiskEntryCount());
+        assertNull("Expired values should not be returned", expiredCache.get(securedDhtPathElement));
+
+        File[] files = CACHE_DIR.toFile().listFiles(File::isFile);
+        assertTrue("Expired files should be removed", null == files || 0 == files.length);
+
+        expiredCache.shutdown();
+    }
+
+    @Test
+    public void testEviction()
+            throws InputOutputException {
+        byte[] value = new byte[1000];
+        // let all reads go to disk
+        TieredDhtCache dhtCache = this.createCache(0L, 5000L);
+
+        for (int i = 0; i < 10; i++) {
+            dhtCache.put(new UnsecuredDhtPathElement("path" + i, "locationKey"), value);
+
+            // keep the first value recently used
+            dhtCache.get(new UnsecuredDhtPathElement("path0", "locationKey"));
+
+            assertTrue("Disk tier should not exceed its budget", dhtCache.getDiskSize() <= 5000L);
+        }
+
+        assertEquals("Disk tier should hold as many values as fit", 4, dhtCache.getDiskEntryCount());
+
+        dhtCache.shutdown();
+
+        TieredDhtCache restartedCache = this.createCache(0L, 5000L);
+
+        assertNotNull("Recently used value should be kept", restartedCache.get(new UnsecuredDhtPathElement("path0", "locationKey")));
+        assertNotNull("Recently written value should be kept", restartedCache.get(new UnsecuredDhtPathElement("path9", "locationKey")));
+        assertNull("Least recently used value should be evicted", restartedCache.get(new UnsecuredDhtPathElement("path1", "locationKey")));
+
+        restartedCache.shutdown();
+    }
+
+    @Test
+    public void testRestartOrder()
+            throws InputOutputException {
+        byte[] value = new byte[1000];
+        UnsecuredDhtPathElement longLived = new UnsecuredDhtPathElement("path1", "longLived");
+        UnsecuredDhtPathElement shortLived = new UnsecuredDhtPathElement("path2", "shortLived");
+        UnsecuredDhtPathElement other = new UnsecuredDhtPathElement("path3", "shortLived");
+
+        // let all reads go to disk
+        TieredDhtCache dhtCache = this.createCache(0L, 5000L);
+        dhtCache.setTtlPolicy(new RuleTtlPolicy().forContentKey("longLived", 10000L));
+
+        dhtCache.put(longLived, value);
+        this.now.addAndGet(10L);
+        dhtCache.put(shortLived, value);
+        this.now.addAndGet(10L);
+        dhtCache.put(other, value);
+        this.now.addAndGet(10L);
+
+        // reads from disk count as use, regardless of the expiry
+        assertNotNull("Value should be read from disk", dhtCache.get(shortLived));
+
+        dhtCache.shutdown();
+
+        // only two values fit
+        TieredDhtCache restartedCache = this.createCache(0L, 2500L);
+
+        assertEquals("Loaded values should be evicted to fit", 2, restartedCache.getDiskEntryCount());
+        assertNull("Least recently used value should be evicted", restartedCache.get(longLived));
+        assertNotNull("Recently read value should be kept", restartedCache.get(shortLived));
+        assertNotNull("Recently written value should be kept", restartedCache.get(other));
+
+        restartedCache.shutdown();
+    }
+
+    @Test
+    public void testPromotion()
+            throws InputOutputException {
+        DhtCache memory = this.createMemory(DhtCache.DEFAULT_MAX_VALUE_SIZE);
+        TieredDhtCache dhtCache = this.createCache(memory, TieredDhtCache.DEFAULT_MAX_DISK_BYTES, Runnable::run);
+
+        dhtCache.put(securedDhtPathElement, content1);
+        memory.clear(securedDhtPathElement);
+        this.now.addAndGet(900L);
+
+        assertArrayEquals("Value should be read from disk", content1, dhtCache.get(securedDhtPathElement));
+        assertEquals("Value should be read from disk", 1, dhtCache.getDiskHits());
+
+        this.now.addAndGet(200L);
+
+        assertNull("Promoted value should expire with the value on disk", dhtCache.get(securedDhtPathElement));
+
+        dhtCache.shutdown();
+    }
+
+    @Test
+    public void testVersion()
+            throws InputOutputException {
+        TieredDhtCache dhtCache = this.createCache(TieredDhtCache.DEFAULT_MAX_DISK_BYTES);
+        dhtCache.put(securedDhtPathElement, content1, "version1");
+        dhtCache.shutdown();
+
+        TieredDhtCache restartedCache = this.createCache(TieredDhtCache.DEFAULT_MAX_DISK_BYTES);
+
+        assertArrayEquals("Value should be read from disk", content1, restartedCache.get(securedDhtPathElement));
+        assertEquals("Version should be kept on disk", "version1", restartedCache.getStale(securedDhtPathElement).getVersion());
+
+        this.now.addAndGet(1500L);
+
+        assertTrue("Promoted value should be revalidated by its version", restartedCache.revalidate(securedDhtPathElement, "version1", "version1"));
+        assertArrayEquals("Revalidated value should be fresh", content1, restartedCache.get(securedDhtPathElement));
+
+        restartedCache.shutdown();
+    }
+
+    @Test
+    public void testConcurrentAccess()
+            throws InputOutputException, InterruptedException, IOException {
+        // let all reads go to disk, which is written in the background
+        TieredDhtCache dhtCache = this.createCache(this.createMemory(0L), 20000L, Executors.newSingleThreadExecutor());
+        AtomicBoolean failed = new AtomicBoolean(false);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    UnsecuredDhtPathElement path = new UnsecuredDhtPathElement("location", "content " + ((thread * 31 + i) % 50));
+                    byte[] value = new byte[1000];
+                    value[0] = (byte) thread;
+
+                    dhtCache.put(path, value);
+                    byte[] cached = dhtCache.get(path);
+
+                    if (null != cached && 1000 != cached.length) {
+                        failed.set(true);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        dhtCache.shutdown();
+
+        assertFalse("Values should be read completely", failed.get());
+        assertTrue("Disk tier should not exceed its budget", dhtCache.getDiskSize() <= 20000L);
+
+        long files = Files.walk(CACHE_DIR).filter(Files::isRegularFile).count();
+        assertEquals("Each value on disk should have exactly one file", dhtCache.getDiskEntryCount(), files);
+    }
+}
@@ -0,0 +1,134 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.cache.TimingWheel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testAdvance() {
+        TimingWheel<String> wheel = new TimingWheel<>(10L, 8, 0L);
+
+        wheel.schedule("first", 15L);
+        wheel.schedule("second", 35L);
+        // lies more than one revolution ahead
+        wheel.schedule("third", 115L);
+
+        List<String> expired = new ArrayList<>();
+
+        assertEquals("No key should be expired", 0, wheel.advance(9L, (key, deadline) -> expired.add(key)));
+        assertEquals("First key should be expired", 1, wheel.advance(20L, (key, deadline) -> expired.add(key)));
+        assertEquals("Second key should be expired", 1, wheel.advance(50L, (key, deadline) -> expired.add(key)));
+        assertEquals("Third key should wait for a later revolution", 0, wheel.advance(100L, (key, deadline) -> expired.add(key)));
+        assertEquals("Third key should be expired", 1, wheel.advance(120L, (key, deadline) -> expired.add(key)));
+
+        assertEquals("Keys should expire in order", "first", expired.get(0));
+        assertEquals("Keys should expire in order", "second", expired.get(1));
+        assertEquals("Keys should expire in order", "third", expired.get(2));
+    }
+
+    @Test
+    public void testPastDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(10L, 8, 0L);
+        wheel.advance(50L, (key, deadline) -> {
+        });
+
+        // the bucket of the deadline has already been visited
+        wheel.schedule("late", 20L);
+
+        assertEquals("Late key should be expired on the next tick", 1, wheel.advance(60L, (key, deadline) -> {
+        }));
+    }
+
+    @Test
+    public void testAdvanceWithinTick() {
+        TimingWheel<String> wheel = new TimingWheel<>(100L, 8, 0L);
+
+        wheel.schedule("key", 250L);
+
+        List<String> expired = new ArrayList<>();
+
+        // the tick of the deadline has begun, but is not yet elapsed
+        assertEquals("Key should not be expired before its deadline", 0, wheel.advance(220L, (key, deadline) -> expired.add(key)));
+        assertEquals("Key should be expired within the same tick", 1, wheel.advance(260L, (key, deadline) -> expired.add(key)));
+        assertEquals("Key should be expired", "key", expired.get(0));
+
+        // keys scheduled into the partly elapsed tick are expired as well
+        wheel.schedule("late", 270L);
+
+        assertEquals("Late key should be expired", 1, wheel.advance(280L, (key, deadline) -> {
+        }));
+    }
+
+    @Test
+    public void testCancel() {
+        TimingWheel<String> wheel = new TimingWheel<>(10L, 8, 0L);
+
+        TimingWheel.Timeout<String> first = wheel.schedule("key", 15L);
+        TimingWheel.Timeout<String> second = wheel.schedule("key", 25L);
+
+        // replacing a deadline must not leave the previous one in the wheel
+        first.cancel();
+        assertEquals("Cancelled timeout should be removed", 1, wheel.size());
+
+        List<Long> deadlines = new ArrayList<>();
+
+        assertEquals("Cancelled timeout should not expire", 0, wheel.advance(20L, (key, deadline) -> deadlines.add(deadline)));
+        assertEquals("Remaining timeout should expire", 1, wheel.advance(30L, (key, deadline) -> deadlines.add(deadline)));
+        assertEquals("Remaining timeout should expire with its deadline", Long.valueOf(25L), deadlines.get(0));
+        assertEquals("Wheel should be empty", 0, wheel.size());
+
+        // cancelling an expired timeout has no effect
+        second.cancel();
+        assertEquals("Wheel should be empty", 0, wheel.size());
+    }
+
+    @Test
+    public void testFarDeadline() {
+        TimingWheel<String> wheel = new TimingWheel<>(10L, 4, 0L);
+
+        // beyond a single level and beyond the range of all levels
+        wheel.schedule("near", 35L);
+        wheel.schedule("far", 2_345L);
+        wheel.schedule("beyond", 12_345L);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("cancelled", 1_005L);
+
+        cancelled.cancel();
+        assertEquals("Cancelled timeout should be removed", 3, wheel.size());
+
+        List<Long> deadlines = new ArrayList<>();
+
+        for (long now = 0L; now <= 13_000L; now += 5L) {
+            long current = now;
+            wheel.advance(now, (key, deadline) -> {
+                assertTrue("Key should not expire before its deadline", deadline <= current);
+                assertTrue("Key should expire within a tick of its deadline", current - deadline < 10L);
+                deadlines.add(deadline);
+            });
+        }
+
+        assertEquals("All keys should be expired once in order", 3, deadlines.size());
+        assertEquals(Long.valueOf(35L), deadlines.get(0));
+        assertEquals(Long.valueOf(2_345L), deadlines.get(1));
+        assertEquals(Long.valueOf(12_345L), deadlines.get(2));
+        assertEquals("Wheel should be empty", 0, wheel.size());
+    }
+
+    @Test
+    public void testClear() {
+        TimingWheel<String> wheel = new TimingWheel<>(10L, 8, 0L);
+
+        wheel.schedule("first", 15L);
+        wheel.schedule("second", 5_000L);
+        wheel.clear();
+
+        assertEquals("Wheel should be empty", 0, wheel.size());
+        assertEquals("No key should be expired", 0, wheel.advance(10_000L, (key, deadline) -> {
+        }));
+    }
+}
@@ -0,0 +1,65 @@
+package org.rmatil.sync.persistence.test.core.dht;
+
+import org.junit.Test;
+import org.rmatil.sync.persistence.core.dht.cache.AdaptiveTtlPolicy;
+import org.rmatil.sync.persistence.core.dht.cache.RuleTtlPolicy;
+import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class TtlPolicyTest {
+
+    protected static UnsecuredDhtPathElement publicKey = new UnsecuredDhtPathElement("user1", "publicKey");
+    protected static UnsecuredDhtPathElement locations = new UnsecuredDhtPathElement("user1", "locations");
+    protected static UnsecuredDhtPathElement index     = new UnsecuredDhtPathElement("user2", "index");
+
+    @Test
+    public void testRules() {
+        RuleTtlPolicy ttlPolicy = new RuleTtlPolicy()
+                .forContentKey("publicKey", 3600000L)
+                .forLocationKey("user1", 60000L)
+                .forSizeAbove(10, 5000L)
+                .forSizeAbove(100, 0L);
+
+        assertEquals("Content key rules should take precedence", 3600000L, ttlPolicy.getTimeToLive(publicKey, new byte[200], null, 1000L));
+        assertEquals("Location key rules should apply", 60000L, ttlPolicy.getTimeToLive(locations, new byte[200], null, 1000L));
+        assertEquals("Default should apply if no rule matches", 1000L, ttlPolicy.getTimeToLive(index, new byte[10], null, 1000L));
+        assertEquals("Size rule should apply", 5000L, ttlPolicy.getTimeToLive(index, new byte[11], null, 1000L));
+        assertEquals("Largest matching size rule should apply", 0L, ttlPolicy.getTimeToLive(index, new byte[101], null, 1000L));
+    }
+
+    @Test
+    public void testAdaptive() {
+        AtomicLong now = new AtomicLong(0L);
+        AdaptiveTtlPolicy ttlPolicy = new AdaptiveTtlPolicy(
+                (pathElement, bytes, version, defaultTimeToLive) -> defaultTimeToLive,
+                100L,
+                10000L,
+                0.5d,
+                1,
+                now::get
+        );
+
+        assertEquals("Unknown change interval should use the initial policy", 1000L, ttlPolicy.getTimeToLive(index, new byte[0], "v1", 1000L));
+
+        now.addAndGet(4000L);
+        assertEquals("Time to live should be a share of the change interval", 2000L, ttlPolicy.getTimeToLive(index, new byte[0], "v2", 1000L));
+
+        now.addAndGet(2000L);
+        assertEquals("Time to live should follow the average interval", 1500L, ttlPolicy.getTimeToLive(index, new byte[0], "v3", 1000L));
+        assertEquals("Average change interval should be tracked", 3000L, ttlPolicy.getAverageChangeInterval(index));
+
+        now.addAndGet(8000L);
+        assertEquals("Stable values should be cached longer", 4000L, ttlPolicy.getTimeToLive(index, new byte[0], "v3", 1000L));
+
+        now.addAndGet(100000L);
+        assertEquals("Time to live should be bounded", 10000L, ttlPolicy.getTimeToLive(index, new byte[0], "v3", 1000L));
+
+        assertEquals("Values without version should use the initial policy", 1000L, ttlPolicy.getTimeToLive(locations, new byte[0], null, 1000L));
+
+        ttlPolicy.getTimeToLive(locations, new byte[0], "v1", 1000L);
+        assertEquals("Least recently cached paths should not be tracked", 0L, ttlPolicy.getAverageChangeInterval(index));
+    }
+}
@@ -10,9 +10,17 @@ import net.tomp2p.p2p.PeerBuilder;
 import net.tomp2p.peers.Number160;
 import org.junit.*;
 import org.junit.rules.ExpectedException;
+import org.rmatil.sync.commons.hashing.Hash;
+import org.rmatil.sync.commons.hashing.HashingAlgorithm;
 import org.rmatil.sync.persistence.api.IFileMetaInfo;
 import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.dht.DhtPathElement;
 import org.rmatil.sync.persistence.core.dht.IDhtStorageAdapter;
+import org.rmatil.sync.persistence.core.dht.IDhtUploadSession;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCache;
+import org.rmatil.sync.persistence.core.dht.cache.DhtCacheStats;
+import org.rmatil.sync.persistence.core.dht.compress.PayloadCodec;
+import org.rmatil.sync.persistence.core.dht.dedup.DhtObjectPointer;
 import org.rmatil.sync.persistence.core.dht.secured.SecuredDhtStorageAdapter;
 import org.rmatil.sync.persistence.core.dht.unsecured.IUnsecuredDhtStorageAdapter;
 import org.rmatil.sync.persistence.core.dht.unsecured.UnsecuredDhtPathElement;
@@ -22,10 +30,18 @@ import org.rmatil.sync.persistence.test.config.Config;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.*;
 
@@ -81,6 +97,8 @@ public class UnsecuredDhtStorageAdapterTest {
 
     @AfterClass
     public static void tearDown() {
+        dhtStorageAdapter2.shutdown();
+        dhtStorageAdapter1.shutdown();
         peer2.shutdown();
         peer1.shutdown();
     }
@@ -324,5 +342,383 @@ public class UnsecuredDhtStorageAdapterTest {
         Thread.sleep(1000L);
 
         assertEquals("Checksum should be equal", "061875632d79f95204fa082ac64d4d75", dhtStorageAdapter1.getChecksum(path1));
+        // read from the meta record since the content is not cached
+        assertEquals("Checksum should be equal", "061875632d79f95204fa082ac64d4d75", dhtStorageAdapter2.getChecksum(path1));
+    }
+
+    @Test
+    public void testAsync()
+            throws InterruptedException, ExecutionException {
+        dhtStorageAdapter1.persistAsync(StorageType.FILE, path1, data).get();
+
+        // wait to for propagating data among peers
+        Thread.sleep(1000L);
+
+        assertArrayEquals("Content is not the same", data, dhtStorageAdapter2.readAsync(path1).get());
+        assertTrue("File should exist", dhtStorageAdapter2.existsAsync(StorageType.FILE, path1).get());
+        assertEquals("Size should be equal", data.length, dhtStorageAdapter2.getMetaInformationAsync(path1).get().getTotalFileSize());
+
+        dhtStorageAdapter2.deleteAsync(path1).get();
+
+        Thread.sleep(1000L);
+
+        assertFalse("File should not exist anymore after deletion", dhtStorageAdapter2.existsAsync(StorageType.FILE, path1).get());
+
+        try {
+            dhtStorageAdapter2.getMetaInformationAsync(path1).get();
+            fail("Meta information of a non existing file should not be available");
+        } catch (ExecutionException e) {
+            assertTrue("Cause should be an InputOutputException", e.getCause() instanceof InputOutputException);
+        }
+    }
+
+    @Test
+    public void testReadAll()
+            throws InputOutputException, InterruptedException {
+        UnsecuredDhtPathElement path2 = new UnsecuredDhtPathElement("location key", "content key 2");
+        UnsecuredDhtPathElement otherLocationPath = new UnsecuredDhtPathElement("other location key", "content key");
+        UnsecuredDhtPathElement missingPath = new UnsecuredDhtPathElement("location key", "missing content key");
+
+        dhtStorageAdapter1.persist(StorageType.FILE, path1, data);
+        dhtStorageAdapter1.persist(StorageType.FILE, path2, "content 2".getBytes());
+        dhtStorageAdapter1.persist(StorageType.FILE, otherLocationPath, "other content".getBytes());
+
+        // wait to for propagating data among peers
+        Thread.sleep(1000L);
+
+        Map<DhtPathElement, byte[]> contents = dhtStorageAdapter2.readAll(Arrays.asList(path1, path2, otherLocationPath, missingPath));
+
+        assertEquals("All paths should be contained", 4, contents.size());
+        assertArrayEquals("Content is not the same", data, contents.get(path1));
+        assertArrayEquals("Content is not the same", "content 2".getBytes(), contents.get(path2));
+        assertArrayEquals("Content is not the same", "other content".getBytes(), contents.get(otherLocationPath));
+        assertTrue("Missing path should be contained", contents.containsKey(missingPath));
+        assertNull("Missing path should be marked as absent", contents.get(missingPath));
+
+        dhtStorageAdapter1.delete(path2);
+        dhtStorageAdapter1.delete(otherLocationPath);
+    }
+
+    @Test
+    public void testPersistAll()
+            throws InputOutputException, InterruptedException {
+        UnsecuredDhtPathElement path2 = new UnsecuredDhtPathElement("location key", "content key 2");
+        UnsecuredDhtPathElement otherLocationPath = new UnsecuredDhtPathElement("other location key", "content key");
+
+        Map<UnsecuredDhtPathElement, byte[]> contents = new HashMap<>();
+        contents.put(path1, data);
+        contents.put(path2, "content 2".getBytes());
+        contents.put(otherLocationPath, "other content".getBytes());
+
+        Map<DhtPathElement, Boolean> results = dhtStorageAdapter1.persistAll(contents);
+
+        assertEquals("All paths should be contained", 3, results.size());
+        for (Boolean result : results.values()) {
+            assertTrue("Storing should have succeeded", result);
+        }
+
+        // wait to for propagating data among peers
+        Thread.sleep(1000L);
+
+        assertArrayEquals("Content is not the same", data, dhtStorageAdapter2.read(path1));
+        assertArrayEquals("Content is not the same", "content 2".getBytes(), dhtStorageAdapter2.read(path2));
+        assertArrayEquals("Content is not the same", "other content".getBytes(), dhtStorageAdapter2.read(otherLocationPath));
+
+        dhtStorageAdapter1.delete(path2);
+        dhtStorageAdapter1.delete(otherLocationPath);
+    }
+
+    @Test
+    public void testChunkedStorage()
+            throws InputOutputException, InterruptedException {
+        // use a small chunk size and no cache to fetch the chunks from the DHT
+        IDhtStorageAdapter chunkingAdapter = new UnsecuredDhtStorageAdapter(peer1, 0, 4);
+
+        chunkingAdapter.persist(StorageType.FILE, path1, "abcdefghij".getBytes());
+
+        Thread.sleep(1000L);
+
+        assertArrayEquals("Content is not the same", "abcdefghij".getBytes(), chunkingAdapter.read(path1));
+        assertArrayEquals("Content should be read from the chunks", "abcdefghij".getBytes(), dhtStorageAdapter2.read(path1));
+        assertArrayEquals("Range spanning chunks is wrong", "defgh".getBytes(), chunkingAdapter.read(path1, 3, 5));
+        assertEquals("Size should be the size of the content", 10, chunkingAdapter.getMetaInformation(path1).getTotalFileSize());
+
+        // overwrite parts of two chunks and append
+        chunkingAdapter.persist(StorageType.FILE, path1, 6, "GHIJKL".getBytes());
+
+        Thread.sleep(1000L);
+
+        assertArrayEquals("Content is not the same", "abcdefGHIJKL".getBytes(), chunkingAdapter.read(path1));
+        assertEquals("Size should include the appended bytes", 12, dhtStorageAdapter2.getMetaInformation(path1).getTotalFileSize());
+        assertEquals("Checksum should be computed from the content", Hash.hash(HashingAlgorithm.MD5, "abcdefGHIJKL".getBytes()), dhtStorageAdapter2.getChecksum(path1));
+
+        // overwriting with a small value must remove all chunks
+        chunkingAdapter.persist(StorageType.FILE, path1, "abc".getBytes());
+
+        Thread.sleep(1000L);
+
+        assertArrayEquals("Content is not the same", "abc".getBytes(), chunkingAdapter.read(path1));
+        assertEquals("Size should be the size of the content", 3, chunkingAdapter.getMetaInformation(path1).getTotalFileSize());
+    }
+
+    @Test
+    public void testNegativeCaching()
+            throws InputOutputException, InterruptedException {
+        UnsecuredDhtStorageAdapter cachingAdapter = new UnsecuredDhtStorageAdapter(peer1, 5000L);
+
+        assertFalse("Path should not exist", cachingAdapter.exists(StorageType.FILE, path1));
+        assertFalse("Path should not exist", cachingAdapter.exists(StorageType.FILE, path1));
+        assertArrayEquals("Content should be empty", new byte[0], cachingAdapter.read(path1));
+        assertEquals("Lookups should be answered by the cache", 2, cachingAdapter.getCache().getSavedLookups());
+
+        cachingAdapter.persist(StorageType.FILE, path1, "content".getBytes());
+
+        Thread.sleep(1000L);
+
+        assertTrue("Persisting should invalidate the negative entry", cachingAdapter.exists(StorageType.FILE, path1));
+
+        cachingAdapter.delete(path1);
+
+        assertFalse("Path should not exist after deletion", cachingAdapter.exists(StorageType.FILE, path1));
+    }
+
+    @Test
+    public void testRevalidation()
+            throws InputOutputException, InterruptedException {
+        DhtCache cache = new DhtCache(100L, 0L, 60000L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, DhtCache.DEFAULT_MAX_VALUE_SIZE, System::currentTimeMillis);
+        UnsecuredDhtStorageAdapter cachingAdapter = new UnsecuredDhtStorageAdapter(peer1, cache, UnsecuredDhtStorageAdapter.DEFAULT_CHUNK_SIZE);
+
+        cachingAdapter.persist(StorageType.FILE, path1, "content".getBytes());
+
+        Thread.sleep(200L);
+
+        assertArrayEquals("Unchanged content should be revalidated", "content".getBytes(), cachingAdapter.read(path1));
+        assertNotNull("Revalidated content should be fresh", cache.get(path1));
+
+        // another peer changes the value
+        dhtStorageAdapter2.persist(StorageType.FILE, path1, "changed content".getBytes());
+
+        Thread.sleep(200L);
+
+        assertArrayEquals("Changed content should be fetched", "changed content".getBytes(), cachingAdapter.read(path1));
+
+        cachingAdapter.setStaleWhileRevalidate(true);
+        dhtStorageAdapter2.persist(StorageType.FILE, path1, "content".getBytes());
+
+        Thread.sleep(200L);
+
+        assertArrayEquals("Stale content should be served while revalidating", "changed content".getBytes(), cachingAdapter.read(path1));
+
+        Thread.sleep(1000L);
+
+        assertArrayEquals("Changed content should be fetched after revalidation", "content".getBytes(), cachingAdapter.read(path1));
+
+        cachingAdapter.shutdown();
+    }
+
+    @Test
+    public void testRefreshAhead()
+            throws InputOutputException, InterruptedException {
+        DhtCache cache = new DhtCache(1000L, 0L, DhtCache.DEFAULT_MAX_BYTES, DhtCache.DEFAULT_MAX_ENTRIES, DhtCache.DEFAULT_MAX_VALUE_SIZE, System::currentTimeMillis);
+        UnsecuredDhtStorageAdapter cachingAdapter = new UnsecuredDhtStorageAdapter(peer1, cache, UnsecuredDhtStorageAdapter.DEFAULT_CHUNK_SIZE);
+        cachingAdapter.enableRefreshAhead(0.5, 2, 10);
+
+        cachingAdapter.persist(StorageType.FILE, path1, "content".getBytes());
+        // another peer changes the value
+        dhtStorageAdapter2.persist(StorageType.FILE, path1, "changed content".getBytes());
+
+        Thread.sleep(600L);
+
+        assertArrayEquals("Cached content should be returned", "content".getBytes(), cachingAdapter.read(path1));
+        assertArrayEquals("Cached content should be returned", "content".getBytes(), cachingAdapter.read(path1));
+
+        Thread.sleep(300L);
+
+        assertArrayEquals("Frequently read content should be refreshed before it expires", "changed content".getBytes(), cache.get(path1));
+
+        cachingAdapter.shutdown();
+    }
+
+    @Test
+    public void testCompression()
+            throws InputOutputException {
+        UnsecuredDhtStorageAdapter compressingAdapter = new UnsecuredDhtStorageAdapter(peer1, 5000L);
+        PayloadCodec payloadCodec = new PayloadCodec();
+        compressingAdapter.setCompression(payloadCodec, true);
+
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            builder.append("{\"path\":\"dir/file").append(i).append("\",\"isFile\":true}");
+        }
+        byte[] content = builder.toString().getBytes();
+
+        compressingAdapter.persist(StorageType.FILE, path1, content);
+
+        assertEquals("Value should be compressed for the DHT and the cache", 2, payloadCodec.getCompressedCount());
+        assertTrue("Value should be cached compressed", PayloadCodec.isCompressed(compressingAdapter.getCache().get(path1)));
+        assertArrayEquals("Cached value should be decompressed", content, compressingAdapter.read(path1));
+        assertEquals("Size should be the uncompressed size", content.length, compressingAdapter.getMetaInformation(path1).getTotalFileSize());
+
+        // peers without compression enabled read compressed values as well
+        assertArrayEquals("Compressed value should be decompressed", content, dhtStorageAdapter2.read(path1));
+        assertEquals("Checksum should be the one of the uncompressed value", Hash.hash(HashingAlgorithm.MD5, content), dhtStorageAdapter2.getChecksum(path1));
+
+        compressingAdapter.shutdown();
+    }
+
+    @Test
+    public void testCacheStats()
+            throws InputOutputException, JMException {
+        UnsecuredDhtStorageAdapter cachingAdapter = new UnsecuredDhtStorageAdapter(peer1, 5000L);
+        ObjectName mBeanName = cachingAdapter.registerCacheMBean("testCacheStats");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+        cachingAdapter.persist(StorageType.FILE, path1, "content".getBytes());
+        cachingAdapter.read(path1);
+
+        DhtCacheStats stats = cachingAdapter.getCacheStats();
+        assertEquals("Read should be answered by the cache", 1, stats.getHits());
+        assertEquals("Persisted value should be cached", 1, stats.getEntryCount());
+        assertEquals("Size should be the one of the value", "content".length(), stats.getSize());
+        assertEquals("Statistics should be exposed through JMX", 1L, server.getAttribute(mBeanName, "Hits"));
+
+        cachingAdapter.shutdown();
+
+        assertFalse("MBean should be removed on shutdown", server.isRegistered(mBeanName));
+    }
+
+    @Test
+    public void testUpload()
+            throws InputOutputException, InterruptedException {
+        IDhtStorageAdapter chunkingAdapter = new UnsecuredDhtStorageAdapter(peer1, 0, 4);
+
+        chunkingAdapter.persist(StorageType.FILE, path1, "previous content".getBytes());
+
+        IDhtUploadSession session = chunkingAdapter.beginUpload(path1);
+        session.writeChunk(0, "abcd".getBytes());
+        session.writeChunk(4, "efgh".getBytes());
+        session.writeChunk(8, "ij".getBytes());
+
+        // nothing is transferred before committing
+        assertArrayEquals("Previous content should be untouched", "previous content".getBytes(), chunkingAdapter.read(path1));
+
+        session.commit();
+
+        Thread.sleep(1000L);
+
+        assertArrayEquals("Content is not the same", "abcdefghij".getBytes(), dhtStorageAdapter2.read(path1));
+        assertEquals("Checksum should be equal", Hash.hash(HashingAlgorithm.MD5, "abcdefghij".getBytes()), dhtStorageAdapter2.getChecksum(path1));
+
+        thrown.expect(InputOutputException.class);
+        session.writeChunk(10, "k".getBytes());
+    }
+
+    @Test
+    public void testAbortUpload()
+            throws InputOutputException, InterruptedException {
+        dhtStorageAdapter1.persist(StorageType.FILE, path1, data);
+
+        try (IDhtUploadSession session = dhtStorageAdapter1.beginUpload(path1)) {
+            session.writeChunk(0, "other content".getBytes());
+            // closing without commit aborts
+        }
+
+        Thread.sleep(1000L);
+
+        assertArrayEquals("Content is not the same", data, dhtStorageAdapter2.read(path1));
+    }
+
+    @Test
+    public void testDeduplication()
+            throws InputOutputException {
+        UnsecuredDhtStorageAdapter deduplicatingAdapter = new UnsecuredDhtStorageAdapter(peer1, 0, 4);
+        deduplicatingAdapter.setDeduplication(true);
+
+        UnsecuredDhtPathElement userPath1 = new UnsecuredDhtPathElement("user1", "shared file");
+        UnsecuredDhtPathElement userPath2 = new UnsecuredDhtPathElement("user2", "shared file");
+        byte[] content = "abcdefghij".getBytes();
+
+        deduplicatingAdapter.persist(StorageType.FILE, userPath1, content);
+        deduplicatingAdapter.persist(StorageType.FILE, userPath2, content);
+
+        UnsecuredDhtPathElement objectPath = (UnsecuredDhtPathElement) DhtObjectPointer.of(content).getObjectPath();
+        assertTrue("Content should be stored as object", dhtStorageAdapter2.exists(StorageType.FILE, objectPath));
+
+        assertArrayEquals("Content is not the same", content, dhtStorageAdapter2.read(userPath1));
+        assertArrayEquals("Content is not the same", content, dhtStorageAdapter2.read(userPath2));
+        assertArrayEquals("Range of a chunked object is wrong", "defgh".getBytes(), dhtStorageAdapter2.read(userPath2, 3, 5));
+        assertEquals("Size should be the size of the content", 10, dhtStorageAdapter2.getMetaInformation(userPath1).getTotalFileSize());
+        assertEquals("Checksum should be the one of the content", Hash.hash(HashingAlgorithm.MD5, content), dhtStorageAdapter2.getChecksum(userPath1));
+
+        deduplicatingAdapter.delete(userPath1);
+
+        assertArrayEquals("Deleting a path should keep the shared object", content, dhtStorageAdapter2.read(userPath2));
+
+        deduplicatingAdapter.shutdown();
+    }
+
+    @Test
+    public void testRepairCorruptObject()
+            throws InputOutputException {
+        UnsecuredDhtStorageAdapter deduplicatingAdapter = new UnsecuredDhtStorageAdapter(peer1, 0, 4);
+        deduplicatingAdapter.setDeduplication(true);
+
+        UnsecuredDhtPathElement userPath1 = new UnsecuredDhtPathElement("user1", "poisoned file");
+        UnsecuredDhtPathElement userPath2 = new UnsecuredDhtPathElement("user2", "poisoned file");
+        byte[] content = "Some content to deduplicate".getBytes();
+
+        // another peer stores garbage at the path of the object before it is stored
+        UnsecuredDhtPathElement objectPath = (UnsecuredDhtPathElement) DhtObjectPointer.of(content).getObjectPath();
+        dhtStorageAdapter2.persist(StorageType.FILE, objectPath, "garbage".getBytes());
+
+        deduplicatingAdapter.persist(StorageType.FILE, userPath1, content);
+        assertArrayEquals("Poisoned object should be stored again", content, dhtStorageAdapter2.read(userPath1));
+
+        // the object is overwritten after it has been referenced
+        dhtStorageAdapter2.persist(StorageType.FILE, objectPath, "garbage".getBytes());
+
+        try {
+            dhtStorageAdapter2.read(userPath1);
+            fail("Reading a corrupt object should fail");
+        } catch (InputOutputException e) {
+            // expected
+        }
+
+        // storing the same content again repairs the object for all pointers
+        deduplicatingAdapter.persist(StorageType.FILE, userPath2, content);
+        assertArrayEquals("Object should be repaired", content, dhtStorageAdapter2.read(userPath1));
+        assertArrayEquals("Content is not the same", content, dhtStorageAdapter2.read(userPath2));
+
+        deduplicatingAdapter.delete(userPath1);
+        deduplicatingAdapter.delete(userPath2);
+        deduplicatingAdapter.shutdown();
+    }
+
+    @Test
+    public void testMovePointer()
+            throws InputOutputException {
+        UnsecuredDhtStorageAdapter deduplicatingAdapter = new UnsecuredDhtStorageAdapter(peer1, 0, 4);
+        deduplicatingAdapter.setDeduplication(true);
+
+        UnsecuredDhtPathElement oldPath = new UnsecuredDhtPathElement("user1", "old file");
+        UnsecuredDhtPathElement newPath = new UnsecuredDhtPathElement("user1", "new file");
+        byte[] content = "abcdefghij".getBytes();
+
+        deduplicatingAdapter.persist(StorageType.FILE, oldPath, content);
+        deduplicatingAdapter.move(StorageType.FILE, oldPath, newPath);
+
+        assertFalse("old path should not exist after moving anymore", dhtStorageAdapter2.exists(StorageType.FILE, oldPath));
+        assertArrayEquals("Content is not the same", content, dhtStorageAdapter2.read(newPath));
+        assertEquals("Checksum should be moved", Hash.hash(HashingAlgorithm.MD5, content), dhtStorageAdapter2.getChecksum(newPath));
+
+        // moving a pointer does not require deduplication
+        UnsecuredDhtPathElement movedPath = new UnsecuredDhtPathElement("user1", "moved file");
+        dhtStorageAdapter2.move(StorageType.FILE, newPath, movedPath);
+
+        assertFalse("old path should not exist after moving anymore", dhtStorageAdapter2.exists(StorageType.FILE, newPath));
+        assertArrayEquals("Content is not the same", content, deduplicatingAdapter.read(movedPath));
+
+        deduplicatingAdapter.delete(movedPath);
+        deduplicatingAdapter.shutdown();
     }
 }
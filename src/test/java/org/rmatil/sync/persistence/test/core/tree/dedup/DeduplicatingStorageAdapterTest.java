@@ -0,0 +1,221 @@
+package org.rmatil.sync.persistence.test.core.tree.dedup;
+
+import org.junit.*;
+import org.junit.rules.ExpectedException;
+import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.tree.TreePathElement;
+import org.rmatil.sync.persistence.core.tree.dedup.DeduplicatingStorageAdapter;
+import org.rmatil.sync.persistence.core.tree.dedup.IDeduplicatingStorageAdapter;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.persistence.test.config.Config;
+import org.rmatil.sync.persistence.test.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DeduplicatingStorageAdapterTest {
+
+    @Rule
+    public ExpectedException thrown = ExpectedException.none();
+
+    /**
+     * The root folder used to test
+     */
+    public static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    private static IDeduplicatingStorageAdapter storageAdapter;
+
+    private static String content = "Feel the rythm feel the blues, it's bobsled time!";
+
+    @BeforeClass
+    public static void setUp()
+            throws IOException {
+        if (! Files.exists(ROOT_TEST_DIR)) {
+            Files.createDirectory(ROOT_TEST_DIR);
+        }
+
+        storageAdapter = new DeduplicatingStorageAdapter(ROOT_TEST_DIR);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        FileUtil.delete(ROOT_TEST_DIR.toFile());
+    }
+
+    @After
+    public void after()
+            throws InputOutputException {
+        for (File file : ROOT_TEST_DIR.toFile().listFiles()) {
+            FileUtil.delete(file);
+        }
+    }
+
+    @Test
+    public void testPersistDeduplicates()
+            throws InputOutputException, IOException {
+        TreePathElement path1 = new TreePathElement("file1.txt");
+        TreePathElement path2 = new TreePathElement("file2.txt");
+
+        storageAdapter.persist(StorageType.FILE, path1, content.getBytes());
+        storageAdapter.persist(StorageType.FILE, path2, content.getBytes());
+
+        assertArrayEquals("Content is not equal", content.getBytes(), storageAdapter.read(path1));
+        assertArrayEquals("Content is not equal", content.getBytes(), storageAdapter.read(path2));
+        assertTrue("Both files should reference the same object", Files.isSameFile(ROOT_TEST_DIR.resolve("file1.txt"), ROOT_TEST_DIR.resolve("file2.txt")));
+        assertEquals("Only one object should be stored", 1, this.countObjects());
+
+        assertEquals("Checksum should be equal", "061875632d79f95204fa082ac64d4d75", storageAdapter.getChecksum(path1));
+        assertEquals("Checksum should be equal", "061875632d79f95204fa082ac64d4d75", storageAdapter.getChecksum(path2));
+    }
+
+    @Test
+    public void testPersistAtOffsetDetaches()
+            throws InputOutputException {
+        TreePathElement path1 = new TreePathElement("file1.txt");
+        TreePathElement path2 = new TreePathElement("file2.txt");
+
+        storageAdapter.persist(StorageType.FILE, path1, "Some content".getBytes());
+        storageAdapter.copy(StorageType.FILE, path1, path2);
+
+        storageAdapter.persist(StorageType.FILE, path2, 5, "content blub blub".getBytes());
+
+        assertEquals("Original should not be modified", "Some content", new String(storageAdapter.read(path1)));
+        assertEquals("Copy should be modified", "Some content blub blub", new String(storageAdapter.read(path2)));
+        assertNotEquals("Checksums should differ", storageAdapter.getChecksum(path1), storageAdapter.getChecksum(path2));
+        assertEquals("Modified file should not be added to the store on checksum", 1, this.countObjects());
+    }
+
+    @Test
+    public void testCopyDirectory()
+            throws InputOutputException, IOException {
+        storageAdapter.persist(StorageType.DIRECTORY, new TreePathElement("testDir"), null);
+        storageAdapter.persist(StorageType.FILE, new TreePathElement("testDir/myFile.txt"), content.getBytes());
+
+        storageAdapter.copy(StorageType.DIRECTORY, new TreePathElement("testDir"), new TreePathElement("testDir2"));
+
+        assertTrue("Copied file should exist", storageAdapter.exists(StorageType.FILE, new TreePathElement("testDir2/myFile.txt")));
+        assertTrue("Copy should reference the same object", Files.isSameFile(ROOT_TEST_DIR.resolve("testDir/myFile.txt"), ROOT_TEST_DIR.resolve("testDir2/myFile.txt")));
+
+        thrown.expect(InputOutputException.class);
+        storageAdapter.copy(StorageType.DIRECTORY, new TreePathElement("testDir"), new TreePathElement("testDir2"));
+    }
+
+    @Test
+    public void testDeleteReleasesObject()
+            throws InputOutputException {
+        TreePathElement path1 = new TreePathElement("file1.txt");
+        TreePathElement path2 = new TreePathElement("file2.txt");
+
+        storageAdapter.persist(StorageType.FILE, path1, content.getBytes());
+        storageAdapter.persist(StorageType.FILE, path2, content.getBytes());
+
+        storageAdapter.delete(path1);
+        assertEquals("Object is still referenced", 1, this.countObjects());
+
+        storageAdapter.delete(path2);
+        assertEquals("Object should be removed", 0, this.countObjects());
+    }
+
+    @Test
+    public void testMoveKeepsReference()
+            throws InputOutputException {
+        TreePathElement path1 = new TreePathElement("file1.txt");
+        TreePathElement path2 = new TreePathElement("file2.txt");
+
+        storageAdapter.persist(StorageType.FILE, path1, content.getBytes());
+        storageAdapter.move(StorageType.FILE, path1, path2);
+
+        assertFalse("Old path should not exist anymore", storageAdapter.exists(StorageType.FILE, path1));
+        assertEquals("Checksum should be equal", "061875632d79f95204fa082ac64d4d75", storageAdapter.getChecksum(path2));
+        assertEquals("Only one object should be stored", 1, this.countObjects());
+    }
+
+    @Test
+    public void testGetDirectoryContentsHidesObjectStore()
+            throws InputOutputException {
+        storageAdapter.persist(StorageType.FILE, new TreePathElement("file1.txt"), content.getBytes());
+
+        List<TreePathElement> contents = storageAdapter.getDirectoryContents(new TreePathElement("./"));
+
+        assertEquals("Only the file should be listed", 1, contents.size());
+        assertEquals("Only the file should be listed", "file1.txt", contents.get(0).getPath());
+    }
+
+    @Test
+    public void testGetChecksumOfExternalFile()
+            throws InputOutputException, IOException {
+        Path filePath = ROOT_TEST_DIR.resolve("file1.txt");
+        Files.write(filePath, content.getBytes());
+        Object fileKey = Files.readAttributes(filePath, BasicFileAttributes.class).fileKey();
+
+        assertEquals("Checksum should be equal", "061875632d79f95204fa082ac64d4d75", storageAdapter.getChecksum(new TreePathElement("file1.txt")));
+        assertEquals("File should not be added to the store", 0, this.countObjects());
+        assertEquals("File should not be replaced", fileKey, Files.readAttributes(filePath, BasicFileAttributes.class).fileKey());
+    }
+
+    @Test
+    public void testCopyExternalFile()
+            throws InputOutputException, IOException {
+        Path filePath = ROOT_TEST_DIR.resolve("file1.txt");
+        Files.write(filePath, content.getBytes());
+        Object fileKey = Files.readAttributes(filePath, BasicFileAttributes.class).fileKey();
+
+        storageAdapter.copy(StorageType.FILE, new TreePathElement("file1.txt"), new TreePathElement("file2.txt"));
+
+        assertArrayEquals("Content is not equal", content.getBytes(), storageAdapter.read(new TreePathElement("file2.txt")));
+        assertEquals("Source should not be linked into the store", fileKey, Files.readAttributes(filePath, BasicFileAttributes.class).fileKey());
+        assertFalse("Source should not reference the object", Files.isSameFile(filePath, ROOT_TEST_DIR.resolve("file2.txt")));
+        assertEquals("A private copy should be stored", 1, this.countObjects());
+
+        // modifying the source does not affect the copy
+        Files.write(filePath, "Modified".getBytes());
+        assertArrayEquals("Copy should not be modified", content.getBytes(), storageAdapter.read(new TreePathElement("file2.txt")));
+    }
+
+    @Test
+    public void testInPlaceModificationIsNotReused()
+            throws InputOutputException, IOException {
+        TreePathElement path1 = new TreePathElement("file1.txt");
+        TreePathElement path2 = new TreePathElement("file2.txt");
+        Path filePath1 = ROOT_TEST_DIR.resolve("file1.txt");
+
+        storageAdapter.persist(StorageType.FILE, path1, content.getBytes());
+        assertFalse("Linked files should be read-only", Files.getPosixFilePermissions(filePath1).contains(PosixFilePermission.OWNER_WRITE));
+
+        // another process makes the file writable and modifies it in place, which also modifies the object
+        Files.setPosixFilePermissions(filePath1, PosixFilePermissions.fromString("rw-r--r--"));
+        try (FileChannel channel = FileChannel.open(filePath1, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap("Fool".getBytes()), 0);
+        }
+
+        storageAdapter.persist(StorageType.FILE, path2, content.getBytes());
+
+        assertArrayEquals("Object should be stored again", content.getBytes(), storageAdapter.read(path2));
+        assertFalse("Modified file should not be reused", Files.isSameFile(filePath1, ROOT_TEST_DIR.resolve("file2.txt")));
+    }
+
+    protected int countObjects() {
+        File[] buckets = ROOT_TEST_DIR.resolve(DeduplicatingStorageAdapter.OBJECT_STORE_DIR).toFile().listFiles();
+
+        int count = 0;
+        if (null != buckets) {
+            for (File bucket : buckets) {
+                File[] objects = bucket.listFiles();
+                count += (null != objects) ? objects.length : 0;
+            }
+        }
+
+        return count;
+    }
+}
@@ -7,6 +7,8 @@ import org.rmatil.sync.persistence.api.StorageType;
 import org.rmatil.sync.persistence.core.tree.ITreeStorageAdapter;
 import org.rmatil.sync.persistence.core.tree.TreePathElement;
 import org.rmatil.sync.persistence.core.tree.local.LocalStorageAdapter;
+import org.rmatil.sync.persistence.core.tree.local.ReadAheadBuffer;
+import org.rmatil.sync.persistence.core.tree.local.WriteBehindBuffer;
 import org.rmatil.sync.persistence.exceptions.InputOutputException;
 import org.rmatil.sync.persistence.test.config.Config;
 import org.rmatil.sync.persistence.test.util.FileUtil;
@@ -15,7 +17,10 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
 
@@ -212,6 +217,221 @@ public class LocalStorageAdapterTest {
         assertArrayEquals("Part of the content is not the same", expected, readContent3);
     }
 
+    @Test
+    public void testSequentialReadOffset()
+            throws InputOutputException {
+        byte[] content = new byte[1000];
+        Config.DEFAULT.getRnd().nextBytes(content);
+
+        TreePathElement path = new TreePathElement(Config.DEFAULT.getTestFileName1());
+        treeStorageAdapter.persist(StorageType.FILE, path, content);
+
+        // read the file in consecutive chunks to trigger prefetching
+        for (int offset = 0; offset < 500; offset += 100) {
+            byte[] expected = new byte[100];
+            System.arraycopy(content, offset, expected, 0, 100);
+            assertArrayEquals("Chunk at offset " + offset + " is not the same", expected, treeStorageAdapter.read(path, offset, 100));
+        }
+
+        // prefetched chunks must not be returned after a modification
+        byte[] modification = new byte[200];
+        treeStorageAdapter.persist(StorageType.FILE, path, 500, modification);
+
+        for (int offset = 500; offset < 1000; offset += 100) {
+            byte[] expected = new byte[100];
+            if (offset >= 700) {
+                System.arraycopy(content, offset, expected, 0, 100);
+            }
+            assertArrayEquals("Chunk at offset " + offset + " is not the same", expected, treeStorageAdapter.read(path, offset, 100));
+        }
+
+        // reading beyond the end of the file returns a chunk filled with zeros
+        assertArrayEquals("Chunk should be filled with zeros", new byte[100], treeStorageAdapter.read(path, 1000, 100));
+    }
+
+    @Test
+    public void testReadAhead()
+            throws InputOutputException, IOException, InterruptedException {
+        byte[] content = new byte[1000];
+        Config.DEFAULT.getRnd().nextBytes(content);
+
+        Path filePath = ROOT_TEST_DIR.resolve(Config.DEFAULT.getTestFileName1());
+        Files.write(filePath, content);
+        FileTime lastModified = Files.getLastModifiedTime(filePath);
+
+        AwaitableReadAheadBuffer readAheadBuffer = new AwaitableReadAheadBuffer(2, 1024 * 1024);
+
+        readAheadBuffer.read(filePath, 0, 100);
+        assertEquals("A single read should not prefetch", 0, readAheadBuffer.getBufferedBytes());
+
+        readAheadBuffer.read(filePath, 100, 100);
+        assertEquals("The two following chunks should be prefetched", 200, readAheadBuffer.getBufferedBytes());
+        readAheadBuffer.awaitPrefetches();
+
+        byte[] expected = new byte[100];
+        System.arraycopy(content, 200, expected, 0, 100);
+        assertArrayEquals("Chunk should be served from the prefetched chunks", expected, readAheadBuffer.read(filePath, 200, 100));
+        readAheadBuffer.awaitPrefetches();
+
+        // rewrite the file without changing its size, so that only the modification time reveals the change
+        Files.write(filePath, new byte[1000]);
+        Files.setLastModifiedTime(filePath, FileTime.fromMillis(lastModified.toMillis() + 2000L));
+
+        assertArrayEquals("Prefetched chunks of a changed file should be discarded", new byte[100], readAheadBuffer.read(filePath, 300, 100));
+        assertEquals("No chunks should be prefetched anymore", 0, readAheadBuffer.getBufferedBytes());
+    }
+
+    @Test
+    public void testWriteBehind()
+            throws InputOutputException, IOException {
+        ManualWriteBehindBuffer buffer = new ManualWriteBehindBuffer(1024 * 1024);
+        LocalStorageAdapter bufferingStorageAdapter = new ManualFlushStorageAdapter(ROOT_TEST_DIR, buffer);
+        TreePathElement path = new TreePathElement(Config.DEFAULT.getTestFileName1());
+
+        bufferingStorageAdapter.persist(StorageType.FILE, path, "Some ".getBytes());
+        bufferingStorageAdapter.persist(StorageType.FILE, path, 5, "content".getBytes());
+        bufferingStorageAdapter.persist(StorageType.FILE, path, 12, " blub blub".getBytes());
+
+        assertTrue("Buffered file should exist", bufferingStorageAdapter.exists(StorageType.FILE, path));
+        assertFalse("Writes should be buffered", Files.exists(ROOT_TEST_DIR.resolve(Config.DEFAULT.getTestFileName1())));
+
+        // overwrite a range spanning both previous writes
+        bufferingStorageAdapter.persist(StorageType.FILE, path, 10, "xxxx".getBytes());
+        assertEquals("Read should see buffered writes", "Some contexxxxlub blub", new String(bufferingStorageAdapter.read(path)));
+
+        // writing at offset 0 truncates the file
+        bufferingStorageAdapter.persist(StorageType.FILE, path, 0, "abc".getBytes());
+        bufferingStorageAdapter.persist(StorageType.FILE, path, 10, "de".getBytes());
+        bufferingStorageAdapter.flush();
+        assertEquals("Flushed content is not equal", "abcde", new String(Files.readAllBytes(ROOT_TEST_DIR.resolve(Config.DEFAULT.getTestFileName1()))));
+
+        // buffered writes are flushed once their flush delay expires
+        bufferingStorageAdapter.persist(StorageType.FILE, path, 5, "fg".getBytes());
+        assertEquals("Content should still be buffered", "abcde", new String(Files.readAllBytes(ROOT_TEST_DIR.resolve(Config.DEFAULT.getTestFileName1()))));
+        buffer.flushExpired();
+        assertEquals("Content should be flushed", "abcdefg", new String(Files.readAllBytes(ROOT_TEST_DIR.resolve(Config.DEFAULT.getTestFileName1()))));
+
+        // buffered writes of deleted files are discarded
+        bufferingStorageAdapter.persist(StorageType.FILE, path, 7, "hi".getBytes());
+        bufferingStorageAdapter.delete(path);
+        bufferingStorageAdapter.flush();
+        assertFalse("File should not exist anymore", Files.exists(ROOT_TEST_DIR.resolve(Config.DEFAULT.getTestFileName1())));
+    }
+
+    @Test
+    public void testWriteBehindSegments()
+            throws InputOutputException, IOException {
+        WriteBehindBuffer buffer = new ManualWriteBehindBuffer(1024 * 1024);
+        Path filePath = ROOT_TEST_DIR.resolve(Config.DEFAULT.getTestFileName1());
+
+        byte[] expected = new byte[0];
+        boolean[] buffered = new boolean[0];
+        for (int i = 0; i < 500; i++) {
+            byte[] bytes = new byte[Config.DEFAULT.getRnd().nextInt(50)];
+            Config.DEFAULT.getRnd().nextBytes(bytes);
+
+            // mostly sequential appends, mixed with overwrites of previous writes
+            long offset = (i % 3 == 0) ? Config.DEFAULT.getRnd().nextInt(expected.length + 1) : expected.length;
+            int effectiveOffset = (int) Math.min(offset, expected.length);
+            buffer.write(filePath, offset, bytes);
+
+            if (0 == effectiveOffset) {
+                expected = new byte[0];
+                buffered = new boolean[0];
+            }
+
+            int newLength = Math.max(expected.length, effectiveOffset + bytes.length);
+            expected = Arrays.copyOf(expected, newLength);
+            buffered = Arrays.copyOf(buffered, newLength);
+            System.arraycopy(bytes, 0, expected, effectiveOffset, bytes.length);
+            Arrays.fill(buffered, effectiveOffset, effectiveOffset + bytes.length, true);
+
+            long bufferedBytes = 0;
+            for (boolean isBuffered : buffered) {
+                bufferedBytes += isBuffered ? 1 : 0;
+            }
+            assertEquals("Buffered bytes do not match after write " + i, bufferedBytes, buffer.getBufferedBytes());
+            assertEquals("Size does not match after write " + i, expected.length, buffer.getSize(filePath));
+        }
+
+        buffer.flush();
+        assertArrayEquals("Flushed content is not equal", expected, Files.readAllBytes(filePath));
+        assertEquals("No bytes should be buffered anymore", 0, buffer.getBufferedBytes());
+    }
+
+    @Test
+    public void testWriteBehindFailedFlush()
+            throws InputOutputException, IOException {
+        ManualWriteBehindBuffer buffer = new ManualWriteBehindBuffer(1024 * 1024);
+        Path filePath = ROOT_TEST_DIR.resolve(Config.DEFAULT.getTestFileName1());
+
+        buffer.write(filePath, 0, "Some content".getBytes());
+
+        // a directory in place of the file lets flushing fail
+        Files.createDirectory(filePath);
+        buffer.flushExpired();
+        assertTrue("Writes should still be buffered after a failed flush", buffer.hasPendingWrites(filePath));
+        assertEquals("Buffered bytes should be kept", 12, buffer.getBufferedBytes());
+
+        Files.delete(filePath);
+        buffer.flushExpired();
+        assertFalse("Writes should be flushed", buffer.hasPendingWrites(filePath));
+        assertEquals("Flushed content is not equal", "Some content", new String(Files.readAllBytes(filePath)));
+
+        // the failure has been resolved by the successful retry
+        buffer.flush(filePath);
+    }
+
+    /**
+     * A read-ahead buffer of which the caller can wait for all started prefetches to complete
+     */
+    private static class AwaitableReadAheadBuffer extends ReadAheadBuffer {
+
+        public AwaitableReadAheadBuffer(int chunksAhead, long maxBufferedBytes) {
+            super(chunksAhead, maxBufferedBytes);
+        }
+
+        public void awaitPrefetches()
+                throws InterruptedException {
+            this.getExecutorService().shutdown();
+            assertTrue("Prefetches should complete", this.getExecutorService().awaitTermination(10, TimeUnit.SECONDS));
+
+            // later prefetches use a new executor
+            this.executorService = null;
+        }
+    }
+
+    /**
+     * A local storage adapter using the given write-behind buffer
+     */
+    private static class ManualFlushStorageAdapter extends LocalStorageAdapter {
+
+        public ManualFlushStorageAdapter(Path rootDir, WriteBehindBuffer writeBehindBuffer) {
+            super(rootDir, 0, 0);
+            this.writeBehindBuffer = writeBehindBuffer;
+        }
+    }
+
+    /**
+     * A write-behind buffer which flushes expired writes only when requested explicitly
+     */
+    private static class ManualWriteBehindBuffer extends WriteBehindBuffer {
+
+        public ManualWriteBehindBuffer(long maxBufferedBytes) {
+            super(maxBufferedBytes, 0);
+        }
+
+        @Override
+        public synchronized void flushExpired() {
+            super.flushExpired();
+        }
+
+        @Override
+        protected void scheduleFlush() {
+            // flushed explicitly by the test
+        }
+    }
+
     @Test
     public void testGetMetaInformation()
             throws InputOutputException {
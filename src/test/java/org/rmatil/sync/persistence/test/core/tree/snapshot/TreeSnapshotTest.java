@@ -0,0 +1,125 @@
+package org.rmatil.sync.persistence.test.core.tree.snapshot;
+
+import org.junit.*;
+import org.rmatil.sync.persistence.api.StorageType;
+import org.rmatil.sync.persistence.core.tree.ITreeStorageAdapter;
+import org.rmatil.sync.persistence.core.tree.TreePathElement;
+import org.rmatil.sync.persistence.core.tree.local.LocalStorageAdapter;
+import org.rmatil.sync.persistence.core.tree.snapshot.SnapshotDiff;
+import org.rmatil.sync.persistence.core.tree.snapshot.SnapshotEntry;
+import org.rmatil.sync.persistence.core.tree.snapshot.TreeSnapshot;
+import org.rmatil.sync.persistence.exceptions.InputOutputException;
+import org.rmatil.sync.persistence.test.config.Config;
+import org.rmatil.sync.persistence.test.util.FileUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class TreeSnapshotTest {
+
+    /**
+     * The root folder used to test
+     */
+    public static final Path ROOT_TEST_DIR = Config.DEFAULT.getRootTestDir();
+
+    private static ITreeStorageAdapter treeStorageAdapter;
+
+    @BeforeClass
+    public static void setUp()
+            throws IOException {
+        if (! Files.exists(ROOT_TEST_DIR)) {
+            Files.createDirectory(ROOT_TEST_DIR);
+        }
+
+        treeStorageAdapter = new LocalStorageAdapter(ROOT_TEST_DIR);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        FileUtil.delete(ROOT_TEST_DIR.toFile());
+    }
+
+    @After
+    public void after() {
+        for (File file : ROOT_TEST_DIR.toFile().listFiles()) {
+            FileUtil.delete(file);
+        }
+    }
+
+    @Test
+    public void testGetSnapshot()
+            throws InputOutputException {
+        treeStorageAdapter.persist(StorageType.DIRECTORY, new TreePathElement("testDir"), null);
+        treeStorageAdapter.persist(StorageType.FILE, new TreePathElement("testDir/myFile.txt"), "Feel the rythm feel the blues, it's bobsled time!".getBytes());
+
+        TreeSnapshot snapshot = treeStorageAdapter.getSnapshot(new TreePathElement("./"), null);
+
+        assertEquals("Snapshot should contain the dir and the file", 2, snapshot.getEntries().size());
+        assertTrue("Dir should be the first entry", snapshot.getEntries().get(0).isDirectory());
+
+        SnapshotEntry fileEntry = snapshot.getEntry("testDir/myFile.txt");
+        assertNotNull("File should be contained", fileEntry);
+        assertEquals("Size should be equal", 49, fileEntry.getSize());
+        assertEquals("Checksum should be equal", "061875632d79f95204fa082ac64d4d75", fileEntry.getChecksum());
+    }
+
+    @Test
+    public void testDiffWithStorageAdapter()
+            throws InputOutputException, InterruptedException {
+        treeStorageAdapter.persist(StorageType.DIRECTORY, new TreePathElement("testDir"), null);
+        treeStorageAdapter.persist(StorageType.FILE, new TreePathElement("testDir/moved.txt"), "moved content".getBytes());
+        treeStorageAdapter.persist(StorageType.FILE, new TreePathElement("testDir/modified.txt"), "content".getBytes());
+        treeStorageAdapter.persist(StorageType.FILE, new TreePathElement("removed.txt"), "removed content".getBytes());
+        treeStorageAdapter.persist(StorageType.FILE, new TreePathElement("unchanged.txt"), "unchanged content".getBytes());
+
+        TreeSnapshot snapshot1 = treeStorageAdapter.getSnapshot(new TreePathElement("./"), null);
+
+        treeStorageAdapter.move(StorageType.FILE, new TreePathElement("testDir/moved.txt"), new TreePathElement("moved.txt"));
+        treeStorageAdapter.persist(StorageType.FILE, new TreePathElement("testDir/modified.txt"), "modified content".getBytes());
+        treeStorageAdapter.delete(new TreePathElement("removed.txt"));
+        treeStorageAdapter.persist(StorageType.FILE, new TreePathElement("added.txt"), "added content".getBytes());
+
+        TreeSnapshot snapshot2 = treeStorageAdapter.getSnapshot(new TreePathElement("./"), snapshot1);
+
+        SnapshotDiff diff = TreeSnapshot.diff(snapshot1, snapshot2);
+
+        assertEquals("One file should be added", 1, diff.getAdded().size());
+        assertEquals("added.txt should be added", "added.txt", diff.getAdded().get(0).getPath());
+        assertEquals("One file should be removed", 1, diff.getRemoved().size());
+        assertEquals("removed.txt should be removed", "removed.txt", diff.getRemoved().get(0).getPath());
+        assertEquals("One file should be modified", 1, diff.getModified().size());
+        assertEquals("modified.txt should be modified", "testDir/modified.txt", diff.getModified().get(0).getSecond().getPath());
+        assertEquals("One file should be moved", 1, diff.getMoved().size());
+        assertEquals("Old path of moved file is wrong", "testDir/moved.txt", diff.getMoved().get(0).getFirst().getPath());
+        assertEquals("New path of moved file is wrong", "moved.txt", diff.getMoved().get(0).getSecond().getPath());
+
+        assertTrue("Diff with itself should be empty", TreeSnapshot.diff(snapshot2, snapshot2).isEmpty());
+    }
+
+    @Test
+    public void testDiff() {
+        SnapshotEntry dir = new SnapshotEntry("dir", false, 0, 1L, null);
+        SnapshotEntry file = new SnapshotEntry("dir/file", true, 10, 1L, "abc");
+
+        TreeSnapshot snapshot1 = new TreeSnapshot(1L, Arrays.asList(file, dir));
+        TreeSnapshot snapshot2 = new TreeSnapshot(2L, Collections.<SnapshotEntry>emptyList());
+
+        SnapshotDiff diff = TreeSnapshot.diff(snapshot1, snapshot2);
+        assertEquals("Both entries should be removed", 2, diff.getRemoved().size());
+        assertEquals("Removed entries should be sorted", "dir", diff.getRemoved().get(0).getPath());
+        assertTrue("Nothing should be added", diff.getAdded().isEmpty());
+
+        // changing the type of an element is not a modification
+        SnapshotEntry fileAsDir = new SnapshotEntry("dir/file", false, 0, 2L, null);
+        diff = TreeSnapshot.diff(snapshot1, new TreeSnapshot(2L, Arrays.asList(dir, fileAsDir)));
+        assertEquals("File should be removed", file, diff.getRemoved().get(0));
+        assertEquals("Dir should be added", fileAsDir, diff.getAdded().get(0));
+        assertTrue("Nothing should be modified", diff.getModified().isEmpty());
+    }
+}